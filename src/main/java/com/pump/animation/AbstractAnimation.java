@@ -26,6 +26,7 @@ public abstract class AbstractAnimation {
 	class MyReader implements ResettableAnimationReader {
 		int ctr = 0;
 		final int frameCount;
+		BufferedImage image;
 
 		MyReader(int frameCount) {
 			this.frameCount = frameCount;
@@ -40,7 +41,10 @@ public abstract class AbstractAnimation {
 			if (ctr == frameCount)
 				return null;
 
-			BufferedImage returnValue = frames.get(ctr).getImage();
+			BufferedImage returnValue = frames.get(ctr).getImage(
+					cloneImage ? null : image);
+			if (!cloneImage)
+				image = returnValue;
 			ctr++;
 			return returnValue;
 		}
@@ -102,6 +106,18 @@ public abstract class AbstractAnimation {
 		 * Return the image in this frame.
 		 */
 		abstract BufferedImage getImage() throws IOException;
+
+		/**
+		 * Return the image in this frame.
+		 * 
+		 * @param dst
+		 *            an optional image this frame may store its pixels in. Each
+		 *            reader passes its own image here, so readers on different
+		 *            threads do not share images.
+		 */
+		BufferedImage getImage(BufferedImage dst) throws IOException {
+			return getImage();
+		}
 	}
 
 	List<Frame> frames = new ArrayList<Frame>();
@@ -0,0 +1,96 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pump.image.bmp.BmpDecoder;
+import com.pump.image.bmp.BmpEncoder;
+
+/**
+ * This {@link FrameStore} saves each frame as an uncompressed BMP file.
+ * <p>
+ * This uses a lot of disk space, but each frame can be read independently of
+ * the others.
+ */
+public class BmpFrameStore implements FrameStore {
+
+	final File directory;
+	List<File> files = new ArrayList<>();
+
+	/**
+	 * @param directory
+	 *            an optional directory to store the BMP files in. If this is
+	 *            <code>null</code> then the default temporary-file directory
+	 *            is used.
+	 */
+	public BmpFrameStore(File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public void addFrame(BufferedImage bi) throws IOException {
+		File file;
+		synchronized (this) {
+			checkDisposed();
+			file = File.createTempFile("frame", ".bmp", directory);
+			file.deleteOnExit();
+			files.add(file);
+		}
+		BmpEncoder.write(bi, file);
+	}
+
+	@Override
+	public synchronized int getFrameCount() {
+		checkDisposed();
+		return files.size();
+	}
+
+	@Override
+	public BufferedImage getFrame(int frameIndex, BufferedImage dst)
+			throws IOException {
+		File file;
+		synchronized (this) {
+			checkDisposed();
+			file = files.get(frameIndex);
+		}
+		// BMPs with alpha are bulk-copied into TYPE_INT_ARGB images,
+		// and opaque BMPs are converted as they're copied
+		if (dst == null) {
+			Dimension size = BmpDecoder.getSize(file);
+			dst = new BufferedImage(size.width, size.height,
+					BufferedImage.TYPE_INT_ARGB);
+		}
+		return BmpDecoder.readImage(file, dst);
+	}
+
+	private void checkDisposed() {
+		if (files == null)
+			throw new IllegalStateException(
+					"this frame store has already been disposed");
+	}
+
+	@Override
+	public synchronized void dispose() {
+		if (files == null)
+			return;
+		for (File f : files) {
+			if (f.exists())
+				f.delete();
+		}
+		files = null;
+	}
+}
@@ -14,90 +14,86 @@ import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-
-import com.pump.image.bmp.BmpDecoder;
-import com.pump.image.bmp.BmpEncoder;
-import com.pump.io.IOUtils;
 
 /**
- * This stores an animation in memory as a series of cached BMP images.
+ * This stores an animation outside of the heap using a {@link FrameStore}.
  * <p>
- * Saving these images to the disk may be slightly expensive, but this model
- * lets you store animations that are arbitrarily large. (That is: they are
- * limited by your hard disk space and not your RAM.)
+ * By default frames are compressed into a temporary file by a
+ * {@link CompressedFrameStore}, so this lets you store animations that are
+ * arbitrarily large. (That is: they are limited by your hard disk space and
+ * not your RAM.)
  * 
  * @see BufferedAnimation
  */
 public class CachedAnimation extends AbstractAnimation {
 
-	class FileFrame extends Frame {
-		File file;
+	class StoredFrame extends Frame {
+		final int frameIndex;
 
-		FileFrame(File directory, BufferedImage bi, int duration)
-				throws IOException {
+		StoredFrame(int frameIndex, int duration) {
 			super(duration);
-			file = directory == null ? File.createTempFile("frame", ".bmp")
-					: File.createTempFile("frame", ".bmp", directory);
-			file.deleteOnExit();
-			myFiles.add(file);
-			BmpEncoder.write(bi, file);
+			this.frameIndex = frameIndex;
 		}
 
+		@Override
 		public BufferedImage getImage() throws IOException {
-			synchronized (CachedAnimation.this) {
-				if (myFiles == null)
-					throw new IllegalStateException(
-							"this animation has already been disposed");
-				bi = BmpDecoder.readImage(file, bi);
-				return bi;
-			}
+			return getImage(null);
 		}
-	}
 
-	private static File createTempDirectory() {
-		File tempDir = new File(System.getProperty("tmp.dir"));
-		File file = IOUtils.getUniqueFile(tempDir, "cached-animation", false,
-				true);
-		if (!file.mkdir()) {
-			// while this isn't the end of the world, it strongly suggests
-			// we could have major issues soon:
-			System.err.println("CachedAnimation: could not make a directory \""
-					+ file.getAbsolutePath() + "\"");
-			return null;
+		@Override
+		BufferedImage getImage(BufferedImage dst) throws IOException {
+			return store.getFrame(frameIndex, dst);
 		}
-		return file;
 	}
 
-	File directory;
-	BufferedImage bi;
-	Set<File> myFiles = new HashSet<File>();
+	final FrameStore store;
 
 	/**
 	 * @param d
 	 *            the dimensions of this animation.
 	 */
 	public CachedAnimation(Dimension d) {
-		this(createTempDirectory(), d);
+		this(null, d);
 	}
 
 	public CachedAnimation(AnimationReader reader) throws IOException {
-		super(new Dimension(reader.getWidth(), reader.getHeight()));
+		this(new Dimension(reader.getWidth(), reader.getHeight()));
 		addFrames(reader);
 	}
 
+	/**
+	 * 
+	 * @param directory
+	 *            an optional temp directory to store all of the frames inside.
+	 * @param d
+	 *            the dimensions of this animation.
+	 */
+	public CachedAnimation(File directory, Dimension d) {
+		this(d, new CompressedFrameStore(directory, d));
+	}
+
+	/**
+	 * 
+	 * @param d
+	 *            the dimensions of this animation.
+	 * @param store
+	 *            the FrameStore to save frames in. This animation disposes
+	 *            this store when it is disposed.
+	 */
+	public CachedAnimation(Dimension d, FrameStore store) {
+		super(d);
+		this.store = store;
+	}
+
+	/**
+	 * Return the FrameStore this animation saves frames in.
+	 */
+	public FrameStore getFrameStore() {
+		return store;
+	}
+
 	public void dispose() {
-		synchronized (this) {
-			if (directory != null) {
-				IOUtils.delete(directory);
-			}
-			for (File f : myFiles) {
-				if (f.exists())
-					f.delete();
-			}
-			myFiles = null;
-		}
+		store.dispose();
 	}
 
 	private transient double remainder = 0;
@@ -113,18 +109,6 @@ public class CachedAnimation extends AbstractAnimation {
 		}
 	}
 
-	/**
-	 * 
-	 * @param directory
-	 *            an optional temp directory to store all of the frames inside.
-	 * @param d
-	 *            the dimensions of this animation.
-	 */
-	public CachedAnimation(File directory, Dimension d) {
-		super(d);
-		this.directory = directory;
-	}
-
 	@Override
 	protected void finalize() throws Throwable {
 		dispose();
@@ -134,11 +118,9 @@ public class CachedAnimation extends AbstractAnimation {
 	@Override
 	protected Frame createFrame(BufferedImage bi, int duration)
 			throws IOException {
-		synchronized (this) {
-			if (myFiles == null)
-				throw new IllegalStateException(
-						"this animation has already been disposed");
-			return new FileFrame(directory, bi, duration);
+		synchronized (store) {
+			store.addFrame(bi);
+			return new StoredFrame(store.getFrameCount() - 1, duration);
 		}
 	}
-}
\ No newline at end of file
+}
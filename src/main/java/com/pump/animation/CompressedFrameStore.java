@@ -0,0 +1,538 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.pump.util.Cache;
+import com.pump.util.Cache.ConcurrentCachePool;
+
+/**
+ * This {@link FrameStore} compresses frames into one temporary file.
+ * <p>
+ * Most frames are stored as the XOR of their ARGB pixels and the pixels of the
+ * previous frame, so pixels that don't change become zeroes. Runs of zeroes
+ * are collapsed before the frame is deflated, so decoding a frame only touches
+ * the pixels that changed. Every {@link #getKeyFrameInterval()} frames a key
+ * frame is stored by itself, so reading any frame never requires decoding more
+ * than that many frames.
+ * <p>
+ * Decoded frames are kept in a {@link Cache} whose size is limited by a number
+ * of bytes. When a frame is read the next few frames are decoded on a
+ * background thread, so a reader that plays this animation in order usually
+ * finds the frame it wants already decoded.
+ * <p>
+ * Several threads can read from this store at once: the file is read with
+ * positional reads, and decoding happens without holding a lock.
+ */
+public class CompressedFrameStore implements FrameStore {
+
+	/** The default number of frames between key frames. */
+	public static final int DEFAULT_KEY_FRAME_INTERVAL = 30;
+
+	/** The default number of bytes the decoded frame cache may use. */
+	public static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
+	/** The default number of frames to decode ahead of a reader. */
+	public static final int DEFAULT_PREFETCH_COUNT = 2;
+
+	private static final ThreadFactory PREFETCH_THREAD_FACTORY = new ThreadFactory() {
+		int ctr = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "CompressedFrameStore-prefetch-"
+					+ (ctr++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	final int width, height, keyFrameInterval, prefetchCount;
+	final File directory;
+	final Cache<Integer, int[]> cache;
+	final Set<Integer> pendingPrefetches = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * This decodes frames ahead of readers. Its only thread exits when it has
+	 * been idle for a few seconds.
+	 */
+	final ThreadPoolExecutor prefetchExecutor;
+
+	/** The following fields are guarded by this object's monitor. */
+	File file;
+	FileChannel channel;
+	long fileSize;
+	long[] offsets = new long[16];
+	int[] lengths = new int[16];
+	int[] runLengths = new int[16];
+	int frameCount;
+	boolean disposed;
+
+	/** The following fields are only used by addFrame(). */
+	int[] previousPixels, delta;
+	byte[] raw, compressed;
+	Deflater deflater;
+
+	/**
+	 * Create a store that uses the default key frame interval, cache size and
+	 * prefetch count.
+	 * 
+	 * @param directory
+	 *            an optional directory to create the temporary file in. If
+	 *            this is <code>null</code> then the default temporary-file
+	 *            directory is used.
+	 * @param size
+	 *            the size of every frame.
+	 */
+	public CompressedFrameStore(File directory, Dimension size) {
+		this(directory, size, DEFAULT_KEY_FRAME_INTERVAL, DEFAULT_CACHE_SIZE,
+				DEFAULT_PREFETCH_COUNT);
+	}
+
+	/**
+	 * @param directory
+	 *            an optional directory to create the temporary file in. If
+	 *            this is <code>null</code> then the default temporary-file
+	 *            directory is used.
+	 * @param size
+	 *            the size of every frame.
+	 * @param keyFrameInterval
+	 *            the number of frames between key frames. If this is 1 then
+	 *            every frame is compressed independently.
+	 * @param cacheSize
+	 *            the approximate number of bytes decoded frames may use. At
+	 *            least two frames are always cached.
+	 * @param prefetchCount
+	 *            the number of frames to decode ahead of a reader, or zero to
+	 *            only decode frames when they are requested.
+	 */
+	public CompressedFrameStore(File directory, Dimension size,
+			int keyFrameInterval, long cacheSize, int prefetchCount) {
+		if (size.width <= 0 || size.height <= 0)
+			throw new IllegalArgumentException("size = " + size.width + "x"
+					+ size.height);
+		if (keyFrameInterval < 1)
+			throw new IllegalArgumentException("keyFrameInterval = "
+					+ keyFrameInterval);
+		if (prefetchCount < 0)
+			throw new IllegalArgumentException("prefetchCount = "
+					+ prefetchCount);
+		this.directory = directory;
+		width = size.width;
+		height = size.height;
+		this.keyFrameInterval = keyFrameInterval;
+		this.prefetchCount = prefetchCount;
+
+		long frameBytes = 4L * width * height;
+		int cachedFrames = (int) Math.max(2,
+				Math.min(Integer.MAX_VALUE, cacheSize / frameBytes));
+		cache = new Cache<>(new ConcurrentCachePool(cachedFrames, -1, -1));
+
+		prefetchExecutor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), PREFETCH_THREAD_FACTORY);
+		prefetchExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Return the number of frames between key frames.
+	 */
+	public int getKeyFrameInterval() {
+		return keyFrameInterval;
+	}
+
+	/**
+	 * Return the number of bytes the compressed frames occupy on disk.
+	 */
+	public synchronized long getFileSize() {
+		return fileSize;
+	}
+
+	@Override
+	public synchronized void addFrame(BufferedImage bi) throws IOException {
+		checkDisposed();
+		if (bi.getWidth() != width || bi.getHeight() != height)
+			throw new IllegalArgumentException("The image is "
+					+ bi.getWidth() + "x" + bi.getHeight()
+					+ ", but this store requires " + width + "x" + height);
+
+		if (channel == null) {
+			file = File.createTempFile("frames", ".bin", directory);
+			file.deleteOnExit();
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			raw = new byte[5 * width * height + 10];
+			delta = new int[width * height];
+			compressed = new byte[4096];
+		}
+
+		int[] pixels = getPixels(bi);
+		int[] source = pixels;
+		if (frameCount % keyFrameInterval != 0) {
+			for (int a = 0; a < pixels.length; a++) {
+				delta[a] = pixels[a] ^ previousPixels[a];
+			}
+			source = delta;
+		}
+		int runLength = writeRuns(source, raw);
+
+		deflater.reset();
+		deflater.setInput(raw, 0, runLength);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			length += deflater.deflate(compressed, length, compressed.length
+					- length);
+		}
+
+		ByteBuffer src = ByteBuffer.wrap(compressed, 0, length);
+		FileChannel c = getChannel();
+		long position = fileSize;
+		while (src.hasRemaining()) {
+			position += c.write(src, position);
+		}
+
+		if (frameCount == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			lengths = Arrays.copyOf(lengths, lengths.length * 2);
+			runLengths = Arrays.copyOf(runLengths, runLengths.length * 2);
+		}
+		offsets[frameCount] = fileSize;
+		lengths[frameCount] = length;
+		runLengths[frameCount] = runLength;
+		fileSize += length;
+		previousPixels = pixels;
+		cache.put(frameCount, pixels);
+		frameCount++;
+	}
+
+	/**
+	 * Return a new array of the ARGB pixels in an image.
+	 */
+	private int[] getPixels(BufferedImage bi) {
+		int[] pixels = new int[width * height];
+		int type = bi.getType();
+		if (type == BufferedImage.TYPE_INT_ARGB
+				|| type == BufferedImage.TYPE_INT_RGB) {
+			bi.getRaster().getDataElements(0, 0, width, height, pixels);
+			if (type == BufferedImage.TYPE_INT_RGB) {
+				for (int a = 0; a < pixels.length; a++) {
+					pixels[a] |= 0xff000000;
+				}
+			}
+		} else {
+			bi.getRGB(0, 0, width, height, pixels, 0, width);
+		}
+		return pixels;
+	}
+
+	@Override
+	public synchronized int getFrameCount() {
+		checkDisposed();
+		return frameCount;
+	}
+
+	@Override
+	public BufferedImage getFrame(int frameIndex, BufferedImage dst)
+			throws IOException {
+		int[] pixels = getFramePixels(frameIndex);
+		prefetch(frameIndex + 1);
+
+		if (dst == null || dst.getType() != BufferedImage.TYPE_INT_ARGB
+				|| dst.getWidth() != width || dst.getHeight() != height)
+			dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		dst.getRaster().setDataElements(0, 0, width, height, pixels);
+		return dst;
+	}
+
+	/**
+	 * Return the ARGB pixels of a frame, decoding it (and the frames it
+	 * depends on) if it isn't cached. The array that is returned must not be
+	 * modified.
+	 */
+	int[] getFramePixels(int frameIndex) throws IOException {
+		synchronized (this) {
+			checkDisposed();
+			if (frameIndex < 0 || frameIndex >= frameCount)
+				throw new IndexOutOfBoundsException("frameIndex = "
+						+ frameIndex + ", frame count = " + frameCount);
+		}
+		int[] pixels = cache.get(frameIndex);
+		if (pixels != null)
+			return pixels;
+
+		// start from the latest decoded frame since the last key frame
+		int keyFrame = frameIndex - frameIndex % keyFrameInterval;
+		int start = frameIndex;
+		while (start > keyFrame) {
+			pixels = cache.get(start - 1);
+			if (pixels != null)
+				break;
+			start--;
+		}
+		for (int i = start; i <= frameIndex; i++) {
+			pixels = decode(i, pixels);
+			cache.put(i, pixels);
+		}
+		return pixels;
+	}
+
+	/**
+	 * Decode one frame.
+	 * 
+	 * @param frameIndex
+	 *            the frame to decode.
+	 * @param previousPixels
+	 *            the pixels of the previous frame, or <code>null</code> if
+	 *            this is a key frame.
+	 * @return a new array of ARGB pixels.
+	 */
+	private int[] decode(int frameIndex, int[] previousPixels)
+			throws IOException {
+		long offset;
+		int length, runLength;
+		synchronized (this) {
+			checkDisposed();
+			offset = offsets[frameIndex];
+			length = lengths[frameIndex];
+			runLength = runLengths[frameIndex];
+		}
+
+		ByteBuffer src = ByteBuffer.allocate(length);
+		read(src, offset);
+
+		byte[] runs = new byte[runLength];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(src.array());
+			int k = 0;
+			while (k < runLength) {
+				int n = inflater.inflate(runs, k, runLength - k);
+				if (n == 0 && (inflater.finished() || inflater.needsInput()))
+					throw new EOFException("frame " + frameIndex
+							+ " is truncated");
+				k += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("frame " + frameIndex + " is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+
+		int[] pixels = previousPixels == null ? new int[width * height]
+				: previousPixels.clone();
+		xorRuns(runs, pixels);
+		return pixels;
+	}
+
+	/**
+	 * Write an array as alternating runs of zeroes and nonzero values. Each
+	 * run begins with its length as a variable-length integer, and each
+	 * nonzero value is written as four bytes.
+	 * <p>
+	 * Most of a delta frame is zeroes, so this makes the data that is deflated
+	 * (and later inflated) much smaller.
+	 * 
+	 * @param src
+	 *            the values to write.
+	 * @param dst
+	 *            the array to write to. This must be at least
+	 *            <code>5 * src.length + 10</code> bytes.
+	 * @return the number of bytes written.
+	 */
+	static int writeRuns(int[] src, byte[] dst) {
+		int k = 0;
+		int i = 0;
+		while (i < src.length) {
+			int start = i;
+			while (i < src.length && src[i] == 0) {
+				i++;
+			}
+			k = writeVarInt(dst, k, i - start);
+
+			start = i;
+			while (i < src.length && src[i] != 0) {
+				i++;
+			}
+			k = writeVarInt(dst, k, i - start);
+			for (int j = start; j < i; j++) {
+				int v = src[j];
+				dst[k++] = (byte) (v >>> 24);
+				dst[k++] = (byte) (v >>> 16);
+				dst[k++] = (byte) (v >>> 8);
+				dst[k++] = (byte) v;
+			}
+		}
+		return k;
+	}
+
+	private static int writeVarInt(byte[] dst, int k, int value) {
+		while (value >= 0x80) {
+			dst[k++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		dst[k++] = (byte) value;
+		return k;
+	}
+
+	/**
+	 * XOR the values written by {@link #writeRuns(int[], byte[])} into an
+	 * array.
+	 */
+	static void xorRuns(byte[] src, int[] dst) {
+		int k = 0;
+		int i = 0;
+		while (k < src.length) {
+			int zeroes = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = src[k++];
+				zeroes |= (b & 0x7f) << shift;
+				if (b >= 0)
+					break;
+			}
+			i += zeroes;
+
+			int values = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = src[k++];
+				values |= (b & 0x7f) << shift;
+				if (b >= 0)
+					break;
+			}
+			for (int end = i + values; i < end; i++, k += 4) {
+				dst[i] ^= (src[k] << 24) | ((src[k + 1] & 0xff) << 16)
+						| ((src[k + 2] & 0xff) << 8) | (src[k + 3] & 0xff);
+			}
+		}
+	}
+
+	/**
+	 * Return the channel to the temporary file.
+	 * <p>
+	 * A <code>FileChannel</code> is closed when a thread that is using it is
+	 * interrupted, so this reopens the file if necessary.
+	 */
+	private synchronized FileChannel getChannel() throws IOException {
+		checkDisposed();
+		if (!channel.isOpen())
+			channel = new RandomAccessFile(file, "rw").getChannel();
+		return channel;
+	}
+
+	/**
+	 * Fill a buffer from the temporary file.
+	 */
+	private void read(ByteBuffer dst, long offset) throws IOException {
+		while (true) {
+			FileChannel c = getChannel();
+			try {
+				while (dst.hasRemaining()) {
+					if (c.read(dst, offset + dst.position()) < 0)
+						throw new EOFException();
+				}
+				return;
+			} catch (ClosedChannelException e) {
+				// if another thread was interrupted: try again
+				if (Thread.currentThread().isInterrupted())
+					throw e;
+			}
+		}
+	}
+
+	/**
+	 * Decode frames on the prefetch thread if they aren't cached.
+	 * 
+	 * @param firstFrame
+	 *            the first frame to prefetch.
+	 */
+	private void prefetch(int firstFrame) {
+		int lastFrame;
+		synchronized (this) {
+			if (disposed)
+				return;
+			lastFrame = Math.min(frameCount, firstFrame + prefetchCount) - 1;
+		}
+		for (int i = firstFrame; i <= lastFrame; i++) {
+			final int frameIndex = i;
+			if (cache.get(frameIndex) != null
+					|| !pendingPrefetches.add(frameIndex))
+				continue;
+			try {
+				prefetchExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							getFramePixels(frameIndex);
+						} catch (IOException | IllegalStateException e) {
+							// the reader will encounter this if it asks for
+							// this frame
+						} finally {
+							pendingPrefetches.remove(frameIndex);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// this store was disposed
+				pendingPrefetches.remove(frameIndex);
+				return;
+			}
+		}
+	}
+
+	private void checkDisposed() {
+		if (disposed)
+			throw new IllegalStateException(
+					"this frame store has already been disposed");
+	}
+
+	@Override
+	public void dispose() {
+		synchronized (this) {
+			if (disposed)
+				return;
+			disposed = true;
+			prefetchExecutor.shutdownNow();
+			if (deflater != null)
+				deflater.end();
+			try {
+				if (channel != null)
+					channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (file != null)
+				file.delete();
+			previousPixels = null;
+		}
+		cache.clear();
+	}
+}
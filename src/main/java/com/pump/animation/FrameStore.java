@@ -0,0 +1,65 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * This stores the frames of a {@link CachedAnimation} outside of the heap.
+ * <p>
+ * Frames are only appended, and each frame is identified by the order it was
+ * added in. Implementations must let several threads call
+ * {@link #getFrame(int, BufferedImage)} at the same time.
+ * 
+ * @see CompressedFrameStore
+ * @see BmpFrameStore
+ */
+public interface FrameStore {
+
+	/**
+	 * Append a frame to this store.
+	 * 
+	 * @param bi
+	 *            the image to store. This store does not keep a reference to
+	 *            this image, so the caller may modify it after this method
+	 *            returns.
+	 * @throws IOException
+	 *             if a problem occurs writing the image data.
+	 */
+	void addFrame(BufferedImage bi) throws IOException;
+
+	/**
+	 * Return the number of frames that have been added to this store.
+	 */
+	int getFrameCount();
+
+	/**
+	 * Return a frame from this store.
+	 * 
+	 * @param frameIndex
+	 *            the index of the frame to return.
+	 * @param dst
+	 *            an optional image to store the frame in. If this is
+	 *            <code>null</code> or incompatible then a new image is created.
+	 * @return the image of the requested frame.
+	 * @throws IOException
+	 *             if a problem occurs reading the image data.
+	 */
+	BufferedImage getFrame(int frameIndex, BufferedImage dst)
+			throws IOException;
+
+	/**
+	 * Release the resources this store uses. After this is called this store
+	 * throws an <code>IllegalStateException</code> if it is used again.
+	 */
+	void dispose();
+}
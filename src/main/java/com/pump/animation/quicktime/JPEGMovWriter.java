@@ -16,6 +16,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -30,6 +32,12 @@ import com.pump.animation.quicktime.atom.VideoSampleDescriptionEntry;
 
 /**
  * A MovWriter that encodes frames as a series of JPEG images.
+ * <p>
+ * On computers with more than one processor, frames are encoded on the
+ * common <code>ForkJoinPool</code>, so adding a frame usually only costs a
+ * copy of the image. Each thread reuses its own
+ * <code>ImageWriter</code>. Call {@link #setEncodeExecutor(Executor, int)} to
+ * use a different executor, or to encode frames on the calling thread.
  */
 public class JPEGMovWriter extends MovWriter {
 
@@ -42,6 +50,16 @@ public class JPEGMovWriter extends MovWriter {
 	 */
 	public static final String PROPERTY_QUALITY = "jpeg-quality";
 
+	/**
+	 * Each thread that encodes frames keeps one ImageWriter.
+	 */
+	private static final ThreadLocal<ImageWriter> imageWriters = new ThreadLocal<ImageWriter>() {
+		@Override
+		protected ImageWriter initialValue() {
+			return ImageIO.getImageWritersByMIMEType("image/jpeg").next();
+		}
+	};
+
 	float defaultQuality;
 
 	public JPEGMovWriter(File file) throws IOException {
@@ -60,6 +78,26 @@ public class JPEGMovWriter extends MovWriter {
 	public JPEGMovWriter(File file, float defaultQuality) throws IOException {
 		super(file);
 		this.defaultQuality = defaultQuality;
+		if (Runtime.getRuntime().availableProcessors() > 1)
+			setEncodeExecutor(ForkJoinPool.commonPool(), 0);
+	}
+
+	/**
+	 * Create a JPEGMovWriter that writes a fragmented movie.
+	 * 
+	 * @param out
+	 *            the stream to write to.
+	 * @param defaultQuality
+	 *            the default JPEG quality (from [0,1]) to use if a frame is
+	 *            added without otherwise specifying this value.
+	 * @see MovWriter#MovWriter(OutputStream)
+	 */
+	public JPEGMovWriter(OutputStream out, float defaultQuality)
+			throws IOException {
+		super(out);
+		this.defaultQuality = defaultQuality;
+		if (Runtime.getRuntime().availableProcessors() > 1)
+			setEncodeExecutor(ForkJoinPool.commonPool(), 0);
 	}
 
 	@Override
@@ -113,13 +151,26 @@ public class JPEGMovWriter extends MovWriter {
 
 		MemoryCacheImageOutputStream iOut = new MemoryCacheImageOutputStream(
 				out);
-		ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/jpeg").next();
-		ImageWriteParam iwParam = iw.getDefaultWriteParam();
-		iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-		iwParam.setCompressionQuality(quality);
-		iw.setOutput(iOut);
-		IIOImage img = new IIOImage(image, null, null);
-		iw.write(null, img, iwParam);
+		ImageWriter iw = imageWriters.get();
+		boolean success = false;
+		try {
+			ImageWriteParam iwParam = iw.getDefaultWriteParam();
+			iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			iwParam.setCompressionQuality(quality);
+			iw.setOutput(iOut);
+			IIOImage img = new IIOImage(image, null, null);
+			iw.write(null, img, iwParam);
+			success = true;
+		} finally {
+			if (success) {
+				iw.setOutput(null);
+			} else {
+				// don't reuse a writer that might be in a bad state
+				imageWriters.remove();
+				iw.dispose();
+			}
+			iOut.close();
+		}
 	}
 
 	/**
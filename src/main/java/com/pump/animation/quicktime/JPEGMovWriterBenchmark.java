@@ -0,0 +1,97 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This compares how many frames per second a {@link JPEGMovWriter} writes
+ * when it encodes frames on the calling thread and when it encodes frames on
+ * the common <code>ForkJoinPool</code>.
+ * <p>
+ * Each run writes 120 frames (cycling through ten 1280x720 gradients with
+ * random circles) at 80% JPEG quality. This prints the parallelism of the
+ * common pool and the median frame rate of 3 runs of each writer. Only the
+ * pipelined writer encodes frames in parallel, so only its frame rate should
+ * depend on the number of threads.
+ */
+class JPEGMovWriterBenchmark {
+
+	static final int SAMPLE_COUNT = 3;
+	static final int FRAME_COUNT = 120;
+
+	public static void main(String[] args) throws IOException {
+		List<BufferedImage> frames = new ArrayList<>();
+		Random random = new Random(0);
+		for (int a = 0; a < 10; a++) {
+			BufferedImage bi = new BufferedImage(1280, 720,
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = bi.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setPaint(new GradientPaint(0, 0, new Color(0x2d3436), 1280,
+					720, new Color(Color.HSBtoRGB(a / 10f, .5f, 1))));
+			g.fillRect(0, 0, 1280, 720);
+			for (int b = 0; b < 100; b++) {
+				g.setColor(new Color(random.nextInt(0xffffff)));
+				g.fillOval(random.nextInt(1280), random.nextInt(720), 80, 80);
+			}
+			g.dispose();
+			frames.add(bi);
+		}
+
+		File file = File.createTempFile("JPEGMovWriterBenchmark", ".mov");
+		try {
+			System.out.println("Threads\tSequential (fps)\tPipelined (fps)");
+			double[] sequential = new double[SAMPLE_COUNT];
+			double[] pipelined = new double[SAMPLE_COUNT];
+			for (int a = 0; a < SAMPLE_COUNT; a++) {
+				sequential[a] = write(file, frames, false);
+				pipelined[a] = write(file, frames, true);
+			}
+			Arrays.sort(sequential);
+			Arrays.sort(pipelined);
+			System.out.println(ForkJoinPool.commonPool().getParallelism()
+					+ "\t" + Math.round(sequential[SAMPLE_COUNT / 2]) + "\t"
+					+ Math.round(pipelined[SAMPLE_COUNT / 2]));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Returns the number of frames written per second.
+	 */
+	private static double write(File file, List<BufferedImage> frames,
+			boolean pipelined) throws IOException {
+		long time = System.currentTimeMillis();
+		JPEGMovWriter writer = new JPEGMovWriter(file);
+		writer.setEncodeExecutor(pipelined ? ForkJoinPool.commonPool()
+				: null, 0);
+		for (int a = 0; a < FRAME_COUNT; a++) {
+			writer.addFrame(1f / 30f, frames.get(a % frames.size()), .8f);
+		}
+		writer.close(false);
+		time = System.currentTimeMillis() - time;
+		return FRAME_COUNT * 1000.0 / time;
+	}
+}
@@ -12,16 +12,26 @@ package com.pump.animation.quicktime;
 
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -32,6 +42,7 @@ import com.pump.animation.quicktime.atom.ChunkOffsetAtom;
 import com.pump.animation.quicktime.atom.DataReferenceAtom;
 import com.pump.animation.quicktime.atom.HandlerReferenceAtom;
 import com.pump.animation.quicktime.atom.MediaHeaderAtom;
+import com.pump.animation.quicktime.atom.MovieFragmentHeaderAtom;
 import com.pump.animation.quicktime.atom.MovieHeaderAtom;
 import com.pump.animation.quicktime.atom.ParentAtom;
 import com.pump.animation.quicktime.atom.SampleDescriptionAtom;
@@ -41,6 +52,10 @@ import com.pump.animation.quicktime.atom.SoundMediaInformationHeaderAtom;
 import com.pump.animation.quicktime.atom.SoundSampleDescriptionAtom;
 import com.pump.animation.quicktime.atom.SoundSampleDescriptionEntry;
 import com.pump.animation.quicktime.atom.TimeToSampleAtom;
+import com.pump.animation.quicktime.atom.TrackExtendsAtom;
+import com.pump.animation.quicktime.atom.TrackFragmentDecodeTimeAtom;
+import com.pump.animation.quicktime.atom.TrackFragmentHeaderAtom;
+import com.pump.animation.quicktime.atom.TrackFragmentRunAtom;
 import com.pump.animation.quicktime.atom.TrackHeaderAtom;
 import com.pump.animation.quicktime.atom.VideoMediaInformationHeaderAtom;
 import com.pump.animation.quicktime.atom.VideoSampleDescriptionEntry;
@@ -63,6 +78,21 @@ import com.pump.io.MeasuredOutputStream;
  * the video and audio data to a <code>FileOutputStream</code>. When
  * <code>close()</code> is called, the movie structure is added and a
  * <code>RandomAccessFile</code> is used to correctly set the size headers.
+ * <P>
+ * If this writer is constructed with an <code>OutputStream</code> then it
+ * writes a fragmented movie instead. The movie atom is written before the
+ * first frame, and then about one second of video (and the audio that
+ * accompanies it) is written at a time as a movie fragment ('moof' and
+ * 'mdat' atoms). This never seeks, uses a constant amount of memory no matter
+ * how long the movie is, and if the writer is interrupted then every fragment
+ * written so far is still playable. Older QuickTime players (before
+ * QuickTime X) do not support movie fragments.
+ * <P>
+ * By default each frame is encoded on the thread that adds it. If
+ * {@link #setEncodeExecutor(Executor, int)} is called then frames are encoded
+ * on that executor instead, and each encoded frame is appended to the movie
+ * (in the order the frames were added) as soon as it and all the frames
+ * before it are ready.
  *
  * @see <a
  *      href="https://javagraphics.blogspot.com/2008/06/movies-writing-mov-files-without.html">Movies:
@@ -107,9 +137,7 @@ public abstract class MovWriter {
 
 		public VideoSample(int duration, long dataStart, long fileLength)
 				throws InvalidDurationException, InvalidFileLengthException {
-			if (duration <= 0)
-				throw new InvalidDurationException("duration (" + duration
-						+ ") must be greater than zero.");
+			validateDuration(duration);
 			if (fileLength <= 0)
 				throw new InvalidFileLengthException("file length ("
 						+ fileLength + ") must be greater than zero.");
@@ -117,12 +145,62 @@ public abstract class MovWriter {
 			this.fileLength = fileLength;
 			this.dataStart = dataStart;
 		}
+
+		static void validateDuration(int duration)
+				throws InvalidDurationException {
+			if (duration <= 0)
+				throw new InvalidDurationException("duration (" + duration
+						+ ") must be greater than zero.");
+		}
+	}
+
+	/**
+	 * A frame that is being encoded by the <code>encodeExecutor</code>.
+	 */
+	private static class PendingFrame {
+		final int duration;
+		final Future<byte[]> data;
+
+		PendingFrame(int duration, Future<byte[]> data) {
+			this.duration = duration;
+			this.data = data;
+		}
+
+		byte[] getData() throws IOException {
+			try {
+				return data.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable t = e.getCause();
+				if (t instanceof UncheckedIOException)
+					throw ((UncheckedIOException) t).getCause();
+				if (t instanceof RuntimeException)
+					throw (RuntimeException) t;
+				if (t instanceof Error)
+					throw (Error) t;
+				throw new IOException(t);
+			}
+		}
 	}
 
 	class VideoTrack {
+		/**
+		 * The samples of this track. In a fragmented movie this only contains
+		 * the samples of the current fragment.
+		 */
 		List<VideoSample> samples = new ArrayList<VideoSample>();
+		long sampleCount;
 		protected int w = -1, h = -1;
 		long totalDuration;
+
+		/**
+		 * The run of samples in the current fragment, or null.
+		 */
+		TrackFragmentRunAtom fragmentRun;
+		long fragmentRunDataStart;
+		long fragmentDecodeTime;
 		TimeToSampleAtom stts = new TimeToSampleAtom();
 		SampleSizeAtom stsz = new SampleSizeAtom();
 		SampleToChunkAtom stsc = new SampleToChunkAtom();
@@ -131,14 +209,15 @@ public abstract class MovWriter {
 		void writeToMoovRoot(ParentAtom moovRoot) {
 			ParentAtom trakAtom = new ParentAtom("trak");
 			moovRoot.add(trakAtom);
-			TrackHeaderAtom trackHeader = new TrackHeaderAtom(1, totalDuration,
-					w, h);
+			long duration = isFragmented() ? 0 : totalDuration;
+			TrackHeaderAtom trackHeader = new TrackHeaderAtom(1, duration, w,
+					h);
 			trackHeader.setVolume(0);
 			trakAtom.add(trackHeader);
 			ParentAtom mdiaAtom = new ParentAtom("mdia");
 			trakAtom.add(mdiaAtom);
 			MediaHeaderAtom mediaHeader = new MediaHeaderAtom(
-					DEFAULT_TIME_SCALE, totalDuration);
+					DEFAULT_TIME_SCALE, duration);
 			mdiaAtom.add(mediaHeader);
 			HandlerReferenceAtom handlerRef1 = new HandlerReferenceAtom("mhlr",
 					"vide", "java");
@@ -176,9 +255,12 @@ public abstract class MovWriter {
 
 		private void addSample(VideoSample sample) throws IOException {
 			samples.add(sample);
+			sampleCount++;
 			totalDuration += sample.duration;
-			stts.addSampleTime(sample.duration);
-			stsz.addSampleSize(sample.fileLength);
+			if (!isFragmented()) {
+				stts.addSampleTime(sample.duration);
+				stsz.addSampleSize(sample.fileLength);
+			}
 
 			// now decide if the addition of this sample concluded a chunk of
 			// samples:
@@ -195,9 +277,24 @@ public abstract class MovWriter {
 
 		private void closeChunk() throws IOException {
 			if (samplesInCurrentChunk > 0) {
-				stsc.addChunk(currentChunkIndex + 1, samplesInCurrentChunk, 1);
-				stco.addChunkOffset(samples.get(samples.size()
-						- samplesInCurrentChunk).dataStart);
+				int firstSample = samples.size() - samplesInCurrentChunk;
+				if (isFragmented()) {
+					long[] durations = new long[samplesInCurrentChunk];
+					long[] sizes = new long[samplesInCurrentChunk];
+					for (int a = 0; a < samplesInCurrentChunk; a++) {
+						VideoSample sample = samples.get(firstSample + a);
+						durations[a] = sample.duration;
+						sizes[a] = sample.fileLength;
+					}
+					fragmentRun = new TrackFragmentRunAtom(durations, sizes);
+					fragmentRunDataStart = samples.get(firstSample).dataStart;
+					fragmentDecodeTime = totalDuration
+							- durationOfCurrentChunk;
+				} else {
+					stsc.addChunk(currentChunkIndex + 1,
+							samplesInCurrentChunk, 1);
+					stco.addChunkOffset(samples.get(firstSample).dataStart);
+				}
 
 				for (AudioTrack audio : audioTracks) {
 					audio.writeAudio(durationOfCurrentChunk);
@@ -207,9 +304,32 @@ public abstract class MovWriter {
 				currentChunkIndex++;
 				samplesInCurrentChunk = 0;
 				durationOfCurrentChunk = 0;
+
+				if (isFragmented()) {
+					writeFragment();
+					samples.clear();
+				}
 			}
 		}
 
+		/**
+		 * Add this track's fragment to a movie fragment atom.
+		 */
+		void addFragment(ParentAtom moof, List<TrackFragmentRunAtom> runs,
+				List<Long> runDataStarts) {
+			if (fragmentRun == null)
+				return;
+			ParentAtom traf = new ParentAtom(
+					ParentAtom.ATOM_TYPE_TRACK_FRAGMENT);
+			traf.add(new TrackFragmentHeaderAtom(1));
+			traf.add(new TrackFragmentDecodeTimeAtom(fragmentDecodeTime));
+			traf.add(fragmentRun);
+			moof.add(traf);
+			runs.add(fragmentRun);
+			runDataStarts.add(fragmentRunDataStart);
+			fragmentRun = null;
+		}
+
 		void addFrame(int duration, File imageFile) throws IOException {
 			Dimension d = ImageSize.get(imageFile);
 			validateSize(d.width, d.height);
@@ -242,7 +362,7 @@ public abstract class MovWriter {
 		}
 
 		boolean isEmpty() {
-			return samples.size() == 0;
+			return sampleCount == 0;
 		}
 	}
 
@@ -270,6 +390,14 @@ public abstract class MovWriter {
 		ChunkOffsetAtom stco = new ChunkOffsetAtom();
 		int sampleMultiplier;
 
+		/**
+		 * The runs of samples in the current fragment, and where each run
+		 * begins in the current fragment's data.
+		 */
+		List<TrackFragmentRunAtom> fragmentRuns = new ArrayList<>();
+		List<Long> fragmentRunDataStarts = new ArrayList<>();
+		long fragmentDecodeTime;
+
 		AudioTrack(AudioInputStream audio, float audioOffset)
 				throws IOException {
 			// hmm... I'm not sure that this logic has ever
@@ -335,12 +463,12 @@ public abstract class MovWriter {
 			ParentAtom trakAtom = new ParentAtom("trak");
 			moovRoot.add(trakAtom);
 			TrackHeaderAtom trackHeader = new TrackHeaderAtom(trackIndex,
-					totalDurationInMovieTimeScale, 0, 0);
+					isFragmented() ? 0 : totalDurationInMovieTimeScale, 0, 0);
 			trakAtom.add(trackHeader);
 			ParentAtom mdiaAtom = new ParentAtom("mdia");
 			trakAtom.add(mdiaAtom);
 			MediaHeaderAtom mediaHeader = new MediaHeaderAtom(myTimeScale,
-					totalSamples);
+					isFragmented() ? 0 : totalSamples);
 			mdiaAtom.add(mediaHeader);
 			HandlerReferenceAtom handlerRef1 = new HandlerReferenceAtom("mhlr",
 					"soun", "pump");
@@ -418,25 +546,75 @@ public abstract class MovWriter {
 						+ chunkSizeInBytes);
 
 			long dataStart = out.getBytesWritten() - chunkSizeInBytes;
+			long samplesWritten = chunkSizeInBytes / sampleMultiplier;
 
-			stsc.addChunk(currentChunkIndex + 1, chunkSizeInBytes
-					/ sampleMultiplier, 1);
-			stco.addChunkOffset(dataStart);
+			if (isFragmented()) {
+				if (fragmentRuns.isEmpty())
+					fragmentDecodeTime = totalSamples;
+				fragmentRuns.add(new TrackFragmentRunAtom(samplesWritten));
+				fragmentRunDataStarts.add(dataStart);
+			} else {
+				stsc.addChunk(currentChunkIndex + 1, samplesWritten, 1);
+				stco.addChunkOffset(dataStart);
+			}
 			currentChunkIndex++;
 
-			long samplesWritten = chunkSizeInBytes / sampleMultiplier;
 			totalSamples += samplesWritten;
 			totalDurationInMovieTimeScale += samplesWritten
 					* DEFAULT_TIME_SCALE / myTimeScale;
 		}
+
+		/**
+		 * Add this track's fragment to a movie fragment atom.
+		 * <p>
+		 * In a fragmented movie each sample is one audio frame, so every
+		 * sample in a fragment has the same duration and size.
+		 */
+		void addFragment(ParentAtom moof, int trackIndex,
+				List<TrackFragmentRunAtom> runs, List<Long> runDataStarts) {
+			if (fragmentRuns.isEmpty())
+				return;
+			ParentAtom traf = new ParentAtom(
+					ParentAtom.ATOM_TYPE_TRACK_FRAGMENT);
+			TrackFragmentHeaderAtom tfhd = new TrackFragmentHeaderAtom(
+					trackIndex);
+			tfhd.setDefaultSampleDuration(1);
+			tfhd.setDefaultSampleSize(sampleMultiplier);
+			traf.add(tfhd);
+			traf.add(new TrackFragmentDecodeTimeAtom(fragmentDecodeTime));
+			for (TrackFragmentRunAtom run : fragmentRuns) {
+				traf.add(run);
+			}
+			moof.add(traf);
+			runs.addAll(fragmentRuns);
+			runDataStarts.addAll(fragmentRunDataStarts);
+			fragmentRuns.clear();
+			fragmentRunDataStarts.clear();
+		}
 	}
 
-	/** The output stream we write the movie data to. */
+	/**
+	 * The output stream we write the movie data to. In a fragmented movie
+	 * this writes to <code>fragmentData</code>, and it is replaced after each
+	 * fragment.
+	 */
 	private MeasuredOutputStream out;
 
-	/** The file we're writing to. */
+	/** The file we're writing to, or null if this writes a fragmented movie. */
 	File dest;
 
+	/** The stream a fragmented movie is written to. */
+	private OutputStream fragmentDest;
+
+	/** The media data of the current fragment. */
+	private ByteArrayOutputStream fragmentData;
+
+	/** The number of movie fragments written so far. */
+	private int fragmentCount = 0;
+
+	/** Whether the movie atom of a fragmented movie has been written. */
+	private boolean wroteMovieAtom = false;
+
 	/** Whether close() has been called yet. */
 	private boolean closed = false;
 
@@ -446,6 +624,18 @@ public abstract class MovWriter {
 	/** The audio tracks to include. */
 	protected AudioTrack[] audioTracks = new AudioTrack[] {};
 
+	/**
+	 * The executor frames are encoded on, or null if frames are encoded on
+	 * the thread that adds them.
+	 */
+	private Executor encodeExecutor;
+
+	/** The maximum number of frames that may be encoded at once. */
+	private int maxPendingFrames;
+
+	/** Frames that have been added but not written yet, in order. */
+	private final Deque<PendingFrame> pendingFrames = new ArrayDeque<>();
+
 	/**
 	 * Constructs a new <code>MovWriter</code>.
 	 * <P>
@@ -475,6 +665,29 @@ public abstract class MovWriter {
 		Atom.write32Int(out, 0);
 	}
 
+	/**
+	 * Constructs a new <code>MovWriter</code> that writes a fragmented movie.
+	 * <P>
+	 * Nothing is written until the first second of video has been added, and
+	 * the stream is never read or repositioned, so it may be a network or
+	 * pipe stream. It is closed when <code>close()</code> is called.
+	 * 
+	 * @param out
+	 *            the stream to write the movie to.
+	 */
+	public MovWriter(OutputStream out) {
+		fragmentDest = out;
+		fragmentData = new ByteArrayOutputStream();
+		this.out = new MeasuredOutputStream(fragmentData);
+	}
+
+	/**
+	 * Return true if this writes a fragmented movie.
+	 */
+	protected boolean isFragmented() {
+		return fragmentDest != null;
+	}
+
 	/**
 	 * Add an AudioInputStream to this movie. The audio data will be interleaved
 	 * with the visual data in the output movie.
@@ -534,7 +747,7 @@ public abstract class MovWriter {
 		if (closed)
 			throw new RuntimeException("this writer has already been closed");
 
-		if (videoTrack.isEmpty() == false)
+		if (videoTrack.isEmpty() == false || !pendingFrames.isEmpty())
 			throw new RuntimeException(
 					"cannot add audio after video data has been started");
 		AudioTrack newTrack;
@@ -562,6 +775,73 @@ public abstract class MovWriter {
 		newTrack.writeAudio(DEFAULT_TIME_SCALE * 1);
 	}
 
+	/**
+	 * Encode frames on several threads.
+	 * <p>
+	 * Each image passed to {@link #addFrame(float, BufferedImage, Map)} is
+	 * copied and encoded on the <code>encodeExecutor</code>, so
+	 * {@link #writeFrame(OutputStream, BufferedImage, Map)} must be
+	 * thread-safe. Encoded frames are written in the order they were added.
+	 * When <code>maxPendingFrames</code> frames are waiting to be written the
+	 * calling thread waits for the oldest one, which bounds the memory this
+	 * uses.
+	 * 
+	 * @param encodeExecutor
+	 *            the executor used to encode frames. If this is null then
+	 *            frames are encoded on the thread that adds them.
+	 * @param maxPendingFrames
+	 *            the maximum number of frames that may be in progress at once.
+	 *            If this is zero or negative then a default based on the
+	 *            number of processors is used.
+	 * @throws IOException
+	 *             if a frame that was already added could not be written.
+	 */
+	public synchronized void setEncodeExecutor(Executor encodeExecutor,
+			int maxPendingFrames) throws IOException {
+		if (maxPendingFrames <= 0)
+			maxPendingFrames = 2 * Runtime.getRuntime().availableProcessors();
+		writePendingFrames(0);
+		this.encodeExecutor = encodeExecutor;
+		this.maxPendingFrames = maxPendingFrames;
+	}
+
+	/**
+	 * Write pending frames until at most <code>maxFrames</code> remain.
+	 * Frames at the front of the queue that have finished encoding are also
+	 * written.
+	 */
+	private void writePendingFrames(int maxFrames) throws IOException {
+		while (!pendingFrames.isEmpty()
+				&& (pendingFrames.size() > maxFrames || pendingFrames
+						.peekFirst().data.isDone())) {
+			PendingFrame frame = pendingFrames.removeFirst();
+			writeFrameData(frame.duration, frame.getData());
+		}
+	}
+
+	private void writeFrameData(int duration, byte[] data) throws IOException {
+		out.write(data);
+		VideoSample sample = new VideoSample(duration, out.getBytesWritten()
+				- data.length, data.length);
+		videoTrack.addSample(sample);
+	}
+
+	private byte[] encodeFrame(BufferedImage image,
+			Map<String, Object> settings) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeFrame(bytes, image, settings);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static BufferedImage copy(BufferedImage bi) {
+		return new BufferedImage(bi.getColorModel(), bi.copyData(null),
+				bi.isAlphaPremultiplied(), null);
+	}
+
 	@Override
 	protected void finalize() throws Throwable {
 		close(false);
@@ -592,12 +872,23 @@ public abstract class MovWriter {
 		int relativeDuration = (int) (duration * DEFAULT_TIME_SCALE + .5);
 
 		videoTrack.validateSize(bi.getWidth(), bi.getHeight());
-		long startPosition = out.getBytesWritten();
-		writeFrame(out, bi, settings);
-		long byteSize = out.getBytesWritten() - startPosition;
-		VideoSample sample = new VideoSample(relativeDuration,
-				out.getBytesWritten() - byteSize, byteSize);
-		videoTrack.addSample(sample);
+		if (encodeExecutor == null) {
+			long startPosition = out.getBytesWritten();
+			writeFrame(out, bi, settings);
+			long byteSize = out.getBytesWritten() - startPosition;
+			VideoSample sample = new VideoSample(relativeDuration,
+					out.getBytesWritten() - byteSize, byteSize);
+			videoTrack.addSample(sample);
+		} else {
+			VideoSample.validateDuration(relativeDuration);
+			BufferedImage image = copy(bi);
+			Map<String, Object> settingsCopy = settings == null ? null
+					: new HashMap<>(settings);
+			Future<byte[]> data = CompletableFuture.supplyAsync(
+					() -> encodeFrame(image, settingsCopy), encodeExecutor);
+			pendingFrames.add(new PendingFrame(relativeDuration, data));
+			writePendingFrames(maxPendingFrames);
+		}
 	}
 
 	protected abstract void writeFrame(OutputStream out, BufferedImage image,
@@ -629,6 +920,7 @@ public abstract class MovWriter {
 					"this writer has already been closed");
 
 		int relativeTime = (int) (duration * DEFAULT_TIME_SCALE + .5);
+		writePendingFrames(0);
 		videoTrack.addFrame(relativeTime, image);
 	}
 
@@ -655,8 +947,14 @@ public abstract class MovWriter {
 			closed = true;
 		}
 
+		if (isFragmented()) {
+			closeFragmentedMovie(writeRemainingAudio);
+			return;
+		}
+
 		long mdatSize;
 		try {
+			writePendingFrames(0);
 			videoTrack.close();
 			if (writeRemainingAudio) {
 				writeAudioLoop: while (true) {
@@ -676,22 +974,7 @@ public abstract class MovWriter {
 
 			mdatSize = out.getBytesWritten();
 
-			ParentAtom moovRoot = new ParentAtom("moov");
-
-			long totalDuration = videoTrack.totalDuration;
-			for (AudioTrack audio : audioTracks) {
-				totalDuration = Math.max(totalDuration,
-						audio.totalDurationInMovieTimeScale);
-			}
-			MovieHeaderAtom movieHeader = new MovieHeaderAtom(
-					DEFAULT_TIME_SCALE, totalDuration);
-			moovRoot.add(movieHeader);
-
-			videoTrack.writeToMoovRoot(moovRoot);
-			for (int a = 0; a < audioTracks.length; a++) {
-				audioTracks[a].writeToMoovRoot(moovRoot, a + 2);
-			}
-			moovRoot.write(out);
+			createMovieAtom().write(out);
 		} finally {
 			out.close();
 		}
@@ -719,6 +1002,119 @@ public abstract class MovWriter {
 		}
 	}
 
+	/**
+	 * Create the movie atom ('moov'). In a fragmented movie this describes
+	 * the tracks but no samples.
+	 */
+	private ParentAtom createMovieAtom() {
+		ParentAtom moovRoot = new ParentAtom(ParentAtom.ATOM_TYPE_MOVIE);
+
+		long totalDuration = videoTrack.totalDuration;
+		for (AudioTrack audio : audioTracks) {
+			totalDuration = Math.max(totalDuration,
+					audio.totalDurationInMovieTimeScale);
+		}
+		MovieHeaderAtom movieHeader = new MovieHeaderAtom(DEFAULT_TIME_SCALE,
+				isFragmented() ? 0 : totalDuration);
+		moovRoot.add(movieHeader);
+
+		videoTrack.writeToMoovRoot(moovRoot);
+		for (int a = 0; a < audioTracks.length; a++) {
+			audioTracks[a].writeToMoovRoot(moovRoot, a + 2);
+		}
+
+		if (isFragmented()) {
+			ParentAtom mvex = new ParentAtom(ParentAtom.ATOM_TYPE_MOVIE_EXTENDS);
+			mvex.add(new TrackExtendsAtom(1));
+			for (int a = 0; a < audioTracks.length; a++) {
+				TrackExtendsAtom trex = new TrackExtendsAtom(a + 2);
+				trex.setDefaultSampleDuration(1);
+				trex.setDefaultSampleSize(audioTracks[a].sampleMultiplier);
+				mvex.add(trex);
+			}
+			moovRoot.add(mvex);
+		}
+		return moovRoot;
+	}
+
+	/**
+	 * Write the current fragment (a 'moof' atom followed by an 'mdat' atom)
+	 * to <code>fragmentDest</code>. Before the first fragment this writes the
+	 * movie atom.
+	 */
+	private void writeFragment() throws IOException {
+		writeMovieAtom();
+
+		ParentAtom moof = new ParentAtom(ParentAtom.ATOM_TYPE_MOVIE_FRAGMENT);
+		moof.add(new MovieFragmentHeaderAtom(fragmentCount + 1));
+		List<TrackFragmentRunAtom> runs = new ArrayList<>();
+		List<Long> runDataStarts = new ArrayList<>();
+		videoTrack.addFragment(moof, runs, runDataStarts);
+		for (int a = 0; a < audioTracks.length; a++) {
+			audioTracks[a].addFragment(moof, a + 2, runs, runDataStarts);
+		}
+		if (runs.isEmpty())
+			return;
+
+		// data offsets are relative to the start of the moof atom
+		ByteArrayOutputStream moofBytes = new ByteArrayOutputStream();
+		moof.write(moofBytes);
+		long mdatSize = 8 + out.getBytesWritten();
+		int mdatHeaderSize = mdatSize > 0xffffffffL ? 16 : 8;
+		for (int a = 0; a < runs.size(); a++) {
+			runs.get(a).setDataOffset((int) (moofBytes.size()
+					+ mdatHeaderSize + runDataStarts.get(a)));
+		}
+		moof.write(fragmentDest);
+
+		if (mdatHeaderSize == 16) {
+			Atom.write32Int(fragmentDest, 1);
+			Atom.write32String(fragmentDest, "mdat");
+			Atom.write32Int(fragmentDest, (mdatSize + 8) >>> 32);
+			Atom.write32Int(fragmentDest, mdatSize + 8);
+		} else {
+			Atom.write32Int(fragmentDest, mdatSize);
+			Atom.write32String(fragmentDest, "mdat");
+		}
+		fragmentData.writeTo(fragmentDest);
+		fragmentDest.flush();
+
+		fragmentData.reset();
+		out = new MeasuredOutputStream(fragmentData);
+		fragmentCount++;
+	}
+
+	private void writeMovieAtom() throws IOException {
+		if (!wroteMovieAtom) {
+			createMovieAtom().write(fragmentDest);
+			wroteMovieAtom = true;
+		}
+	}
+
+	private void closeFragmentedMovie(boolean writeRemainingAudio)
+			throws IOException {
+		try {
+			writePendingFrames(0);
+			videoTrack.close();
+			if (writeRemainingAudio) {
+				while (true) {
+					boolean audioRemaining = false;
+					for (AudioTrack audio : audioTracks) {
+						if (audio.writeAudio(DEFAULT_TIME_SCALE))
+							audioRemaining = true;
+					}
+					if (!audioRemaining)
+						break;
+					writeFragment();
+				}
+			}
+			writeFragment();
+			writeMovieAtom();
+		} finally {
+			fragmentDest.close();
+		}
+	}
+
 	/**
 	 * Write a file to an OutputStream.
 	 * 
@@ -29,6 +29,15 @@ public class PNGMovWriter extends MovWriter {
 		super(file);
 	}
 
+	/**
+	 * Create a PNGMovWriter that writes a fragmented movie.
+	 * 
+	 * @see MovWriter#MovWriter(OutputStream)
+	 */
+	public PNGMovWriter(OutputStream out) {
+		super(out);
+	}
+
 	@Override
 	protected VideoSampleDescriptionEntry getVideoSampleDescriptionEntry() {
 		return VideoSampleDescriptionEntry.createPNGDescription(videoTrack.w,
@@ -164,6 +164,7 @@ public abstract class Atom implements TreeNode {
 	static byte[] array3 = new byte[3];
 	static byte[] array4 = new byte[4];
 	static byte[] array6 = new byte[6];
+	static byte[] array8 = new byte[8];
 
 	protected synchronized static final int read16Int(InputStream in)
 			throws IOException {
@@ -189,6 +190,24 @@ public abstract class Atom implements TreeNode {
 		out.write(array6);
 	}
 
+	protected synchronized static final void write64Int(OutputStream out,
+			long i) throws IOException {
+		for (int a = 0; a < 8; a++) {
+			array8[a] = (byte) ((i >> (56 - 8 * a)) & 0xff);
+		}
+		out.write(array8);
+	}
+
+	protected synchronized static final long read64Int(InputStream in)
+			throws IOException {
+		read(in, array8);
+		long value = 0;
+		for (int a = 0; a < 8; a++) {
+			value = (value << 8) | (array8[a] & 0xff);
+		}
+		return value;
+	}
+
 	protected synchronized static final void write8Int(OutputStream out, int i)
 			throws IOException {
 		array1[0] = (byte) (i & 0xff);
@@ -60,6 +60,8 @@ public class AtomReader {
 		c.add(MediaHeaderAtom.ATOM_TYPE);
 		c.add(TrackHeaderAtom.ATOM_TYPE);
 		c.add(DataReferenceAtom.ATOM_TYPE);
+		c.add(MovieFragmentHeaderAtom.ATOM_TYPE);
+		c.add(TrackFragmentHeaderAtom.ATOM_TYPE);
 		c.add("mdat");
 		c.add("ftyp");
 		c.add("free");
@@ -261,6 +263,16 @@ public class AtomReader {
 				return new ChunkOffsetAtom(parent, in);
 			case WindowLocationAtom.ATOM_TYPE:
 				return new WindowLocationAtom(parent, in);
+			case TrackExtendsAtom.ATOM_TYPE:
+				return new TrackExtendsAtom(parent, in);
+			case MovieFragmentHeaderAtom.ATOM_TYPE:
+				return new MovieFragmentHeaderAtom(parent, in);
+			case TrackFragmentHeaderAtom.ATOM_TYPE:
+				return new TrackFragmentHeaderAtom(parent, in);
+			case TrackFragmentDecodeTimeAtom.ATOM_TYPE:
+				return new TrackFragmentDecodeTimeAtom(parent, in);
+			case TrackFragmentRunAtom.ATOM_TYPE:
+				return new TrackFragmentRunAtom(parent, in);
 			}
 			if (getFileType() == FileType.QUICKTIME) {
 				if (atomType.charAt(0) == '©')
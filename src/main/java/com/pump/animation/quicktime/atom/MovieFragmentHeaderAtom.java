@@ -0,0 +1,77 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime.atom;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pump.io.GuardedOutputStream;
+
+/**
+ * Movie fragment header atoms number the movie fragments of a movie. They
+ * have an atom type of 'mfhd', and they are the first child of each movie
+ * fragment atom ('moof').
+ * <p>
+ * Sequence numbers start at 1 and increase with each fragment in the order
+ * they appear in the file.
+ */
+public class MovieFragmentHeaderAtom extends LeafAtom {
+
+	/** "mfhd" */
+	public static final String ATOM_TYPE = "mfhd";
+
+	protected int version = 0;
+	protected int flags = 0;
+	protected long sequenceNumber;
+
+	public MovieFragmentHeaderAtom(long sequenceNumber) {
+		super(null);
+		this.sequenceNumber = sequenceNumber;
+	}
+
+	public MovieFragmentHeaderAtom(Atom parent, InputStream in)
+			throws IOException {
+		super(parent);
+		version = in.read();
+		flags = read24Int(in);
+		sequenceNumber = read32Int(in);
+	}
+
+	/**
+	 * Return the 1-based position of this fragment in the movie.
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	@Override
+	public String getIdentifier() {
+		return ATOM_TYPE;
+	}
+
+	@Override
+	protected long getSize() {
+		return 16;
+	}
+
+	@Override
+	protected void writeContents(GuardedOutputStream out) throws IOException {
+		out.write(version);
+		write24Int(out, flags);
+		write32Int(out, sequenceNumber);
+	}
+
+	@Override
+	public String toString() {
+		return "MovieFragmentHeaderAtom[ version=" + version + ", flags="
+				+ flags + ", sequenceNumber=" + sequenceNumber + "]";
+	}
+}
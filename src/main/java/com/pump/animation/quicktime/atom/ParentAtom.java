@@ -264,6 +264,30 @@ public class ParentAtom extends Atom {
 	 */
 	public static final String ATOM_TYPE_REFERENCE_MOVIE_DESCRIPTOR = "rmda";
 
+	/**
+	 * Movie extends atoms have an atom type of 'mvex'. A movie extends atom
+	 * inside the movie atom indicates the movie may contain movie fragments.
+	 * It contains one track extends atom ('trex') for each track.
+	 */
+	public static final String ATOM_TYPE_MOVIE_EXTENDS = "mvex";
+
+	/**
+	 * Movie fragment atoms have an atom type of 'moof'. Each movie fragment
+	 * extends the movie with more samples. It contains a movie fragment
+	 * header atom ('mfhd') and one track fragment atom ('traf') for each
+	 * track that has samples in this fragment. The samples are usually stored
+	 * in the media data atom ('mdat') that follows it.
+	 */
+	public static final String ATOM_TYPE_MOVIE_FRAGMENT = "moof";
+
+	/**
+	 * Track fragment atoms have an atom type of 'traf'. A track fragment
+	 * contains a track fragment header atom ('tfhd') and zero or more track
+	 * fragment run atoms ('trun') that describe the samples one track adds in
+	 * a movie fragment.
+	 */
+	public static final String ATOM_TYPE_TRACK_FRAGMENT = "traf";
+
 	/**
 	 * This does not appear in the QuickTime specs, but this is used as a parent
 	 * atom in related files like "m4a" audio files.
@@ -290,7 +314,8 @@ public class ParentAtom extends Atom {
 					ATOM_TYPE_TRACK_INPUT_MAP,
 					ATOM_TYPE_REFERENCE_MOVIE_DESCRIPTOR,
 					ATOM_TYPE_TRACK_APERTURE_MODE_DIMENSIONS, ATOM_TYPE_META,
-					ATOM_TYPE_ILST)));
+					ATOM_TYPE_ILST, ATOM_TYPE_MOVIE_EXTENDS,
+					ATOM_TYPE_MOVIE_FRAGMENT, ATOM_TYPE_TRACK_FRAGMENT)));
 
 	protected List<Atom> children = new ArrayList<Atom>();
 	protected String id;
@@ -0,0 +1,132 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime.atom;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pump.io.GuardedOutputStream;
+
+/**
+ * Track extends atoms set up the default values used by the movie fragments
+ * of a track. Track extends atoms have an atom type of 'trex', and they are
+ * stored in a movie extends atom ('mvex').
+ * <p>
+ * The presence of a movie extends atom indicates that the movie may contain
+ * movie fragments ('moof'), so a reader should not assume the sample tables
+ * in the movie atom describe every sample.
+ */
+public class TrackExtendsAtom extends LeafAtom {
+
+	/** "trex" */
+	public static final String ATOM_TYPE = "trex";
+
+	protected int version = 0;
+	protected int flags = 0;
+	protected long trackID;
+	protected long defaultSampleDescriptionIndex = 1;
+	protected long defaultSampleDuration;
+	protected long defaultSampleSize;
+	protected long defaultSampleFlags;
+
+	public TrackExtendsAtom(long trackID) {
+		super(null);
+		this.trackID = trackID;
+	}
+
+	public TrackExtendsAtom(Atom parent, InputStream in) throws IOException {
+		super(parent);
+		version = in.read();
+		flags = read24Int(in);
+		trackID = read32Int(in);
+		defaultSampleDescriptionIndex = read32Int(in);
+		defaultSampleDuration = read32Int(in);
+		defaultSampleSize = read32Int(in);
+		defaultSampleFlags = read32Int(in);
+	}
+
+	/**
+	 * Return the ID of the track this atom describes.
+	 */
+	public long getTrackID() {
+		return trackID;
+	}
+
+	/**
+	 * Return the (1-based) index of the sample description fragments use by
+	 * default.
+	 */
+	public long getDefaultSampleDescriptionIndex() {
+		return defaultSampleDescriptionIndex;
+	}
+
+	/**
+	 * Return the duration (in the media's time scale) samples in fragments
+	 * use by default.
+	 */
+	public long getDefaultSampleDuration() {
+		return defaultSampleDuration;
+	}
+
+	/**
+	 * Return the size (in bytes) samples in fragments use by default.
+	 */
+	public long getDefaultSampleSize() {
+		return defaultSampleSize;
+	}
+
+	/**
+	 * Return the flags samples in fragments use by default. Zero indicates
+	 * every sample is a sync sample.
+	 */
+	public long getDefaultSampleFlags() {
+		return defaultSampleFlags;
+	}
+
+	public void setDefaultSampleDuration(long defaultSampleDuration) {
+		this.defaultSampleDuration = defaultSampleDuration;
+	}
+
+	public void setDefaultSampleSize(long defaultSampleSize) {
+		this.defaultSampleSize = defaultSampleSize;
+	}
+
+	@Override
+	public String getIdentifier() {
+		return ATOM_TYPE;
+	}
+
+	@Override
+	protected long getSize() {
+		return 32;
+	}
+
+	@Override
+	protected void writeContents(GuardedOutputStream out) throws IOException {
+		out.write(version);
+		write24Int(out, flags);
+		write32Int(out, trackID);
+		write32Int(out, defaultSampleDescriptionIndex);
+		write32Int(out, defaultSampleDuration);
+		write32Int(out, defaultSampleSize);
+		write32Int(out, defaultSampleFlags);
+	}
+
+	@Override
+	public String toString() {
+		return "TrackExtendsAtom[ version=" + version + ", flags=" + flags
+				+ ", trackID=" + trackID + ", defaultSampleDescriptionIndex="
+				+ defaultSampleDescriptionIndex + ", defaultSampleDuration="
+				+ defaultSampleDuration + ", defaultSampleSize="
+				+ defaultSampleSize + ", defaultSampleFlags="
+				+ defaultSampleFlags + "]";
+	}
+}
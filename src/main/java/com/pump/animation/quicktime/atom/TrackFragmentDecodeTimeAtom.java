@@ -0,0 +1,85 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime.atom;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pump.io.GuardedOutputStream;
+
+/**
+ * Track fragment decode time atoms record the decode time (in the media's
+ * time scale) of the first sample in a track fragment ('traf'). They have an
+ * atom type of 'tfdt'.
+ * <p>
+ * This is the sum of the durations of all the samples in earlier fragments,
+ * so a reader can seek to a fragment without reading the ones before it.
+ */
+public class TrackFragmentDecodeTimeAtom extends LeafAtom {
+
+	/** "tfdt" */
+	public static final String ATOM_TYPE = "tfdt";
+
+	protected int version = 1;
+	protected int flags = 0;
+	protected long baseMediaDecodeTime;
+
+	public TrackFragmentDecodeTimeAtom(long baseMediaDecodeTime) {
+		super(null);
+		this.baseMediaDecodeTime = baseMediaDecodeTime;
+	}
+
+	public TrackFragmentDecodeTimeAtom(Atom parent, InputStream in)
+			throws IOException {
+		super(parent);
+		version = in.read();
+		flags = read24Int(in);
+		if (version == 1) {
+			baseMediaDecodeTime = read64Int(in);
+		} else {
+			baseMediaDecodeTime = read32Int(in) & 0xffffffffL;
+		}
+	}
+
+	/**
+	 * Return the decode time of the first sample in this track fragment.
+	 */
+	public long getBaseMediaDecodeTime() {
+		return baseMediaDecodeTime;
+	}
+
+	@Override
+	public String getIdentifier() {
+		return ATOM_TYPE;
+	}
+
+	@Override
+	protected long getSize() {
+		return version == 1 ? 20 : 16;
+	}
+
+	@Override
+	protected void writeContents(GuardedOutputStream out) throws IOException {
+		out.write(version);
+		write24Int(out, flags);
+		if (version == 1) {
+			write64Int(out, baseMediaDecodeTime);
+		} else {
+			write32Int(out, baseMediaDecodeTime);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TrackFragmentDecodeTimeAtom[ version=" + version + ", flags="
+				+ flags + ", baseMediaDecodeTime=" + baseMediaDecodeTime + "]";
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime.atom;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pump.io.GuardedOutputStream;
+
+/**
+ * Track fragment header atoms identify the track a track fragment ('traf')
+ * belongs to, and they can override the defaults of the track's track extends
+ * atom ('trex'). Track fragment header atoms have an atom type of 'tfhd'.
+ * <p>
+ * Each optional field is only present if its flag is set.
+ */
+public class TrackFragmentHeaderAtom extends LeafAtom {
+
+	/** "tfhd" */
+	public static final String ATOM_TYPE = "tfhd";
+
+	/** Indicates the base data offset field is present. */
+	public static final int FLAG_BASE_DATA_OFFSET = 0x000001;
+
+	/** Indicates the sample description index field is present. */
+	public static final int FLAG_SAMPLE_DESCRIPTION_INDEX = 0x000002;
+
+	/** Indicates the default sample duration field is present. */
+	public static final int FLAG_DEFAULT_SAMPLE_DURATION = 0x000008;
+
+	/** Indicates the default sample size field is present. */
+	public static final int FLAG_DEFAULT_SAMPLE_SIZE = 0x000010;
+
+	/** Indicates the default sample flags field is present. */
+	public static final int FLAG_DEFAULT_SAMPLE_FLAGS = 0x000020;
+
+	/** Indicates this fragment covers a duration but contains no samples. */
+	public static final int FLAG_DURATION_IS_EMPTY = 0x010000;
+
+	/**
+	 * Indicates data offsets are relative to the start of the enclosing movie
+	 * fragment atom ('moof') when there is no base data offset.
+	 */
+	public static final int FLAG_DEFAULT_BASE_IS_MOOF = 0x020000;
+
+	protected int version = 0;
+	protected int flags = FLAG_DEFAULT_BASE_IS_MOOF;
+	protected long trackID;
+	protected long baseDataOffset;
+	protected long sampleDescriptionIndex;
+	protected long defaultSampleDuration;
+	protected long defaultSampleSize;
+	protected long defaultSampleFlags;
+
+	public TrackFragmentHeaderAtom(long trackID) {
+		super(null);
+		this.trackID = trackID;
+	}
+
+	public TrackFragmentHeaderAtom(Atom parent, InputStream in)
+			throws IOException {
+		super(parent);
+		version = in.read();
+		flags = read24Int(in);
+		trackID = read32Int(in);
+		if ((flags & FLAG_BASE_DATA_OFFSET) != 0)
+			baseDataOffset = read64Int(in);
+		if ((flags & FLAG_SAMPLE_DESCRIPTION_INDEX) != 0)
+			sampleDescriptionIndex = read32Int(in);
+		if ((flags & FLAG_DEFAULT_SAMPLE_DURATION) != 0)
+			defaultSampleDuration = read32Int(in);
+		if ((flags & FLAG_DEFAULT_SAMPLE_SIZE) != 0)
+			defaultSampleSize = read32Int(in);
+		if ((flags & FLAG_DEFAULT_SAMPLE_FLAGS) != 0)
+			defaultSampleFlags = read32Int(in);
+	}
+
+	/**
+	 * Return the flags that indicate which optional fields are present.
+	 */
+	public int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Return the ID of the track this fragment belongs to.
+	 */
+	public long getTrackID() {
+		return trackID;
+	}
+
+	/**
+	 * Return the base data offset, or zero if
+	 * {@link #FLAG_BASE_DATA_OFFSET} is not set.
+	 */
+	public long getBaseDataOffset() {
+		return baseDataOffset;
+	}
+
+	/**
+	 * Return the default sample duration, or zero if
+	 * {@link #FLAG_DEFAULT_SAMPLE_DURATION} is not set.
+	 */
+	public long getDefaultSampleDuration() {
+		return defaultSampleDuration;
+	}
+
+	/**
+	 * Return the default sample size, or zero if
+	 * {@link #FLAG_DEFAULT_SAMPLE_SIZE} is not set.
+	 */
+	public long getDefaultSampleSize() {
+		return defaultSampleSize;
+	}
+
+	/**
+	 * Set the duration of every sample in this fragment.
+	 */
+	public void setDefaultSampleDuration(long defaultSampleDuration) {
+		this.defaultSampleDuration = defaultSampleDuration;
+		flags |= FLAG_DEFAULT_SAMPLE_DURATION;
+	}
+
+	/**
+	 * Set the size (in bytes) of every sample in this fragment.
+	 */
+	public void setDefaultSampleSize(long defaultSampleSize) {
+		this.defaultSampleSize = defaultSampleSize;
+		flags |= FLAG_DEFAULT_SAMPLE_SIZE;
+	}
+
+	@Override
+	public String getIdentifier() {
+		return ATOM_TYPE;
+	}
+
+	@Override
+	protected long getSize() {
+		long size = 16;
+		if ((flags & FLAG_BASE_DATA_OFFSET) != 0)
+			size += 8;
+		if ((flags & FLAG_SAMPLE_DESCRIPTION_INDEX) != 0)
+			size += 4;
+		if ((flags & FLAG_DEFAULT_SAMPLE_DURATION) != 0)
+			size += 4;
+		if ((flags & FLAG_DEFAULT_SAMPLE_SIZE) != 0)
+			size += 4;
+		if ((flags & FLAG_DEFAULT_SAMPLE_FLAGS) != 0)
+			size += 4;
+		return size;
+	}
+
+	@Override
+	protected void writeContents(GuardedOutputStream out) throws IOException {
+		out.write(version);
+		write24Int(out, flags);
+		write32Int(out, trackID);
+		if ((flags & FLAG_BASE_DATA_OFFSET) != 0)
+			write64Int(out, baseDataOffset);
+		if ((flags & FLAG_SAMPLE_DESCRIPTION_INDEX) != 0)
+			write32Int(out, sampleDescriptionIndex);
+		if ((flags & FLAG_DEFAULT_SAMPLE_DURATION) != 0)
+			write32Int(out, defaultSampleDuration);
+		if ((flags & FLAG_DEFAULT_SAMPLE_SIZE) != 0)
+			write32Int(out, defaultSampleSize);
+		if ((flags & FLAG_DEFAULT_SAMPLE_FLAGS) != 0)
+			write32Int(out, defaultSampleFlags);
+	}
+
+	@Override
+	public String toString() {
+		return "TrackFragmentHeaderAtom[ version=" + version + ", flags="
+				+ flags + ", trackID=" + trackID + ", baseDataOffset="
+				+ baseDataOffset + ", sampleDescriptionIndex="
+				+ sampleDescriptionIndex + ", defaultSampleDuration="
+				+ defaultSampleDuration + ", defaultSampleSize="
+				+ defaultSampleSize + ", defaultSampleFlags="
+				+ defaultSampleFlags + "]";
+	}
+}
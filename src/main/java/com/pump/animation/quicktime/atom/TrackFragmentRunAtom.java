@@ -0,0 +1,210 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime.atom;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.pump.io.GuardedOutputStream;
+
+/**
+ * Track fragment run atoms describe a contiguous run of samples in a track
+ * fragment ('traf'). They have an atom type of 'trun'.
+ * <p>
+ * The data offset locates the first sample of the run, relative to the base
+ * offset of the track fragment (usually the start of the enclosing movie
+ * fragment atom). Each sample may specify its own duration, size, flags and
+ * composition time offset; fields that are omitted use the defaults of the
+ * track fragment header ('tfhd') or the track extends atom ('trex').
+ */
+public class TrackFragmentRunAtom extends LeafAtom {
+
+	/** "trun" */
+	public static final String ATOM_TYPE = "trun";
+
+	/** Indicates the data offset field is present. */
+	public static final int FLAG_DATA_OFFSET = 0x000001;
+
+	/** Indicates the first sample flags field is present. */
+	public static final int FLAG_FIRST_SAMPLE_FLAGS = 0x000004;
+
+	/** Indicates each sample has its own duration. */
+	public static final int FLAG_SAMPLE_DURATION = 0x000100;
+
+	/** Indicates each sample has its own size. */
+	public static final int FLAG_SAMPLE_SIZE = 0x000200;
+
+	/** Indicates each sample has its own flags. */
+	public static final int FLAG_SAMPLE_FLAGS = 0x000400;
+
+	/** Indicates each sample has its own composition time offset. */
+	public static final int FLAG_SAMPLE_COMPOSITION_TIME_OFFSET = 0x000800;
+
+	protected int version = 0;
+	protected int flags;
+	protected long sampleCount;
+	protected int dataOffset;
+	protected long firstSampleFlags;
+	protected long[] sampleDurations;
+	protected long[] sampleSizes;
+	protected long[] sampleFlags;
+	protected long[] sampleCompositionTimeOffsets;
+
+	/**
+	 * Create a run of samples that each have their own duration and size.
+	 */
+	public TrackFragmentRunAtom(long[] sampleDurations, long[] sampleSizes) {
+		super(null);
+		if (sampleDurations.length != sampleSizes.length)
+			throw new IllegalArgumentException(sampleDurations.length
+					+ " != " + sampleSizes.length);
+		flags = FLAG_DATA_OFFSET | FLAG_SAMPLE_DURATION | FLAG_SAMPLE_SIZE;
+		sampleCount = sampleDurations.length;
+		this.sampleDurations = sampleDurations;
+		this.sampleSizes = sampleSizes;
+	}
+
+	/**
+	 * Create a run of samples that all use the default duration and size.
+	 */
+	public TrackFragmentRunAtom(long sampleCount) {
+		super(null);
+		flags = FLAG_DATA_OFFSET;
+		this.sampleCount = sampleCount;
+	}
+
+	public TrackFragmentRunAtom(Atom parent, InputStream in)
+			throws IOException {
+		super(parent);
+		version = in.read();
+		flags = read24Int(in);
+		sampleCount = read32Int(in) & 0xffffffffL;
+		if ((flags & FLAG_DATA_OFFSET) != 0)
+			dataOffset = (int) read32Int(in);
+		if ((flags & FLAG_FIRST_SAMPLE_FLAGS) != 0)
+			firstSampleFlags = read32Int(in);
+		int count = (int) sampleCount;
+		if ((flags & FLAG_SAMPLE_DURATION) != 0)
+			sampleDurations = new long[count];
+		if ((flags & FLAG_SAMPLE_SIZE) != 0)
+			sampleSizes = new long[count];
+		if ((flags & FLAG_SAMPLE_FLAGS) != 0)
+			sampleFlags = new long[count];
+		if ((flags & FLAG_SAMPLE_COMPOSITION_TIME_OFFSET) != 0)
+			sampleCompositionTimeOffsets = new long[count];
+		for (int a = 0; a < count; a++) {
+			if (sampleDurations != null)
+				sampleDurations[a] = read32Int(in);
+			if (sampleSizes != null)
+				sampleSizes[a] = read32Int(in);
+			if (sampleFlags != null)
+				sampleFlags[a] = read32Int(in);
+			if (sampleCompositionTimeOffsets != null)
+				sampleCompositionTimeOffsets[a] = read32Int(in);
+		}
+	}
+
+	/**
+	 * Return the flags that indicate which optional fields are present.
+	 */
+	public int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Return the number of samples in this run.
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Return the offset of the first sample's data, relative to the base
+	 * offset of the track fragment.
+	 */
+	public int getDataOffset() {
+		return dataOffset;
+	}
+
+	public void setDataOffset(int dataOffset) {
+		this.dataOffset = dataOffset;
+	}
+
+	/**
+	 * Return the duration of a sample, or -1 if samples use the default
+	 * duration.
+	 */
+	public long getSampleDuration(int index) {
+		return sampleDurations == null ? -1 : sampleDurations[index];
+	}
+
+	/**
+	 * Return the size of a sample, or -1 if samples use the default size.
+	 */
+	public long getSampleSize(int index) {
+		return sampleSizes == null ? -1 : sampleSizes[index];
+	}
+
+	@Override
+	public String getIdentifier() {
+		return ATOM_TYPE;
+	}
+
+	@Override
+	protected long getSize() {
+		long size = 16;
+		if ((flags & FLAG_DATA_OFFSET) != 0)
+			size += 4;
+		if ((flags & FLAG_FIRST_SAMPLE_FLAGS) != 0)
+			size += 4;
+		int fieldsPerSample = 0;
+		if ((flags & FLAG_SAMPLE_DURATION) != 0)
+			fieldsPerSample++;
+		if ((flags & FLAG_SAMPLE_SIZE) != 0)
+			fieldsPerSample++;
+		if ((flags & FLAG_SAMPLE_FLAGS) != 0)
+			fieldsPerSample++;
+		if ((flags & FLAG_SAMPLE_COMPOSITION_TIME_OFFSET) != 0)
+			fieldsPerSample++;
+		return size + 4 * fieldsPerSample * sampleCount;
+	}
+
+	@Override
+	protected void writeContents(GuardedOutputStream out) throws IOException {
+		out.write(version);
+		write24Int(out, flags);
+		write32Int(out, sampleCount);
+		if ((flags & FLAG_DATA_OFFSET) != 0)
+			write32Int(out, dataOffset);
+		if ((flags & FLAG_FIRST_SAMPLE_FLAGS) != 0)
+			write32Int(out, firstSampleFlags);
+		if ((flags & (FLAG_SAMPLE_DURATION | FLAG_SAMPLE_SIZE
+				| FLAG_SAMPLE_FLAGS | FLAG_SAMPLE_COMPOSITION_TIME_OFFSET)) == 0)
+			return;
+		for (int a = 0; a < sampleCount; a++) {
+			if (sampleDurations != null)
+				write32Int(out, sampleDurations[a]);
+			if (sampleSizes != null)
+				write32Int(out, sampleSizes[a]);
+			if (sampleFlags != null)
+				write32Int(out, sampleFlags[a]);
+			if (sampleCompositionTimeOffsets != null)
+				write32Int(out, sampleCompositionTimeOffsets[a]);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TrackFragmentRunAtom[ version=" + version + ", flags="
+				+ flags + ", sampleCount=" + sampleCount + ", dataOffset="
+				+ dataOffset + "]";
+	}
+}
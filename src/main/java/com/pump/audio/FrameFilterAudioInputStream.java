@@ -90,8 +90,9 @@ public abstract class FrameFilterAudioInputStream extends AudioInputStream {
 	public FrameFilterAudioInputStream(AudioInputStream audioIn) {
 		super(new BufferedInputStream(audioIn), audioIn.getFormat(), audioIn
 				.getFrameLength());
-		if (!(audioIn.getFormat().getSampleSizeInBits() == 8 || audioIn
-				.getFormat().getSampleSizeInBits() == 16))
+		int sampleSizeInBits = audioIn.getFormat().getSampleSizeInBits();
+		if (!(sampleSizeInBits == 8 || sampleSizeInBits == 16
+				|| sampleSizeInBits == 24 || sampleSizeInBits == 32))
 			throw new IllegalArgumentException("unsupported sample size: "
 					+ audioIn.getFormat().getSampleSizeInBits());
 		buffer = new FrameBuffer();
@@ -128,7 +129,13 @@ public abstract class FrameFilterAudioInputStream extends AudioInputStream {
 	@Override
 	public synchronized int read(byte[] b, int off, int len) throws IOException {
 		if (!buffer.isEmpty()) {
-			return buffer.read(b, off, len);
+			int m = buffer.read(b, off, len);
+			if (m == len || !buffer.isEmpty())
+				return m;
+
+			// we're aligned to a frame again, so keep going with whole frames
+			int k = readFrames(b, off + m, len - m);
+			return k == -1 ? m : m + k;
 		}
 
 		int remainder = len % frameSize;
@@ -138,6 +145,17 @@ public abstract class FrameFilterAudioInputStream extends AudioInputStream {
 				return -1;
 			return buffer.read(b, off, len);
 		}
+		return readFrames(b, off, newLength);
+	}
+
+	/**
+	 * Read and filter a multiple of this.frameSize bytes.
+	 */
+	private int readFrames(byte[] b, int off, int len) throws IOException {
+		int remainder = len % frameSize;
+		int newLength = len - remainder;
+		if (newLength == 0)
+			return 0;
 		int returnValue = super.read(b, off, newLength);
 
 		if (returnValue == -1)
@@ -0,0 +1,589 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+
+/**
+ * This converts blocks of PCM-encoded bytes to and from arrays of samples.
+ * <p>
+ * Unlike {@link PCMUtils#decodeSample(byte[], int, int, boolean, boolean)},
+ * which examines the sample size, sign and byte order for every sample, the
+ * {@link #get(AudioFormat)} method resolves an <code>AudioFormat</code> once
+ * into a codec with a dedicated loop for that sample size and byte order.
+ * <p>
+ * Samples are interleaved the same way they are in the byte array, so for
+ * stereo audio the even indices in a sample array are the left channel and
+ * the odd indices are the right channel.
+ * <p>
+ * Integer samples are always signed: unsigned formats are shifted so silence
+ * is zero. So 8-bit samples are in [-128, 127] and 16-bit samples are in
+ * [-32768, 32767] regardless of the encoding. Float samples are normalized to
+ * [-1, 1).
+ */
+public abstract class PCMCodec {
+
+	/**
+	 * Returns true if {@link #get(AudioFormat)} supports an AudioFormat.
+	 * <p>
+	 * This requires PCM_SIGNED or PCM_UNSIGNED encoding and samples that are
+	 * stored in 1, 2, 3 or 4 bytes.
+	 */
+	public static boolean isSupported(AudioFormat format) {
+		Encoding encoding = format.getEncoding();
+		if (!(Encoding.PCM_SIGNED.equals(encoding) || Encoding.PCM_UNSIGNED
+				.equals(encoding)))
+			return false;
+		int bits = format.getSampleSizeInBits();
+		return bits > 0 && bits <= 32;
+	}
+
+	/**
+	 * Returns a codec for an AudioFormat.
+	 * <p>
+	 * Sample sizes that are not a multiple of 8 (such as 12-bit or 20-bit
+	 * audio) are treated as the next largest number of bytes.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the format is not supported.
+	 */
+	public static PCMCodec get(AudioFormat format) {
+		if (!isSupported(format))
+			throw new IllegalArgumentException("unsupported format: " + format);
+		int sampleSize = (format.getSampleSizeInBits() + 7) / 8;
+		boolean isSigned = Encoding.PCM_SIGNED.equals(format.getEncoding());
+		boolean isBigEndian = format.isBigEndian();
+		switch (sampleSize) {
+		case 1:
+			return new Codec8(isSigned);
+		case 2:
+			return isBigEndian ? new Codec16BE(isSigned) : new Codec16LE(
+					isSigned);
+		case 3:
+			return isBigEndian ? new Codec24BE(isSigned) : new Codec24LE(
+					isSigned);
+		default:
+			return isBigEndian ? new Codec32BE(isSigned) : new Codec32LE(
+					isSigned);
+		}
+	}
+
+	final int sampleSize;
+	final boolean isSigned, isBigEndian;
+	final int minValue, maxValue;
+
+	/**
+	 * This is XOR'ed against decoded values to convert unsigned samples to
+	 * signed samples (and vice versa).
+	 */
+	final int signFlip;
+	final float decodeScale, encodeScale;
+
+	PCMCodec(int sampleSize, boolean isSigned, boolean isBigEndian) {
+		this.sampleSize = sampleSize;
+		this.isSigned = isSigned;
+		this.isBigEndian = isBigEndian;
+		int bits = sampleSize * 8;
+		minValue = (int) (-(1L << (bits - 1)));
+		maxValue = (int) ((1L << (bits - 1)) - 1);
+		signFlip = isSigned ? 0 : minValue;
+		encodeScale = (float) (1L << (bits - 1));
+		decodeScale = 1f / encodeScale;
+	}
+
+	/**
+	 * Returns the number of bytes each sample occupies.
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * Returns true if the encoded samples are signed.
+	 */
+	public boolean isSigned() {
+		return isSigned;
+	}
+
+	/**
+	 * Returns true if the encoded samples are big-endian.
+	 */
+	public boolean isBigEndian() {
+		return isBigEndian;
+	}
+
+	/**
+	 * Returns the smallest value an integer sample can have, such as -32768
+	 * for 16-bit audio.
+	 */
+	public int getMinValue() {
+		return minValue;
+	}
+
+	/**
+	 * Returns the largest value an integer sample can have, such as 32767 for
+	 * 16-bit audio.
+	 */
+	public int getMaxValue() {
+		return maxValue;
+	}
+
+	/**
+	 * Decodes several samples.
+	 *
+	 * @param src
+	 *            the encoded samples.
+	 * @param srcOffset
+	 *            the offset of the first byte to decode.
+	 * @param dest
+	 *            the array to store signed samples in.
+	 * @param destOffset
+	 *            the index of the first sample to store.
+	 * @param sampleCount
+	 *            the number of samples to decode. This is the number of frames
+	 *            multiplied by the number of channels.
+	 */
+	public abstract void decode(byte[] src, int srcOffset, int[] dest,
+			int destOffset, int sampleCount);
+
+	/**
+	 * Decodes several samples as floats in [-1, 1).
+	 *
+	 * @param src
+	 *            the encoded samples.
+	 * @param srcOffset
+	 *            the offset of the first byte to decode.
+	 * @param dest
+	 *            the array to store samples in.
+	 * @param destOffset
+	 *            the index of the first sample to store.
+	 * @param sampleCount
+	 *            the number of samples to decode. This is the number of frames
+	 *            multiplied by the number of channels.
+	 */
+	public abstract void decode(byte[] src, int srcOffset, float[] dest,
+			int destOffset, int sampleCount);
+
+	/**
+	 * Encodes several samples. Values outside of
+	 * <code>[getMinValue(), getMaxValue()]</code> are clipped.
+	 *
+	 * @param src
+	 *            the signed samples to encode.
+	 * @param srcOffset
+	 *            the index of the first sample to encode.
+	 * @param dest
+	 *            the array to store encoded samples in.
+	 * @param destOffset
+	 *            the offset of the first byte to write.
+	 * @param sampleCount
+	 *            the number of samples to encode.
+	 */
+	public abstract void encode(int[] src, int srcOffset, byte[] dest,
+			int destOffset, int sampleCount);
+
+	/**
+	 * Encodes several samples. Values outside of [-1, 1) are clipped.
+	 *
+	 * @param src
+	 *            the samples to encode.
+	 * @param srcOffset
+	 *            the index of the first sample to encode.
+	 * @param dest
+	 *            the array to store encoded samples in.
+	 * @param destOffset
+	 *            the offset of the first byte to write.
+	 * @param sampleCount
+	 *            the number of samples to encode.
+	 */
+	public abstract void encode(float[] src, int srcOffset, byte[] dest,
+			int destOffset, int sampleCount);
+
+	final int clip(int value) {
+		if (value < minValue)
+			return minValue;
+		if (value > maxValue)
+			return maxValue;
+		return value;
+	}
+
+	final int clip(float value) {
+		// casting to an int already saturates at Integer.MIN/MAX_VALUE
+		return clip((int) (value * encodeScale));
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[signed=" + isSigned + "]";
+	}
+
+	static class Codec8 extends PCMCodec {
+		Codec8(boolean isSigned) {
+			super(1, isSigned, false);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0; i < sampleCount; i++) {
+				dest[destOffset + i] = src[srcOffset + i] ^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0; i < sampleCount; i++) {
+				dest[destOffset + i] = (src[srcOffset + i] ^ flip) * scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0; i < sampleCount; i++) {
+				dest[destOffset + i] = (byte) (clip(src[srcOffset + i]) ^ flip);
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0; i < sampleCount; i++) {
+				dest[destOffset + i] = (byte) (clip(src[srcOffset + i]) ^ flip);
+			}
+		}
+	}
+
+	static class Codec16BE extends PCMCodec {
+		Codec16BE(boolean isSigned) {
+			super(2, isSigned, true);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 2) {
+				dest[destOffset + i] = ((src[j] << 8) | (src[j + 1] & 0xff))
+						^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 2) {
+				dest[destOffset + i] = (((src[j] << 8) | (src[j + 1] & 0xff)) ^ flip)
+						* scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 2) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) (v >> 8);
+				dest[j + 1] = (byte) v;
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 2) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) (v >> 8);
+				dest[j + 1] = (byte) v;
+			}
+		}
+	}
+
+	static class Codec16LE extends PCMCodec {
+		Codec16LE(boolean isSigned) {
+			super(2, isSigned, false);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 2) {
+				dest[destOffset + i] = ((src[j + 1] << 8) | (src[j] & 0xff))
+						^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 2) {
+				dest[destOffset + i] = (((src[j + 1] << 8) | (src[j] & 0xff)) ^ flip)
+						* scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 2) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) v;
+				dest[j + 1] = (byte) (v >> 8);
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 2) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) v;
+				dest[j + 1] = (byte) (v >> 8);
+			}
+		}
+	}
+
+	static class Codec24BE extends PCMCodec {
+		Codec24BE(boolean isSigned) {
+			super(3, isSigned, true);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 3) {
+				dest[destOffset + i] = ((src[j] << 16)
+						| ((src[j + 1] & 0xff) << 8) | (src[j + 2] & 0xff))
+						^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 3) {
+				dest[destOffset + i] = (((src[j] << 16)
+						| ((src[j + 1] & 0xff) << 8) | (src[j + 2] & 0xff)) ^ flip)
+						* scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 3) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) (v >> 16);
+				dest[j + 1] = (byte) (v >> 8);
+				dest[j + 2] = (byte) v;
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 3) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) (v >> 16);
+				dest[j + 1] = (byte) (v >> 8);
+				dest[j + 2] = (byte) v;
+			}
+		}
+	}
+
+	static class Codec24LE extends PCMCodec {
+		Codec24LE(boolean isSigned) {
+			super(3, isSigned, false);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 3) {
+				dest[destOffset + i] = ((src[j + 2] << 16)
+						| ((src[j + 1] & 0xff) << 8) | (src[j] & 0xff))
+						^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 3) {
+				dest[destOffset + i] = (((src[j + 2] << 16)
+						| ((src[j + 1] & 0xff) << 8) | (src[j] & 0xff)) ^ flip)
+						* scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 3) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) v;
+				dest[j + 1] = (byte) (v >> 8);
+				dest[j + 2] = (byte) (v >> 16);
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 3) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) v;
+				dest[j + 1] = (byte) (v >> 8);
+				dest[j + 2] = (byte) (v >> 16);
+			}
+		}
+	}
+
+	static class Codec32BE extends PCMCodec {
+		Codec32BE(boolean isSigned) {
+			super(4, isSigned, true);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 4) {
+				dest[destOffset + i] = ((src[j] << 24)
+						| ((src[j + 1] & 0xff) << 16)
+						| ((src[j + 2] & 0xff) << 8) | (src[j + 3] & 0xff))
+						^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 4) {
+				dest[destOffset + i] = (((src[j] << 24)
+						| ((src[j + 1] & 0xff) << 16)
+						| ((src[j + 2] & 0xff) << 8) | (src[j + 3] & 0xff)) ^ flip)
+						* scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 4) {
+				int v = src[srcOffset + i] ^ flip;
+				dest[j] = (byte) (v >> 24);
+				dest[j + 1] = (byte) (v >> 16);
+				dest[j + 2] = (byte) (v >> 8);
+				dest[j + 3] = (byte) v;
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 4) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) (v >> 24);
+				dest[j + 1] = (byte) (v >> 16);
+				dest[j + 2] = (byte) (v >> 8);
+				dest[j + 3] = (byte) v;
+			}
+		}
+	}
+
+	static class Codec32LE extends PCMCodec {
+		Codec32LE(boolean isSigned) {
+			super(4, isSigned, false);
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, int[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 4) {
+				dest[destOffset + i] = ((src[j + 3] << 24)
+						| ((src[j + 2] & 0xff) << 16)
+						| ((src[j + 1] & 0xff) << 8) | (src[j] & 0xff))
+						^ flip;
+			}
+		}
+
+		@Override
+		public void decode(byte[] src, int srcOffset, float[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			float scale = decodeScale;
+			for (int i = 0, j = srcOffset; i < sampleCount; i++, j += 4) {
+				dest[destOffset + i] = (((src[j + 3] << 24)
+						| ((src[j + 2] & 0xff) << 16)
+						| ((src[j + 1] & 0xff) << 8) | (src[j] & 0xff)) ^ flip)
+						* scale;
+			}
+		}
+
+		@Override
+		public void encode(int[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 4) {
+				int v = src[srcOffset + i] ^ flip;
+				dest[j] = (byte) v;
+				dest[j + 1] = (byte) (v >> 8);
+				dest[j + 2] = (byte) (v >> 16);
+				dest[j + 3] = (byte) (v >> 24);
+			}
+		}
+
+		@Override
+		public void encode(float[] src, int srcOffset, byte[] dest,
+				int destOffset, int sampleCount) {
+			int flip = signFlip;
+			for (int i = 0, j = destOffset; i < sampleCount; i++, j += 4) {
+				int v = clip(src[srcOffset + i]) ^ flip;
+				dest[j] = (byte) v;
+				dest[j + 1] = (byte) (v >> 8);
+				dest[j + 2] = (byte) (v >> 16);
+				dest[j + 3] = (byte) (v >> 24);
+			}
+		}
+	}
+}
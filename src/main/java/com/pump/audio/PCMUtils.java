@@ -10,6 +10,13 @@
  */
 package com.pump.audio;
 
+/**
+ * Static methods to encode and decode individual PCM samples.
+ * <p>
+ * These methods examine the sample size, sign and byte order for every
+ * sample, so they should only be used for a few samples at a time. To convert
+ * blocks of samples use a {@link PCMCodec}.
+ */
 public class PCMUtils {
 	public static int decodeSample(byte[] data, int offset, int sampleSize,
 			boolean isSigned, boolean isBigEndian) {
@@ -1,38 +1,51 @@
 /**
  * This software is released as part of the Pumpernickel project.
- * 
+ *
  * All com.pump resources in the Pumpernickel project are distributed under the
  * MIT License:
  * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
- * 
+ *
  * More information about the Pumpernickel project is available here:
  * https://mickleness.github.io/pumpernickel/
  */
 package com.pump.audio;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioFormat.Encoding;
 import javax.sound.sampled.AudioInputStream;
-
-import com.pump.math.function.PolynomialFunction;
+import javax.sound.sampled.AudioSystem;
 
 /**
  * This stretches an AudioInputStream so it plays back slower or faster than
  * normal.
+ * <p>
+ * Output frames are only computed as they are read. Output frame
+ * <code>j</code> corresponds to input frame
+ * <code>j * inputFrames / outputFrames</code>, so <code>skip()</code> and
+ * <code>reset()</code> just calculate where to resume in the input instead of
+ * generating (and discarding) the intermediate output. Frames between two
+ * input frames are interpolated with a Catmull-Rom cubic spline.
+ * <p>
+ * The input must be PCM-encoded and have a known frame length.
+ * <code>mark()</code> is supported if the input supports it.
  */
 public class StretchedAudioInputStream extends AudioInputStream {
 
+	/**
+	 * The maximum number of frames we decode to produce one block of output.
+	 */
+	private static final int MAX_WINDOW = 1 << 16;
+
+	/**
+	 * The maximum number of frames we produce at once.
+	 */
+	private static final int OUTPUT_BLOCK = 1024;
+
 	/**
 	 * Create a StretchedAudioInputStream that distorts the incoming audio so it
 	 * matches a fixed number of frames.
-	 * 
+	 *
 	 * @param in
 	 *            the AudioInputStream to stretch.
 	 * @param frames
@@ -43,35 +56,20 @@ public class StretchedAudioInputStream extends AudioInputStream {
 	public static StretchedAudioInputStream create(AudioInputStream in,
 			long frames) throws IOException {
 		AudioFormat format = in.getFormat();
-		if (!(format.getEncoding().equals(Encoding.PCM_SIGNED) || format
-				.getEncoding().equals(Encoding.PCM_UNSIGNED)))
+		if (!PCMCodec.isSupported(format))
 			throw new IllegalArgumentException(
 					"the audio input must be PCM-encoded data (found "
 							+ format.getEncoding() + ")");
-
-		PipedInputStream pipedIn = new PipedInputStream();
-		PipedOutputStream pipedOut = new PipedOutputStream(pipedIn);
-
-		/**
-		 * One flaw with this model is that we always generate ALL the
-		 * transformed data: even if the entity working with pipedIn is trying
-		 * to skip large chunks of data.
-		 */
-
-		Thread thread = new StretchThread(in, format, frames, pipedOut);
-		thread.start();
-		return new StretchedAudioInputStream(pipedIn, format, frames);
-	}
-
-	private StretchedAudioInputStream(InputStream input, AudioFormat format,
-			long frames) {
-		super(input, format, frames);
+		if (in.getFrameLength() == AudioSystem.NOT_SPECIFIED)
+			throw new IllegalArgumentException(
+					"the audio input must have a known frame length");
+		return new StretchedAudioInputStream(in, frames);
 	}
 
 	/**
 	 * Create a StretchedAudioInputStream that distorts the incoming audio so it
 	 * matches a fixed duration.
-	 * 
+	 *
 	 * @param input
 	 *            the AudioInputStream to stretch.
 	 * @param duration
@@ -89,60 +87,387 @@ public class StretchedAudioInputStream extends AudioInputStream {
 		return (long) (format.getFrameRate() * duration);
 	}
 
-	private static class StretchThread extends Thread {
-		InputStream in;
-		PolynomialFunction function;
-		int frameSize;
-		OutputStream out;
-
-		StretchThread(AudioInputStream in, AudioFormat format, long frameCount,
-				OutputStream out) {
-			super("Stretch Audio Thread");
-			this.in = new BufferedInputStream(in);
-			this.out = out;
-			frameSize = format.getFrameSize();
-			function = PolynomialFunction.createFit(0, 0, in.getFrameLength(),
-					frameCount);
+	/**
+	 * The state of this stream when <code>mark()</code> was called.
+	 */
+	private static class Mark {
+		final long framePos, windowStart, sourceFrame, sourceEnd;
+		final int windowLength, pendingPos, pendingLength;
+		final float[] window;
+		final byte[] pending;
+
+		Mark(StretchedAudioInputStream s) {
+			framePos = s.framePos;
+			windowStart = s.windowStart;
+			windowLength = s.windowLength;
+			sourceFrame = s.sourceFrame;
+			sourceEnd = s.sourceEnd;
+			window = new float[windowLength * s.channels];
+			System.arraycopy(s.window, 0, window, 0, window.length);
+			pendingPos = s.pendingPos;
+			pendingLength = s.pendingLength;
+			pending = s.pending.clone();
 		}
 
-		@Override
-		public void run() {
-			try {
-				byte[] data = new byte[2048 * frameSize];
-
-				int read;
-				long inputFrameIndex = 0;
-				long outputFrameIndex = -1;
-				while ((read = in.read(data)) != -1) {
-					for (int t = 0; t < read; t += frameSize) {
-						long mappedFrame = (long) function
-								.evaluate(inputFrameIndex);
-						while (outputFrameIndex <= mappedFrame) {
-							out.write(data, t, frameSize);
-							outputFrameIndex++;
-						}
-						inputFrameIndex++;
-					}
-				}
-			} catch (IOException e) {
-				if (e.getMessage().toLowerCase().contains("read end dead")) {
-					// do nothing: someone closed the receiving input stream, so
-					// we're done
-				} else {
-					e.printStackTrace();
-				}
-			} finally {
-				try {
-					in.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-				try {
-					out.close();
-				} catch (IOException e) {
-					e.printStackTrace();
+		void restore(StretchedAudioInputStream s) {
+			s.framePos = framePos;
+			s.windowStart = windowStart;
+			s.windowLength = windowLength;
+			s.sourceFrame = sourceFrame;
+			s.sourceEnd = sourceEnd;
+			s.ensureWindowCapacity(windowLength);
+			System.arraycopy(window, 0, s.window, 0, window.length);
+			s.pendingPos = pendingPos;
+			s.pendingLength = pendingLength;
+			System.arraycopy(pending, 0, s.pending, 0, pending.length);
+		}
+	}
+
+	final AudioInputStream source;
+	final PCMCodec codec;
+	final int channels;
+	final long inputFrames;
+
+	/**
+	 * The number of input frames per output frame.
+	 */
+	final double step;
+
+	/**
+	 * Decoded input frames, starting at input frame <code>windowStart</code>.
+	 */
+	float[] window = new float[0];
+	long windowStart = 0;
+	int windowLength = 0;
+
+	/**
+	 * The index of the next frame <code>source</code> will return.
+	 */
+	long sourceFrame = 0;
+
+	/**
+	 * The number of frames in <code>source</code>, or -1 if we haven't reached
+	 * the end yet. This is only different from <code>inputFrames</code> if the
+	 * source ends early.
+	 */
+	long sourceEnd = -1;
+
+	/**
+	 * When the caller asks for less than a frame, the rest of that frame is
+	 * stored here.
+	 */
+	final byte[] pending;
+	int pendingPos, pendingLength;
+
+	byte[] sourceBytes = new byte[0];
+	float[] outputSamples = new float[0];
+	Mark mark;
+
+	private StretchedAudioInputStream(AudioInputStream source, long frames) {
+		super(source, source.getFormat(), Math.max(0, frames));
+		this.source = source;
+		codec = PCMCodec.get(format);
+		channels = format.getChannels();
+		inputFrames = source.getFrameLength();
+		step = frameLength == 0 ? 0 : ((double) inputFrames) / frameLength;
+		pending = new byte[frameSize];
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int k = read(b, 0, 1);
+		if (k <= 0)
+			return -1;
+		return b[0] & 0xff;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len)
+			throws IOException {
+		if (len == 0)
+			return 0;
+		int total = 0;
+		if (pendingLength > 0) {
+			int m = Math.min(len, pendingLength);
+			System.arraycopy(pending, pendingPos, b, off, m);
+			pendingPos += m;
+			pendingLength -= m;
+			total += m;
+			if (total == len)
+				return total;
+		}
+
+		long frameCount = Math.min((len - total) / frameSize, frameLength
+				- framePos);
+		if (frameCount > 0) {
+			writeFrames(b, off + total, (int) frameCount);
+			total += frameCount * frameSize;
+		}
+
+		if (total == 0) {
+			if (framePos >= frameLength)
+				return -1;
+			writeFrames(pending, 0, 1);
+			pendingPos = 0;
+			pendingLength = frameSize;
+			return read(b, off, len);
+		}
+		return total;
+	}
+
+	@Override
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		long total = 0;
+		if (pendingLength > 0) {
+			int m = (int) Math.min(n, pendingLength);
+			pendingPos += m;
+			pendingLength -= m;
+			total += m;
+			if (total == n)
+				return total;
+		}
+
+		// the window catches up to framePos on the next read
+		long frameCount = Math.min((n - total) / frameSize, frameLength
+				- framePos);
+		framePos += frameCount;
+		total += frameCount * frameSize;
+
+		if (total < n && framePos < frameLength) {
+			writeFrames(pending, 0, 1);
+			pendingPos = (int) (n - total);
+			pendingLength = frameSize - pendingPos;
+			total = n;
+		}
+		return total;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, pendingLength
+				+ (frameLength - framePos) * frameSize);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return source.markSupported();
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		if (!source.markSupported())
+			return;
+		mark = new Mark(this);
+		long outputFrames = readlimit / frameSize + 2;
+		long inputLimit = ((long) Math.ceil(outputFrames * step) + 4)
+				* frameSize;
+		source.mark((int) Math.min(Integer.MAX_VALUE, inputLimit));
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		if (mark == null)
+			throw new IOException("mark() was not called");
+		source.reset();
+		mark.restore(this);
+	}
+
+	/**
+	 * Calculate and encode several frames starting at <code>framePos</code>.
+	 */
+	private void writeFrames(byte[] dest, int off, int frameCount)
+			throws IOException {
+		while (frameCount > 0) {
+			int n = Math.min(frameCount, OUTPUT_BLOCK);
+			if (step > 0)
+				n = (int) Math.max(1, Math.min(n, MAX_WINDOW / step));
+
+			double x0 = framePos * step;
+			double x1 = (framePos + n - 1) * step;
+			loadWindow((long) x0 - 1, (long) x1 + 2);
+
+			int sampleCount = n * channels;
+			if (outputSamples.length < sampleCount)
+				outputSamples = new float[sampleCount];
+			interpolate(n);
+			codec.encode(outputSamples, 0, dest, off, sampleCount);
+
+			off += n * frameSize;
+			frameCount -= n;
+			framePos += n;
+		}
+	}
+
+	/**
+	 * Interpolate <code>n</code> frames starting at <code>framePos</code>
+	 * into <code>outputSamples</code>.
+	 */
+	private void interpolate(int n) {
+		long lastFrame = getLastInputFrame();
+		if (lastFrame < 0) {
+			// there is no input, so we're stretching silence
+			for (int a = 0; a < n * channels; a++) {
+				outputSamples[a] = 0;
+			}
+			return;
+		}
+		int i = 0;
+		for (int frame = 0; frame < n; frame++) {
+			double x = (framePos + frame) * step;
+			long x1 = (long) x;
+			float t = (float) (x - x1);
+			int k0 = getWindowIndex(x1 - 1, lastFrame);
+			int k1 = getWindowIndex(x1, lastFrame);
+			int k2 = getWindowIndex(x1 + 1, lastFrame);
+			int k3 = getWindowIndex(x1 + 2, lastFrame);
+			for (int c = 0; c < channels; c++, i++) {
+				float p0 = window[k0 + c];
+				float p1 = window[k1 + c];
+				float p2 = window[k2 + c];
+				float p3 = window[k3 + c];
+				outputSamples[i] = p1
+						+ .5f
+						* t
+						* (p2 - p0 + t
+								* (2 * p0 - 5 * p1 + 4 * p2 - p3 + t
+										* (3 * (p1 - p2) + p3 - p0)));
+			}
+		}
+	}
+
+	/**
+	 * Return the index in <code>window</code> of the first sample of an input
+	 * frame, clamping the frame to [0, lastFrame].
+	 */
+	private int getWindowIndex(long inputFrame, long lastFrame) {
+		if (inputFrame < 0)
+			inputFrame = 0;
+		if (inputFrame > lastFrame)
+			inputFrame = lastFrame;
+		return (int) (inputFrame - windowStart) * channels;
+	}
+
+	/**
+	 * Return the index of the last input frame, or -1 if there are no input
+	 * frames.
+	 */
+	private long getLastInputFrame() {
+		long end = sourceEnd == -1 ? inputFrames : Math.min(sourceEnd,
+				inputFrames);
+		return end - 1;
+	}
+
+	/**
+	 * Make sure <code>window</code> contains the input frames from
+	 * <code>first</code> to <code>last</code> (after they are clamped to the
+	 * input's bounds).
+	 */
+	private void loadWindow(long first, long last) throws IOException {
+		long lastFrame = getLastInputFrame();
+		first = Math.max(0, Math.min(first, lastFrame));
+		last = Math.max(0, Math.min(last, lastFrame));
+		if (lastFrame < 0)
+			return;
+		if (first < windowStart)
+			throw new IOException("input frame " + first
+					+ " is no longer available (window starts at "
+					+ windowStart + ")");
+
+		// discard frames we no longer need
+		long windowEnd = windowStart + windowLength;
+		if (first >= windowEnd) {
+			windowStart = first;
+			windowLength = 0;
+		} else if (first > windowStart) {
+			int discard = (int) (first - windowStart);
+			System.arraycopy(window, discard * channels, window, 0,
+					(windowLength - discard) * channels);
+			windowLength -= discard;
+			windowStart = first;
+		}
+
+		windowEnd = windowStart + windowLength;
+		if (windowEnd > last)
+			return;
+
+		skipSource(windowEnd);
+		int frameCount = (int) (last + 1 - windowEnd);
+		ensureWindowCapacity(windowLength + frameCount);
+		int read = readSource(window, windowLength * channels, frameCount);
+		windowLength += read;
+		if (read < frameCount) {
+			sourceEnd = sourceFrame;
+			if (windowLength == 0) {
+				// we skipped past the end of the source; keep the last frame
+				// we can find as silence
+				windowStart = Math.max(0, sourceEnd - 1);
+				ensureWindowCapacity(1);
+				for (int c = 0; c < channels; c++) {
+					window[c] = 0;
 				}
+				windowLength = 1;
+				sourceEnd = windowStart + 1;
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	void ensureWindowCapacity(int frameCount) {
+		if (window.length < frameCount * channels) {
+			float[] newWindow = new float[Math.max(frameCount, windowLength * 2)
+					* channels];
+			System.arraycopy(window, 0, newWindow, 0, windowLength * channels);
+			window = newWindow;
+		}
+	}
+
+	/**
+	 * Skip the source forward until its next frame is <code>frame</code>.
+	 */
+	private void skipSource(long frame) throws IOException {
+		while (sourceFrame < frame) {
+			long k = source.skip((frame - sourceFrame) * frameSize);
+			if (k <= 0) {
+				// some streams won't skip, so read instead
+				int frameCount = (int) Math.min(frame - sourceFrame,
+						OUTPUT_BLOCK);
+				ensureSourceBytes(frameCount);
+				int read = source.read(sourceBytes, 0, frameCount * frameSize);
+				if (read <= 0)
+					return;
+				k = read;
+			}
+			sourceFrame += k / frameSize;
+		}
+	}
+
+	/**
+	 * Read and decode up to <code>frameCount</code> frames from the source.
+	 *
+	 * @return the number of frames read. This is only less than
+	 *         <code>frameCount</code> if the end of the source was reached.
+	 */
+	private int readSource(float[] dest, int destOffset, int frameCount)
+			throws IOException {
+		ensureSourceBytes(frameCount);
+		int length = frameCount * frameSize;
+		int total = 0;
+		while (total < length) {
+			int k = source.read(sourceBytes, total, length - total);
+			if (k == -1)
+				break;
+			total += k;
+		}
+		int read = total / frameSize;
+		codec.decode(sourceBytes, 0, dest, destOffset, read * channels);
+		sourceFrame += read;
+		return read;
+	}
+
+	private void ensureSourceBytes(int frameCount) {
+		if (sourceBytes.length < frameCount * frameSize)
+			sourceBytes = new byte[frameCount * frameSize];
+	}
+}
@@ -10,73 +10,67 @@
  */
 package com.pump.audio;
 
-import javax.sound.sampled.AudioFormat.Encoding;
 import javax.sound.sampled.AudioInputStream;
 
 /**
  * This class alters the volume of a PCM-encoded AudioInputStream.
+ * <p>
+ * Each block of frames is decoded and encoded with a {@link PCMCodec}, so
+ * unsigned samples are scaled relative to their midpoint (silence) instead of
+ * relative to zero.
  */
 public abstract class VolumeAdjustedPCMAudioInputStream extends
 		FrameFilterAudioInputStream {
 	final protected int sampleSize, minSampleValue, maxSampleValue;
 	final boolean isBigEndian, isSigned;
+	final PCMCodec codec;
+	final int samplesPerFrame;
+	float[] volumes = new float[0];
+	int[] samples = new int[0];
 
 	public VolumeAdjustedPCMAudioInputStream(AudioInputStream audioIn) {
 		super(audioIn);
-		int sampleSizeInBits = format.getSampleSizeInBits();
-		if (!(sampleSizeInBits == 8 || sampleSizeInBits == 16))
-			throw new IllegalArgumentException("sampleSizeInBits = "
-					+ sampleSizeInBits);
-		sampleSize = sampleSizeInBits / 8;
+		if (!PCMCodec.isSupported(format))
+			throw new IllegalArgumentException("unsupported format: " + format);
+		codec = PCMCodec.get(format);
+		sampleSize = codec.getSampleSize();
+		samplesPerFrame = frameSize / sampleSize;
+		isBigEndian = codec.isBigEndian();
+		isSigned = codec.isSigned();
 
-		isBigEndian = format.isBigEndian();
-		if (format.getEncoding().equals(Encoding.PCM_SIGNED)) {
-			if (sampleSize == 1) {
-				minSampleValue = -128;
-				maxSampleValue = 127;
-			} else {
-				minSampleValue = -32768;
-				maxSampleValue = 32767;
-			}
-			isSigned = true;
-		} else if (format.getEncoding().equals(Encoding.PCM_UNSIGNED)) {
-			if (sampleSize == 1) {
-				minSampleValue = 0;
-				maxSampleValue = 255;
-			} else {
-				minSampleValue = 0;
-				maxSampleValue = 65535;
-			}
-			isSigned = false;
-		} else {
-			throw new IllegalArgumentException("unsupported encoding: "
-					+ format.getEncoding());
-		}
+		// these describe the values PCMCodec decodes, which are always signed
+		minSampleValue = codec.getMinValue();
+		maxSampleValue = codec.getMaxValue();
 	}
 
 	@Override
 	protected void filterFrames(byte[] data, int off, int frameCount) {
-		int frameOffset = off;
+		if (volumes.length < frameCount)
+			volumes = new float[frameCount];
+		boolean unchanged = true;
 		for (int frame = 0; frame < frameCount; frame++) {
 			float time = (framePos - frameCount + frame)
 					/ format.getFrameRate();
-			float volume = getVolume(time);
+			volumes[frame] = getVolume(time);
+			if (volumes[frame] < .999f || volumes[frame] > 1.001f)
+				unchanged = false;
+		}
+		if (unchanged)
+			return;
 
-			if (volume < .999f || volume > 1.001f) {
-				for (int byteIndex = 0; byteIndex < frameSize; byteIndex += sampleSize) {
-					int value = PCMUtils.decodeSample(data, frameOffset
-							+ byteIndex, sampleSize, isSigned, isBigEndian);
-					value = (int) (value * volume);
-					if (value > maxSampleValue)
-						value = maxSampleValue;
-					if (value < minSampleValue)
-						value = minSampleValue;
-					PCMUtils.encodeSample(value, data, frameOffset + byteIndex,
-							sampleSize, isSigned, isBigEndian);
-				}
+		int sampleCount = frameCount * samplesPerFrame;
+		if (samples.length < sampleCount)
+			samples = new int[sampleCount];
+		codec.decode(data, off, samples, 0, sampleCount);
+		int i = 0;
+		for (int frame = 0; frame < frameCount; frame++) {
+			float volume = volumes[frame];
+			for (int k = 0; k < samplesPerFrame; k++, i++) {
+				samples[i] = (int) (samples[i] * volume);
 			}
-			frameOffset += frameSize;
 		}
+		// the codec clips values to [minSampleValue, maxSampleValue]
+		codec.encode(samples, 0, data, off, sampleCount);
 	}
 
 	/**
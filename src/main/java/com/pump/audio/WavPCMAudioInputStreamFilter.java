@@ -23,7 +23,7 @@ import javax.sound.sampled.AudioInputStream;
  * <ul>
  * <li>Convert big endian to little endian.</li>
  * <li>Convert signed 8-bit to unsigned 8-bit.</li>
- * <li>Convert unsigned 16-bit to signed 16-bit.</li>
+ * <li>Convert unsigned 16-, 24- or 32-bit to signed.</li>
  * </ul>
  * <p>
  * It is technically possible for a wav file to have big-endian encoding if the
@@ -43,9 +43,9 @@ public class WavPCMAudioInputStreamFilter extends FrameFilterAudioInputStream {
 	 * @return true if this AudioFormat is ready to be output to a wav audio
 	 *         file. This will return false if the format is big-endian, or if
 	 *         the sign doesn't match the sample size. In wav files: 16-bit
-	 *         audio is signed, and 8-bit audio is unsigned. So if this format
-	 *         represents 16-bit unsigned or 8-bit signed: then this method
-	 *         returns false.
+	 *         (and larger) audio is signed, and 8-bit audio is unsigned. So if
+	 *         this format represents 16-bit unsigned or 8-bit signed: then
+	 *         this method returns false.
 	 * @param format
 	 */
 	public static boolean isWavCompatible(AudioFormat format) {
@@ -67,18 +67,16 @@ public class WavPCMAudioInputStreamFilter extends FrameFilterAudioInputStream {
 				&& format.getSampleSizeInBits() == 8)
 			set.add(Conversion.TO_UNSIGNED);
 		if (format.getEncoding().equals(Encoding.PCM_UNSIGNED)
-				&& format.getSampleSizeInBits() == 16)
+				&& format.getSampleSizeInBits() > 8)
 			set.add(Conversion.TO_SIGNED);
 		return set;
 	}
 
 	final boolean applyConversions;
 	final AudioFormat sourceFormat, destFormat;
-	final int sampleSize;
+	final PCMCodec sourceCodec, destCodec;
 	final int samplesPerFrame;
-	final boolean isSourceBigEndian, isDestBigEndian, isSourceSigned,
-			isDestSigned;
-	final int valueDelta;
+	int[] samples = new int[0];
 
 	public WavPCMAudioInputStreamFilter(AudioInputStream audioIn) {
 		super(audioIn);
@@ -86,44 +84,24 @@ public class WavPCMAudioInputStreamFilter extends FrameFilterAudioInputStream {
 		Set<Conversion> conversions = getRequiredConversions(sourceFormat);
 		applyConversions = conversions.size() > 0;
 		frameSize = sourceFormat.getFrameSize();
-		sampleSize = sourceFormat.getSampleSizeInBits() / 8;
 		Encoding encoding;
 		if (conversions.contains(Conversion.TO_SIGNED)) {
 			encoding = Encoding.PCM_SIGNED;
-			if (sampleSize == 1) {
-				// values are input unsigned as [0, 255], and output to
-				// [-128,127]
-				valueDelta = -128;
-			} else {
-				// values are input unsigned as [0, 65535], and output to
-				// [-32768,32767]
-				valueDelta = -32768;
-			}
 		} else if (conversions.contains(Conversion.TO_UNSIGNED)) {
 			encoding = Encoding.PCM_UNSIGNED;
-			if (sampleSize == 1) {
-				// values are input unsigned as [-128,127], and output to [0,
-				// 255]
-				valueDelta = 128;
-			} else {
-				// values are input unsigned as [-32768,32767], and output to
-				// [0, 65535]
-				valueDelta = 32768;
-			}
 		} else {
 			encoding = sourceFormat.getEncoding();
-			valueDelta = 0;
 		}
 		destFormat = new AudioFormat(encoding, sourceFormat.getSampleRate(),
 				sourceFormat.getSampleSizeInBits(), sourceFormat.getChannels(),
 				sourceFormat.getFrameSize(), sourceFormat.getFrameRate(),
 				false, sourceFormat.properties());
-		samplesPerFrame = frameSize / sampleSize;
 
-		isSourceBigEndian = sourceFormat.isBigEndian();
-		isDestBigEndian = destFormat.isBigEndian();
-		isSourceSigned = sourceFormat.getEncoding().equals(Encoding.PCM_SIGNED);
-		isDestSigned = destFormat.getEncoding().equals(Encoding.PCM_SIGNED);
+		// the codecs decode to (and encode from) signed values, so converting
+		// between signed and unsigned samples happens automatically
+		sourceCodec = PCMCodec.get(sourceFormat);
+		destCodec = PCMCodec.get(destFormat);
+		samplesPerFrame = frameSize / sourceCodec.getSampleSize();
 	}
 
 	@Override
@@ -133,28 +111,12 @@ public class WavPCMAudioInputStreamFilter extends FrameFilterAudioInputStream {
 
 	@Override
 	protected void filterFrames(byte[] data, int off, int frameCount) {
-		if (applyConversions == false) {
+		if (applyConversions == false)
 			return;
-		} else {
-			int sampleCount = frameCount * samplesPerFrame;
-			if (valueDelta != 0) {
-				for (int i = 0; i < sampleCount; i++) {
-					int value = PCMUtils.decodeSample(data, off, sampleSize,
-							isSourceSigned, isSourceBigEndian);
-					value += valueDelta;
-					PCMUtils.encodeSample(value, data, off, sampleSize,
-							isDestSigned, isDestBigEndian);
-					off += sampleSize;
-				}
-			} else {
-				for (int i = 0; i < sampleCount; i++) {
-					int value = PCMUtils.decodeSample(data, off, sampleSize,
-							isSourceSigned, isSourceBigEndian);
-					PCMUtils.encodeSample(value, data, off, sampleSize,
-							isDestSigned, isDestBigEndian);
-					off += sampleSize;
-				}
-			}
-		}
+		int sampleCount = frameCount * samplesPerFrame;
+		if (samples.length < sampleCount)
+			samples = new int[sampleCount];
+		sourceCodec.decode(data, off, samples, 0, sampleCount);
+		destCodec.encode(samples, 0, data, off, sampleCount);
 	}
 }
\ No newline at end of file
@@ -271,6 +271,16 @@ public class WavReader {
 				lastFormatChunk.sigBitsPerSample != 8, false);
 	}
 
+	/**
+	 * Returns a PCMCodec to decode the data passed to
+	 * {@link #processSamples(byte[], int, int, int)}. Like
+	 * {@link #getAudioFormat()} this requires the format chunk to be read
+	 * first.
+	 */
+	public PCMCodec getCodec() {
+		return PCMCodec.get(getAudioFormat());
+	}
+
 	/**
 	 * Read all the data in this file.
 	 */
@@ -356,11 +366,10 @@ public class WavReader {
 						+ "; unable to interpret data.");
 				skip(size);
 			} else {
-				int bps = lastFormatChunk.sigBitsPerSample;
-				int mod = bps % 8;
-				bps = bps + mod;
-				int sampleSize = bps / 8;
-				byte[] sample = new byte[sampleSize * 2048];
+				int sampleSize = (lastFormatChunk.sigBitsPerSample + 7) / 8;
+				int frameSize = Math.max(sampleSize,
+						sampleSize * lastFormatChunk.numChannels);
+				byte[] sample = new byte[frameSize * 2048];
 				long dataRead = 0;
 				while (dataRead < size) {
 					int length = sample.length;
@@ -373,7 +382,7 @@ public class WavReader {
 					}
 					read(sample, length);
 					processSamples(sample, 0, length, length / sampleSize);
-					dataRead += sample.length;
+					dataRead += length;
 				}
 			}
 		} else {
@@ -384,7 +393,10 @@ public class WavReader {
 
 	/**
 	 * Subclasses should override this method to interpret the audio sample.
-	 * 
+	 * <p>
+	 * Except for the last call, <code>length</code> is always a multiple of
+	 * the frame size. A {@link PCMCodec} from {@link #getCodec()} can decode
+	 * the whole block at once.
 	 */
 	protected void processSamples(byte[] sample, int offset, int length,
 			int numberOfSamples) throws IOException {
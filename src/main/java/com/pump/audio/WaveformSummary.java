@@ -0,0 +1,453 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * A multi-resolution summary of the amplitude of an audio clip, used to draw
+ * waveforms.
+ * <p>
+ * The audio is divided into buckets of {@link #BUCKET_SIZE} frames, and the
+ * minimum, maximum and sum of squares of every bucket is recorded. Each level
+ * of the pyramid above that merges pairs of buckets from the level below, so
+ * {@link #getColumns(int, float[], float[], float[])} reads about
+ * <code>width</code> buckets no matter how long the clip is.
+ * <p>
+ * The summary is built in one streaming pass by passing the raw PCM data to
+ * {@link #add(byte[], int, int)} and then calling {@link #finish()}. This
+ * class is thread-safe, so one thread can build a summary while another thread
+ * paints the part that is already analyzed.
+ * <p>
+ * A finished summary can be saved with {@link #write(OutputStream)} and
+ * loaded with {@link #read(InputStream)}.
+ */
+public class WaveformSummary {
+
+	/**
+	 * The number of frames in each bucket of the most detailed level.
+	 */
+	public static final int BUCKET_SIZE = 256;
+
+	private static final int MAGIC = 0x50574653; // "PWFS"
+	private static final int VERSION = 1;
+
+	/**
+	 * One level of the pyramid. Bucket <code>i</code> of level
+	 * <code>L</code> covers the frames
+	 * <code>[i * BUCKET_SIZE * 2^L, (i + 1) * BUCKET_SIZE * 2^L)</code>.
+	 */
+	private static class Level {
+		float[] min = new float[16];
+		float[] max = new float[16];
+		float[] sumSquares = new float[16];
+		int size;
+
+		void add(float mn, float mx, float ss) {
+			if (size == min.length) {
+				int newLength = size * 2;
+				min = Arrays.copyOf(min, newLength);
+				max = Arrays.copyOf(max, newLength);
+				sumSquares = Arrays.copyOf(sumSquares, newLength);
+			}
+			min[size] = mn;
+			max[size] = mx;
+			sumSquares[size] = ss;
+			size++;
+		}
+
+		void merge(int i, float mn, float mx, float ss) {
+			if (mn < min[i])
+				min[i] = mn;
+			if (mx > max[i])
+				max[i] = mx;
+			sumSquares[i] += ss;
+		}
+	}
+
+	/**
+	 * Read all of an AudioInputStream and return its summary.
+	 *
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public static WaveformSummary create(AudioInputStream in)
+			throws IOException {
+		AudioFormat format = in.getFormat();
+		WaveformSummary summary = new WaveformSummary(format,
+				in.getFrameLength());
+		byte[] data = new byte[format.getFrameSize() * 4096];
+		int k;
+		while ((k = in.read(data)) != -1) {
+			summary.add(data, 0, k);
+		}
+		summary.finish();
+		return summary;
+	}
+
+	/**
+	 * Read a summary that was saved with {@link #write(OutputStream)}.
+	 *
+	 * @throws IOException
+	 *             if an IO problem occurs or the data is not a waveform
+	 *             summary.
+	 */
+	public static WaveformSummary read(InputStream in) throws IOException {
+		DataInputStream dataIn = new DataInputStream(in);
+		if (dataIn.readInt() != MAGIC)
+			throw new IOException("this is not a waveform summary");
+		int version = dataIn.readInt();
+		if (version != VERSION)
+			throw new IOException("unsupported version: " + version);
+		int channels = dataIn.readInt();
+		long frameCount = dataIn.readLong();
+		int bucketCount = dataIn.readInt();
+		if (channels <= 0 || frameCount < 0
+				|| bucketCount != (frameCount + BUCKET_SIZE - 1) / BUCKET_SIZE)
+			throw new IOException("corrupt waveform summary (channels = "
+					+ channels + ", frameCount = " + frameCount
+					+ ", bucketCount = " + bucketCount + ")");
+
+		WaveformSummary summary = new WaveformSummary(channels, frameCount);
+		for (int a = 0; a < bucketCount; a++) {
+			float min = dataIn.readFloat();
+			float max = dataIn.readFloat();
+			float sumSquares = dataIn.readFloat();
+			summary.addBucket(min, max, sumSquares);
+		}
+		summary.analyzedFrames = frameCount;
+		summary.complete = true;
+		return summary;
+	}
+
+	final int channels;
+	final PCMCodec codec;
+	final int frameSize;
+	final List<Level> levels = new ArrayList<>();
+
+	/**
+	 * The expected number of frames, or <code>AudioSystem.NOT_SPECIFIED</code>.
+	 */
+	long frameCount;
+
+	/**
+	 * The number of frames in completed buckets.
+	 */
+	long analyzedFrames;
+	boolean complete;
+
+	/**
+	 * The bucket that is currently being analyzed.
+	 */
+	float bucketMin, bucketMax, bucketSumSquares;
+	int bucketFrames;
+
+	/**
+	 * Leftover bytes when <code>add()</code> is passed part of a frame.
+	 */
+	byte[] partialFrame;
+	int partialFrameLength;
+	float[] samples;
+
+	/**
+	 * Create an empty summary.
+	 *
+	 * @param format
+	 *            the PCM format of the data that will be passed to
+	 *            <code>add()</code>.
+	 * @param frameCount
+	 *            the number of frames that will be analyzed, or
+	 *            <code>AudioSystem.NOT_SPECIFIED</code> if this is unknown.
+	 *            This is used to lay out the columns of a summary that is
+	 *            still being built.
+	 */
+	public WaveformSummary(AudioFormat format, long frameCount) {
+		this(format.getChannels(), frameCount, PCMCodec.get(format), format
+				.getFrameSize());
+	}
+
+	private WaveformSummary(int channels, long frameCount) {
+		this(channels, frameCount, null, 0);
+	}
+
+	private WaveformSummary(int channels, long frameCount, PCMCodec codec,
+			int frameSize) {
+		this.channels = channels;
+		this.frameCount = frameCount;
+		this.codec = codec;
+		this.frameSize = frameSize;
+		levels.add(new Level());
+		resetBucket();
+	}
+
+	/**
+	 * Analyze PCM-encoded data. This data does not need to be aligned to
+	 * frames.
+	 */
+	public synchronized void add(byte[] data, int offset, int length) {
+		if (complete)
+			throw new IllegalStateException("finish() was already called");
+		if (partialFrameLength > 0) {
+			int m = Math.min(length, frameSize - partialFrameLength);
+			System.arraycopy(data, offset, partialFrame, partialFrameLength, m);
+			partialFrameLength += m;
+			offset += m;
+			length -= m;
+			if (partialFrameLength < frameSize)
+				return;
+			analyze(partialFrame, 0, 1);
+			partialFrameLength = 0;
+		}
+
+		int frames = length / frameSize;
+		analyze(data, offset, frames);
+
+		int remainder = length - frames * frameSize;
+		if (remainder > 0) {
+			if (partialFrame == null)
+				partialFrame = new byte[frameSize];
+			System.arraycopy(data, offset + frames * frameSize, partialFrame,
+					0, remainder);
+			partialFrameLength = remainder;
+		}
+	}
+
+	private void analyze(byte[] data, int offset, int frames) {
+		if (samples == null)
+			samples = new float[BUCKET_SIZE * channels];
+		while (frames > 0) {
+			int n = Math.min(frames, BUCKET_SIZE - bucketFrames);
+			codec.decode(data, offset, samples, 0, n * channels);
+			float mn = bucketMin;
+			float mx = bucketMax;
+			float ss = 0;
+			for (int i = 0; i < n * channels; i++) {
+				float v = samples[i];
+				if (v < mn)
+					mn = v;
+				if (v > mx)
+					mx = v;
+				ss += v * v;
+			}
+			bucketMin = mn;
+			bucketMax = mx;
+			bucketSumSquares += ss;
+			bucketFrames += n;
+			if (bucketFrames == BUCKET_SIZE) {
+				addBucket(bucketMin, bucketMax, bucketSumSquares);
+				analyzedFrames += BUCKET_SIZE;
+				resetBucket();
+			}
+			offset += n * frameSize;
+			frames -= n;
+		}
+	}
+
+	private void resetBucket() {
+		bucketMin = Float.MAX_VALUE;
+		bucketMax = -Float.MAX_VALUE;
+		bucketSumSquares = 0;
+		bucketFrames = 0;
+	}
+
+	/**
+	 * Append a bucket to the most detailed level and update every level above
+	 * it.
+	 */
+	private void addBucket(float min, float max, float sumSquares) {
+		Level base = levels.get(0);
+		int index = base.size;
+		base.add(min, max, sumSquares);
+		for (int a = 1; a < levels.size(); a++) {
+			Level level = levels.get(a);
+			int j = index >> a;
+			if (j == level.size) {
+				level.add(min, max, sumSquares);
+			} else {
+				level.merge(j, min, max, sumSquares);
+			}
+		}
+
+		// add levels until the top level is a single bucket
+		Level top = levels.get(levels.size() - 1);
+		while (top.size > 1) {
+			Level newTop = new Level();
+			for (int i = 0; i < top.size; i += 2) {
+				newTop.add(top.min[i], top.max[i], top.sumSquares[i]);
+				if (i + 1 < top.size)
+					newTop.merge(i / 2, top.min[i + 1], top.max[i + 1],
+							top.sumSquares[i + 1]);
+			}
+			levels.add(newTop);
+			top = newTop;
+		}
+	}
+
+	/**
+	 * Finish analyzing this audio. This records the last (partial) bucket.
+	 */
+	public synchronized void finish() {
+		if (complete)
+			return;
+		if (bucketFrames > 0) {
+			addBucket(bucketMin, bucketMax, bucketSumSquares);
+			analyzedFrames += bucketFrames;
+			resetBucket();
+		}
+		frameCount = analyzedFrames;
+		complete = true;
+	}
+
+	/**
+	 * Return true if {@link #finish()} was called.
+	 */
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Return the number of frames in this audio. If this summary is not
+	 * complete this may be the expected number of frames, or
+	 * <code>AudioSystem.NOT_SPECIFIED</code>.
+	 */
+	public synchronized long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Return the number of frames that have been analyzed.
+	 */
+	public synchronized long getAnalyzedFrameCount() {
+		return analyzedFrames;
+	}
+
+	/**
+	 * Return the number of channels in this audio.
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Summarize this audio as a series of columns.
+	 * <p>
+	 * The audio is divided into <code>width</code> ranges of frames, and each
+	 * array is populated with the minimum, maximum and RMS amplitude of each
+	 * range. Amplitudes are in [-1, 1]. Columns that haven't been analyzed yet
+	 * are zero.
+	 *
+	 * @param width
+	 *            the number of columns to calculate.
+	 * @param min
+	 *            an optional array to store the minimum of each column in.
+	 * @param max
+	 *            an optional array to store the maximum of each column in.
+	 * @param rms
+	 *            an optional array to store the root mean square of each
+	 *            column in.
+	 * @return the number of columns that contain analyzed audio.
+	 */
+	public synchronized int getColumns(int width, float[] min, float[] max,
+			float[] rms) {
+		long totalFrames = frameCount == AudioSystem.NOT_SPECIFIED ? analyzedFrames
+				: Math.max(frameCount, analyzedFrames);
+		int columns = 0;
+		if (totalFrames > 0 && width > 0) {
+			double framesPerColumn = ((double) totalFrames) / width;
+
+			// use the coarsest level whose buckets are no wider than a column
+			int levelIndex = 0;
+			while (levelIndex + 1 < levels.size()
+					&& (((long) BUCKET_SIZE) << (levelIndex + 1)) <= framesPerColumn) {
+				levelIndex++;
+			}
+			Level level = levels.get(levelIndex);
+			long span = ((long) BUCKET_SIZE) << levelIndex;
+
+			for (int x = 0; x < width; x++) {
+				long start = (long) (x * framesPerColumn);
+				long end = Math.max(start + 1,
+						(long) ((x + 1) * framesPerColumn));
+				if (start >= analyzedFrames)
+					break;
+				end = Math.min(end, analyzedFrames);
+				int i0 = (int) (start / span);
+				int i1 = (int) Math.min(level.size - 1, (end - 1) / span);
+				float mn = level.min[i0];
+				float mx = level.max[i0];
+				float ss = level.sumSquares[i0];
+				for (int i = i0 + 1; i <= i1; i++) {
+					mn = Math.min(mn, level.min[i]);
+					mx = Math.max(mx, level.max[i]);
+					ss += level.sumSquares[i];
+				}
+				long bucketFrames = Math.min(analyzedFrames, (i1 + 1) * span)
+						- i0 * span;
+				if (min != null)
+					min[x] = mn;
+				if (max != null)
+					max[x] = mx;
+				if (rms != null)
+					rms[x] = (float) Math.sqrt(ss / (bucketFrames * channels));
+				columns++;
+			}
+		}
+		for (int x = columns; x < width; x++) {
+			if (min != null)
+				min[x] = 0;
+			if (max != null)
+				max[x] = 0;
+			if (rms != null)
+				rms[x] = 0;
+		}
+		return columns;
+	}
+
+	/**
+	 * Save this summary so it can be restored with
+	 * {@link #read(InputStream)}. Only the most detailed level is saved; the
+	 * rest of the pyramid is rebuilt when it is read.
+	 *
+	 * @throws IllegalStateException
+	 *             if this summary is not complete.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public synchronized void write(OutputStream out) throws IOException {
+		if (!complete)
+			throw new IllegalStateException(
+					"only a complete summary can be written");
+		DataOutputStream dataOut = new DataOutputStream(out);
+		Level base = levels.get(0);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(VERSION);
+		dataOut.writeInt(channels);
+		dataOut.writeLong(frameCount);
+		dataOut.writeInt(base.size);
+		for (int a = 0; a < base.size; a++) {
+			dataOut.writeFloat(base.min[a]);
+			dataOut.writeFloat(base.max[a]);
+			dataOut.writeFloat(base.sumSquares[a]);
+		}
+		dataOut.flush();
+	}
+}
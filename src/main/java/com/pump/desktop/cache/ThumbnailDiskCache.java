@@ -0,0 +1,582 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.desktop.cache;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A persistent cache of thumbnails, stored in two packed files that are read
+ * through memory maps.
+ * <p>
+ * Each thumbnail is stored under a 64-bit key derived from the source's path,
+ * modification date, length and the requested thumbnail size (see
+ * {@link #getKey(String, long, long, Dimension)}). When a file changes its key
+ * changes, so stale thumbnails are never returned; they simply age out.
+ * <p>
+ * A pack file is a 16-byte header (magic number, version and generation)
+ * followed by records. Each record is a 25-byte header (payload length,
+ * generation, key, CRC32 of the payload, width, height and an opaque flag)
+ * followed by the deflated ARGB pixels. New records are only ever appended.
+ * When a pack is opened its records are scanned to build an in-memory index.
+ * The scan stops at the first record that is truncated or that belongs to an
+ * older generation, so a crash mid-write costs at most that record.
+ * <p>
+ * The cache is bounded by rotating between two generations. When the current
+ * pack reaches half of <code>maxBytes</code> the older pack is reused for a
+ * new generation. A thumbnail that is read from the older pack is copied into
+ * the current one, so thumbnails that are still in use survive rotation.
+ * <p>
+ * Files are never truncated (a mapped file can't be truncated on some
+ * platforms). A reused pack is simply overwritten from its header onward.
+ * <p>
+ * Only one cache can use a directory at a time: the cache holds a lock on a
+ * file in its directory while it is open. If another cache (in this process
+ * or another process) already holds that lock, this cache keeps its
+ * thumbnails in memory instead and nothing is written to disk. See
+ * {@link #isPersistent()}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ThumbnailDiskCache implements Closeable {
+
+	private static final int MAGIC = 0x50544843; // "PTHC"
+	private static final int VERSION = 1;
+	private static final int FILE_HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 25;
+	private static final int FLAG_OPAQUE = 1;
+	private static final String LOCK_FILE_NAME = "thumbnails.lock";
+
+	/**
+	 * Returns the key a thumbnail is stored under.
+	 *
+	 * @param path
+	 *            the path of the source, such as
+	 *            <code>IOLocation.getPath()</code>.
+	 * @param modificationDate
+	 *            the modification date of the source.
+	 * @param length
+	 *            the length of the source in bytes.
+	 * @param thumbnailSize
+	 *            the maximum size of the thumbnail that was requested.
+	 */
+	public static long getKey(String path, long modificationDate,
+			long length, Dimension thumbnailSize) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			String str = path + "\n" + modificationDate + "\n" + length
+					+ "\n" + thumbnailSize.width + "x" + thumbnailSize.height;
+			byte[] hash = digest.digest(str.getBytes(StandardCharsets.UTF_8));
+			long key = 0;
+			for (int a = 0; a < 8; a++) {
+				key = (key << 8) | (hash[a] & 0xff);
+			}
+			return key;
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM is required to support SHA-1
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * One generation of thumbnails.
+	 */
+	private static class Pack {
+		final RandomAccessFile file;
+		final FileChannel channel;
+		final Map<Long, Long> offsets = new HashMap<>();
+		int generation;
+		long size;
+		MappedByteBuffer mappedBuffer;
+
+		Pack(File f) throws IOException {
+			file = new RandomAccessFile(f, "rw");
+			channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			if (channel.size() >= FILE_HEADER_SIZE) {
+				channel.read(header, 0);
+				header.flip();
+			}
+			if (header.limit() == FILE_HEADER_SIZE
+					&& header.getInt(0) == MAGIC
+					&& header.getInt(4) == VERSION) {
+				generation = header.getInt(8);
+				size = FILE_HEADER_SIZE;
+				scan();
+			} else {
+				reset(0);
+			}
+		}
+
+		/**
+		 * Indexes the records of the current generation.
+		 */
+		private void scan() throws IOException {
+			long fileSize = channel.size();
+			if (fileSize <= FILE_HEADER_SIZE)
+				return;
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			long pos = FILE_HEADER_SIZE;
+			while (pos + RECORD_HEADER_SIZE <= fileSize) {
+				int p = (int) pos;
+				int payloadLength = buffer.getInt(p);
+				int recordGeneration = buffer.getInt(p + 4);
+				int width = buffer.getShort(p + 20) & 0xffff;
+				int height = buffer.getShort(p + 22) & 0xffff;
+				long end = pos + RECORD_HEADER_SIZE + payloadLength;
+				if (payloadLength <= 0 || end > fileSize
+						|| recordGeneration != generation || width == 0
+						|| height == 0)
+					break;
+				offsets.put(buffer.getLong(p + 8), pos);
+				pos = end;
+			}
+			size = pos;
+			mappedBuffer = buffer;
+		}
+
+		/**
+		 * Empties this pack and starts a new generation.
+		 */
+		void reset(int newGeneration) throws IOException {
+			generation = newGeneration;
+			ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(generation);
+			header.putInt(0);
+			header.flip();
+			channel.write(header, 0);
+			size = FILE_HEADER_SIZE;
+			offsets.clear();
+			mappedBuffer = null;
+		}
+
+		/**
+		 * Returns a copy of a record, or null if this pack doesn't contain
+		 * the key or the record's length doesn't fit in this pack.
+		 */
+		byte[] read(long key) throws IOException {
+			Long offset = offsets.get(key);
+			if (offset == null)
+				return null;
+			long pos = offset;
+			if (!containsRecord(pos)) {
+				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+						size);
+				if (!containsRecord(pos))
+					return null;
+			}
+			ByteBuffer buffer = mappedBuffer.duplicate();
+			int length = RECORD_HEADER_SIZE + buffer.getInt((int) pos);
+			byte[] record = new byte[length];
+			buffer.position((int) pos);
+			buffer.get(record);
+			return record;
+		}
+
+		/**
+		 * Returns true if the record at the given position lies entirely
+		 * within the mapped buffer.
+		 */
+		private boolean containsRecord(long pos) {
+			if (mappedBuffer == null
+					|| pos + RECORD_HEADER_SIZE > mappedBuffer.capacity())
+				return false;
+			int payloadLength = mappedBuffer.getInt((int) pos);
+			return payloadLength >= 0 && pos + RECORD_HEADER_SIZE
+					+ payloadLength <= mappedBuffer.capacity();
+		}
+
+		/**
+		 * Appends a record, replacing its generation with this pack's
+		 * generation.
+		 */
+		void append(long key, byte[] record) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+			buffer.putInt(4, generation);
+			long pos = size;
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, pos + buffer.position());
+			}
+			size += record.length;
+			offsets.put(key, pos);
+		}
+
+		void close() throws IOException {
+			mappedBuffer = null;
+			file.close();
+		}
+	}
+
+	/**
+	 * The default maximum size of the cache returned by {@link #getDefault()}.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+	private static ThumbnailDiskCache defaultCache;
+	private static boolean defaultCacheFailed;
+
+	/**
+	 * Returns a shared cache in the {@link CacheManager}'s unversioned
+	 * directory, or null if the <code>CacheManager</code> has not been
+	 * initialized or the cache could not be opened.
+	 */
+	public static synchronized ThumbnailDiskCache getDefault() {
+		if (defaultCache == null && !defaultCacheFailed
+				&& CacheManager.isInitialized()) {
+			File dir = new File(CacheManager.get().getDirectory(false),
+					"Thumbnails");
+			try {
+				defaultCache = new ThumbnailDiskCache(dir, DEFAULT_MAX_BYTES);
+			} catch (IOException e) {
+				e.printStackTrace();
+				defaultCacheFailed = true;
+			}
+		}
+		return defaultCache;
+	}
+
+	final long maxBytes;
+	final Pack[] packs = new Pack[2];
+	int currentPack;
+	boolean closed;
+
+	/**
+	 * The channel of the lock file, or null if this cache is memory-only.
+	 */
+	final FileChannel lockChannel;
+
+	/**
+	 * The records of a memory-only cache, in access order, or null if this
+	 * cache is backed by pack files.
+	 */
+	final LinkedHashMap<Long, byte[]> memoryRecords;
+	long memoryBytes;
+
+	/**
+	 * Opens (or creates) a thumbnail cache.
+	 * <p>
+	 * If another cache already uses this directory, the new cache is
+	 * memory-only (see {@link #isPersistent()}).
+	 *
+	 * @param directory
+	 *            the directory to store the pack files in. This is created if
+	 *            it doesn't exist.
+	 * @param maxBytes
+	 *            the approximate maximum number of bytes the two pack files
+	 *            (or the records of a memory-only cache) occupy.
+	 */
+	public ThumbnailDiskCache(File directory, long maxBytes)
+			throws IOException {
+		if (maxBytes <= 2 * FILE_HEADER_SIZE)
+			throw new IllegalArgumentException("maxBytes (" + maxBytes
+					+ ") is too small");
+		if (maxBytes / 2 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("maxBytes (" + maxBytes
+					+ ") is too large");
+		if (!directory.exists() && !directory.mkdirs())
+			throw new IOException("mkdirs failed for "
+					+ directory.getAbsolutePath());
+		this.maxBytes = maxBytes;
+		FileChannel channel = new RandomAccessFile(new File(directory,
+				LOCK_FILE_NAME), "rw").getChannel();
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// another cache in this JVM holds the lock
+			lock = null;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		if (lock == null) {
+			channel.close();
+			lockChannel = null;
+			memoryRecords = new LinkedHashMap<>(16, .75f, true);
+			return;
+		}
+		lockChannel = channel;
+		memoryRecords = null;
+
+		try {
+			packs[0] = new Pack(new File(directory, "thumbnails-0.pack"));
+			try {
+				packs[1] = new Pack(new File(directory, "thumbnails-1.pack"));
+			} catch (IOException e) {
+				packs[0].close();
+				throw e;
+			}
+		} catch (IOException e) {
+			// closing the channel releases the lock
+			lockChannel.close();
+			throw e;
+		}
+		currentPack = packs[1].generation > packs[0].generation ? 1 : 0;
+		if (packs[0].generation == packs[1].generation) {
+			// both packs are new (or something went wrong): make them
+			// distinct generations
+			packs[1 - currentPack].reset(packs[currentPack].generation - 1);
+		}
+	}
+
+	/**
+	 * Returns true if this cache stores its thumbnails on disk, or false if
+	 * another cache was already using its directory so this cache only keeps
+	 * thumbnails in memory.
+	 */
+	public boolean isPersistent() {
+		return memoryRecords == null;
+	}
+
+	/**
+	 * Returns a thumbnail, or null if it isn't stored in this cache.
+	 */
+	public BufferedImage get(long key) throws IOException {
+		byte[] record;
+		synchronized (this) {
+			if (closed)
+				return null;
+			if (memoryRecords != null)
+				return decode(key, memoryRecords.get(key));
+			Pack current = packs[currentPack];
+			record = current.read(key);
+			if (record == null) {
+				Pack previous = packs[1 - currentPack];
+				record = previous.read(key);
+				if (record == null)
+					return null;
+				previous.offsets.remove(key);
+				append(key, record);
+			}
+		}
+		BufferedImage image = decode(key, record);
+		if (image == null) {
+			// the record is corrupt (or was overwritten)
+			synchronized (this) {
+				packs[currentPack].offsets.remove(key);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Stores a thumbnail. Thumbnails larger than 65535 pixels in either
+	 * dimension are ignored.
+	 */
+	public void put(long key, BufferedImage image) throws IOException {
+		if (image.getWidth() > 0xffff || image.getHeight() > 0xffff)
+			return;
+		byte[] record = encode(key, image);
+		synchronized (this) {
+			if (closed)
+				return;
+			if (memoryRecords != null) {
+				putInMemory(key, record);
+			} else {
+				append(key, record);
+			}
+		}
+	}
+
+	private void putInMemory(long key, byte[] record) {
+		byte[] oldRecord = memoryRecords.put(key, record);
+		if (oldRecord != null)
+			memoryBytes -= oldRecord.length;
+		memoryBytes += record.length;
+		Iterator<byte[]> iter = memoryRecords.values().iterator();
+		while (memoryBytes > maxBytes && iter.hasNext()) {
+			memoryBytes -= iter.next().length;
+			iter.remove();
+		}
+	}
+
+	private void append(long key, byte[] record) throws IOException {
+		Pack current = packs[currentPack];
+		if (current.size > FILE_HEADER_SIZE
+				&& current.size + record.length > maxBytes / 2) {
+			int newPack = 1 - currentPack;
+			packs[newPack].reset(current.generation + 1);
+			currentPack = newPack;
+			current = packs[newPack];
+		}
+		current.append(key, record);
+	}
+
+	/**
+	 * Returns the number of thumbnails stored in this cache.
+	 */
+	public synchronized int size() {
+		if (memoryRecords != null)
+			return memoryRecords.size();
+		return packs[0].offsets.size() + packs[1].offsets.size();
+	}
+
+	/**
+	 * Removes all thumbnails.
+	 */
+	public synchronized void clear() throws IOException {
+		if (memoryRecords != null) {
+			memoryRecords.clear();
+			memoryBytes = 0;
+			return;
+		}
+		int generation = packs[currentPack].generation;
+		packs[1 - currentPack].reset(generation + 1);
+		packs[currentPack].reset(generation + 2);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		if (memoryRecords != null) {
+			memoryRecords.clear();
+			return;
+		}
+		try {
+			packs[0].close();
+			packs[1].close();
+		} finally {
+			// closing the channel releases the lock
+			lockChannel.close();
+		}
+	}
+
+	private static byte[] encode(long key, BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+		byte[] pixels = new byte[argb.length * 4];
+		for (int i = 0, j = 0; i < argb.length; i++, j += 4) {
+			int v = argb[i];
+			pixels[j] = (byte) (v >>> 24);
+			pixels[j + 1] = (byte) (v >>> 16);
+			pixels[j + 2] = (byte) (v >>> 8);
+			pixels[j + 3] = (byte) v;
+		}
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		byte[] compressed;
+		int compressedLength;
+		try {
+			deflater.setInput(pixels);
+			deflater.finish();
+			compressed = new byte[pixels.length + pixels.length / 1000 + 64];
+			compressedLength = 0;
+			while (!deflater.finished()) {
+				if (compressedLength == compressed.length) {
+					byte[] newArray = new byte[compressed.length * 2];
+					System.arraycopy(compressed, 0, newArray, 0,
+							compressedLength);
+					compressed = newArray;
+				}
+				compressedLength += deflater.deflate(compressed,
+						compressedLength, compressed.length - compressedLength);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(compressed, 0, compressedLength);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE
+				+ compressedLength);
+		record.putInt(compressedLength);
+		record.putInt(0);
+		record.putLong(key);
+		record.putInt((int) crc.getValue());
+		record.putShort((short) width);
+		record.putShort((short) height);
+		record.put((byte) (image.getColorModel().hasAlpha() ? 0 : FLAG_OPAQUE));
+		record.put(compressed, 0, compressedLength);
+		return record.array();
+	}
+
+	/**
+	 * Decodes a record, or returns null if the record is null or doesn't
+	 * belong to the key, or if its length, checksum or data is invalid.
+	 */
+	private static BufferedImage decode(long key, byte[] record) {
+		if (record == null || record.length < RECORD_HEADER_SIZE)
+			return null;
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		int payloadLength = buffer.getInt(0);
+		long storedKey = buffer.getLong(8);
+		int crcValue = buffer.getInt(16);
+		int width = buffer.getShort(20) & 0xffff;
+		int height = buffer.getShort(22) & 0xffff;
+		boolean opaque = (buffer.get(24) & FLAG_OPAQUE) != 0;
+		if (storedKey != key || payloadLength < 0
+				|| payloadLength != record.length - RECORD_HEADER_SIZE
+				|| width == 0 || height == 0)
+			return null;
+
+		CRC32 crc = new CRC32();
+		crc.update(record, RECORD_HEADER_SIZE, payloadLength);
+		if ((int) crc.getValue() != crcValue)
+			return null;
+
+		byte[] pixels = new byte[width * height * 4];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(record, RECORD_HEADER_SIZE, payloadLength);
+			int length = 0;
+			while (length < pixels.length) {
+				int t = inflater.inflate(pixels, length, pixels.length
+						- length);
+				if (t == 0 && (inflater.finished() || inflater.needsInput()))
+					return null;
+				length += t;
+			}
+		} catch (DataFormatException e) {
+			return null;
+		} finally {
+			inflater.end();
+		}
+
+		BufferedImage image = new BufferedImage(width, height,
+				opaque ? BufferedImage.TYPE_INT_RGB
+						: BufferedImage.TYPE_INT_ARGB);
+		int[] argb = new int[width * height];
+		for (int i = 0, j = 0; i < argb.length; i++, j += 4) {
+			argb[i] = ((pixels[j] & 0xff) << 24)
+					| ((pixels[j + 1] & 0xff) << 16)
+					| ((pixels[j + 2] & 0xff) << 8) | (pixels[j + 3] & 0xff);
+		}
+		image.getRaster().setDataElements(0, 0, width, height, argb);
+		return image;
+	}
+}
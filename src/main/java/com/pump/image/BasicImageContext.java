@@ -17,18 +17,21 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.media.jai.PerspectiveTransform;
 
@@ -49,16 +52,34 @@ public class BasicImageContext extends ImageContext {
 	boolean internalExecutor = false;
 
 	/**
-	 * Create a Graphics3D context that paints to a destination image using 6
-	 * threads.
+	 * Tiles are not split if they contain fewer than this many pixels.
+	 */
+	static final int MIN_TILE_AREA = 64 * 64;
+
+	/**
+	 * The number of tiles each thread should receive for a large drawing, so
+	 * threads that finish early can steal work from slower threads.
+	 */
+	static final int TILES_PER_THREAD = 4;
+
+	/**
+	 * Each drawImage call that may not have finished yet. This is guarded by
+	 * this object's monitor.
+	 */
+	final List<PendingDraw> pendingDraws = new ArrayList<>();
+
+	final LongAdder pixelsDrawn = new LongAdder();
+	final LongAdder drawNanos = new LongAdder();
+
+	/**
+	 * Create a Graphics3D context that paints to a destination image using the
+	 * common <code>ForkJoinPool</code>.
 	 * 
 	 * @param bi
 	 *            an RGB or ARGB image.
 	 */
 	public BasicImageContext(BufferedImage bi) {
-		this(bi, 6);
-		// TODO: in Java 1.8, use this:
-		// executor = Executors.newWorkStealingPool(threads);
+		this(bi, ForkJoinPool.commonPool());
 	}
 
 	/**
@@ -67,7 +88,10 @@ public class BasicImageContext extends ImageContext {
 	 * @param bi
 	 *            an RGB or ARGB image.
 	 * @param executor
-	 *            an optional ExecutorService to dispatch tasks to.
+	 *            an optional ExecutorService to dispatch tasks to. If this is
+	 *            a <code>ForkJoinPool</code> then tiles are split recursively
+	 *            as threads become available; otherwise every tile is
+	 *            submitted separately.
 	 */
 	public BasicImageContext(BufferedImage bi, ExecutorService executor) {
 		this(bi, 0);
@@ -83,7 +107,7 @@ public class BasicImageContext extends ImageContext {
 	 * @param numberOfThreads
 	 *            if positive then this is the number of threads used to render
 	 *            tiles. If zero then calls to <code>drawImage</code> are not
-	 *            multithreaded.
+	 *            multithreaded, and they finish before they return.
 	 */
 	public BasicImageContext(BufferedImage bi, int numberOfThreads) {
 		int type = bi.getType();
@@ -426,6 +450,11 @@ public class BasicImageContext extends ImageContext {
 	 * render hint. The bilinear hint is used by default.
 	 * <p>
 	 * This uses a source over composite.
+	 * <p>
+	 * If this context uses an executor then this method returns before the
+	 * image is drawn. Later calls only wait for earlier calls that touch the
+	 * same area, so you must not modify <code>img</code> until
+	 * {@link #getCompletionFuture()} completes or this context is disposed.
 	 * 
 	 * @param img
 	 *            the image to draw.
@@ -443,11 +472,6 @@ public class BasicImageContext extends ImageContext {
 		if (disposed)
 			throw new IllegalStateException("This context has been disposed.");
 
-		// we possibly could optimize this one day by detecting if drawing Image
-		// X will
-		// collide with existing instructions already in the queue?
-		processQueue();
-
 		Point2D srcTopLeft = new Point2D.Double(0, 0);
 		Point2D srcTopRight = new Point2D.Double(img.getWidth(), 0);
 		Point2D srcBottomLeft = new Point2D.Double(0, img.getHeight());
@@ -497,88 +521,240 @@ public class BasicImageContext extends ImageContext {
 
 		Object interpolationHint = getInterpolationRenderingHint();
 
-		if (executor != null) {
-			int y = minYi;
-			while (y <= maxYi) {
-				int cy = y / 100;
-				int h = Math.min((cy + 1) * 100, maxYi) - y;
-				int x = minXi;
-				while (x <= maxXi) {
-					int cx = x / 100;
-					int w = Math.min((cx + 1) * 100, maxXi) - x;
-					TileInstructions i = new TileInstructions(x, y, w - 1,
-							h - 1, interpolationHint, otherPixels, pt,
-							oHasAlpha, oWidth, oHeight, oStride, stripFunction);
-					synchronized (instructionQueue) {
-						instructionQueue.add(i);
-					}
-
-					x = (cx + 1) * 100;
-				}
-				y = (cy + 1) * 100;
-			}
+		DrawInstructions draw = new DrawInstructions(interpolationHint,
+				otherPixels, pt, oHasAlpha, oWidth, oHeight, oStride,
+				stripFunction);
+		TileTask root = new TileTask(draw, minXi, minYi, maxXi, maxYi);
+		if (executor == null) {
+			long start = System.nanoTime();
+			root.invoke();
+			draw.recordMetrics(root, start);
+			return;
+		}
 
-			for (int a = 0; a < 4; a++) {
-				executor.submit(new DrawTileRunnable());
+		int threads = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor)
+				.getParallelism() : Runtime.getRuntime()
+				.availableProcessors();
+		draw.tileArea = Math.max(MIN_TILE_AREA, root.getArea()
+				/ (threads * TILES_PER_THREAD));
+
+		// only wait for earlier draws that overlap this one
+		List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+		Iterator<PendingDraw> iter = pendingDraws.iterator();
+		while (iter.hasNext()) {
+			PendingDraw pendingDraw = iter.next();
+			if (pendingDraw.future.isDone()) {
+				iter.remove();
+			} else if (pendingDraw.intersects(root)) {
+				dependencies.add(pendingDraw.future);
 			}
-		} else {
-			drawTile(minXi, minYi, maxXi, maxYi, interpolationHint,
-					otherPixels, pt, oHasAlpha, oWidth, oHeight, oStride,
-					stripFunction);
 		}
+
+		CompletableFuture<Void> future = CompletableFuture.allOf(
+				dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+				.thenComposeAsync((v) -> draw.schedule(root), executor);
+		pendingDraws.add(new PendingDraw(root, future));
 	}
 
-	class TileInstructions {
-		boolean active = false;
-		int tileX, tileY, tileWidth, tileHeight, oWidth, oHeight, oStride;
-		Object renderingHint;
-		int[] otherPixels;
-		PerspectiveTransform transform;
-		boolean oHasAlpha;
-		HorizontalStripFunction stripFunction;
+	/**
+	 * A drawImage call that may not have finished yet.
+	 */
+	static class PendingDraw {
+		final int minX, minY, maxX, maxY;
+		final CompletableFuture<Void> future;
+
+		PendingDraw(TileTask bounds, CompletableFuture<Void> future) {
+			minX = bounds.minX;
+			minY = bounds.minY;
+			maxX = bounds.maxX;
+			maxY = bounds.maxY;
+			this.future = future;
+		}
 
-		public TileInstructions(int x, int y, int w, int h, Object rh,
-				int[] otherPixels, PerspectiveTransform pt, boolean oHasAlpha,
-				int oWidth, int oHeight, int oStride,
-				HorizontalStripFunction stripFunction) {
-			this.tileX = x;
-			this.tileY = y;
-			this.tileWidth = w;
-			this.tileHeight = h;
-			this.renderingHint = rh;
+		boolean intersects(TileTask t) {
+			return t.minX <= maxX && t.maxX >= minX && t.minY <= maxY
+					&& t.maxY >= minY;
+		}
+	}
+
+	/**
+	 * Everything about a drawImage call except which pixels to draw.
+	 */
+	class DrawInstructions {
+		final Object renderingHint;
+		final int[] otherPixels;
+		final PerspectiveTransform transform;
+		final boolean oHasAlpha;
+		final int oWidth, oHeight, oStride;
+		final HorizontalStripFunction stripFunction;
+		int tileArea = Integer.MAX_VALUE;
+
+		DrawInstructions(Object renderingHint, int[] otherPixels,
+				PerspectiveTransform transform, boolean oHasAlpha, int oWidth,
+				int oHeight, int oStride, HorizontalStripFunction stripFunction) {
+			this.renderingHint = renderingHint;
 			this.otherPixels = otherPixels;
-			this.transform = pt;
+			this.transform = transform;
 			this.oHasAlpha = oHasAlpha;
 			this.oWidth = oWidth;
 			this.oHeight = oHeight;
 			this.oStride = oStride;
-			this.stripFunction = stripFunction.derive(tileX, tileX + tileWidth);
+			this.stripFunction = stripFunction;
 		}
 
-		@Override
-		public String toString() {
-			return "TileInstructions[ x=" + tileX + ", y=" + tileY + ", w="
-					+ tileWidth + ", h=" + tileHeight + ", hint="
-					+ renderingHint + "]";
+		/**
+		 * Start drawing all the tiles in a rectangle.
+		 */
+		CompletableFuture<Void> schedule(TileTask root) {
+			long start = System.nanoTime();
+			CompletableFuture<Void> future;
+			if (executor instanceof ForkJoinPool) {
+				future = CompletableFuture.runAsync(root::invoke, executor);
+			} else {
+				List<TileTask> tiles = new ArrayList<>();
+				root.split(tiles);
+				CompletableFuture<?>[] tileFutures = new CompletableFuture<?>[tiles
+						.size()];
+				for (int a = 0; a < tileFutures.length; a++) {
+					tileFutures[a] = CompletableFuture.runAsync(
+							tiles.get(a)::invoke, executor);
+				}
+				future = CompletableFuture.allOf(tileFutures);
+			}
+			return future.thenRun(() -> recordMetrics(root, start));
 		}
 
+		void recordMetrics(TileTask root, long startNanos) {
+			drawNanos.add(System.nanoTime() - startNanos);
+			pixelsDrawn.add(root.getArea());
+		}
 	}
 
-	List<TileInstructions> instructionQueue = new LinkedList<TileInstructions>();
+	/**
+	 * This draws a rectangle of pixels, splitting it into smaller tiles for
+	 * other threads to steal if it is large.
+	 */
+	class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final DrawInstructions draw;
+		final int minX, minY, maxX, maxY;
+
+		/**
+		 * @param draw
+		 *            the image to draw.
+		 * @param minX
+		 *            the left edge of this tile (inclusive).
+		 * @param minY
+		 *            the top edge of this tile (inclusive).
+		 * @param maxX
+		 *            the right edge of this tile (inclusive).
+		 * @param maxY
+		 *            the bottom edge of this tile (inclusive).
+		 */
+		TileTask(DrawInstructions draw, int minX, int minY, int maxX, int maxY) {
+			this.draw = draw;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		int getArea() {
+			return (maxX - minX + 1) * (maxY - minY + 1);
+		}
 
-	class DrawTileRunnable implements Runnable {
-		public void run() {
-			processQueue();
+		/**
+		 * Return two halves of this tile, or null if this tile should not be
+		 * split. Wide tiles are split vertically, otherwise tiles are split
+		 * into horizontal strips (which read contiguous rows of memory).
+		 */
+		TileTask[] getHalves() {
+			int w = maxX - minX + 1;
+			int h = maxY - minY + 1;
+			if (getArea() <= draw.tileArea || (w == 1 && h == 1))
+				return null;
+			if (w > 4 * h || h == 1) {
+				int midX = minX + w / 2;
+				return new TileTask[] {
+						new TileTask(draw, minX, minY, midX - 1, maxY),
+						new TileTask(draw, midX, minY, maxX, maxY) };
+			}
+			int midY = minY + h / 2;
+			return new TileTask[] {
+					new TileTask(draw, minX, minY, maxX, midY - 1),
+					new TileTask(draw, minX, midY, maxX, maxY) };
+		}
+
+		/**
+		 * Add every tile this tile is split into to a list.
+		 */
+		void split(List<TileTask> dst) {
+			TileTask[] halves = getHalves();
+			if (halves == null) {
+				dst.add(this);
+			} else {
+				halves[0].split(dst);
+				halves[1].split(dst);
+			}
+		}
+
+		@Override
+		protected void compute() {
+			TileTask[] halves = getHalves();
+			if (halves != null) {
+				invokeAll(halves[0], halves[1]);
+			} else {
+				drawTile(minX, minY, maxX, maxY, draw.renderingHint,
+						draw.otherPixels, draw.transform, draw.oHasAlpha,
+						draw.oWidth, draw.oHeight, draw.oStride,
+						draw.stripFunction.derive(minX, maxX));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "TileTask[ x=" + minX + ", y=" + minY + ", w="
+					+ (maxX - minX + 1) + ", h=" + (maxY - minY + 1)
+					+ ", hint=" + draw.renderingHint + "]";
+		}
+	}
+
+	/**
+	 * This converts a sum of up to 16 samples to an average:
+	 * <code>(sum * DIVIDE[samples]) &gt;&gt; 16</code> is exactly
+	 * <code>sum / samples</code> when the sum is at most <code>16 * 255</code>.
+	 */
+	private static final int[] DIVIDE = new int[17];
+	static {
+		for (int a = 1; a < DIVIDE.length; a++) {
+			DIVIDE[a] = (65536 + a - 1) / a;
 		}
 	}
 
+	/**
+	 * One in the 32.32 fixed-point texel coordinates used for affine
+	 * transforms.
+	 */
+	private static final long FIXED_ONE = 1L << 32;
+
+	/**
+	 * Draw part of an image.
+	 * <p>
+	 * The homogeneous coordinates of the transform are stepped along each
+	 * scanline instead of being recalculated for every pixel. If the transform
+	 * is affine the texel coordinates are stepped in fixed-point instead, so
+	 * there is no division at all. When the image is supersampled (for
+	 * bilinear or bicubic interpolation) each sample is converted to an index
+	 * in <code>otherPixels</code> once, and the last row of samples for one row
+	 * of pixels is reused as the first row of samples for the next.
+	 */
 	protected void drawTile(int minXi, int minYi, int maxXi, int maxYi,
 			Object interpolationHint, int[] otherPixels,
 			PerspectiveTransform pt, boolean oHasAlpha, int oWidth,
 			int oHeight, int oStride, HorizontalStripFunction stripFunction) {
 
-		double transformedX, transformedY;
-		double m00, m01, m02, m10, m11, m12, m20, m21, m22, w;
+		double m00, m01, m02, m10, m11, m12, m20, m21, m22;
 
 		{
 			double[][] matrix = new double[3][3];
@@ -595,302 +771,333 @@ public class BasicImageContext extends ImageContext {
 		}
 
 		int[] xEndpoints = new int[2];
+		boolean affine = m20 == 0 && m21 == 0;
 
 		if (RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
 				.equals(interpolationHint)) {
-			if (oHasAlpha) {
-				for (int y = minYi; y <= maxYi; y++) {
-					int yw = y * stride;
-					double yd = y;
-					stripFunction.getXEndpoints(y, xEndpoints);
-					for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
-						double xd = x;
-
-						// transform (x,y) to (transformedX, transformedY):
-						w = m20 * xd + m21 * yd + m22;
-						transformedX = (m00 * xd + m01 * yd + m02) / w;
-						transformedY = (m10 * xd + m11 * yd + m12) / w;
-
-						int newX = (int) (transformedX + .5);
-						int newY = (int) (transformedY + .5);
-						if (newY >= 0 && newY < oHeight && newX >= 0
-								&& newX < oWidth) {
-							int src = otherPixels[newY * oStride + newX];
-							int srcA = src >>> 24;
-							if (srcA == 255) {
+			long maxU = oWidth * FIXED_ONE;
+			long maxV = oHeight * FIXED_ONE;
+			for (int y = minYi; y <= maxYi; y++) {
+				int yw = y * stride;
+				double yd = y;
+				stripFunction.getXEndpoints(y, xEndpoints);
+				double xd = xEndpoints[0];
+				double nx = m00 * xd + m01 * yd + m02;
+				double ny = m10 * xd + m11 * yd + m12;
+				double nw = m20 * xd + m21 * yd + m22;
+				if (affine) {
+					double iw = 1.0 / nw;
+					long u = toFixed(nx * iw + .5);
+					long v = toFixed(ny * iw + .5);
+					long du = toFixed(m00 * iw);
+					long dv = toFixed(m10 * iw);
+					for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++, u += du, v += dv) {
+						// (-1, 0) truncates to 0, just like casting a double
+						if (u > -FIXED_ONE && u < maxU && v > -FIXED_ONE
+								&& v < maxV) {
+							int src = otherPixels[(int) (Math.max(v, 0) >> 32)
+									* oStride + (int) (Math.max(u, 0) >> 32)];
+							if (oHasAlpha) {
+								data[yw + x] = blend(data[yw + x], src >>> 24,
+										(src >> 16) & 0xff, (src >> 8) & 0xff,
+										src & 0xff);
+							} else {
 								data[yw + x] = src;
-							} else if (srcA > 0) {
-								int r = (src >> 16) & 0xff;
-								int g = (src >> 8) & 0xff;
-								int b = src & 0xff;
-								int dst = data[yw + x];
-								int dstA = (dst >> 24) & 0xff;
-								int dstAX = (dstA) * (255 - srcA);
-								int dstR = (dst >> 16) & 0xff;
-								int dstG = (dst >> 8) & 0xff;
-								int dstB = dst & 0xff;
-								int srcAX = srcA * 255;
-								int resA = srcAX + dstAX;
-
-								if (resA != 0) {
-									r = (r * srcAX + dstR * dstAX) / resA;
-									g = (g * srcAX + dstG * dstAX) / resA;
-									b = (b * srcAX + dstB * dstAX) / resA;
-									data[yw + x] = (resA / 255 << 24)
-											| ((r > 255) ? 0xff0000 : r << 16)
-											| ((g > 255) ? 0xff00 : g << 8)
-											| ((b > 255) ? 0xff : b);
-								}
 							}
 						}
 					}
+					continue;
 				}
-			} else {
-				for (int y = minYi; y <= maxYi; y++) {
-					int yw = y * stride;
-					double yd = y;
-					stripFunction.getXEndpoints(y, xEndpoints);
-					for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
-						double xd = x;
-
-						// transform (x,y) to (transformedX, transformedY):
-						w = m20 * xd + m21 * yd + m22;
-						transformedX = (m00 * xd + m01 * yd + m02) / w;
-						transformedY = (m10 * xd + m11 * yd + m12) / w;
-
-						int newX = (int) (transformedX + .5);
-						int newY = (int) (transformedY + .5);
-						if (newY >= 0 && newY < oHeight && newX >= 0
-								&& newX < oWidth) {
-							data[yw + x] = otherPixels[newY * oStride + newX];
+				for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++, nx += m00, ny += m10, nw += m20) {
+					double iw = 1.0 / nw;
+					int newX = (int) (nx * iw + .5);
+					int newY = (int) (ny * iw + .5);
+					if (newY >= 0 && newY < oHeight && newX >= 0
+							&& newX < oWidth) {
+						int src = otherPixels[newY * oStride + newX];
+						if (oHasAlpha) {
+							data[yw + x] = blend(data[yw + x], src >>> 24,
+									(src >> 16) & 0xff, (src >> 8) & 0xff,
+									src & 0xff);
+						} else {
+							data[yw + x] = src;
 						}
 					}
 				}
 			}
+			return;
+		}
+
+		int windowLength;
+		if (RenderingHints.VALUE_INTERPOLATION_BICUBIC
+				.equals(interpolationHint)) {
+			windowLength = 4;
 		} else {
-			int windowLength;
-			if (RenderingHints.VALUE_INTERPOLATION_BICUBIC
-					.equals(interpolationHint)) {
-				windowLength = 4;
-			} else {
-				windowLength = 2;
+			windowLength = 2;
+		}
+		int steps = windowLength - 1;
+		double incr = 1.0 / steps;
+
+		/*
+		 * Sample column c is at x = minXi + c * incr, and the samples for pixel
+		 * x are columns (x - minXi) * steps through (x - minXi) * steps +
+		 * steps. Each element of a sample row is an index in otherPixels, or -1
+		 * if that sample is outside the image.
+		 */
+		int columnCount = (maxXi - minXi + 1) * steps + 1;
+		int[][] sampleRows = new int[windowLength][columnCount];
+		int sharedLow = 0, sharedHigh = -1;
+		int[] nextEndpoints = new int[2];
+		stripFunction.getXEndpoints(minYi, nextEndpoints);
+
+		for (int y = minYi; y <= maxYi; y++) {
+			int x0 = nextEndpoints[0];
+			int x1 = nextEndpoints[1];
+			int low = (x0 - minXi) * steps;
+			int high = (x1 - minXi) * steps + steps;
+			if (y < maxYi) {
+				stripFunction.getXEndpoints(y + 1, nextEndpoints);
+			}
+			if (x0 > x1) {
+				sharedHigh = -1;
+				continue;
 			}
-			double windowLengthD = windowLength;
-			double incr = 1.0 / (windowLengthD - 1.0);
-			int windowArea = windowLength * windowLength;
 
+			for (int j = 0; j < windowLength; j++) {
+				double y2 = y + j * incr;
+				if (j == 0) {
+					if (sharedLow <= low && sharedHigh >= high)
+						continue;
+					computeSamples(sampleRows[0], low, high, minXi, y2, incr,
+							m00, m01, m02, m10, m11, m12, m20, m21, m22,
+							oWidth, oHeight, oStride);
+				} else if (j == steps && y < maxYi) {
+					// the next row will reuse these samples
+					sharedLow = low;
+					sharedHigh = high;
+					if (nextEndpoints[0] <= nextEndpoints[1]) {
+						sharedLow = Math.min(sharedLow,
+								(nextEndpoints[0] - minXi) * steps);
+						sharedHigh = Math.max(sharedHigh,
+								(nextEndpoints[1] - minXi) * steps + steps);
+					}
+					computeSamples(sampleRows[j], sharedLow, sharedHigh,
+							minXi, y2, incr, m00, m01, m02, m10, m11, m12,
+							m20, m21, m22, oWidth, oHeight, oStride);
+				} else {
+					computeSamples(sampleRows[j], low, high, minXi, y2, incr,
+							m00, m01, m02, m10, m11, m12, m20, m21, m22,
+							oWidth, oHeight, oStride);
+				}
+			}
+
+			int yw = y * stride;
 			if (oHasAlpha) {
-				for (int y = minYi; y <= maxYi; y++) {
-					int yw = y * stride;
-					double yd = y;
-					stripFunction.getXEndpoints(y, xEndpoints);
-					for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
-						double xd = x;
-						int samples = windowArea;
-						int srcA = 0;
-						int r = 0;
-						int g = 0;
-						int b = 0;
-						for (double dx = 0; dx < windowLengthD; dx++) {
-							for (double dy = 0; dy < windowLengthD; dy++) {
-								double x2 = xd + dx * incr;
-								double y2 = yd + dy * incr;
-
-								// transform (x,y) to (transformedX,
-								// transformedY):
-								w = m20 * x2 + m21 * y2 + m22;
-								transformedX = (m00 * x2 + m01 * y2 + m02) / w;
-								transformedY = (m10 * x2 + m11 * y2 + m12) / w;
-
-								int newX = (int) (transformedX - .00001);
-								int newY = (int) (transformedY - .00001);
-								if (newY >= 0 && newY < oHeight && newX >= 0
-										&& newX < oWidth) {
-									int opix = otherPixels[newY * oStride
-											+ newX];
-									srcA += (opix >> 24) & 0xff;
-									r += opix & 0xff0000;
-									g += opix & 0xff00;
-									b += opix & 0xff;
-								} else {
-									samples--;
-								}
-							}
-						}
-						if (samples > 0) {
-							srcA = srcA / samples;
-							r = (r >>> 16) / samples;
-							g = (g >>> 8) / samples;
-							b = b / samples;
-							if (srcA == 255) {
-								data[yw + x] = 0xff000000 | (r << 16)
-										| (g << 8) | b;
-							} else if (srcA > 0) {
-								int dst = data[yw + x];
-								int dstAX = (dst >>> 24) * (255 - srcA);
-								int dstR = (dst >> 16) & 0xff;
-								int dstG = (dst >> 8) & 0xff;
-								int dstB = dst & 0xff;
-								int srcAX = srcA * 255;
-								int resA = (srcAX + dstAX);
-
-								if (resA != 0) {
-									r = (r * srcAX + dstR * dstAX) / resA;
-									g = (g * srcAX + dstG * dstAX) / resA;
-									b = (b * srcAX + dstB * dstAX) / resA;
-									data[yw + x] = (resA / 255 << 24)
-											| ((r > 255) ? 0xff0000 : r << 16)
-											| ((g > 255) ? 0xff00 : g << 8)
-											| ((b > 255) ? 0xff : b);
-								}
+				for (int x = x0, c = low; x <= x1; x++, c += steps) {
+					int samples = 0;
+					int srcA = 0;
+					int r = 0;
+					int g = 0;
+					int b = 0;
+					for (int j = 0; j < windowLength; j++) {
+						int[] sampleRow = sampleRows[j];
+						for (int i = c; i <= c + steps; i++) {
+							int k = sampleRow[i];
+							if (k >= 0) {
+								int opix = otherPixels[k];
+								samples++;
+								srcA += opix >>> 24;
+								r += (opix >> 16) & 0xff;
+								g += (opix >> 8) & 0xff;
+								b += opix & 0xff;
 							}
 						}
 					}
+					if (samples > 0) {
+						int divide = DIVIDE[samples];
+						data[yw + x] = blend(data[yw + x],
+								(srcA * divide) >> 16, (r * divide) >> 16,
+								(g * divide) >> 16, (b * divide) >> 16);
+					}
 				}
 			} else {
-				for (int y = minYi; y <= maxYi; y++) {
-					int yw = y * stride;
-					double yd = y;
-					stripFunction.getXEndpoints(y, xEndpoints);
-					for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
-						double xd = x;
-
-						int samples = windowArea;
-						int srcA = 0;
-						int r = 0;
-						int g = 0;
-						int b = 0;
-						for (double dx = 0; dx < windowLengthD; dx++) {
-							for (double dy = 0; dy < windowLengthD; dy++) {
-								double x2 = xd + dx * incr;
-								double y2 = yd + dy * incr;
-
-								// transform (x,y) to (transformedX,
-								// transformedY):
-								w = m20 * x2 + m21 * y2 + m22;
-								transformedX = (m00 * x2 + m01 * y2 + m02) / w;
-								transformedY = (m10 * x2 + m11 * y2 + m12) / w;
-
-								int newX = (int) (transformedX - .00001);
-								int newY = (int) (transformedY - .00001);
-								if (newY >= 0 && newY < oHeight && newX >= 0
-										&& newX < oWidth) {
-									int opix = otherPixels[newY * oStride
-											+ newX];
-									srcA += 255;
-									r += opix & 0xff0000;
-									g += opix & 0xff00;
-									b += opix & 0xff;
-								} else {
-									samples--;
-								}
-							}
-						}
-						if (samples > 0) {
-							srcA = srcA / samples;
-							r = (r >>> 16) / samples;
-							g = (g >>> 8) / samples;
-							b = b / samples;
-							if (srcA == 255) {
-								data[yw + x] = 0xff000000 | (r << 16)
-										| (g << 8) | b;
-							} else if (srcA > 0) {
-								int dst = data[yw + x];
-								int dstAX = (dst >>> 24) * (255 - srcA);
-								int dstR = (dst >> 16) & 0xff;
-								int dstG = (dst >> 8) & 0xff;
-								int dstB = dst & 0xff;
-								int srcAX = srcA * 255;
-								int resA = (srcAX + dstAX);
-
-								if (resA != 0) {
-									r = (r * srcAX + dstR * dstAX) / resA;
-									g = (g * srcAX + dstG * dstAX) / resA;
-									b = (b * srcAX + dstB * dstAX) / resA;
-									data[yw + x] = (resA / 255 << 24)
-											| ((r > 255) ? 0xff0000 : r << 16)
-											| ((g > 255) ? 0xff00 : g << 8)
-											| ((b > 255) ? 0xff : b);
-								}
+				for (int x = x0, c = low; x <= x1; x++, c += steps) {
+					int samples = 0;
+					int r = 0;
+					int g = 0;
+					int b = 0;
+					for (int j = 0; j < windowLength; j++) {
+						int[] sampleRow = sampleRows[j];
+						for (int i = c; i <= c + steps; i++) {
+							int k = sampleRow[i];
+							if (k >= 0) {
+								int opix = otherPixels[k];
+								samples++;
+								r += (opix >> 16) & 0xff;
+								g += (opix >> 8) & 0xff;
+								b += opix & 0xff;
 							}
 						}
 					}
+					if (samples > 0) {
+						int divide = DIVIDE[samples];
+						data[yw + x] = 0xff000000
+								| (((r * divide) >> 16) << 16)
+								| (((g * divide) >> 16) << 8)
+								| ((b * divide) >> 16);
+					}
 				}
 			}
+
+			// rotate the last row of samples to the top
+			int[] lastRow = sampleRows[steps];
+			System.arraycopy(sampleRows, 0, sampleRows, 1, steps);
+			sampleRows[0] = lastRow;
+			if (y == maxYi)
+				sharedHigh = -1;
 		}
 	}
 
 	/**
-	 * This blocks until instructionQueue is empty.
+	 * Store the index in the source image of a range of sample columns in a
+	 * row of samples.
 	 */
-	protected void processQueue() {
-		while (true) {
-			TileInstructions activeTile = null;
-			synchronized (instructionQueue) {
-				Iterator<TileInstructions> iter = instructionQueue.iterator();
-				boolean skippedTile = false;
-				while (iter.hasNext() && activeTile == null) {
-					TileInstructions instr = iter.next();
-					if (!instr.active) {
-						instr.active = true;
-						activeTile = instr;
-					} else {
-						skippedTile = true;
-					}
-				}
-
-				if (activeTile == null) {
-					if (skippedTile) {
-						// we don't have anything to do in this thread,
-						// but we should keep blocking until other threads
-						// finish:
-						try {
-							instructionQueue.wait(1000);
-						} catch (InterruptedException e) {
-						}
-					} else {
-						// everyone is done, the queue is empty.
-						return;
-					}
+	private static void computeSamples(int[] dst, int low, int high,
+			int minX, double y, double incr, double m00, double m01,
+			double m02, double m10, double m11, double m12, double m20,
+			double m21, double m22, int oWidth, int oHeight, int oStride) {
+		double x = minX + low * incr;
+		double nx = m00 * x + m01 * y + m02;
+		double ny = m10 * x + m11 * y + m12;
+		double nw = m20 * x + m21 * y + m22;
+		double dnx = m00 * incr;
+		double dny = m10 * incr;
+		double dnw = m20 * incr;
+		if (m20 == 0 && m21 == 0) {
+			double iw = 1.0 / nw;
+			long u = toFixed(nx * iw - .00001);
+			long v = toFixed(ny * iw - .00001);
+			long du = toFixed(dnx * iw);
+			long dv = toFixed(dny * iw);
+			long maxU = oWidth * FIXED_ONE;
+			long maxV = oHeight * FIXED_ONE;
+			for (int c = low; c <= high; c++, u += du, v += dv) {
+				// (-1, 0) truncates to 0, just like casting a double
+				if (u > -FIXED_ONE && u < maxU && v > -FIXED_ONE && v < maxV) {
+					dst[c] = (int) (Math.max(v, 0) >> 32) * oStride
+							+ (int) (Math.max(u, 0) >> 32);
+				} else {
+					dst[c] = -1;
 				}
 			}
-
-			if (activeTile != null) {
-				try {
-					drawTile(activeTile.tileX, activeTile.tileY,
-							activeTile.tileX + activeTile.tileWidth,
-							activeTile.tileY + activeTile.tileHeight,
-							activeTile.renderingHint, activeTile.otherPixels,
-							activeTile.transform, activeTile.oHasAlpha,
-							activeTile.oWidth, activeTile.oHeight,
-							activeTile.oStride, activeTile.stripFunction);
-				} finally {
-					synchronized (instructionQueue) {
-						instructionQueue.remove(activeTile);
-						instructionQueue.notifyAll();
-					}
-				}
+			return;
+		}
+		for (int c = low; c <= high; c++, nx += dnx, ny += dny, nw += dnw) {
+			double iw = 1.0 / nw;
+			int newX = (int) (nx * iw - .00001);
+			int newY = (int) (ny * iw - .00001);
+			if (newY >= 0 && newY < oHeight && newX >= 0 && newX < oWidth) {
+				dst[c] = newY * oStride + newX;
+			} else {
+				dst[c] = -1;
 			}
 		}
 	}
 
+	/**
+	 * Convert a texel coordinate to 32.32 fixed-point.
+	 */
+	private static long toFixed(double d) {
+		return Math.round(d * FIXED_ONE);
+	}
+
+	/**
+	 * Return the result of painting a non-premultiplied color over an ARGB
+	 * pixel.
+	 */
+	static int blend(int dst, int srcA, int r, int g, int b) {
+		if (srcA == 255)
+			return 0xff000000 | (r << 16) | (g << 8) | b;
+		if (srcA == 0)
+			return dst;
+		int dstAX = (dst >>> 24) * (255 - srcA);
+		int dstR = (dst >> 16) & 0xff;
+		int dstG = (dst >> 8) & 0xff;
+		int dstB = dst & 0xff;
+		int srcAX = srcA * 255;
+		int resA = srcAX + dstAX;
+
+		// the quotients are at least 1/resA from the next integer unless
+		// they are integers, so the small bias makes this exact division
+		double k = 1.0 / resA;
+		r = (int) ((r * srcAX + dstR * dstAX) * k + 1e-7);
+		g = (int) ((g * srcAX + dstG * dstAX) * k + 1e-7);
+		b = (int) ((b * srcAX + dstB * dstAX) * k + 1e-7);
+		return (resA / 255 << 24) | ((r > 255) ? 0xff0000 : r << 16)
+				| ((g > 255) ? 0xff00 : g << 8) | ((b > 255) ? 0xff : b);
+	}
+
+	/**
+	 * Return a future that completes when every drawImage call made so far
+	 * has finished.
+	 */
+	public synchronized CompletableFuture<Void> getCompletionFuture() {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (PendingDraw pendingDraw : pendingDraws) {
+			futures.add(pendingDraw.future);
+		}
+		return CompletableFuture.allOf(futures
+				.toArray(new CompletableFuture<?>[futures.size()]));
+	}
+
+	/**
+	 * Return the number of destination pixels inside the bounds of all the
+	 * images that have finished drawing.
+	 */
+	public long getPixelsDrawn() {
+		return pixelsDrawn.sum();
+	}
+
+	/**
+	 * Return the number of nanoseconds spent drawing images, from when each
+	 * image began drawing to when it finished. Images that are drawn at the
+	 * same time are counted separately.
+	 */
+	public long getDrawNanos() {
+		return drawNanos.sum();
+	}
+
+	/**
+	 * Return the number of megapixels per second this context has drawn, or
+	 * zero if nothing has been drawn.
+	 */
+	public double getMegapixelsPerSecond() {
+		long nanos = drawNanos.sum();
+		if (nanos == 0)
+			return 0;
+		return pixelsDrawn.sum() * 1000.0 / nanos;
+	}
+
 	/**
 	 * Commit all changes back to the BufferedImage this context paints to.
 	 */
 	public synchronized void dispose() {
-		processQueue();
-
-		if (executor != null) {
-			if (internalExecutor) {
-				executor.shutdown();
-				try {
-					executor.awaitTermination(60, TimeUnit.MINUTES);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+		try {
+			getCompletionFuture().join();
+		} finally {
+			pendingDraws.clear();
+			if (executor != null) {
+				if (internalExecutor) {
+					executor.shutdown();
+					try {
+						executor.awaitTermination(60, TimeUnit.MINUTES);
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
 				}
 			}
-		}
 
-		disposed = true;
+			disposed = true;
+		}
 	}
-}
\ No newline at end of file
+}
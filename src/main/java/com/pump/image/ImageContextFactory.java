@@ -11,8 +11,7 @@
 package com.pump.image;
 
 import java.awt.image.BufferedImage;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A factory for {@link ImageContext} objects to render images.
@@ -20,15 +19,9 @@ import java.util.concurrent.Executors;
 public abstract class ImageContextFactory {
 	private static ImageContextFactory factory = new ImageContextFactory() {
 
-		ExecutorService staticService;
-
 		public ImageContext create(BufferedImage bi) {
-			synchronized (this) {
-				if (staticService == null) {
-					staticService = Executors.newFixedThreadPool(8);
-				}
-			}
-			return new BasicImageContext(bi, staticService);
+			// the common pool is sized for the number of processors
+			return new BasicImageContext(bi, ForkJoinPool.commonPool());
 		}
 	};
 
@@ -14,7 +14,9 @@ import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.image.ImageObserver;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,6 +29,8 @@ import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 
+import com.pump.image.bmp.BmpDecoder;
+import com.pump.image.jpeg.JPEGMetaData;
 import com.pump.math.MutableInteger;
 
 /**
@@ -74,12 +78,85 @@ public class ImageSize {
 	}
 
 	/**
-	 * Retrieves the dimensions of this image using <code>ImageIO</code> classes
-	 * or an <code>ImageObserver</code>.
+	 * Reads the dimensions of a JPEG, PNG, GIF or BMP file from its header
+	 * without touching the pixel data.
+	 * 
+	 * @return the size of the image, or null if the file is not one of these
+	 *         formats.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public static Dimension getFromHeader(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return getFromHeader(in);
+		}
+	}
+
+	/**
+	 * Reads the dimensions of a JPEG, PNG, GIF or BMP image from its header
+	 * without touching the pixel data. For JPEGs this walks the markers up to
+	 * the start of frame (SOF), for PNGs this reads the IHDR chunk, for GIFs
+	 * this reads the logical screen descriptor and for BMPs this reads the
+	 * bitmap header. The stream is not closed.
+	 * 
+	 * @return the size of the image, or null if the stream is not one of
+	 *         these formats.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public static Dimension getFromHeader(InputStream in) throws IOException {
+		if (!in.markSupported())
+			in = new BufferedInputStream(in, 64);
+		byte[] b = new byte[24];
+		in.mark(b.length);
+		int length = 0;
+		while (length < b.length) {
+			int t = in.read(b, length, b.length - length);
+			if (t == -1)
+				break;
+			length += t;
+		}
+		in.reset();
+
+		if (length >= 2 && (b[0] & 0xff) == 0xff && (b[1] & 0xff) == 0xd8) {
+			try {
+				return JPEGMetaData.getSize(in);
+			} catch (IOException e) {
+				return null;
+			}
+		} else if (length >= 24 && (b[0] & 0xff) == 0x89 && b[1] == 'P'
+				&& b[2] == 'N' && b[3] == 'G' && b[12] == 'I' && b[13] == 'H'
+				&& b[14] == 'D' && b[15] == 'R') {
+			return new Dimension(readInt(b, 16), readInt(b, 20));
+		} else if (length >= 10 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F') {
+			int width = (b[6] & 0xff) | ((b[7] & 0xff) << 8);
+			int height = (b[8] & 0xff) | ((b[9] & 0xff) << 8);
+			return new Dimension(width, height);
+		} else if (length >= 2 && b[0] == 'B' && b[1] == 'M') {
+			return BmpDecoder.getSize(in);
+		}
+		return null;
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16)
+				| ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Retrieves the dimensions of this image by reading its header, or by
+	 * using <code>ImageIO</code> classes or an <code>ImageObserver</code>.
 	 */
 	public static Dimension get(File file) {
 		if (file == null)
 			throw new NullPointerException();
+		try {
+			Dimension size = getFromHeader(file);
+			if (size != null && size.width > 0 && size.height > 0)
+				return size;
+		} catch (Exception e) {
+			// try again below
+		}
 		try {
 			Dimension size = getSizeUsingImageIO(file);
 			return size;
@@ -104,8 +181,8 @@ public class ImageSize {
 	}
 
 	/**
-	 * Retrieves the dimensions of this image using <code>ImageIO</code> classes
-	 * or an <code>ImageObserver</code>.
+	 * Retrieves the dimensions of this image by reading its header, or by
+	 * using <code>ImageIO</code> classes or an <code>ImageObserver</code>.
 	 * 
 	 * @throws IllegalArgumentException
 	 *             if the dimensions could not be retrieved.
@@ -113,6 +190,13 @@ public class ImageSize {
 	public static Dimension get(URL url) throws IllegalArgumentException {
 		if (url == null)
 			throw new NullPointerException();
+		try (InputStream in = url.openStream()) {
+			Dimension size = getFromHeader(in);
+			if (size != null && size.width > 0 && size.height > 0)
+				return size;
+		} catch (Exception e) {
+			// try again below
+		}
 		try {
 			Dimension size = getSizeUsingImageIO(url);
 			return size;
@@ -11,12 +11,16 @@
 package com.pump.image.bmp;
 
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import com.pump.image.pixel.BufferedImageIterator;
 import com.pump.image.pixel.PixelIterator;
@@ -45,29 +49,97 @@ public class BmpDecoder {
 	 * @param bmpFile
 	 *            a BMP file.
 	 * @param dst
-	 *            a destination to store the image in. If this is non-null it
-	 *            must be the correct size to contain all of the image data.
+	 *            an optional destination to store the image in. See
+	 *            {@link #readImage(ByteBuffer, Rectangle, BufferedImage)}.
 	 * @return the image, or <code>null</code> if this was not a valid image.
 	 * @throws IOException
 	 *             if an IO problem occurs.
 	 */
 	public static BufferedImage readImage(File bmpFile, BufferedImage dst)
 			throws IOException {
-		FileInputStream in = null;
+		return readImage(bmpFile, null, dst);
+	}
+
+	/**
+	 * Returns all or part of an image from the BMP file provided, or null if
+	 * the file does not appear to be a valid BMP image.
+	 * <P>
+	 * The file is read into memory with a single bulk read and then passed to
+	 * {@link #readImage(ByteBuffer, Rectangle, BufferedImage)}. It is not
+	 * memory-mapped: on Windows a mapped file stays locked until the mapping
+	 * is garbage collected, and callers like the {@link
+	 * com.pump.animation.BmpFrameStore} need to delete their files right
+	 * away.
+	 * 
+	 * @param bmpFile
+	 *            a BMP file.
+	 * @param roi
+	 *            the region of the image to read, or <code>null</code> to read
+	 *            the whole image.
+	 * @param dst
+	 *            an optional destination to store the image in. See
+	 *            {@link #readImage(ByteBuffer, Rectangle, BufferedImage)}.
+	 * @return the image, or <code>null</code> if this was not a valid image.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public static BufferedImage readImage(File bmpFile, Rectangle roi,
+			BufferedImage dst) throws IOException {
 		if (bmpFile == null) {
 			throw new NullPointerException();
 		} else if (bmpFile.length() == 0) {
 			return null;
 		}
-		try {
-			in = new FileInputStream(bmpFile);
-			return readImage(in, dst);
-		} finally {
-			try {
-				in.close();
-			} catch (IOException e) {
+		ByteBuffer data;
+		try (FileChannel channel = FileChannel.open(bmpFile.toPath(),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("The file " + bmpFile.getName()
+						+ " is too large (" + size + " bytes).");
+			data = ByteBuffer.allocate((int) size);
+			while (data.hasRemaining()) {
+				if (channel.read(data) == -1)
+					break;
 			}
+			data.flip();
 		}
+		return readImage(data, roi, dst);
+	}
+
+	/**
+	 * Returns all or part of an image from BMP data in memory, or null if the
+	 * data does not appear to be a valid BMP image.
+	 * <P>
+	 * Rows are copied directly into the destination image's data buffer. For
+	 * uncompressed 24-bit BMPs and <code>TYPE_3BYTE_BGR</code> images, or for
+	 * 32-bit BMPs and <code>TYPE_INT_ARGB</code> images, each row is a single
+	 * bulk copy.
+	 * 
+	 * @param bmp
+	 *            the BMP data, from this buffer's position to its limit. This
+	 *            may be a <code>MappedByteBuffer</code>, in which case only the
+	 *            rows in the region of interest are read from the disk (but
+	 *            the file may stay locked until the buffer is garbage
+	 *            collected). This buffer is not modified.
+	 * @param roi
+	 *            the region of the image to read, or <code>null</code> to read
+	 *            the whole image.
+	 * @param dst
+	 *            an optional destination to store the image in. This is used
+	 *            if it is at least as large as the region being read and it is
+	 *            a <code>TYPE_INT_ARGB</code> or <code>TYPE_4BYTE_ABGR</code>
+	 *            image (or a <code>TYPE_INT_RGB</code> or
+	 *            <code>TYPE_3BYTE_BGR</code> image for opaque 24-bit BMPs).
+	 *            Otherwise a new image is created. The region is written to
+	 *            the upper-left corner of this image.
+	 * @return the image, or <code>null</code> if this was not a valid image.
+	 * @throws IOException
+	 *             if the data is incomplete or not supported.
+	 */
+	public static BufferedImage readImage(ByteBuffer bmp, Rectangle roi,
+			BufferedImage dst) throws IOException {
+		return BmpRasterReader.read(bmp, roi, dst);
 	}
 
 	/**
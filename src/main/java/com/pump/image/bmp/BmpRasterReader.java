@@ -0,0 +1,204 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.bmp;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.pump.image.pixel.BufferedImageIterator;
+import com.pump.io.ByteBufferInputStream;
+
+/**
+ * This reads a BMP that is already in a <code>ByteBuffer</code> (such as the
+ * contents of a file) by copying rows straight into the data buffer of the
+ * destination image.
+ * <P>
+ * Uncompressed 24-bit and 32-bit BMPs are read directly. A 24-bit BMP stores
+ * pixels the same way a <code>TYPE_3BYTE_BGR</code> image does, and a 32-bit
+ * BMP is a series of little-endian <code>TYPE_INT_ARGB</code> pixels, so these
+ * rows are bulk copies. Other destination types are filled one pixel at a
+ * time. Other BMPs are passed to the {@link BmpDecoderIterator}.
+ */
+class BmpRasterReader {
+
+	/**
+	 * Read all or part of a BMP.
+	 * 
+	 * @param bmp
+	 *            the BMP data, from this buffer's position to its limit. This
+	 *            buffer is not modified.
+	 * @param roi
+	 *            the region of the image to read, or <code>null</code> to read
+	 *            the whole image.
+	 * @param dst
+	 *            an optional image to store the pixels in. This is used if its
+	 *            type is supported and it is at least as large as the region
+	 *            being read.
+	 * @return an image whose upper-left corner contains the region that was
+	 *         read, or <code>null</code> if this is not a BMP.
+	 */
+	static BufferedImage read(ByteBuffer bmp, Rectangle roi, BufferedImage dst)
+			throws IOException {
+		ByteBuffer data = bmp.slice().order(ByteOrder.LITTLE_ENDIAN);
+		BmpHeader header;
+		try {
+			header = new BmpHeader(new ByteBufferInputStream(data.duplicate()));
+		} catch (BmpHeaderException e) {
+			return null;
+		}
+
+		int width = header.width;
+		int height = header.height;
+		if (roi == null) {
+			roi = new Rectangle(0, 0, width, height);
+		} else if (roi.isEmpty() || roi.x < 0 || roi.y < 0
+				|| roi.x + roi.width > width || roi.y + roi.height > height) {
+			throw new IllegalArgumentException("The region " + roi
+					+ " is not inside the image (" + width + "x" + height
+					+ ")");
+		}
+
+		int depth = header.bitsPerPixel;
+		if (!(depth == 24 || depth == 32) || header.compression != 0
+				|| header.planes != 1) {
+			return readIndirectly(data, roi, dst);
+		}
+
+		int bytesPerPixel = depth / 8;
+		int scanline = BmpEncoder.getScanlineSize(width, bytesPerPixel);
+		long end = header.bitmapOffset + ((long) scanline) * height;
+		if (end > data.limit())
+			throw new EOFException("The BMP data requires " + end
+					+ " bytes, but only " + data.limit() + " are available.");
+
+		if (dst == null || dst.getWidth() < roi.width
+				|| dst.getHeight() < roi.height || !isSupported(dst, depth)) {
+			dst = new BufferedImage(roi.width, roi.height,
+					depth == 24 ? BufferedImage.TYPE_3BYTE_BGR
+							: BufferedImage.TYPE_4BYTE_ABGR);
+		}
+
+		WritableRaster raster = dst.getRaster();
+		int tx = -raster.getSampleModelTranslateX();
+		int ty = -raster.getSampleModelTranslateY();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		int type = dst.getType();
+
+		int rowLength = roi.width * bytesPerPixel;
+		byte[] row = null;
+		for (int dy = 0; dy < roi.height; dy++) {
+			int y = roi.y + dy;
+			int fileRow = header.topDown ? y : height - 1 - y;
+			data.position((int) (header.bitmapOffset + ((long) fileRow)
+					* scanline + roi.x * bytesPerPixel));
+
+			if (type == BufferedImage.TYPE_3BYTE_BGR
+					|| type == BufferedImage.TYPE_4BYTE_ABGR) {
+				ComponentSampleModel sm = (ComponentSampleModel) raster
+						.getSampleModel();
+				byte[] dest = ((DataBufferByte) dataBuffer).getData();
+				// (sm.getOffset(x, y) includes the offset of the red band)
+				int k = dataBuffer.getOffset() + (ty + dy)
+						* sm.getScanlineStride() + tx * sm.getPixelStride();
+				if (depth == 24 && type == BufferedImage.TYPE_3BYTE_BGR) {
+					data.get(dest, k, rowLength);
+				} else {
+					if (row == null)
+						row = new byte[rowLength];
+					data.get(row, 0, rowLength);
+					if (depth == 32) {
+						// BGRA to ABGR
+						for (int i = 0; i < rowLength; i += 4, k += 4) {
+							dest[k] = row[i + 3];
+							dest[k + 1] = row[i];
+							dest[k + 2] = row[i + 1];
+							dest[k + 3] = row[i + 2];
+						}
+					} else {
+						// BGR to ABGR
+						for (int i = 0; i < rowLength; i += 3, k += 4) {
+							dest[k] = -1;
+							dest[k + 1] = row[i];
+							dest[k + 2] = row[i + 1];
+							dest[k + 3] = row[i + 2];
+						}
+					}
+				}
+			} else {
+				SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster
+						.getSampleModel();
+				int[] dest = ((DataBufferInt) dataBuffer).getData();
+				int k = dataBuffer.getOffset() + sm.getOffset(tx, ty + dy);
+				if (depth == 32) {
+					data.asIntBuffer().get(dest, k, roi.width);
+				} else {
+					if (row == null)
+						row = new byte[rowLength];
+					data.get(row, 0, rowLength);
+					for (int i = 0; i < rowLength; i += 3, k++) {
+						dest[k] = 0xff000000 | ((row[i + 2] & 0xff) << 16)
+								| ((row[i + 1] & 0xff) << 8) | (row[i] & 0xff);
+					}
+				}
+			}
+		}
+		return dst;
+	}
+
+	/**
+	 * Return true if we can write pixels of a given depth directly into an
+	 * image.
+	 */
+	private static boolean isSupported(BufferedImage bi, int depth) {
+		switch (bi.getType()) {
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+			return true;
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_3BYTE_BGR:
+			return depth == 24;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Read a BMP through a {@link BmpDecoderIterator}.
+	 */
+	private static BufferedImage readIndirectly(ByteBuffer data,
+			Rectangle roi, BufferedImage dst) throws IOException {
+		BufferedImage image = BufferedImageIterator.create(
+				BmpDecoderIterator.get(new ByteBufferInputStream(data
+						.duplicate())), null);
+		if (dst != null && dst.getWidth() >= roi.width
+				&& dst.getHeight() >= roi.height
+				&& dst.getType() == image.getType()
+				&& dst.getColorModel().equals(image.getColorModel())) {
+			dst.getRaster().setRect(
+					image.getRaster().createChild(roi.x, roi.y, roi.width,
+							roi.height, 0, 0, null));
+			return dst;
+		}
+		if (roi.width == image.getWidth() && roi.height == image.getHeight())
+			return image;
+		return image.getSubimage(roi.x, roi.y, roi.width, roi.height);
+	}
+}
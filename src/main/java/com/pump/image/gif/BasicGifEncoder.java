@@ -10,17 +10,17 @@
  */
 package com.pump.image.gif;
 
-import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import com.pump.image.gif.block.GifGraphicControlExtension;
 import com.pump.image.gif.block.GifGraphicControlExtension.DisposalMethod;
-import com.pump.image.gif.block.GifImageDataBlock;
 import com.pump.image.gif.block.GifImageDescriptor;
 import com.pump.image.gif.block.GifLocalColorTable;
 import com.pump.image.pixel.BufferedImageIterator;
@@ -34,6 +34,15 @@ import com.pump.image.pixel.IntARGBConverter;
  * frame, or (as a last resort) the background color should be our starting
  * template. Once we've decided this: we can reduce the dimensions of the nth
  * frame.
+ * <p>
+ * Those templates correspond to the disposal method of the (n-1)th frame:
+ * {@link DisposalMethod#LEAVE}, {@link DisposalMethod#PREVIOUS} and
+ * {@link DisposalMethod#RESTORE_BACKGROUND}. The nth frame is cropped to the
+ * rectangle where it differs from the template, and (if the color model has a
+ * transparent pixel) every pixel inside that rectangle that matches the
+ * template is encoded as the transparent pixel, which LZW compresses very
+ * well. A template is only eligible if the nth frame never needs to make a
+ * visible pixel transparent, because transparent pixels can't erase anything.
  */
 public class BasicGifEncoder extends GifEncoder {
 
@@ -42,9 +51,19 @@ public class BasicGifEncoder extends GifEncoder {
 		BufferedImage wholeImage;
 
 		/**
-		 * A subset of wholeImage that we'll actually write to the OutputStream.
+		 * The ARGB pixels of wholeImage as they appear in a GIF: pixels are
+		 * either opaque or zero.
+		 */
+		int[] pixels;
+
+		/**
+		 * The ARGB pixels this frame is drawn on top of, or null if this frame
+		 * is drawn on a transparent canvas.
 		 */
-		BufferedImage optimizedImage;
+		int[] template;
+
+		/** The area of wholeImage that we'll actually write. */
+		Rectangle bounds;
 
 		/** The duration (in cs) of this frame. */
 		int durationInCentiseconds;
@@ -58,19 +77,32 @@ public class BasicGifEncoder extends GifEncoder {
 		/** The global color table in use (may be null). */
 		IndexColorModel globalColorModel;
 
-		/** The topleft x-coordinate to render optimizedImage. */
-		int x = 0;
-
-		/** The topleft y-coordinate to render optimizedImage. */
-		int y = 0;
-
 		public Frame(BufferedImage image, int durationInCentiseconds,
 				IndexColorModel globalColorModel, boolean writeLocalColorTable) {
 			this.wholeImage = image;
-			this.optimizedImage = image;
 			this.globalColorModel = globalColorModel;
 			this.durationInCentiseconds = Math.max(5, durationInCentiseconds);
 			this.writeLocalColorTable = writeLocalColorTable;
+			bounds = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+			pixels = getPixels(image,
+					globalColorModel.getTransparentPixel() != -1);
+		}
+
+		/**
+		 * Return the ARGB pixels that are visible after this frame is
+		 * disposed of, or null if every pixel is transparent.
+		 */
+		int[] getDisposedPixels() {
+			if (disposalMethod == DisposalMethod.PREVIOUS)
+				return template;
+			if (disposalMethod == DisposalMethod.LEAVE)
+				return pixels;
+			int[] disposed = pixels.clone();
+			for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+				int i = y * wholeImage.getWidth() + bounds.x;
+				Arrays.fill(disposed, i, i + bounds.width, 0);
+			}
+			return disposed;
 		}
 
 		void write(OutputStream out) throws IOException {
@@ -96,131 +128,198 @@ public class BasicGifEncoder extends GifEncoder {
 				localColorSize = k;
 			}
 
-			Dimension d = new Dimension(optimizedImage.getWidth(),
-					optimizedImage.getHeight());
-
-			GifImageDescriptor id = new GifImageDescriptor(x, y, d.width,
-					d.height, false, localColorSize);
+			GifImageDescriptor id = new GifImageDescriptor(bounds.x, bounds.y,
+					bounds.width, bounds.height, false, localColorSize);
 			id.write(out);
 			if (localColorSize > 0) {
 				GifLocalColorTable ct = new GifLocalColorTable(globalColorModel);
 				ct.write(out);
 			}
-			GifImageDataBlock dataBlock = new GifImageDataBlock(optimizedImage,
-					globalColorModel);
-			dataBlock.write(out);
+			writeImageData(out, createOptimizedImage(), globalColorModel);
 		}
 
-		void optimize(Rectangle contrast) {
-			optimizedImage = wholeImage.getSubimage(contrast.x, contrast.y,
-					contrast.width, contrast.height);
-			x = contrast.x;
-			y = contrast.y;
+		/**
+		 * Return the pixels inside <code>bounds</code>. If our color model has
+		 * a transparent pixel then every pixel that matches the template is
+		 * transparent.
+		 */
+		BufferedImage createOptimizedImage() {
+			boolean clearUnchangedPixels = globalColorModel
+					.getTransparentPixel() != -1;
+			if (!clearUnchangedPixels && bounds.x == 0 && bounds.y == 0
+					&& bounds.width == wholeImage.getWidth()
+					&& bounds.height == wholeImage.getHeight())
+				return wholeImage;
+
+			BufferedImage bi = new BufferedImage(bounds.width, bounds.height,
+					BufferedImage.TYPE_INT_ARGB);
+			int[] row = new int[bounds.width];
+			int w = wholeImage.getWidth();
+			for (int y = 0; y < bounds.height; y++) {
+				int i = (y + bounds.y) * w + bounds.x;
+				for (int x = 0; x < bounds.width; x++, i++) {
+					int templatePixel = template == null ? 0 : template[i];
+					row[x] = clearUnchangedPixels && pixels[i] == templatePixel ? 0
+							: pixels[i];
+				}
+				bi.getRaster().setDataElements(0, y, bounds.width, 1, row);
+			}
+			return bi;
 		}
 	}
 
-	LinkedList<Frame> frameBuffer = new LinkedList<Frame>();
+	/**
+	 * Return the ARGB pixels of an image as they will appear in a GIF.
+	 * 
+	 * @param supportsTransparency
+	 *            if true then pixels that are less than 50% opaque are
+	 *            converted to zero. If false then every pixel is made opaque.
+	 */
+	static int[] getPixels(BufferedImage image, boolean supportsTransparency) {
+		int w = image.getWidth();
+		int[] pixels = new int[w * image.getHeight()];
+		IntARGBConverter iter = new IntARGBConverter(
+				BufferedImageIterator.get(image));
+		int[] row = new int[iter.getMinimumArrayLength()];
+		int y = 0;
+		while (!iter.isDone()) {
+			iter.next(row);
+			System.arraycopy(row, 0, pixels, y * w, w);
+			y++;
+		}
+		for (int a = 0; a < pixels.length; a++) {
+			if (!supportsTransparency) {
+				pixels[a] = pixels[a] | 0xff000000;
+			} else if (((pixels[a] >> 24) & 0xff) < 128) {
+				pixels[a] = 0;
+			} else {
+				pixels[a] = pixels[a] | 0xff000000;
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Returns the smallest rectangle that encloses every pixel in an image
+	 * that differs from a template, or null if they are exactly the same. This
+	 * also returns null if the image makes a pixel transparent that is visible
+	 * in the template, because there is no way to encode that.
+	 * 
+	 * @param template
+	 *            the pixels already visible, or null if every pixel is
+	 *            transparent.
+	 * @param incoming
+	 *            the pixels of the next frame.
+	 * @param width
+	 *            the width of the image.
+	 * @param unchanged
+	 *            the rectangle to return if the two images are identical.
+	 */
+	static Rectangle getContrastRectangle(int[] template, int[] incoming,
+			int width, Rectangle unchanged) {
+		int minX = Integer.MAX_VALUE;
+		int maxX = -1;
+		int minY = -1;
+		int maxY = -1;
+		int height = incoming.length / width;
+		for (int y = 0; y < height; y++) {
+			int i = y * width;
+			for (int x = 0; x < width; x++, i++) {
+				int t = template == null ? 0 : template[i];
+				if (t != incoming[i]) {
+					if (incoming[i] == 0)
+						return null;
+					if (minY == -1)
+						minY = y;
+					maxY = y;
+					if (x < minX)
+						minX = x;
+					if (x > maxX)
+						maxX = x;
+				}
+			}
+		}
+		if (minY == -1)
+			return unchanged;
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	/** The last frame passed to writeImage that has not been written yet. */
+	Frame pendingFrame;
 
 	@Override
 	public synchronized void writeImage(OutputStream out, BufferedImage image,
 			int durationInCentiseconds, IndexColorModel globalColorModel,
 			boolean writeLocalColorTable) throws IOException {
-		if (frameBuffer.size() > 0) {
-			Frame lastFrame = frameBuffer.get(frameBuffer.size() - 1);
-			if (getContrastRectangle(lastFrame.wholeImage, image) == null) {
-				lastFrame.durationInCentiseconds += durationInCentiseconds;
-				return;
-			}
-		}
-
 		Frame newFrame = new Frame(image, durationInCentiseconds,
 				globalColorModel, writeLocalColorTable);
-		frameBuffer.add(newFrame);
-
-		try {
-			if (frameBuffer.size() >= 3) {
-				Rectangle contrast1 = getContrastRectangle(
-						frameBuffer.get(0).wholeImage, newFrame.wholeImage);
-				Rectangle contrast2 = getContrastRectangle(
-						frameBuffer.get(1).wholeImage, newFrame.wholeImage);
-				int area1 = contrast1 == null ? Integer.MAX_VALUE
-						: contrast1.width * contrast1.height;
-				int area2 = contrast2 == null ? Integer.MAX_VALUE
-						: contrast2.width * contrast2.height;
-				if (area2 <= area1) {
-					frameBuffer.get(1).disposalMethod = DisposalMethod.LEAVE;
-					frameBuffer.get(2).optimize(contrast2);
-				} else {
-					frameBuffer.get(1).disposalMethod = DisposalMethod.PREVIOUS;
-					frameBuffer.get(2).optimize(contrast1);
-				}
-			} else if (frameBuffer.size() == 2) {
+		Frame lastFrame = pendingFrame;
+		if (lastFrame == null) {
+			// the first frame is always written in its entirety
+			pendingFrame = newFrame;
+			return;
+		}
 
-			} else if (frameBuffer.size() == 1) {
+		int w = image.getWidth();
+		if (w != lastFrame.wholeImage.getWidth()
+				|| image.getHeight() != lastFrame.wholeImage.getHeight())
+			throw new IllegalArgumentException("images are different sizes: "
+					+ lastFrame.wholeImage.getWidth() + "x"
+					+ lastFrame.wholeImage.getHeight() + ", " + w + "x"
+					+ image.getHeight());
 
-			}
-		} finally {
-			while (frameBuffer.size() > 2) {
-				frameBuffer.pop().write(out);
-			}
+		if (Arrays.equals(lastFrame.pixels, newFrame.pixels)) {
+			lastFrame.durationInCentiseconds += durationInCentiseconds;
+			return;
 		}
-	}
 
-	/**
-	 * Returns the smallest possible rectangle that encloses the differences
-	 * between two images, or null if they are exactly the same.
-	 */
-	private static Rectangle getContrastRectangle(BufferedImage background,
-			BufferedImage incoming) {
-		if (background.getWidth() != incoming.getWidth()
-				|| background.getHeight() != incoming.getHeight())
-			throw new IllegalArgumentException("images are different sizes: "
-					+ background.getWidth() + "x" + background.getHeight()
-					+ ", " + incoming.getWidth() + "x" + incoming.getHeight());
+		// a zero-area frame would be a problem, so unchanged frames use a
+		// pixel that will be transparent:
+		Rectangle unchanged = new Rectangle(0, 0, 1, 1);
+		List<DisposalMethod> candidates = new ArrayList<>();
+		candidates.add(DisposalMethod.LEAVE);
+		if (lastFrame.globalColorModel.getTransparentPixel() != -1)
+			candidates.add(DisposalMethod.RESTORE_BACKGROUND);
+		candidates.add(DisposalMethod.PREVIOUS);
 
-		IntARGBConverter c1 = new IntARGBConverter(
-				BufferedImageIterator.get(background));
-		IntARGBConverter c2 = new IntARGBConverter(
-				BufferedImageIterator.get(incoming));
-		int[] row1 = new int[c1.getMinimumArrayLength()];
-		int[] row2 = new int[c2.getMinimumArrayLength()];
-		Rectangle r = null;
+		DisposalMethod bestDisposal = null;
+		Rectangle bestBounds = null;
+		int[] bestTemplate = null;
+		long bestArea = Long.MAX_VALUE;
+		for (DisposalMethod disposal : candidates) {
+			lastFrame.disposalMethod = disposal;
+			int[] template = lastFrame.getDisposedPixels();
+			Rectangle r = getContrastRectangle(template, newFrame.pixels, w,
+					unchanged);
+			if (r != null && ((long) r.width) * r.height < bestArea) {
+				bestArea = ((long) r.width) * r.height;
+				bestDisposal = disposal;
+				bestBounds = r;
+				bestTemplate = template;
+			}
+		}
 
-		int y = 0;
-		while (!c1.isDone()) {
-			c1.next(row1);
-			c2.next(row2);
-			int w = incoming.getWidth();
-			for (int x = 0; x < w; x++) {
-				int a1 = (row1[x] >> 24) & 0xff;
-				int r1 = (row1[x] >> 16) & 0xff;
-				int g1 = (row1[x] >> 8) & 0xff;
-				int b1 = (row1[x] >> 0) & 0xff;
-				int a2 = (row2[x] >> 24) & 0xff;
-				int r2 = (row2[x] >> 16) & 0xff;
-				int g2 = (row2[x] >> 8) & 0xff;
-				int b2 = (row2[x] >> 0) & 0xff;
-				if (a2 < a1 || r1 != r2 || g1 != g2 || b1 != b2) {
-					if (r == null) {
-						r = new Rectangle(x, y, 1, 1);
-					} else {
-						if (x < r.x) {
-							// new left boundary
-							r.width += r.x - x;
-							r.x = x;
-						} else if (x >= r.x + r.width) {
-							// new right boundary
-							r.width = x - r.x + 1;
-						}
-
-						// new bottom boundary
-						r.height = y - r.y + 1;
-					}
-				}
+		if (bestDisposal == null) {
+			// newFrame has to make pixels transparent that no template allows,
+			// so the previous frame has to clear the whole canvas.
+			if (lastFrame.globalColorModel.getTransparentPixel() != -1) {
+				lastFrame.bounds = new Rectangle(0, 0, w, image.getHeight());
+				bestDisposal = DisposalMethod.RESTORE_BACKGROUND;
+				bestTemplate = null;
+				bestBounds = getContrastRectangle(null, newFrame.pixels, w,
+						unchanged);
+			} else {
+				bestDisposal = DisposalMethod.LEAVE;
+				bestTemplate = lastFrame.pixels;
+				bestBounds = newFrame.bounds;
 			}
-			y++;
 		}
-		return r;
+		lastFrame.disposalMethod = bestDisposal;
+		newFrame.template = bestTemplate;
+		newFrame.bounds = bestBounds;
+
+		pendingFrame = newFrame;
+		lastFrame.write(out);
 	}
 
 	/**
@@ -228,8 +327,9 @@ public class BasicGifEncoder extends GifEncoder {
 	 */
 	@Override
 	public synchronized void flush(OutputStream out) throws IOException {
-		while (frameBuffer.size() > 0) {
-			frameBuffer.pop().write(out);
+		if (pendingFrame != null) {
+			pendingFrame.write(out);
+			pendingFrame = null;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.gif;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.pump.image.pixel.quantize.BiasedMedianCutColorQuantization;
+import com.pump.image.pixel.quantize.ColorSet;
+
+/**
+ * This compares the file size and encoding time of the
+ * {@link BasicGifEncoder} (which only encodes the parts of each frame that
+ * change) against the {@link MinimalGifEncoder} (which encodes every frame in
+ * its entirety) for a few sample animations.
+ * <p>
+ * The animations range from mostly static (a typing cursor) to a moving
+ * sprite to full motion (where every pixel changes), so the savings from
+ * encoding only the changed region should shrink from row to row.
+ */
+class BasicGifEncoderBenchmark {
+
+	static final int SAMPLE_COUNT = 3;
+	static final int WIDTH = 640;
+	static final int HEIGHT = 480;
+	static final int FRAME_COUNT = 60;
+
+	interface SampleAnimation {
+		void paint(Graphics2D g, int frameIndex);
+	}
+
+	public static void main(String[] args) throws IOException {
+		SampleAnimation typing = new SampleAnimation() {
+			String text = "The quick brown fox jumps over the lazy dog.";
+
+			@Override
+			public void paint(Graphics2D g, int frameIndex) {
+				// a window with text being typed and a blinking caret
+				g.setColor(new Color(0xececec));
+				g.fillRect(0, 0, WIDTH, HEIGHT);
+				g.setColor(Color.white);
+				g.fillRect(20, 40, WIDTH - 40, HEIGHT - 60);
+				g.setColor(new Color(0x3c7fb1));
+				g.fillRect(0, 0, WIDTH, 24);
+				g.setColor(Color.black);
+				g.setFont(new Font("Dialog", Font.PLAIN, 14));
+				String s = text.substring(0, frameIndex * text.length()
+						/ FRAME_COUNT);
+				g.drawString(s, 30, 70);
+				if (frameIndex % 10 < 5) {
+					int x = 30 + g.getFontMetrics().stringWidth(s);
+					g.fillRect(x, 58, 1, 16);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "Typing";
+			}
+		};
+		SampleAnimation sprite = new SampleAnimation() {
+			@Override
+			public void paint(Graphics2D g, int frameIndex) {
+				// a ball bouncing over a static gradient
+				g.setPaint(new GradientPaint(0, 0, new Color(0x2d3436), WIDTH,
+						HEIGHT, new Color(0x74b9ff)));
+				g.fillRect(0, 0, WIDTH, HEIGHT);
+				g.setColor(new Color(0xe17055));
+				double t = ((double) frameIndex) / FRAME_COUNT;
+				int x = (int) (t * (WIDTH - 50));
+				int y = (int) (HEIGHT - 50 - Math.abs(Math.sin(t * 3 * Math.PI))
+						* (HEIGHT - 50));
+				g.fillOval(x, y, 50, 50);
+			}
+
+			@Override
+			public String toString() {
+				return "Sprite";
+			}
+		};
+		SampleAnimation fullMotion = new SampleAnimation() {
+			@Override
+			public void paint(Graphics2D g, int frameIndex) {
+				// every pixel changes every frame
+				float hue = ((float) frameIndex) / FRAME_COUNT;
+				g.setPaint(new GradientPaint(0, 0, new Color(Color.HSBtoRGB(
+						hue, .6f, 1)), WIDTH, HEIGHT, new Color(Color.HSBtoRGB(
+						hue + .5f, .6f, .5f))));
+				g.fillRect(0, 0, WIDTH, HEIGHT);
+			}
+
+			@Override
+			public String toString() {
+				return "Full Motion";
+			}
+		};
+
+		System.out
+				.println("Animation\tMinimal (bytes)\tBasic (bytes)\tMinimal (ms)\tBasic (ms)");
+		for (SampleAnimation animation : new SampleAnimation[] { typing,
+				sprite, fullMotion }) {
+			List<BufferedImage> frames = new ArrayList<>();
+			for (int a = 0; a < FRAME_COUNT; a++) {
+				BufferedImage bi = new BufferedImage(WIDTH, HEIGHT,
+						BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g = bi.createGraphics();
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_ON);
+				animation.paint(g, a);
+				g.dispose();
+				frames.add(bi);
+			}
+			ColorSet colors = new ColorSet(frames.get(0));
+			IndexColorModel icm = new BiasedMedianCutColorQuantization()
+					.createReducedSet(colors, 255, false)
+					.createIndexColorModel(true, true);
+
+			long[] minimalResult = run(frames, icm, MinimalGifEncoder.class);
+			long[] basicResult = run(frames, icm, BasicGifEncoder.class);
+			System.out.println(animation + "\t" + minimalResult[0] + "\t"
+					+ basicResult[0] + "\t" + minimalResult[1] + "\t"
+					+ basicResult[1]);
+		}
+	}
+
+	/**
+	 * Return the number of bytes written and the median time in ms.
+	 */
+	static long[] run(List<BufferedImage> frames, IndexColorModel icm,
+			Class<? extends GifEncoder> encoderType) throws IOException {
+		long[] times = new long[SAMPLE_COUNT];
+		long size = 0;
+		for (int a = 0; a < SAMPLE_COUNT; a++) {
+			GifEncoder encoder;
+			try {
+				encoder = encoderType.newInstance();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			times[a] = System.currentTimeMillis();
+			GifWriter writer = new GifWriter(out,
+					new Dimension(WIDTH, HEIGHT), icm, 0, 0, encoder);
+			for (BufferedImage frame : frames) {
+				writer.write(frame, 50, null);
+			}
+			writer.close(false);
+			times[a] = System.currentTimeMillis() - times[a];
+			size = out.size();
+		}
+		Arrays.sort(times);
+		return new long[] { size, times[times.length / 2] };
+	}
+}
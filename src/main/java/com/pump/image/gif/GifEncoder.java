@@ -15,6 +15,8 @@ import java.awt.image.IndexColorModel;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import com.pump.image.gif.block.GifImageDataBlock;
+
 /**
  * This is simple model for an object that can encode a GIF. This is designed to
  * work tightly with the {@link com.pump.image.gif.GifWriter}.
@@ -59,4 +61,33 @@ public abstract class GifEncoder {
 	 *             if an IO problem occurs.
 	 */
 	public abstract void flush(OutputStream out) throws IOException;
-}
\ No newline at end of file
+
+	/**
+	 * Write the {@link GifImageDataBlock} for an image. Encoders should use
+	 * this method rather than constructing the block themselves: when the
+	 * {@link GifWriter} is pipelined the image is quantized and LZW-encoded on
+	 * other threads, and the block is written in its place when it is ready.
+	 * 
+	 * @param out
+	 *            the output stream passed to
+	 *            {@link #writeImage(OutputStream, BufferedImage, int, IndexColorModel, boolean)}
+	 *            .
+	 * @param image
+	 *            the image to encode. This must not be modified after this
+	 *            call.
+	 * @param colorModel
+	 *            the color model the image data should refer to.
+	 * @throws IOException
+	 *             if the <code>OutputStream</code> gives us any trouble.
+	 */
+	protected static void writeImageData(OutputStream out,
+			BufferedImage image, IndexColorModel colorModel) throws IOException {
+		if (out instanceof PipelinedGifOutputStream) {
+			((PipelinedGifOutputStream) out).writeImageData(image, colorModel);
+		} else {
+			GifImageDataBlock dataBlock = new GifImageDataBlock(image,
+					colorModel);
+			dataBlock.write(out);
+		}
+	}
+}
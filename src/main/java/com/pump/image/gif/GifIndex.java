@@ -0,0 +1,347 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.gif;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.pump.image.gif.block.GifBlock;
+import com.pump.image.gif.block.GifCommentExtension;
+import com.pump.image.gif.block.GifGlobalColorTable;
+import com.pump.image.gif.block.GifGraphicControlExtension;
+import com.pump.image.gif.block.GifGraphicControlExtension.DisposalMethod;
+import com.pump.image.gif.block.GifImageDescriptor;
+import com.pump.image.gif.block.GifLogicalScreenDescriptor;
+import com.pump.image.gif.block.GifLoopingApplicationExtension;
+import com.pump.image.gif.block.GifParser;
+import com.pump.io.MeasuredInputStream;
+
+/**
+ * This describes where every frame of a GIF file is and how it is composited,
+ * without decoding any image data.
+ * <P>
+ * Creating an index requires one pass that skims the whole file. After that the
+ * index can tell you the number of frames, the duration, where each frame
+ * begins and which frame you need to start decoding from to render a given
+ * frame (see {@link #getKeyFrame(int)}). The {@link SeekableGifReader} uses
+ * this to jump to any frame.
+ * <P>
+ * The information is stored in a few primitive arrays, so even an index for a
+ * GIF with thousands of frames is small.
+ */
+public class GifIndex {
+
+	/** The bits in {@link #flags} that store the disposal method. */
+	private static final int FLAG_DISPOSAL_MASK = 0x07;
+	/** The flag in {@link #flags} for frames with a transparent color. */
+	private static final int FLAG_TRANSPARENT = 0x08;
+	/** The flag in {@link #flags} for frames that cover the whole image. */
+	private static final int FLAG_FULL = 0x10;
+
+	private static final DisposalMethod[] DISPOSAL_METHODS = DisposalMethod
+			.values();
+
+	final GifLogicalScreenDescriptor lsd;
+	final GifGlobalColorTable globalTable;
+	private final int loopCount;
+	private final String[] comments;
+
+	private final int frameCount;
+	/**
+	 * The position of the first block after the previous frame's image data.
+	 * Parsing from here is exactly what {@link GifReader#getNextFrame(boolean)}
+	 * does.
+	 */
+	private final long[] offsets;
+	/** Each frame's x in the lower 16 bits and y in the upper 16 bits. */
+	private final int[] positions;
+	/** Each frame's width in the lower 16 bits and height in the upper 16. */
+	private final int[] sizes;
+	/** The time (in ms) at which each frame ends. */
+	private final int[] endTimes;
+	private final byte[] flags;
+	/** See {@link #getKeyFrame(int)}. */
+	private final int[] keyFrames;
+
+	/**
+	 * Create an index by skimming a GIF file.
+	 * 
+	 * @param in
+	 *            the GIF data. This reads until the trailer block, but it does
+	 *            not close this stream.
+	 * @throws IOException
+	 *             if an IO problem occurs, or the data is not a valid GIF.
+	 */
+	public GifIndex(InputStream in) throws IOException {
+		MeasuredInputStream measured = new MeasuredInputStream(in, false);
+		GifParser p = new GifParser(measured);
+		p.readNextBlock(); // read & ignore header.
+		lsd = (GifLogicalScreenDescriptor) p.readNextBlock();
+		globalTable = lsd.hasGlobalColorTable() ? (GifGlobalColorTable) p
+				.readNextBlock() : null;
+		int width = lsd.getWidth();
+		int height = lsd.getHeight();
+
+		int loopCount = -1;
+		List<String> comments = new ArrayList<>();
+		long[] offsets = new long[16];
+		int[] positions = new int[16];
+		int[] sizes = new int[16];
+		int[] endTimes = new int[16];
+		byte[] flags = new byte[16];
+		int frameCount = 0;
+		int time = 0;
+
+		long offset = measured.getReadBytes();
+		GifGraphicControlExtension gce = null;
+		GifImageDescriptor descriptor = null;
+		int type;
+		while ((type = p.getNextBlockType()) != -1) {
+			if (type == GifBlock.GRAPHIC_CONTROL_EXTENSION) {
+				gce = (GifGraphicControlExtension) p.readNextBlock();
+			} else if (type == GifBlock.IMAGE_DESCRIPTOR) {
+				descriptor = (GifImageDescriptor) p.readNextBlock();
+			} else if (type == GifBlock.APPLICATION_EXTENSION
+					|| type == GifBlock.COMMENT_EXTENSION) {
+				GifBlock b = p.readNextBlock();
+				if (b instanceof GifLoopingApplicationExtension) {
+					loopCount = ((GifLoopingApplicationExtension) b)
+							.getLoopCount();
+				} else if (b instanceof GifCommentExtension) {
+					comments.add(((GifCommentExtension) b).getText());
+				}
+			} else if (type == GifBlock.IMAGE_DATA) {
+				p.skipNextBlock();
+				if (frameCount == offsets.length) {
+					int newLength = frameCount * 2;
+					offsets = Arrays.copyOf(offsets, newLength);
+					positions = Arrays.copyOf(positions, newLength);
+					sizes = Arrays.copyOf(sizes, newLength);
+					endTimes = Arrays.copyOf(endTimes, newLength);
+					flags = Arrays.copyOf(flags, newLength);
+				}
+				int x = descriptor.getX();
+				int y = descriptor.getY();
+				int w = descriptor.getWidth();
+				int h = descriptor.getHeight();
+				int f = 0;
+				if (gce != null) {
+					time += gce.getDelayTime() * 10;
+					f |= gce.getDisposalMethod().ordinal();
+					if (gce.getTransparentColorIndex() != -1)
+						f |= FLAG_TRANSPARENT;
+				}
+				if (x <= 0 && y <= 0 && x + w >= width && y + h >= height)
+					f |= FLAG_FULL;
+				offsets[frameCount] = offset;
+				positions[frameCount] = (x & 0xffff) | (y << 16);
+				sizes[frameCount] = (w & 0xffff) | (h << 16);
+				endTimes[frameCount] = time;
+				flags[frameCount] = (byte) f;
+				frameCount++;
+
+				offset = measured.getReadBytes();
+				gce = null;
+				descriptor = null;
+			} else {
+				p.skipNextBlock();
+			}
+		}
+
+		this.loopCount = loopCount;
+		this.comments = comments.toArray(new String[comments.size()]);
+		this.frameCount = frameCount;
+		this.offsets = Arrays.copyOf(offsets, frameCount);
+		this.positions = Arrays.copyOf(positions, frameCount);
+		this.sizes = Arrays.copyOf(sizes, frameCount);
+		this.endTimes = Arrays.copyOf(endTimes, frameCount);
+		this.flags = Arrays.copyOf(flags, frameCount);
+		keyFrames = createKeyFrames();
+	}
+
+	/**
+	 * Calculate the elements of {@link #keyFrames}.
+	 * <P>
+	 * The image before frame <code>j</code> is rendered depends on the frame
+	 * before it: if that frame covered the whole image with opaque pixels (and
+	 * wasn't disposed with <code>PREVIOUS</code>) then rendering that one frame
+	 * onto a blank image reproduces it. If it was disposed by restoring the
+	 * whole image to transparent pixels, then that image is blank. Otherwise we
+	 * have to look further back.
+	 */
+	private int[] createKeyFrames() {
+		// the frame to start decoding from to reconstruct the image as it is
+		// immediately before a frame is rendered:
+		int[] start = new int[frameCount];
+		for (int j = 1; j < frameCount; j++) {
+			int f = j - 1;
+			boolean full = (flags[f] & FLAG_FULL) != 0;
+			boolean transparent = (flags[f] & FLAG_TRANSPARENT) != 0;
+			DisposalMethod disposal = getDisposalMethod(f);
+			if (disposal == DisposalMethod.RESTORE_BACKGROUND && full) {
+				start[j] = transparent ? j : f;
+			} else if (disposal != DisposalMethod.PREVIOUS
+					&& disposal != DisposalMethod.RESTORE_BACKGROUND && full
+					&& !transparent) {
+				start[j] = f;
+			} else {
+				start[j] = start[f];
+			}
+		}
+
+		int[] keyFrames = new int[frameCount];
+		for (int j = 0; j < frameCount; j++) {
+			if ((flags[j] & (FLAG_FULL | FLAG_TRANSPARENT)) == FLAG_FULL) {
+				keyFrames[j] = j;
+			} else {
+				keyFrames[j] = start[j];
+			}
+		}
+		return keyFrames;
+	}
+
+	/**
+	 * Return the number of frames in this GIF.
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Return the duration of this GIF in milliseconds.
+	 */
+	public int getDuration() {
+		return frameCount == 0 ? 0 : endTimes[frameCount - 1];
+	}
+
+	/**
+	 * Return the number of times this animation should loop, or
+	 * {@link com.pump.animation.AnimationReader#LOOP_FOREVER}. If the GIF does
+	 * not specify this then this returns 1.
+	 */
+	public int getLoopCount() {
+		return loopCount == -1 ? 1 : loopCount;
+	}
+
+	/**
+	 * Return the width of this GIF in pixels.
+	 */
+	public int getWidth() {
+		return lsd.getWidth();
+	}
+
+	/**
+	 * Return the height of this GIF in pixels.
+	 */
+	public int getHeight() {
+		return lsd.getHeight();
+	}
+
+	/**
+	 * Return all the comments in this GIF.
+	 */
+	public String[] getComments() {
+		return comments.clone();
+	}
+
+	/**
+	 * Return the byte offset where the blocks that describe a frame begin.
+	 * Parsing from this offset (see
+	 * {@link GifParser#GifParser(InputStream, GifLogicalScreenDescriptor, GifGlobalColorTable)}
+	 * ) returns the same blocks {@link GifReader} reads for this frame.
+	 */
+	public long getFrameOffset(int frameIndex) {
+		return offsets[frameIndex];
+	}
+
+	/**
+	 * Return the bounds of a frame as they appear in its image descriptor. This
+	 * may extend outside the bounds of the GIF.
+	 */
+	public Rectangle getFrameBounds(int frameIndex) {
+		int pos = positions[frameIndex];
+		int size = sizes[frameIndex];
+		return new Rectangle(pos & 0xffff, pos >>> 16, size & 0xffff,
+				size >>> 16);
+	}
+
+	/**
+	 * Return how a frame is disposed before the next frame is rendered.
+	 */
+	public DisposalMethod getDisposalMethod(int frameIndex) {
+		return DISPOSAL_METHODS[flags[frameIndex] & FLAG_DISPOSAL_MASK];
+	}
+
+	/**
+	 * Return whether a frame has a transparent color, so it may show some of
+	 * the frames before it.
+	 */
+	public boolean isTransparent(int frameIndex) {
+		return (flags[frameIndex] & FLAG_TRANSPARENT) != 0;
+	}
+
+	/**
+	 * Return the time (in ms) a frame starts.
+	 */
+	public int getFrameStartTime(int frameIndex) {
+		return frameIndex == 0 ? 0 : endTimes[frameIndex - 1];
+	}
+
+	/**
+	 * Return the duration (in ms) of a frame.
+	 */
+	public int getFrameDuration(int frameIndex) {
+		return endTimes[frameIndex] - getFrameStartTime(frameIndex);
+	}
+
+	/**
+	 * Return the frame that is visible at a given time.
+	 * 
+	 * @param time
+	 *            the time in milliseconds. This is clamped to the duration of
+	 *            this GIF.
+	 * @return the index of the frame that is visible at the given time, or -1
+	 *         if there are no frames.
+	 */
+	public int getFrameIndex(int time) {
+		if (frameCount == 0)
+			return -1;
+		// find the first frame that ends after the time
+		int i = Arrays.binarySearch(endTimes, 0, frameCount, time);
+		if (i >= 0) {
+			// skip past zero-duration frames that end at the same time
+			while (i < frameCount && endTimes[i] == time)
+				i++;
+		} else {
+			i = -i - 1;
+		}
+		return Math.min(i, frameCount - 1);
+	}
+
+	/**
+	 * Return the first frame you need to decode to render a frame.
+	 * <P>
+	 * Decoding the frames from this index up to <code>frameIndex</code> onto a
+	 * blank (transparent) image produces exactly the same image as decoding
+	 * every frame from the beginning of the file.
+	 * 
+	 * @param frameIndex
+	 *            the frame to render.
+	 * @return an index between 0 and <code>frameIndex</code>.
+	 */
+	public int getKeyFrame(int frameIndex) {
+		return keyFrames[frameIndex];
+	}
+}
@@ -12,6 +12,7 @@ package com.pump.image.gif;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -48,7 +49,8 @@ import com.pump.image.gif.block.GifPlainTextExtension;
  * <P>
  * This class does not "look ahead" any more than it has to to prepare this
  * information, so it has no way of knowing how many frames there are without
- * iterating through the entire <code>InputStream</code>.
+ * iterating through the entire <code>InputStream</code>. (If you need random
+ * access to frames, see {@link SeekableGifReader}.)
  * <P>
  * Also to minimize the memory this class allocates, this object will not keep
  * any data in memory from previous frames: once you've called
@@ -364,8 +366,15 @@ public class GifReader implements AnimationReader, GifConstants {
 
 	public GifReader(File file) throws IOException {
 		this(new FileInputStream(file), true);
-		frameCount = getFrameCount(file);
-		duration = getDuration(file);
+		// one pass measures both the frame count and the duration
+		try (InputStream in = new BufferedInputStream(new FileInputStream(
+				file))) {
+			GifIndex index = new GifIndex(in);
+			frameCount = index.getFrameCount();
+			duration = index.getDuration();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	public int getFrameCount() {
@@ -604,7 +613,8 @@ public class GifReader implements AnimationReader, GifConstants {
 						x2 - x1, y2 - y1, null);
 			}
 
-			byte[] data = imageData.getUncompressedBytes();
+			byte[] data = imageData.getUncompressedBytes(imageDescriptor
+					.getWidth() * imageDescriptor.getHeight());
 			if (imageDescriptor.isInterlaced()) {
 				GifInterlace.decode(data, imageDescriptor.getWidth(),
 						imageDescriptor.getHeight());
@@ -636,7 +646,8 @@ public class GifReader implements AnimationReader, GifConstants {
 			if (x2 - x1 == 0 && y2 - y1 == 0)
 				return;
 			if (previous != null) {
-				image.getRaster().setDataElements(x1, y1, x2, y2, previous);
+				image.getRaster().setDataElements(x1, y1, x2 - x1, y2 - y1,
+						previous);
 				return;
 			}
 
@@ -16,7 +16,15 @@ import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.pump.animation.AnimationReader;
 import com.pump.animation.CachedAnimation;
@@ -63,6 +71,110 @@ public class GifWriter {
 
 	public static void write(OutputStream out, AnimationReader animation,
 			ColorReduction colorReduction, boolean close) throws IOException {
+		write(out, animation, colorReduction, close, null, null, 0);
+	}
+
+	/**
+	 * Write an animation as a GIF using several threads.
+	 * <p>
+	 * The calling thread reads frames from the animation. Local color palettes
+	 * are calculated on the <code>quantizeExecutor</code> for up to
+	 * <code>maxPendingFrames</code> frames ahead of the frame being encoded.
+	 * The image data of each frame is quantized on the
+	 * <code>quantizeExecutor</code> and LZW-encoded on the
+	 * <code>encodeExecutor</code>, and one writer thread writes each frame in
+	 * order as soon as it is ready. When <code>maxPendingFrames</code> frames
+	 * are waiting to be written the calling thread waits for the oldest one,
+	 * which bounds the memory this uses.
+	 * <p>
+	 * The GIF this writes is identical to the GIF
+	 * {@link #write(OutputStream, AnimationReader, ColorReduction, boolean)}
+	 * writes.
+	 * 
+	 * @param out
+	 *            the stream to write the GIF to.
+	 * @param animation
+	 *            the animation to write.
+	 * @param colorReduction
+	 *            how to calculate color palettes.
+	 * @param close
+	 *            whether to close <code>out</code> when finished.
+	 * @param quantizeExecutor
+	 *            the executor used to calculate palettes and reduce frames to
+	 *            them. If this is null then the common
+	 *            <code>ForkJoinPool</code> is used.
+	 * @param encodeExecutor
+	 *            the executor used to LZW-encode frames. If this is null then
+	 *            the common <code>ForkJoinPool</code> is used.
+	 * @param maxPendingFrames
+	 *            the maximum number of frames that may be in progress at once.
+	 *            If this is zero or negative then a default based on the
+	 *            number of processors is used.
+	 */
+	public static void writePipelined(OutputStream out,
+			AnimationReader animation, ColorReduction colorReduction,
+			boolean close, Executor quantizeExecutor, Executor encodeExecutor,
+			int maxPendingFrames) throws IOException {
+		if (quantizeExecutor == null)
+			quantizeExecutor = ForkJoinPool.commonPool();
+		if (encodeExecutor == null)
+			encodeExecutor = ForkJoinPool.commonPool();
+		if (maxPendingFrames <= 0)
+			maxPendingFrames = 2 * Runtime.getRuntime().availableProcessors();
+		write(out, animation, colorReduction, close, quantizeExecutor,
+				encodeExecutor, maxPendingFrames);
+	}
+
+	/**
+	 * A frame that has been read but not yet passed to a GifWriter.
+	 */
+	private static class PendingFrame {
+		final BufferedImage image;
+		final int durationMillis;
+		final Future<IndexColorModel> localPalette;
+
+		PendingFrame(BufferedImage image, int durationMillis,
+				Future<IndexColorModel> localPalette) {
+			this.image = image;
+			this.durationMillis = durationMillis;
+			this.localPalette = localPalette;
+		}
+
+		void write(GifWriter writer) throws IOException {
+			IndexColorModel palette;
+			try {
+				palette = localPalette == null ? null : localPalette.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable t = e.getCause();
+				if (t instanceof RuntimeException)
+					throw (RuntimeException) t;
+				if (t instanceof Error)
+					throw (Error) t;
+				throw new IOException(t);
+			}
+			writer.write(image, durationMillis, palette);
+		}
+	}
+
+	private static IndexColorModel createPalette(BufferedImage bi) {
+		ColorSet localColors = new ColorSet();
+		localColors.addColors(bi);
+		ColorSet localReducedColors = new BiasedMedianCutColorQuantization()
+				.createReducedSet(localColors, 255, false);
+		return localReducedColors.createIndexColorModel(true, true);
+	}
+
+	/**
+	 * @param quantizeExecutor
+	 *            if this is null then everything happens on this thread.
+	 */
+	private static void write(OutputStream out, AnimationReader animation,
+			ColorReduction colorReduction, boolean close,
+			Executor quantizeExecutor, Executor encodeExecutor,
+			int maxPendingFrames) throws IOException {
 		if (out == null)
 			throw new NullPointerException();
 		if (animation == null)
@@ -70,16 +182,19 @@ public class GifWriter {
 		if (colorReduction == null)
 			throw new NullPointerException();
 
+		boolean pipelined = quantizeExecutor != null;
 		BiasedMedianCutColorQuantization reducer = new BiasedMedianCutColorQuantization();
 
 		CachedAnimation manufacturedAnimation = null;
+		GifWriter writer = null;
 		try {
 			IndexColorModel globalColorModel;
 			BufferedImage bi;
 			ColorSet originalColors = new ColorSet();
+			// a pipelined writer holds on to frames, so it needs copies
 			if (ColorReduction.FROM_FIRST_FRAME.equals(colorReduction)
 					|| ColorReduction.LOCALIZE_PALETTES.equals(colorReduction)) {
-				bi = animation.getNextFrame(false);
+				bi = animation.getNextFrame(pipelined);
 				originalColors.addColors(bi);
 			} else if (ColorReduction.FROM_ALL_FRAMES.equals(colorReduction)) {
 				// make something the animation is resettable:
@@ -94,7 +209,7 @@ public class GifWriter {
 					bi = animation.getNextFrame(false);
 				}
 				((Resettable) animation).reset();
-				bi = animation.getNextFrame(false);
+				bi = animation.getNextFrame(pipelined);
 			} else {
 				throw new IllegalArgumentException(
 						"unrecognized color reduction type: " + colorReduction);
@@ -103,9 +218,15 @@ public class GifWriter {
 					255, false);
 
 			globalColorModel = reducedColors.createIndexColorModel(true, true);
-			GifWriter writer = new GifWriter(out, new Dimension(bi.getWidth(),
-					bi.getHeight()), globalColorModel,
-					animation.getLoopCount(), 0, null);
+			Dimension size = new Dimension(bi.getWidth(), bi.getHeight());
+			if (pipelined) {
+				writer = new GifWriter(out, size, globalColorModel,
+						animation.getLoopCount(), 0, null, quantizeExecutor,
+						encodeExecutor, maxPendingFrames);
+			} else {
+				writer = new GifWriter(out, size, globalColorModel,
+						animation.getLoopCount(), 0, null);
+			}
 
 			/*
 			 * In gifs: frame durations are expressed in 1/100's of a second.
@@ -114,6 +235,7 @@ public class GifWriter {
 			 */
 			double carryover = 0;
 			int frameIndex = 0;
+			Deque<PendingFrame> pendingFrames = new ArrayDeque<>();
 			while (bi != null) {
 				double actualFrameLength = animation.getFrameDuration();
 
@@ -121,18 +243,26 @@ public class GifWriter {
 				int centiseconds = (int) (adjustedFrameLength * 100);
 
 				if (centiseconds >= 2) {
-					IndexColorModel localPalette = null;
+					Future<IndexColorModel> localPalette = null;
 					if (frameIndex > 0
 							&& ColorReduction.LOCALIZE_PALETTES
 									.equals(colorReduction)) {
-						ColorSet localColors = new ColorSet();
-						localColors.addColors(bi);
-						ColorSet localReducedColors = reducer.createReducedSet(
-								localColors, 255, false);
-						localPalette = localReducedColors
-								.createIndexColorModel(true, true);
+						final BufferedImage frame = bi;
+						if (pipelined) {
+							localPalette = CompletableFuture.supplyAsync(
+									() -> createPalette(frame),
+									quantizeExecutor);
+						} else {
+							localPalette = CompletableFuture
+									.completedFuture(createPalette(frame));
+						}
+					}
+					pendingFrames.add(new PendingFrame(bi, centiseconds * 10,
+							localPalette));
+					while (pendingFrames.size() > (pipelined ? maxPendingFrames
+							: 0)) {
+						pendingFrames.removeFirst().write(writer);
 					}
-					writer.write(bi, centiseconds * 10, localPalette);
 				} else {
 					centiseconds = 0;
 				}
@@ -142,8 +272,20 @@ public class GifWriter {
 				bi = animation.getNextFrame(true);
 				frameIndex++;
 			}
+			while (!pendingFrames.isEmpty()) {
+				pendingFrames.removeFirst().write(writer);
+			}
 			writer.close(false);
+			writer = null;
 		} finally {
+			if (writer != null && writer.pipeline != null) {
+				// stop the writer thread, but the original error is more
+				// interesting than anything this might throw
+				try {
+					writer.pipeline.close();
+				} catch (Exception e) {
+				}
+			}
 			if (close) {
 				try {
 					out.close();
@@ -158,7 +300,14 @@ public class GifWriter {
 
 	IndexColorModel globalColorModel = null;
 	Dimension size;
+	/**
+	 * The stream the encoder writes to. If this writer is pipelined this is
+	 * the <code>pipeline</code>.
+	 */
 	OutputStream out;
+	/** The stream this GIF is written to. */
+	OutputStream destination;
+	PipelinedGifOutputStream pipeline;
 	GifEncoder encoder;
 	int backgroundColorIndex;
 	private boolean finished = false;
@@ -194,7 +343,68 @@ public class GifWriter {
 			IndexColorModel globalColorModel, int loopCount,
 			int backgroundColorIndex, GifEncoder customEncoder)
 			throws IOException {
-		this.out = out;
+		this(out, size, globalColorModel, loopCount, backgroundColorIndex,
+				customEncoder, null);
+	}
+
+	/**
+	 * Constructs a pipelined <code>GifWriter</code> with a global color table.
+	 * <p>
+	 * Each image passed to {@link #write(BufferedImage, int, IndexColorModel)}
+	 * is quantized on the <code>quantizeExecutor</code> and LZW-encoded on the
+	 * <code>encodeExecutor</code>, and a dedicated thread writes the encoded
+	 * frames to the output stream in order. So the images passed to this
+	 * writer must not be modified afterwards. If
+	 * <code>maxPendingFrames</code> frames are waiting to be written then
+	 * <code>write(..)</code> blocks until the oldest one is written.
+	 * <p>
+	 * The encoder must write image data using
+	 * {@link GifEncoder#writeImageData(OutputStream, BufferedImage, IndexColorModel)}
+	 * to benefit from this.
+	 * 
+	 * @param out
+	 *            the output stream to write to. This object will <i>not</i>
+	 *            close the output stream when it is finished.
+	 * @param size
+	 *            the bounds of this animation.
+	 * @param globalColorModel
+	 *            a byte-based <code>IndexColorModel</code> to use as a global
+	 *            color palette.
+	 * @param loopCount
+	 *            how many times this GIF file should loop.
+	 * @param backgroundColorIndex
+	 *            the index in the global color table to use as a background
+	 *            color
+	 * @param customEncoder
+	 *            an optional encoder.
+	 * @param quantizeExecutor
+	 *            the executor used to reduce images to their color model.
+	 * @param encodeExecutor
+	 *            the executor used to LZW-encode image data.
+	 * @param maxPendingFrames
+	 *            the maximum number of frames that may be waiting to be
+	 *            written.
+	 * @throws IOException
+	 *             if the underlying <code>OutputStream</code> has trouble
+	 *             writing any of the GIF header information.
+	 */
+	public GifWriter(OutputStream out, Dimension size,
+			IndexColorModel globalColorModel, int loopCount,
+			int backgroundColorIndex, GifEncoder customEncoder,
+			Executor quantizeExecutor, Executor encodeExecutor,
+			int maxPendingFrames) throws IOException {
+		this(out, size, globalColorModel, loopCount, backgroundColorIndex,
+				customEncoder, new PipelinedGifOutputStream(out,
+						quantizeExecutor, encodeExecutor, maxPendingFrames));
+	}
+
+	private GifWriter(OutputStream out, Dimension size,
+			IndexColorModel globalColorModel, int loopCount,
+			int backgroundColorIndex, GifEncoder customEncoder,
+			PipelinedGifOutputStream pipeline) throws IOException {
+		this.destination = out;
+		this.pipeline = pipeline;
+		this.out = pipeline == null ? out : pipeline;
 		this.size = (Dimension) size.clone();
 		this.backgroundColorIndex = backgroundColorIndex;
 		encoder = customEncoder == null ? GifEncoderFactory.get()
@@ -212,19 +422,26 @@ public class GifWriter {
 	 * This marks the end of the GIF file. You must call this method, otherwise
 	 * you will not have created a valid GIF.
 	 * <P>
-	 * Subsequent calls to add an image will throw an exception.
+	 * Subsequent calls to add an image will throw an exception, and subsequent
+	 * calls to this method do not write anything.
 	 * 
 	 * @throws IOException
 	 *             if an IO problem occurs.
 	 */
 	public void close(boolean closeOutputStream) throws IOException {
 		try {
+			// finalize() calls this too, so this must not write a second
+			// trailer
+			if (finished)
+				return;
 			encoder.flush(out);
 			finished = true;
 			(new GifTrailerBlock()).write(out);
+			if (pipeline != null)
+				pipeline.close();
 		} finally {
 			if (closeOutputStream)
-				out.close();
+				destination.close();
 		}
 	}
 
@@ -0,0 +1,136 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.gif;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.pump.animation.ResettableAnimationReader;
+import com.pump.image.gif.GifWriter.ColorReduction;
+
+/**
+ * This compares how long it takes to write a 60-frame 640x480 GIF with
+ * {@link GifWriter#write(java.io.OutputStream, com.pump.animation.AnimationReader, ColorReduction, boolean)}
+ * and with
+ * {@link GifWriter#writePipelined(java.io.OutputStream, com.pump.animation.AnimationReader, ColorReduction, boolean, java.util.concurrent.Executor, java.util.concurrent.Executor, int)}
+ * .
+ * <p>
+ * The frames are hue-shifted gradients scattered with random circles, and
+ * each row reports the median time for one {@link ColorReduction} mode. The
+ * pipelined writer uses the default executors, so its advantage depends on
+ * the number of available processors.
+ */
+class GifWriterBenchmark {
+
+	static final int SAMPLE_COUNT = 3;
+
+	static class FrameListReader implements ResettableAnimationReader {
+		final List<BufferedImage> frames;
+		int index = 0;
+
+		FrameListReader(List<BufferedImage> frames) {
+			this.frames = frames;
+		}
+
+		@Override
+		public BufferedImage getNextFrame(boolean cloneImage) {
+			return index < frames.size() ? frames.get(index++) : null;
+		}
+
+		@Override
+		public double getDuration() {
+			return frames.size() * getFrameDuration();
+		}
+
+		@Override
+		public int getFrameCount() {
+			return frames.size();
+		}
+
+		@Override
+		public int getLoopCount() {
+			return LOOP_FOREVER;
+		}
+
+		@Override
+		public double getFrameDuration() {
+			return .05;
+		}
+
+		@Override
+		public int getWidth() {
+			return frames.get(0).getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return frames.get(0).getHeight();
+		}
+
+		@Override
+		public void reset() {
+			index = 0;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<BufferedImage> frames = new ArrayList<>();
+		Random random = new Random(0);
+		for (int a = 0; a < 60; a++) {
+			BufferedImage bi = new BufferedImage(640, 480,
+					BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = bi.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setPaint(new GradientPaint(0, 0, new Color(0x2d3436), 640,
+					480, new Color(Color.HSBtoRGB(a / 60f, .5f, 1))));
+			g.fillRect(0, 0, 640, 480);
+			for (int b = 0; b < 40; b++) {
+				g.setColor(new Color(random.nextInt(0xffffff)));
+				g.fillOval(random.nextInt(640), random.nextInt(480), 60, 60);
+			}
+			g.dispose();
+			frames.add(bi);
+		}
+
+		System.out.println("Color Reduction\tSequential (ms)\tPipelined (ms)");
+		for (ColorReduction colorReduction : ColorReduction.values()) {
+			long[] sequential = new long[SAMPLE_COUNT];
+			long[] pipelined = new long[SAMPLE_COUNT];
+			for (int a = 0; a < SAMPLE_COUNT; a++) {
+				sequential[a] = System.currentTimeMillis();
+				GifWriter.write(new ByteArrayOutputStream(),
+						new FrameListReader(frames), colorReduction, true);
+				sequential[a] = System.currentTimeMillis() - sequential[a];
+
+				pipelined[a] = System.currentTimeMillis();
+				GifWriter.writePipelined(new ByteArrayOutputStream(),
+						new FrameListReader(frames), colorReduction, true,
+						null, null, 0);
+				pipelined[a] = System.currentTimeMillis() - pipelined[a];
+			}
+			Arrays.sort(sequential);
+			Arrays.sort(pipelined);
+			System.out.println(colorReduction + "\t"
+					+ sequential[SAMPLE_COUNT / 2] + "\t"
+					+ pipelined[SAMPLE_COUNT / 2]);
+		}
+	}
+}
@@ -18,7 +18,6 @@ import java.io.OutputStream;
 
 import com.pump.image.gif.block.GifGraphicControlExtension;
 import com.pump.image.gif.block.GifGraphicControlExtension.DisposalMethod;
-import com.pump.image.gif.block.GifImageDataBlock;
 import com.pump.image.gif.block.GifImageDescriptor;
 import com.pump.image.gif.block.GifLocalColorTable;
 
@@ -67,9 +66,7 @@ public class MinimalGifEncoder extends GifEncoder {
 			GifLocalColorTable ct = new GifLocalColorTable(globalColorModel);
 			ct.write(out);
 		}
-		GifImageDataBlock dataBlock = new GifImageDataBlock(image,
-				globalColorModel);
-		dataBlock.write(out);
+		writeImageData(out, image, globalColorModel);
 	}
 
 	/** This does nothing for the SimpleGifEncoder */
@@ -0,0 +1,219 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.gif;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import com.pump.image.gif.block.GifImageDataBlock;
+import com.pump.image.pixel.BufferedImageIterator;
+import com.pump.image.pixel.IndexedBytePixelIterator;
+
+/**
+ * This is the OutputStream a pipelined {@link GifWriter} gives to its
+ * {@link GifEncoder}.
+ * <p>
+ * Small blocks (such as image descriptors and color tables) are buffered as
+ * they are written. When the encoder writes image data via
+ * {@link GifEncoder#writeImageData(OutputStream, BufferedImage, IndexColorModel)}
+ * the image is quantized on one executor and LZW-encoded on another, and a
+ * placeholder for the finished block is queued. A single writer thread
+ * removes segments from that queue in order, waits for each one to finish,
+ * and writes it to the underlying stream.
+ * <p>
+ * The queue is bounded, so if encoding falls behind then the thread writing
+ * to this stream blocks until there is room.
+ */
+class PipelinedGifOutputStream extends OutputStream {
+
+	/** The segment that tells the writer thread to stop. */
+	private static final Future<byte[]> END = CompletableFuture
+			.completedFuture(new byte[0]);
+
+	final OutputStream out;
+	final Executor quantizeExecutor, encodeExecutor;
+	final BlockingQueue<Future<byte[]>> segments;
+	final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	final Thread writerThread;
+	volatile Throwable failure;
+	boolean closed = false;
+
+	/**
+	 * 
+	 * @param out
+	 *            the stream to write to. This is not closed when this object
+	 *            is closed.
+	 * @param quantizeExecutor
+	 *            the executor used to reduce images to their color model.
+	 * @param encodeExecutor
+	 *            the executor used to LZW-encode image data.
+	 * @param maxPendingFrames
+	 *            the maximum number of image data blocks that may be waiting
+	 *            to be written.
+	 */
+	PipelinedGifOutputStream(OutputStream out, Executor quantizeExecutor,
+			Executor encodeExecutor, int maxPendingFrames) {
+		if (maxPendingFrames < 1)
+			throw new IllegalArgumentException("maxPendingFrames ("
+					+ maxPendingFrames + ") must be at least 1");
+		this.out = out;
+		this.quantizeExecutor = quantizeExecutor;
+		this.encodeExecutor = encodeExecutor;
+		// each frame is an image data block and the bytes that precede it
+		segments = new ArrayBlockingQueue<>(2 * maxPendingFrames + 1);
+		writerThread = new Thread("GifWriter") {
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	private void drain() {
+		while (true) {
+			Future<byte[]> segment;
+			try {
+				segment = segments.take();
+			} catch (InterruptedException e) {
+				failure = e;
+				return;
+			}
+			if (segment == END)
+				return;
+			// after a failure keep emptying the queue, so the producer
+			// never blocks
+			if (failure != null)
+				continue;
+			try {
+				byte[] b = segment.get();
+				out.write(b);
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure;
+		if (t instanceof IOException)
+			throw (IOException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		if (t != null)
+			throw new IOException(t);
+	}
+
+	private void put(Future<byte[]> segment) throws IOException {
+		checkFailure();
+		try {
+			segments.put(segment);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void flushPending() throws IOException {
+		if (pending.size() > 0) {
+			put(CompletableFuture.completedFuture(pending.toByteArray()));
+			pending.reset();
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed)
+			throw new IOException("This stream is closed.");
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkOpen();
+		pending.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		pending.write(b, off, len);
+	}
+
+	/**
+	 * Queue a {@link GifImageDataBlock} that will be created on other threads.
+	 * 
+	 * @param image
+	 *            the image to encode. This must not be modified after this
+	 *            call.
+	 * @param colorModel
+	 *            the colors to reduce the image to.
+	 */
+	void writeImageData(final BufferedImage image,
+			final IndexColorModel colorModel) throws IOException {
+		checkOpen();
+		flushPending();
+		CompletableFuture<byte[]> block = CompletableFuture.supplyAsync(
+				() -> GifImageDataBlock.quantize(image, colorModel),
+				quantizeExecutor).thenApplyAsync(
+				(indexed) -> new GifImageDataBlock(
+						(IndexedBytePixelIterator) BufferedImageIterator
+								.get(indexed), colorModel).getBytes(),
+				encodeExecutor);
+		put(block);
+	}
+
+	/**
+	 * This queues any buffered bytes. It does not wait for them to be written.
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkOpen();
+		flushPending();
+	}
+
+	/**
+	 * Wait for every queued segment to be written and stop the writer thread.
+	 * This does not close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			flushPending();
+		} finally {
+			closed = true;
+			try {
+				segments.put(END);
+				writerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+		checkFailure();
+		out.flush();
+	}
+}
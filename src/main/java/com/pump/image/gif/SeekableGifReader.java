@@ -0,0 +1,224 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.gif;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.pump.animation.ResettableAnimationReader;
+import com.pump.image.gif.block.GifParser;
+import com.pump.io.ByteBufferInputStream;
+
+/**
+ * A {@link GifReader} that can jump to any frame.
+ * <P>
+ * This creates a {@link GifIndex} when it is constructed, so the frame count,
+ * duration and loop count are known immediately. When you ask for a frame this
+ * only decodes the frames it needs to: if the frame follows the last frame
+ * this returned then only that frame is decoded, otherwise this starts
+ * decoding at {@link GifIndex#getKeyFrame(int)}.
+ * <P>
+ * The GIF data is a <code>ByteBuffer</code>, which may be a memory-mapped file.
+ */
+public class SeekableGifReader extends GifReader implements
+		ResettableAnimationReader {
+
+	/**
+	 * Map a file into memory.
+	 */
+	private static ByteBuffer map(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			// the mapping remains valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		}
+	}
+
+	final ByteBuffer data;
+	final GifIndex index;
+
+	/** The index of the frame that is currently rendered, or -1. */
+	int frameIndex = -1;
+
+	/**
+	 * The frame that decoding started from (onto a blank image) to render the
+	 * current frame.
+	 */
+	int chainKeyFrame = 0;
+
+	/**
+	 * Create a reader for a GIF file. The file is memory-mapped.
+	 * 
+	 * @param file
+	 *            the GIF file to read.
+	 * @throws IOException
+	 *             if an IO problem occurs, or the file is not a valid GIF.
+	 */
+	public SeekableGifReader(File file) throws IOException {
+		this(map(file));
+	}
+
+	/**
+	 * Create a reader for a GIF in memory.
+	 * 
+	 * @param data
+	 *            the GIF data, from this buffer's position to its limit. This
+	 *            buffer is not modified.
+	 * @throws IOException
+	 *             if the data is not a valid GIF.
+	 */
+	public SeekableGifReader(ByteBuffer data) throws IOException {
+		this(data.slice(), new GifIndex(new ByteBufferInputStream(
+				data.slice())));
+	}
+
+	/**
+	 * Create a reader for a GIF in memory that has already been indexed.
+	 * 
+	 * @param data
+	 *            the GIF data, from this buffer's position to its limit. This
+	 *            buffer is not modified.
+	 * @param index
+	 *            the index of <code>data</code>.
+	 * @throws IOException
+	 *             if the data is not a valid GIF.
+	 */
+	public SeekableGifReader(ByteBuffer data, GifIndex index)
+			throws IOException {
+		super(new ByteBufferInputStream(data.slice()), false);
+		this.data = data.slice();
+		this.index = index;
+		frameCount = index.getFrameCount();
+		duration = index.getDuration();
+		loopCount = index.getLoopCount();
+	}
+
+	/**
+	 * Return the index this reader uses.
+	 */
+	public GifIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Return the index of the frame the last call to
+	 * {@link #getNextFrame(boolean)} or {@link #getFrame(int, boolean)}
+	 * returned, or -1.
+	 */
+	public int getFrameIndex() {
+		return frameIndex;
+	}
+
+	@Override
+	public BufferedImage getNextFrame(boolean cloneImage) throws IOException {
+		BufferedImage returnValue = super.getNextFrame(cloneImage);
+		if (returnValue != null)
+			frameIndex++;
+		return returnValue;
+	}
+
+	/**
+	 * Return a frame of this GIF.
+	 * 
+	 * @param frameIndex
+	 *            the index of the frame to return.
+	 * @param cloneImage
+	 *            if this is <code>true</code>, this method will always return a
+	 *            new <code>BufferedImage</code>. If this is <code>false</code>,
+	 *            then this method may constantly return the same
+	 *            <code>BufferedImage</code>, updated for each frame.
+	 * @return the image of the requested frame.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public BufferedImage getFrame(int frameIndex, boolean cloneImage)
+			throws IOException {
+		if (frameIndex < 0 || frameIndex >= getFrameCount())
+			throw new IndexOutOfBoundsException("frameIndex = " + frameIndex
+					+ ", frame count = " + getFrameCount());
+		int keyFrame = index.getKeyFrame(frameIndex);
+		/*
+		 * Keep decoding the current frames only if they started from this
+		 * frame's key frame or earlier. Frames decoded from a later key frame
+		 * may be missing pixels this frame needs (for example if a full-size
+		 * frame that is later restored to the previous image is a key frame).
+		 */
+		if (this.frameIndex >= frameIndex || this.frameIndex < keyFrame - 1
+				|| chainKeyFrame > keyFrame)
+			seek(keyFrame);
+		while (this.frameIndex < frameIndex - 1) {
+			getNextFrame(false);
+		}
+		return getNextFrame(cloneImage);
+	}
+
+	/**
+	 * Return the frame that is visible at a given time.
+	 * 
+	 * @param time
+	 *            the time in seconds.
+	 * @param cloneImage
+	 *            if this is <code>true</code>, this method will always return a
+	 *            new <code>BufferedImage</code>. If this is <code>false</code>,
+	 *            then this method may constantly return the same
+	 *            <code>BufferedImage</code>, updated for each frame.
+	 * @return the frame visible at the given time, or <code>null</code> if
+	 *         this GIF has no frames.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public BufferedImage getFrameAt(double time, boolean cloneImage)
+			throws IOException {
+		int i = index.getFrameIndex((int) (time * 1000));
+		if (i == -1)
+			return null;
+		return getFrame(i, cloneImage);
+	}
+
+	/**
+	 * Prepare to decode a frame onto a blank image.
+	 */
+	private void seek(int keyFrame) {
+		p = new GifParser(new ByteBufferInputStream(((ByteBuffer) data
+				.duplicate().position((int) index.getFrameOffset(keyFrame)))),
+				index.lsd, index.globalTable);
+		finished = false;
+		frame = null;
+		frameIndex = keyFrame - 1;
+		chainKeyFrame = keyFrame;
+		if (bi != null) {
+			Graphics2D g = bi.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Return to the beginning of this GIF.
+	 */
+	@Override
+	public void reset() {
+		seek(0);
+	}
+
+	@Override
+	public String[] getComments() {
+		return index.getComments();
+	}
+}
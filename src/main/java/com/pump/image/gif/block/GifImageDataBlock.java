@@ -16,12 +16,15 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import com.pump.image.gif.lzw.LZWInputStream;
 import com.pump.image.gif.lzw.LZWOutputStream;
 import com.pump.image.pixel.IndexedBytePixelIterator;
 import com.pump.image.pixel.quantize.ColorLUT;
+import com.pump.image.pixel.quantize.ErrorDiffusionImageQuantization;
 import com.pump.image.pixel.quantize.ImageQuantization;
+import com.pump.image.pixel.quantize.ParallelErrorDiffusionImageQuantization;
 
 /**
  * A block of rasterized image data, encoded via LZW compression.
@@ -36,6 +39,30 @@ import com.pump.image.pixel.quantize.ImageQuantization;
  * considered the real "graphic rendering block".
  */
 public class GifImageDataBlock extends GifBlock {
+
+	/**
+	 * This produces the same pixels as
+	 * {@link ImageQuantization#MOST_DIFFUSION}, but on several threads.
+	 */
+	private static final ImageQuantization QUANTIZATION = new ParallelErrorDiffusionImageQuantization(
+			(ErrorDiffusionImageQuantization) ImageQuantization.MOST_DIFFUSION,
+			false);
+
+	/**
+	 * The most recently used ColorLUT. Creating one is expensive, and the
+	 * frames of an animation usually share the same color model.
+	 */
+	private static volatile ColorLUT lastColorLUT;
+
+	private static ColorLUT getColorLUT(IndexColorModel colorModel) {
+		ColorLUT lut = lastColorLUT;
+		if (lut == null || lut.getIndexColorModel() != colorModel) {
+			lut = new ColorLUT(colorModel, true);
+			lastColorLUT = lut;
+		}
+		return lut;
+	}
+
 	byte[] encodedData;
 	int minimumLZWCodeSize;
 
@@ -66,9 +93,8 @@ public class GifImageDataBlock extends GifBlock {
 		int w = src.getWidth();
 		int h = src.getHeight();
 
-		ColorLUT lut = new ColorLUT(colorModel);
-		IndexedBytePixelIterator iter = ImageQuantization.MOST_DIFFUSION
-				.createImageData(src, lut);
+		ColorLUT lut = getColorLUT(colorModel);
+		IndexedBytePixelIterator iter = QUANTIZATION.createImageData(src, lut);
 
 		byte[] block = new byte[w];
 
@@ -89,6 +115,26 @@ public class GifImageDataBlock extends GifBlock {
 		}
 	}
 
+	/**
+	 * Reduce an image to a color model the same way
+	 * {@link #GifImageDataBlock(BufferedImage, IndexColorModel)} does. This
+	 * lets the quantization and the LZW encoding happen at different times
+	 * (or on different threads): the image this returns can be passed to
+	 * {@link #GifImageDataBlock(IndexedBytePixelIterator, IndexColorModel)}
+	 * via {@link com.pump.image.pixel.BufferedImageIterator}.
+	 * 
+	 * @param src
+	 *            the image to quantize.
+	 * @param colorModel
+	 *            the colors to use.
+	 * @return a <code>TYPE_BYTE_INDEXED</code> image using
+	 *         <code>colorModel</code>.
+	 */
+	public static BufferedImage quantize(BufferedImage src,
+			IndexColorModel colorModel) {
+		return QUANTIZATION.createImage(src, getColorLUT(colorModel));
+	}
+
 	/**
 	 * This returns the number of bits you'll need to represent all the colors
 	 * in a color model, or this throws an exception if there are over 256
@@ -170,4 +216,26 @@ public class GifImageDataBlock extends GifBlock {
 			return null;
 		}
 	}
+
+	/**
+	 * Decode up to a known number of bytes (usually the width times the height
+	 * of the image descriptor). This is much faster than
+	 * {@link #getUncompressedBytes()}.
+	 * 
+	 * @param length
+	 *            the maximum number of bytes to decode.
+	 * @return the decoded bytes. This array is shorter than
+	 *         <code>length</code> if the data ended early.
+	 */
+	public byte[] getUncompressedBytes(int length) {
+		byte[] dest = new byte[length];
+		try {
+			int t = LZWInputStream.decode(encodedData, 0, encodedData.length,
+					minimumLZWCodeSize, dest, 0, length);
+			return t == length ? dest : Arrays.copyOf(dest, t);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
 }
\ No newline at end of file
@@ -38,6 +38,29 @@ public class GifParser {
 		this.in = in;
 	}
 
+	/**
+	 * Creates a <code>GifParser</code> that resumes parsing in the middle of a
+	 * GIF file.
+	 * 
+	 * @param in
+	 *            a stream positioned after the global color table, or
+	 *            immediately after an image data block. This is <i>not</i>
+	 *            closed, unless you explicitly call the <code>close()</code>
+	 *            method.
+	 * @param lsd
+	 *            the logical screen descriptor of the file.
+	 * @param globalTable
+	 *            the global color table of the file, or <code>null</code> if
+	 *            there isn't one.
+	 */
+	public GifParser(InputStream in, GifLogicalScreenDescriptor lsd,
+			GifGlobalColorTable globalTable) {
+		this(in);
+		this.lsd = lsd;
+		this.globalTable = globalTable;
+		readHeader = true;
+	}
+
 	private GifHeaderBlock readHeader() throws IOException {
 		byte[] b = new byte[6];
 		read2(b, false);
@@ -0,0 +1,103 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.gif.lzw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This compares how long it takes to LZW-encode and decode a 1920x1080 raster
+ * one byte at a time and in bulk.
+ * <p>
+ * The raster is a banded gradient with a little noise, so it compresses
+ * roughly like a dithered image. Decoding is measured through an
+ * <code>LZWInputStream</code> and through {@link LZWInputStream#decode}, and
+ * each decoded raster is checked against the original.
+ */
+class LZWBenchmark {
+
+	static final int SAMPLE_COUNT = 5;
+
+	public static void main(String[] args) throws IOException {
+		int width = 1920;
+		int height = 1080;
+		byte[] raster = new byte[width * height];
+		Random random = new Random(0);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				// a banded gradient with some dithering noise
+				int v = (x / 40 + y / 30) % 200 + random.nextInt(3);
+				raster[y * width + x] = (byte) v;
+			}
+		}
+
+		long[] encodeSingle = new long[SAMPLE_COUNT];
+		long[] encodeBulk = new long[SAMPLE_COUNT];
+		long[] decodeStream = new long[SAMPLE_COUNT];
+		long[] decodeBulk = new long[SAMPLE_COUNT];
+		byte[] encoded = null;
+		for (int a = 0; a < SAMPLE_COUNT; a++) {
+			encodeSingle[a] = System.currentTimeMillis();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			LZWOutputStream out = new LZWOutputStream(bytes, 8, false);
+			for (int i = 0; i < raster.length; i++) {
+				out.write(raster[i]);
+			}
+			out.close();
+			encodeSingle[a] = System.currentTimeMillis() - encodeSingle[a];
+
+			encodeBulk[a] = System.currentTimeMillis();
+			bytes = new ByteArrayOutputStream();
+			out = new LZWOutputStream(bytes, 8, false);
+			for (int y = 0; y < height; y++) {
+				out.write(raster, y * width, width);
+			}
+			out.close();
+			encoded = bytes.toByteArray();
+			encodeBulk[a] = System.currentTimeMillis() - encodeBulk[a];
+
+			decodeStream[a] = System.currentTimeMillis();
+			byte[] dest = new byte[raster.length];
+			LZWInputStream in = new LZWInputStream(new ByteArrayInputStream(
+					encoded), 8);
+			int ctr = 0;
+			while (ctr < dest.length) {
+				int t = in.read(dest, ctr, dest.length - ctr);
+				if (t == -1)
+					break;
+				ctr += t;
+			}
+			in.close();
+			decodeStream[a] = System.currentTimeMillis() - decodeStream[a];
+
+			decodeBulk[a] = System.currentTimeMillis();
+			dest = new byte[raster.length];
+			LZWInputStream.decode(encoded, 0, encoded.length, 8, dest, 0,
+					dest.length);
+			decodeBulk[a] = System.currentTimeMillis() - decodeBulk[a];
+			if (!Arrays.equals(raster, dest))
+				throw new RuntimeException("The decoded data did not match.");
+		}
+		Arrays.sort(encodeSingle);
+		Arrays.sort(encodeBulk);
+		Arrays.sort(decodeStream);
+		Arrays.sort(decodeBulk);
+		System.out.println("Encoded size: " + encoded.length + " bytes");
+		System.out.println("Operation\tPer Byte (ms)\tBulk (ms)");
+		System.out.println("Encode\t" + encodeSingle[SAMPLE_COUNT / 2] + "\t"
+				+ encodeBulk[SAMPLE_COUNT / 2]);
+		System.out.println("Decode\t" + decodeStream[SAMPLE_COUNT / 2] + "\t"
+				+ decodeBulk[SAMPLE_COUNT / 2]);
+	}
+}
@@ -67,6 +67,11 @@ import java.io.InputStream;
  * really helped. (By "improvements" I mean: over the years I've found one or
  * two GIFs that didn't work well with the codecs Jef originally wrote, and I
  * patched up the code accordingly.)
+ * <P>
+ * If all the compressed data is already in memory, the static
+ * {@link #decode(byte[], int, int, int, byte[], int, int)} method is much
+ * faster: it writes directly into the destination array, and each table entry
+ * is only a reference to bytes that were already decoded.
  */
 public class LZWInputStream extends InputStream {
 
@@ -216,6 +221,116 @@ public class LZWInputStream extends InputStream {
 		reader.close();
 	}
 
+	/**
+	 * Decode LZW-compressed data directly into a byte array.
+	 * <P>
+	 * Every string in the LZW table is a previous string plus one byte, so
+	 * every string has already been written to <code>dest</code>. Instead of
+	 * storing strings this only stores where each string was written, and
+	 * decoding a code is a single <code>System.arraycopy</code>.
+	 * 
+	 * @param src
+	 *            the compressed data. This is not divided into subblocks.
+	 * @param srcOffset
+	 *            the index of the first byte in <code>src</code> to read.
+	 * @param srcLength
+	 *            the number of bytes in <code>src</code> to read.
+	 * @param initSize
+	 *            the initial code size, see
+	 *            {@link #LZWInputStream(InputStream, int)}.
+	 * @param dest
+	 *            the array to store decompressed data in.
+	 * @param destOffset
+	 *            the index of the first byte in <code>dest</code> to write.
+	 * @param destLength
+	 *            the maximum number of bytes to write. Decoding stops as soon
+	 *            as this many bytes have been written.
+	 * @return the number of bytes written to <code>dest</code>. This is less
+	 *         than <code>destLength</code> if the end-of-file code (or the end
+	 *         of <code>src</code>) is reached first.
+	 * @throws IOException
+	 *             if the data contains a code that is not defined.
+	 */
+	public static int decode(byte[] src, int srcOffset, int srcLength,
+			int initSize, byte[] dest, int destOffset, int destLength)
+			throws IOException {
+		int clearCode = 1 << initSize;
+		int eofCode = clearCode + 1;
+		// where each string starts in dest, and how long it is
+		int[] offsets = new int[4096];
+		int[] lengths = new int[4096];
+
+		int srcPos = srcOffset;
+		int srcEnd = srcOffset + srcLength;
+		int pos = destOffset;
+		int end = destOffset + destLength;
+
+		int bits = 0;
+		int bitCount = 0;
+		int n_bits = initSize + 1;
+		int availableCode = eofCode + 1;
+		int lastCode = -1;
+		int lastPos = 0;
+		int lastLength = 0;
+		while (pos < end) {
+			while (bitCount < n_bits) {
+				if (srcPos == srcEnd) {
+					// Some GIFs simply stop... without an EOF code.
+					return pos - destOffset;
+				}
+				bits |= (src[srcPos++] & 0xff) << bitCount;
+				bitCount += 8;
+			}
+			int code = bits & ((1 << n_bits) - 1);
+			bits >>>= n_bits;
+			bitCount -= n_bits;
+
+			if (code == clearCode) {
+				n_bits = initSize + 1;
+				availableCode = eofCode + 1;
+				lastCode = -1;
+				continue;
+			} else if (code == eofCode) {
+				break;
+			}
+
+			int start = pos;
+			int length;
+			if (code < clearCode) {
+				length = 1;
+				dest[pos++] = (byte) code;
+			} else if (code < availableCode) {
+				length = lengths[code];
+				int n = Math.min(length, end - pos);
+				System.arraycopy(dest, offsets[code], dest, pos, n);
+				pos += n;
+			} else if (code == availableCode && lastCode != -1) {
+				// the code we're about to define: OLD_CODE + CHARACTER
+				length = lastLength + 1;
+				int n = Math.min(lastLength, end - pos);
+				System.arraycopy(dest, lastPos, dest, pos, n);
+				pos += n;
+				if (pos < end)
+					dest[pos++] = dest[lastPos];
+			} else {
+				throw new IOException("Code " + code + " not in table.");
+			}
+
+			if (lastCode != -1 && availableCode < 4096) {
+				// add OLD_CODE + CHARACTER to table:
+				offsets[availableCode] = lastPos;
+				lengths[availableCode] = lastLength + 1;
+				availableCode++;
+				if (availableCode == (1 << n_bits) && n_bits < 12)
+					n_bits++;
+			}
+			lastCode = code;
+			lastPos = start;
+			lastLength = length;
+		}
+		return pos - destOffset;
+	}
+
 	public int available() throws IOException {
 		if (outgoingData == null)
 			return 0;
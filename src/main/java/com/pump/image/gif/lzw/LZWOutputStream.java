@@ -12,6 +12,8 @@ package com.pump.image.gif.lzw;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * This is encoder analogous to the
@@ -37,6 +39,12 @@ import java.io.OutputStream;
  * <code>writeFewestBytes()</code> method, which makes a kind of lossy GIF
  * compression possible. This considers several possible values, and if possible
  * it writes the first code in the list that will yield some compression.
+ * <P>
+ * For bulk data you should call {@link #write(byte[], int, int)} or
+ * {@link #write(ByteBuffer)}: these walk the dictionary in a single loop
+ * instead of one method call per byte. Either way the encoded bytes are
+ * collected in an internal buffer and passed to the underlying stream in large
+ * chunks.
  * 
  */
 public class LZWOutputStream extends OutputStream {
@@ -101,13 +109,21 @@ public class LZWOutputStream extends OutputStream {
 	public void finish() throws IOException {
 		if (finished)
 			throw new IOException("This stream has already been finished.");
-		// Put out the final code.
-		output(ent);
+		// Put out the final code. (If nothing was written there isn't one.)
+		if (ent != -1)
+			output(ent);
 		output(EOFCode);
 		finished = true;
+		flushBuffer();
 	}
 
+	/**
+	 * This passes every complete byte encoded so far to the underlying stream
+	 * and flushes it. Up to 7 bits may remain pending until more data is
+	 * written or this stream is finished.
+	 */
 	public void flush() throws IOException {
+		flushBuffer();
 		out.flush();
 	}
 
@@ -202,6 +218,86 @@ public class LZWOutputStream extends OutputStream {
 		return preferredIndex;
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished)
+			throw new IOException(
+					"This stream has already been closed.  You cannot write data to a closed OutputStream.");
+		if (off < 0 || len < 0 || off + len > b.length)
+			throw new IndexOutOfBoundsException("off = " + off + ", len = "
+					+ len + ", b.length = " + b.length);
+		int end = off + len;
+		if (off == end)
+			return;
+
+		int ent = this.ent;
+		if (ent == -1)
+			ent = b[off++] & 0xff;
+
+		// this is the same algorithm as write(int), but with the state in
+		// local variables:
+		int[] htab = this.htab;
+		int[] codetab = this.codetab;
+		int hshift = this.hshift;
+		int hsize_reg = this.hsize_reg;
+		int maxbits = this.maxbits;
+		bytes: for (int k = off; k < end; k++) {
+			int c = b[k] & 0xff;
+			int fcode = (c << maxbits) + ent;
+			int i = (c << hshift) ^ ent; // xor hashing
+
+			if (htab[i] == fcode) {
+				ent = codetab[i];
+				continue;
+			} else if (htab[i] >= 0) {
+				// non-empty slot
+				int disp = i == 0 ? 1 : hsize_reg - i;
+				do {
+					if ((i -= disp) < 0)
+						i += hsize_reg;
+
+					if (htab[i] == fcode) {
+						ent = codetab[i];
+						continue bytes;
+					}
+				} while (htab[i] >= 0);
+			}
+			output(ent);
+			ent = c;
+			if (free_ent < maxmaxcode) {
+				codetab[i] = free_ent++; // code -> hashtable
+				htab[i] = fcode;
+			} else {
+				clearHashTable();
+			}
+		}
+		this.ent = ent;
+	}
+
+	/**
+	 * Write all the remaining bytes in a buffer. When this returns the
+	 * buffer's position will equal its limit.
+	 * 
+	 * @param src
+	 *            the bytes to write.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public void write(ByteBuffer src) throws IOException {
+		if (src.hasArray()) {
+			int pos = src.position();
+			write(src.array(), src.arrayOffset() + pos, src.remaining());
+			src.position(src.limit());
+		} else {
+			byte[] chunk = new byte[Math.min(src.remaining(), 8192)];
+			while (src.hasRemaining()) {
+				int len = Math.min(chunk.length, src.remaining());
+				src.get(chunk, 0, len);
+				write(chunk, 0, len);
+			}
+		}
+	}
+
 	public void write(int c) throws IOException {
 		if (finished)
 			throw new IOException(
@@ -340,7 +436,16 @@ public class LZWOutputStream extends OutputStream {
 			0x003F, 0x007F, 0x00FF, 0x01FF, 0x03FF, 0x07FF, 0x0FFF, 0x1FFF,
 			0x3FFF, 0x7FFF, 0xFFFF };
 
-	byte[] ARRAY_1 = new byte[1];
+	/** Complete bytes that have not been passed to the underlying stream. */
+	private byte[] buffer = new byte[4096];
+	private int bufferLength = 0;
+
+	private void flushBuffer() throws IOException {
+		if (bufferLength > 0) {
+			out.write(buffer, 0, bufferLength);
+			bufferLength = 0;
+		}
+	}
 
 	private void output(int code) throws IOException {
 		cur_accum &= masks[cur_bits];
@@ -353,8 +458,9 @@ public class LZWOutputStream extends OutputStream {
 		cur_bits += n_bits;
 
 		while (cur_bits >= 8) {
-			ARRAY_1[0] = (byte) (cur_accum & 0xff);
-			out.write(ARRAY_1);
+			if (bufferLength == buffer.length)
+				flushBuffer();
+			buffer[bufferLength++] = (byte) (cur_accum & 0xff);
 			cur_accum >>= 8;
 			cur_bits -= 8;
 		}
@@ -377,7 +483,9 @@ public class LZWOutputStream extends OutputStream {
 		if (code == EOFCode) {
 			// At EOF, write the rest of the buffer.
 			while (cur_bits > 0) {
-				out.write(new byte[] { (byte) (cur_accum & 0xff) });
+				if (bufferLength == buffer.length)
+					flushBuffer();
+				buffer[bufferLength++] = (byte) (cur_accum & 0xff);
 				cur_accum >>= 8;
 				cur_bits -= 8;
 			}
@@ -403,7 +511,6 @@ public class LZWOutputStream extends OutputStream {
 	 *            the number of entries to iterate through
 	 */
 	private void resetCodeTable(int hsize) {
-		for (int i = 0; i < hsize; ++i)
-			htab[i] = -1;
+		Arrays.fill(htab, 0, hsize, -1);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.jpeg;
+
+/**
+ * One color component of a JPEG frame, plus the decoding state that belongs to
+ * it.
+ */
+class JPEGComponent {
+	final int id, h, v, quantizationTableIndex;
+
+	JPEGHuffmanTable dcTable, acTable;
+	int dcPredictor;
+
+	/**
+	 * The number of blocks in a row of this component, padded to a whole
+	 * number of MCUs.
+	 */
+	int blocksPerLine;
+
+	/**
+	 * The number of block rows in this component, padded to a whole number of
+	 * MCUs.
+	 */
+	int blocksPerColumn;
+
+	/**
+	 * The number of blocks that actually contain image data in a row and
+	 * column. Non-interleaved scans only visit these.
+	 */
+	int usedBlocksPerLine, usedBlocksPerColumn;
+
+	/**
+	 * The quantized coefficients. Depending on the decoding mode this is
+	 * either one row of MCUs or the whole image.
+	 */
+	short[] coefficients;
+
+	/**
+	 * The decoded (and possibly downscaled) samples of one row of MCUs.
+	 */
+	byte[] samples;
+	int samplesStride;
+
+	/**
+	 * For each output column: the index of the sample to read from a row in
+	 * <code>samples</code>.
+	 */
+	int[] columnMap;
+
+	JPEGComponent(int id, int h, int v, int quantizationTableIndex) {
+		this.id = id;
+		this.h = h;
+		this.v = v;
+		this.quantizationTableIndex = quantizationTableIndex;
+	}
+}
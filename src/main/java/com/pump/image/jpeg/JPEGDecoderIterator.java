@@ -0,0 +1,778 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.jpeg;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+
+import com.pump.image.pixel.BytePixelIterator;
+
+/**
+ * A {@link com.pump.image.pixel.BytePixelIterator} that decodes baseline and
+ * progressive JPEGs in pure Java.
+ * <p>
+ * Unlike the {@link com.pump.image.pixel.GenericImageSinglePassIterator} this
+ * does not rely on the AWT toolkit or its "Image Fetcher" threads: all the
+ * decoding happens on the thread that calls <code>next()</code>.
+ * <p>
+ * A baseline JPEG whose first scan contains every component is decoded one row
+ * of MCUs at a time as rows are requested, so only a strip of the image is
+ * ever in memory. Progressive JPEGs (and sequential JPEGs that store each
+ * component in a separate scan) have to read every scan before the first row
+ * is complete, so they keep the quantized coefficients of the whole image (2
+ * bytes per sample) and transform them one row of MCUs at a time.
+ * <p>
+ * This can also decode at 1/2, 1/4 or 1/8 scale. The scaling happens inside
+ * the inverse DCT (see libjpeg's <code>scale_denom</code>), so a 1/8 scale
+ * thumbnail only evaluates the DC coefficient of each block. Skipped rows are
+ * not transformed at all.
+ * <p>
+ * Chroma is upsampled by replication, and embedded ICC profiles are ignored.
+ * Grayscale images are returned as <code>TYPE_BYTE_GRAY</code> and color
+ * images as <code>TYPE_3BYTE_BGR</code>. This does not support arithmetic
+ * coding, lossless or hierarchical JPEGs, 12-bit samples, or CMYK/YCCK
+ * images: in those cases <code>get()</code> throws an
+ * <code>IOException</code>.
+ */
+public class JPEGDecoderIterator implements BytePixelIterator, Closeable {
+
+	/**
+	 * Returns a <code>JPEGDecoderIterator</code> from a <code>File</code>. The
+	 * file is closed when the last row has been read, or when
+	 * {@link #close()} is called.
+	 *
+	 * @param scaleDenominator
+	 *            1, 2, 4 or 8.
+	 * @throws IOException
+	 *             if the file is not a JPEG this can decode, or if an IO
+	 *             problem occurs.
+	 */
+	public static JPEGDecoderIterator get(File file, int scaleDenominator)
+			throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			JPEGDecoderIterator iter = new JPEGDecoderIterator(in, true);
+			iter.initialize(scaleDenominator);
+			return iter;
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a <code>JPEGDecoderIterator</code> from a <code>File</code>
+	 * that is decoded at the smallest scale that is still at least
+	 * <code>targetSize</code>. The file is closed when the last row has been
+	 * read, or when {@link #close()} is called.
+	 *
+	 * @param targetSize
+	 *            the size the caller will scale the image to, or null to
+	 *            decode the image at full size.
+	 * @throws IOException
+	 *             if the file is not a JPEG this can decode, or if an IO
+	 *             problem occurs.
+	 */
+	public static JPEGDecoderIterator get(File file, Dimension targetSize)
+			throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			JPEGDecoderIterator iter = new JPEGDecoderIterator(in, true);
+			iter.initialize(getScaleDenominator(iter.width, iter.height,
+					targetSize));
+			return iter;
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a <code>JPEGDecoderIterator</code> from an
+	 * <code>InputStream</code>. The stream is not closed by this iterator.
+	 *
+	 * @param scaleDenominator
+	 *            1, 2, 4 or 8.
+	 * @throws IOException
+	 *             if the stream is not a JPEG this can decode, or if an IO
+	 *             problem occurs.
+	 */
+	public static JPEGDecoderIterator get(InputStream in, int scaleDenominator)
+			throws IOException {
+		JPEGDecoderIterator iter = new JPEGDecoderIterator(in, false);
+		iter.initialize(scaleDenominator);
+		return iter;
+	}
+
+	/**
+	 * Returns a <code>JPEGDecoderIterator</code> from an
+	 * <code>InputStream</code> that is decoded at the smallest scale that is
+	 * still at least <code>targetSize</code>. The stream is not closed by
+	 * this iterator.
+	 *
+	 * @param targetSize
+	 *            the size the caller will scale the image to, or null to
+	 *            decode the image at full size.
+	 * @throws IOException
+	 *             if the stream is not a JPEG this can decode, or if an IO
+	 *             problem occurs.
+	 */
+	public static JPEGDecoderIterator get(InputStream in, Dimension targetSize)
+			throws IOException {
+		JPEGDecoderIterator iter = new JPEGDecoderIterator(in, false);
+		iter.initialize(getScaleDenominator(iter.width, iter.height,
+				targetSize));
+		return iter;
+	}
+
+	/**
+	 * Returns the largest supported scale denominator (8, 4, 2 or 1) that
+	 * keeps an image of the given size at least as large as
+	 * <code>targetSize</code>.
+	 *
+	 * @param targetSize
+	 *            the size the image will eventually be scaled to. If this is
+	 *            null then 1 is returned.
+	 */
+	public static int getScaleDenominator(int width, int height,
+			Dimension targetSize) {
+		if (targetSize == null)
+			return 1;
+		for (int d = 8; d > 1; d /= 2) {
+			if ((width + d - 1) / d >= targetSize.width
+					&& (height + d - 1) / d >= targetSize.height)
+				return d;
+		}
+		return 1;
+	}
+
+	static class Scan {
+		JPEGComponent[] components;
+		int ss, se, ah, al;
+	}
+
+	private static final int[] CR_TO_R = new int[256];
+	private static final int[] CB_TO_B = new int[256];
+	private static final int[] CR_TO_G = new int[256];
+	private static final int[] CB_TO_G = new int[256];
+	static {
+		for (int i = 0; i < 256; i++) {
+			int k = i - 128;
+			CR_TO_R[i] = (int) Math.round(1.402 * k);
+			CB_TO_B[i] = (int) Math.round(1.772 * k);
+			CR_TO_G[i] = (int) Math.round(-0.714136 * k * 65536);
+			CB_TO_G[i] = (int) Math.round(-0.344136 * k * 65536) + 32768;
+		}
+	}
+
+	final InputStream in;
+	final boolean closeWhenDone;
+	final PushbackInputStream pushbackIn;
+	final JPEGMarkerInputStream markerIn;
+	final JPEGEntropyDecoder decoder;
+
+	final int[][] quantizationTables = new int[4][];
+	final JPEGHuffmanTable[] dcTables = new JPEGHuffmanTable[4];
+	final JPEGHuffmanTable[] acTables = new JPEGHuffmanTable[4];
+	int restartInterval;
+	int adobeTransform = -1;
+	boolean progressive;
+
+	int width, height;
+	JPEGComponent[] components;
+	int hMax, vMax, mcusPerLine, mcusPerColumn;
+	Scan firstScan;
+
+	/**
+	 * If true then the first scan contains every component, and it is decoded
+	 * one row of MCUs at a time. Otherwise every scan is decoded into
+	 * full-size coefficient arrays before any rows are returned.
+	 */
+	boolean streaming;
+	boolean colorTransform;
+	int scaleDenominator, blockSize, scaledWidth, scaledHeight,
+			rowsPerMcuRow;
+	JPEGInverseDCT idct;
+
+	int y, mcuRow, rowInMcuRow;
+	int decodedMcuRow = -1, transformedMcuRow = -1;
+	int restartsToGo;
+	boolean allScansDecoded;
+	boolean closed;
+
+	/**
+	 * Reads the markers up to and including the first start of scan.
+	 */
+	private JPEGDecoderIterator(InputStream in, boolean closeWhenDone)
+			throws IOException {
+		this.in = in;
+		this.closeWhenDone = closeWhenDone;
+		pushbackIn = new PushbackInputStream(in,
+				JPEGEntropyDecoder.BUFFER_SIZE);
+		markerIn = new JPEGMarkerInputStream(pushbackIn);
+		decoder = new JPEGEntropyDecoder(pushbackIn);
+
+		if (!JPEGMarkerInputStream.START_OF_IMAGE_MARKER.equals(markerIn
+				.getNextMarker()))
+			throw new IOException("this is not a JPEG");
+
+		while (firstScan == null) {
+			String marker = markerIn.getNextMarker();
+			if (readTableMarker(marker)) {
+				// continue
+			} else if (JPEGMarkerInputStream.BASELINE_MARKER.equals(marker)
+					|| "FFC1".equals(marker)) {
+				readFrame(readSegment());
+			} else if ("FFC2".equals(marker)) {
+				progressive = true;
+				readFrame(readSegment());
+			} else if (marker.startsWith("FFC")
+					&& !"FFC8".equals(marker) && !"FFCC".equals(marker)) {
+				throw new IOException("unsupported JPEG process (" + marker
+						+ ")");
+			} else if ("FFEE".equals(marker)) {
+				byte[] data = readSegment();
+				if (data.length >= 12 && data[0] == 'A' && data[1] == 'd'
+						&& data[2] == 'o' && data[3] == 'b' && data[4] == 'e')
+					adobeTransform = data[11] & 0xff;
+			} else if (JPEGMarkerInputStream.START_OF_SCAN_MARKER
+					.equals(marker)) {
+				if (components == null)
+					throw new IOException(
+							"the start of scan preceded the start of frame");
+				firstScan = readScan(readSegment());
+			} else if (JPEGMarkerInputStream.END_OF_IMAGE_MARKER
+					.equals(marker)) {
+				throw new IOException("no image data");
+			}
+		}
+
+		if (components.length == 3) {
+			colorTransform = adobeTransform != 0
+					&& !(components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B');
+		} else if (components.length != 1) {
+			throw new IOException("unsupported number of components ("
+					+ components.length + ")");
+		}
+		streaming = !progressive
+				&& firstScan.components.length == components.length;
+	}
+
+	/**
+	 * Reads a DQT, DHT or DRI marker.
+	 *
+	 * @return true if the marker was one of these, false if it was something
+	 *         else and was not read.
+	 */
+	private boolean readTableMarker(String marker) throws IOException {
+		if (JPEGMarkerInputStream.DEFINE_QUANTIZATION_MARKER.equals(marker)) {
+			byte[] data = readSegment();
+			int i = 0;
+			while (i < data.length) {
+				int precision = (data[i] & 0xff) >> 4;
+				int index = data[i] & 0x0f;
+				i++;
+				if (index > 3)
+					throw new IOException("illegal quantization table ("
+							+ index + ")");
+				int[] table = new int[64];
+				for (int k = 0; k < 64; k++) {
+					int value;
+					if (precision == 0) {
+						value = data[i++] & 0xff;
+					} else {
+						value = ((data[i] & 0xff) << 8) | (data[i + 1] & 0xff);
+						i += 2;
+					}
+					table[JPEGEntropyDecoder.ZIGZAG[k]] = value;
+				}
+				quantizationTables[index] = table;
+			}
+			return true;
+		} else if (JPEGMarkerInputStream.DEFINE_HUFFMAN_MARKER.equals(marker)) {
+			byte[] data = readSegment();
+			int i = 0;
+			while (i < data.length) {
+				int tableClass = (data[i] & 0xff) >> 4;
+				int index = data[i] & 0x0f;
+				i++;
+				if (index > 3)
+					throw new IOException("illegal Huffman table (" + index
+							+ ")");
+				int[] counts = new int[17];
+				int total = 0;
+				for (int k = 1; k <= 16; k++) {
+					counts[k] = data[i++] & 0xff;
+					total += counts[k];
+				}
+				byte[] values = Arrays.copyOfRange(data, i, i + total);
+				i += total;
+				JPEGHuffmanTable table = new JPEGHuffmanTable(counts, values);
+				if (tableClass == 0) {
+					dcTables[index] = table;
+				} else {
+					acTables[index] = table;
+				}
+			}
+			return true;
+		} else if ("FFDD".equals(marker)) {
+			byte[] data = readSegment();
+			restartInterval = ((data[0] & 0xff) << 8) | (data[1] & 0xff);
+			return true;
+		}
+		return false;
+	}
+
+	private byte[] readSegment() throws IOException {
+		byte[] data = new byte[markerIn.remainingMarkerLength];
+		if (markerIn.readFully(data, data.length) != data.length)
+			throw new EOFException("the marker "
+					+ markerIn.getCurrentMarker() + " was truncated");
+		return data;
+	}
+
+	private void readFrame(byte[] data) throws IOException {
+		if (components != null)
+			throw new IOException("multiple frames are not supported");
+		int precision = data[0] & 0xff;
+		if (precision != 8)
+			throw new IOException("unsupported sample precision ("
+					+ precision + ")");
+		height = ((data[1] & 0xff) << 8) | (data[2] & 0xff);
+		width = ((data[3] & 0xff) << 8) | (data[4] & 0xff);
+		if (width == 0 || height == 0)
+			throw new IOException("unsupported image size (" + width + "x"
+					+ height + ")");
+		int count = data[5] & 0xff;
+		components = new JPEGComponent[count];
+		for (int a = 0; a < count; a++) {
+			int i = 6 + 3 * a;
+			int h = (data[i + 1] & 0xff) >> 4;
+			int v = data[i + 1] & 0x0f;
+			if (count == 1) {
+				// a single component is never interleaved, so its sampling
+				// factors don't mean anything
+				h = v = 1;
+			}
+			if (h < 1 || h > 4 || v < 1 || v > 4)
+				throw new IOException("illegal sampling factors (" + h + "x"
+						+ v + ")");
+			components[a] = new JPEGComponent(data[i] & 0xff, h, v,
+					data[i + 2] & 0x03);
+			hMax = Math.max(hMax, h);
+			vMax = Math.max(vMax, v);
+		}
+		mcusPerLine = (width + 8 * hMax - 1) / (8 * hMax);
+		mcusPerColumn = (height + 8 * vMax - 1) / (8 * vMax);
+		for (JPEGComponent c : components) {
+			c.blocksPerLine = mcusPerLine * c.h;
+			c.blocksPerColumn = mcusPerColumn * c.v;
+			int componentWidth = (width * c.h + hMax - 1) / hMax;
+			int componentHeight = (height * c.v + vMax - 1) / vMax;
+			c.usedBlocksPerLine = (componentWidth + 7) / 8;
+			c.usedBlocksPerColumn = (componentHeight + 7) / 8;
+		}
+	}
+
+	private Scan readScan(byte[] data) throws IOException {
+		Scan scan = new Scan();
+		int count = data.length == 0 ? 0 : data[0] & 0xff;
+		if (count == 0 || data.length < 4 + 2 * count)
+			throw new IOException("illegal scan header");
+		scan.components = new JPEGComponent[count];
+		int i = 1;
+		for (int a = 0; a < count; a++) {
+			int id = data[i] & 0xff;
+			int tables = data[i + 1] & 0xff;
+			i += 2;
+			for (JPEGComponent c : components) {
+				if (c.id == id)
+					scan.components[a] = c;
+			}
+			JPEGComponent c = scan.components[a];
+			if (c == null)
+				throw new IOException("unknown component (" + id + ")");
+			int dcIndex = tables >> 4;
+			if (dcIndex >= dcTables.length)
+				throw new IOException("illegal Huffman table (" + dcIndex
+						+ ")");
+			c.dcTable = dcTables[dcIndex];
+			c.acTable = acTables[tables & 0x03];
+		}
+		scan.ss = data[i] & 0xff;
+		scan.se = data[i + 1] & 0xff;
+		scan.ah = (data[i + 2] & 0xff) >> 4;
+		scan.al = data[i + 2] & 0x0f;
+		if (scan.ss > scan.se || scan.se > 63)
+			throw new IOException("illegal spectral selection (" + scan.ss
+					+ "-" + scan.se + ")");
+
+		for (JPEGComponent c : scan.components) {
+			boolean needsDC = !progressive || (scan.ss == 0 && scan.ah == 0);
+			boolean needsAC = !progressive || scan.ss > 0;
+			if ((needsDC && c.dcTable == null)
+					|| (needsAC && c.acTable == null))
+				throw new IOException("missing Huffman table for component "
+						+ c.id);
+			c.dcPredictor = 0;
+		}
+		decoder.startScan();
+		restartsToGo = restartInterval;
+		return scan;
+	}
+
+	private void initialize(int scaleDenominator) throws IOException {
+		if (!(scaleDenominator == 1 || scaleDenominator == 2
+				|| scaleDenominator == 4 || scaleDenominator == 8))
+			throw new IllegalArgumentException("scaleDenominator ("
+					+ scaleDenominator + ") must be 1, 2, 4 or 8");
+		for (JPEGComponent c : components) {
+			if (quantizationTables[c.quantizationTableIndex] == null)
+				throw new IOException("missing quantization table for component "
+						+ c.id);
+		}
+		this.scaleDenominator = scaleDenominator;
+		blockSize = 8 / scaleDenominator;
+		scaledWidth = (width + scaleDenominator - 1) / scaleDenominator;
+		scaledHeight = (height + scaleDenominator - 1) / scaleDenominator;
+		rowsPerMcuRow = vMax * blockSize;
+		idct = new JPEGInverseDCT(blockSize);
+
+		for (JPEGComponent c : components) {
+			int rowLength = c.blocksPerLine * 64;
+			c.coefficients = new short[streaming ? rowLength * c.v
+					: rowLength * c.blocksPerColumn];
+			c.samplesStride = c.blocksPerLine * blockSize;
+			c.samples = new byte[c.samplesStride * c.v * blockSize];
+			c.columnMap = new int[scaledWidth];
+			for (int x = 0; x < scaledWidth; x++) {
+				c.columnMap[x] = x * c.h / hMax;
+			}
+		}
+	}
+
+	/**
+	 * Returns the denominator this image is decoded at: 1, 2, 4 or 8.
+	 */
+	public int getScaleDenominator() {
+		return scaleDenominator;
+	}
+
+	/**
+	 * Returns the dimensions of the encoded image, before any scaling is
+	 * applied.
+	 */
+	public Dimension getSourceSize() {
+		return new Dimension(width, height);
+	}
+
+	/**
+	 * Returns true if this is a progressive JPEG.
+	 */
+	public boolean isProgressive() {
+		return progressive;
+	}
+
+	@Override
+	public int getType() {
+		return components.length == 1 ? BufferedImage.TYPE_BYTE_GRAY
+				: BufferedImage.TYPE_3BYTE_BGR;
+	}
+
+	@Override
+	public boolean isOpaque() {
+		return true;
+	}
+
+	@Override
+	public int getPixelSize() {
+		return components.length == 1 ? 1 : 3;
+	}
+
+	@Override
+	public boolean isDone() {
+		return y >= scaledHeight;
+	}
+
+	@Override
+	public boolean isTopDown() {
+		return true;
+	}
+
+	@Override
+	public int getWidth() {
+		return scaledWidth;
+	}
+
+	@Override
+	public int getHeight() {
+		return scaledHeight;
+	}
+
+	@Override
+	public int getMinimumArrayLength() {
+		return scaledWidth * getPixelSize();
+	}
+
+	@Override
+	public void skip() {
+		if (isDone())
+			throw new IllegalStateException("no more rows");
+		try {
+			decodeMcuRow();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		advance();
+	}
+
+	@Override
+	public void next(byte[] dest) {
+		if (isDone())
+			throw new IllegalStateException("no more rows");
+		try {
+			decodeMcuRow();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		if (transformedMcuRow != mcuRow) {
+			transformMcuRow();
+			transformedMcuRow = mcuRow;
+		}
+		writeRow(dest, rowInMcuRow);
+		advance();
+	}
+
+	private void advance() {
+		y++;
+		rowInMcuRow++;
+		if (rowInMcuRow == rowsPerMcuRow) {
+			rowInMcuRow = 0;
+			mcuRow++;
+		}
+		if (isDone() && closeWhenDone) {
+			try {
+				close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Closes the underlying stream. Calling this before the last row has been
+	 * read stops decoding.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			in.close();
+		}
+	}
+
+	/**
+	 * Makes sure the coefficients for the current row of MCUs are available.
+	 */
+	private void decodeMcuRow() throws IOException {
+		if (closed)
+			throw new IOException("this iterator was closed");
+		if (!streaming) {
+			if (!allScansDecoded) {
+				decodeAllScans();
+				allScansDecoded = true;
+			}
+			return;
+		}
+		if (decodedMcuRow == mcuRow)
+			return;
+
+		for (JPEGComponent c : components) {
+			Arrays.fill(c.coefficients, (short) 0);
+		}
+		JPEGComponent[] scanComponents = firstScan.components;
+		for (int mcuX = 0; mcuX < mcusPerLine; mcuX++) {
+			checkRestart(scanComponents);
+			for (JPEGComponent c : scanComponents) {
+				for (int by = 0; by < c.v; by++) {
+					int offset = (by * c.blocksPerLine + mcuX * c.h) * 64;
+					for (int bx = 0; bx < c.h; bx++) {
+						decoder.decodeBlock(c, c.coefficients, offset);
+						offset += 64;
+					}
+				}
+			}
+		}
+		decodedMcuRow = mcuRow;
+	}
+
+	private void checkRestart(JPEGComponent[] scanComponents)
+			throws IOException {
+		if (restartInterval > 0) {
+			if (restartsToGo == 0) {
+				decoder.restart();
+				for (JPEGComponent c : scanComponents) {
+					c.dcPredictor = 0;
+				}
+				restartsToGo = restartInterval;
+			}
+			restartsToGo--;
+		}
+	}
+
+	/**
+	 * Decodes every scan into full-size coefficient arrays.
+	 */
+	private void decodeAllScans() throws IOException {
+		Scan scan = firstScan;
+		while (scan != null) {
+			decodeScan(scan);
+			decoder.finishScan();
+			scan = null;
+			try {
+				while (scan == null) {
+					String marker = markerIn.getNextMarker();
+					if (readTableMarker(marker)) {
+						// continue
+					} else if (JPEGMarkerInputStream.START_OF_SCAN_MARKER
+							.equals(marker)) {
+						scan = readScan(readSegment());
+					} else if (JPEGMarkerInputStream.END_OF_IMAGE_MARKER
+							.equals(marker)) {
+						return;
+					}
+				}
+			} catch (EOFException e) {
+				// a truncated file: show what we have
+				return;
+			}
+		}
+	}
+
+	private void decodeScan(Scan scan) throws IOException {
+		if (scan.components.length == 1) {
+			JPEGComponent c = scan.components[0];
+			for (int by = 0; by < c.usedBlocksPerColumn; by++) {
+				for (int bx = 0; bx < c.usedBlocksPerLine; bx++) {
+					checkRestart(scan.components);
+					decodeBlock(scan, c, (by * c.blocksPerLine + bx) * 64);
+				}
+			}
+			return;
+		}
+		for (int mcuY = 0; mcuY < mcusPerColumn; mcuY++) {
+			for (int mcuX = 0; mcuX < mcusPerLine; mcuX++) {
+				checkRestart(scan.components);
+				for (JPEGComponent c : scan.components) {
+					for (int by = 0; by < c.v; by++) {
+						int offset = ((mcuY * c.v + by) * c.blocksPerLine + mcuX
+								* c.h) * 64;
+						for (int bx = 0; bx < c.h; bx++) {
+							decodeBlock(scan, c, offset);
+							offset += 64;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void decodeBlock(Scan scan, JPEGComponent c, int offset)
+			throws IOException {
+		if (!progressive) {
+			decoder.decodeBlock(c, c.coefficients, offset);
+		} else if (scan.ss == 0) {
+			decoder.decodeDCProgressive(c, c.coefficients, offset, scan.ah,
+					scan.al);
+		} else if (scan.ah == 0) {
+			decoder.decodeACFirst(c, c.coefficients, offset, scan.ss,
+					scan.se, scan.al);
+		} else {
+			decoder.decodeACRefine(c, c.coefficients, offset, scan.ss,
+					scan.se, scan.al);
+		}
+	}
+
+	/**
+	 * Converts the coefficients of the current row of MCUs into samples.
+	 */
+	private void transformMcuRow() {
+		for (JPEGComponent c : components) {
+			int[] q = quantizationTables[c.quantizationTableIndex];
+			int firstBlockRow = streaming ? 0 : mcuRow * c.v;
+			for (int by = 0; by < c.v; by++) {
+				int offset = (firstBlockRow + by) * c.blocksPerLine * 64;
+				int destOffset = by * blockSize * c.samplesStride;
+				for (int bx = 0; bx < c.blocksPerLine; bx++) {
+					idct.transform(c.coefficients, offset, q, c.samples,
+							destOffset, c.samplesStride);
+					offset += 64;
+					destOffset += blockSize;
+				}
+			}
+		}
+	}
+
+	private void writeRow(byte[] dest, int row) {
+		if (components.length == 1) {
+			JPEGComponent c = components[0];
+			System.arraycopy(c.samples, row * c.samplesStride, dest, 0,
+					scaledWidth);
+			return;
+		}
+
+		JPEGComponent c0 = components[0];
+		JPEGComponent c1 = components[1];
+		JPEGComponent c2 = components[2];
+		byte[] s0 = c0.samples;
+		byte[] s1 = c1.samples;
+		byte[] s2 = c2.samples;
+		int[] m0 = c0.columnMap;
+		int[] m1 = c1.columnMap;
+		int[] m2 = c2.columnMap;
+		int r0 = row * c0.v / vMax * c0.samplesStride;
+		int r1 = row * c1.v / vMax * c1.samplesStride;
+		int r2 = row * c2.v / vMax * c2.samplesStride;
+		if (colorTransform) {
+			for (int x = 0, i = 0; x < scaledWidth; x++, i += 3) {
+				int luma = s0[r0 + m0[x]] & 0xff;
+				int cb = s1[r1 + m1[x]] & 0xff;
+				int cr = s2[r2 + m2[x]] & 0xff;
+				dest[i] = clamp(luma + CB_TO_B[cb]);
+				dest[i + 1] = clamp(luma + ((CB_TO_G[cb] + CR_TO_G[cr]) >> 16));
+				dest[i + 2] = clamp(luma + CR_TO_R[cr]);
+			}
+		} else {
+			for (int x = 0, i = 0; x < scaledWidth; x++, i += 3) {
+				dest[i] = s2[r2 + m2[x]];
+				dest[i + 1] = s1[r1 + m1[x]];
+				dest[i + 2] = s0[r0 + m0[x]];
+			}
+		}
+	}
+
+	private static byte clamp(int v) {
+		if (v < 0)
+			return 0;
+		if (v > 255)
+			return (byte) 255;
+		return (byte) v;
+	}
+}
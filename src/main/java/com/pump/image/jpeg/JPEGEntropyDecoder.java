@@ -0,0 +1,364 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.jpeg;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+
+/**
+ * This reads the Huffman-coded data that follows a start of scan marker and
+ * decodes it into blocks of quantized DCT coefficients.
+ * <p>
+ * This buffers its input, so when a scan ends the unread bytes (starting with
+ * the marker that ended the scan) are pushed back into the
+ * <code>PushbackInputStream</code> so a <code>JPEGMarkerInputStream</code> can
+ * resume reading markers.
+ * <p>
+ * Coefficients are written in natural (not zigzag) order. A truncated file
+ * decodes as if the remaining data were zeros, which is how most viewers
+ * present a partially downloaded JPEG.
+ */
+class JPEGEntropyDecoder {
+
+	static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * The natural order index of each zigzag position. The extra 16 entries
+	 * absorb corrupt run lengths that run past the end of a block.
+	 */
+	static final int[] ZIGZAG = { 0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25,
+			18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14,
+			21, 28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44,
+			51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63,
+			63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63 };
+
+	final PushbackInputStream in;
+	final byte[] buffer = new byte[BUFFER_SIZE];
+	int pos, limit;
+
+	/**
+	 * Undecoded bits, aligned to the most significant bit.
+	 */
+	int bitBuffer;
+	int bitCount;
+
+	/**
+	 * True once a marker (or the end of the stream) interrupts the data. When
+	 * this is true <code>pos</code> points to the marker's 0xFF byte.
+	 */
+	boolean markerReached;
+
+	/**
+	 * The end-of-band run used by progressive AC scans.
+	 */
+	int eobRun;
+
+	JPEGEntropyDecoder(PushbackInputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Prepares to decode a new scan.
+	 */
+	void startScan() {
+		pos = limit = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+		markerReached = false;
+		eobRun = 0;
+	}
+
+	/**
+	 * Consumes the data up to the next marker and unreads everything from
+	 * that marker on, so the marker stream can read it.
+	 */
+	void finishScan() throws IOException {
+		skipToMarker();
+		if (limit > pos)
+			in.unread(buffer, pos, limit - pos);
+		pos = limit = 0;
+	}
+
+	/**
+	 * Discards any partial byte and consumes a restart marker, if that is
+	 * what interrupted the data. If some other marker is waiting it is left
+	 * in place, and the rest of the scan decodes as zeros.
+	 */
+	void restart() throws IOException {
+		skipToMarker();
+		if (limit > pos + 1) {
+			int marker = buffer[pos + 1] & 0xff;
+			if (marker >= 0xd0 && marker <= 0xd7) {
+				pos += 2;
+				markerReached = false;
+			}
+		}
+		eobRun = 0;
+	}
+
+	private void skipToMarker() throws IOException {
+		while (!markerReached) {
+			bitCount = 0;
+			fillBits();
+		}
+		bitBuffer = 0;
+		bitCount = 0;
+	}
+
+	/**
+	 * Makes sure at least two bytes are buffered (unless the stream ends).
+	 */
+	private void refill() throws IOException {
+		int remaining = limit - pos;
+		if (remaining >= 2)
+			return;
+		if (remaining > 0)
+			System.arraycopy(buffer, pos, buffer, 0, remaining);
+		pos = 0;
+		limit = remaining;
+		while (limit < 2) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read == -1)
+				return;
+			limit += read;
+		}
+	}
+
+	private void fillBits() throws IOException {
+		while (bitCount <= 24) {
+			int b = 0;
+			if (!markerReached) {
+				if (limit - pos < 2)
+					refill();
+				if (pos == limit) {
+					markerReached = true;
+				} else {
+					b = buffer[pos] & 0xff;
+					if (b == 0xff) {
+						int next = pos + 1 < limit ? buffer[pos + 1] & 0xff
+								: -1;
+						if (next == 0) {
+							pos += 2;
+						} else if (next == 0xff) {
+							// a fill byte
+							pos++;
+							continue;
+						} else {
+							markerReached = true;
+							if (next == -1)
+								pos++;
+							b = 0;
+						}
+					} else {
+						pos++;
+					}
+				}
+			}
+			bitBuffer |= b << (24 - bitCount);
+			bitCount += 8;
+		}
+	}
+
+	int getBits(int n) throws IOException {
+		if (n == 0)
+			return 0;
+		if (bitCount < n)
+			fillBits();
+		int v = bitBuffer >>> (32 - n);
+		bitBuffer <<= n;
+		bitCount -= n;
+		return v;
+	}
+
+	int getBit() throws IOException {
+		if (bitCount == 0)
+			fillBits();
+		int v = bitBuffer >>> 31;
+		bitBuffer <<= 1;
+		bitCount--;
+		return v;
+	}
+
+	/**
+	 * Reads <code>n</code> bits and sign-extends them as described in section
+	 * F.2.2.1 of the specification.
+	 */
+	int receiveExtend(int n) throws IOException {
+		int v = getBits(n);
+		if (n != 0 && v < (1 << (n - 1)))
+			v += (-1 << n) + 1;
+		return v;
+	}
+
+	int decode(JPEGHuffmanTable table) throws IOException {
+		if (bitCount < 16)
+			fillBits();
+		int entry = table.lookup[bitBuffer >>> (32 - JPEGHuffmanTable.LOOKUP_BITS)];
+		if (entry != 0) {
+			int length = entry >> 8;
+			bitBuffer <<= length;
+			bitCount -= length;
+			return entry & 0xff;
+		}
+		int code16 = bitBuffer >>> 16;
+		for (int length = JPEGHuffmanTable.LOOKUP_BITS + 1; length <= 16; length++) {
+			int code = code16 >>> (16 - length);
+			if (code <= table.maxCode[length]) {
+				bitBuffer <<= length;
+				bitCount -= length;
+				return table.values[code + table.valueOffset[length]] & 0xff;
+			}
+		}
+		// corrupt data: skip the bits and carry on
+		bitBuffer <<= 16;
+		bitCount -= 16;
+		return 0;
+	}
+
+	/**
+	 * Decodes a complete block of a sequential scan.
+	 *
+	 * @param c
+	 *            the component this block belongs to. Its DC predictor is
+	 *            updated.
+	 * @param coefficients
+	 *            the array to write to. The 64 values starting at
+	 *            <code>offset</code> must already be zero.
+	 */
+	void decodeBlock(JPEGComponent c, short[] coefficients, int offset)
+			throws IOException {
+		int t = decode(c.dcTable);
+		c.dcPredictor += receiveExtend(t);
+		coefficients[offset] = (short) c.dcPredictor;
+
+		JPEGHuffmanTable ac = c.acTable;
+		int k = 1;
+		while (k < 64) {
+			int rs = decode(ac);
+			int r = rs >> 4;
+			int s = rs & 15;
+			if (s == 0) {
+				if (r != 15)
+					break;
+				k += 16;
+			} else {
+				k += r;
+				if (k > 63)
+					break;
+				coefficients[offset + ZIGZAG[k]] = (short) receiveExtend(s);
+				k++;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the DC coefficient of a block in a progressive scan: either its
+	 * first (most significant) bits or one refinement bit.
+	 */
+	void decodeDCProgressive(JPEGComponent c, short[] coefficients,
+			int offset, int ah, int al) throws IOException {
+		if (ah == 0) {
+			int t = decode(c.dcTable);
+			c.dcPredictor += receiveExtend(t);
+			coefficients[offset] = (short) (c.dcPredictor << al);
+		} else if (getBit() != 0) {
+			coefficients[offset] |= 1 << al;
+		}
+	}
+
+	/**
+	 * Decodes the first bits of the AC coefficients from <code>ss</code> to
+	 * <code>se</code> in a progressive scan.
+	 */
+	void decodeACFirst(JPEGComponent c, short[] coefficients, int offset,
+			int ss, int se, int al) throws IOException {
+		if (eobRun > 0) {
+			eobRun--;
+			return;
+		}
+		JPEGHuffmanTable ac = c.acTable;
+		int k = ss;
+		while (k <= se) {
+			int rs = decode(ac);
+			int r = rs >> 4;
+			int s = rs & 15;
+			if (s == 0) {
+				if (r < 15) {
+					eobRun = (1 << r) - 1;
+					if (r > 0)
+						eobRun += getBits(r);
+					break;
+				}
+				k += 16;
+			} else {
+				k += r;
+				if (k > 63)
+					break;
+				coefficients[offset + ZIGZAG[k]] = (short) (receiveExtend(s) * (1 << al));
+				k++;
+			}
+		}
+	}
+
+	/**
+	 * Decodes one refinement bit of the AC coefficients from <code>ss</code>
+	 * to <code>se</code> in a progressive scan (section G.1.2.3).
+	 */
+	void decodeACRefine(JPEGComponent c, short[] coefficients, int offset,
+			int ss, int se, int al) throws IOException {
+		int p1 = 1 << al;
+		int m1 = -1 << al;
+		int k = ss;
+		if (eobRun == 0) {
+			JPEGHuffmanTable ac = c.acTable;
+			for (; k <= se; k++) {
+				int rs = decode(ac);
+				int r = rs >> 4;
+				int s = rs & 15;
+				if (s != 0) {
+					s = getBit() != 0 ? p1 : m1;
+				} else if (r != 15) {
+					eobRun = 1 << r;
+					if (r > 0)
+						eobRun += getBits(r);
+					break;
+				}
+				do {
+					int z = offset + ZIGZAG[k];
+					if (coefficients[z] != 0) {
+						refine(coefficients, z, p1, m1);
+					} else if (--r < 0) {
+						break;
+					}
+					k++;
+				} while (k <= se);
+				if (s != 0 && k <= 63) {
+					coefficients[offset + ZIGZAG[k]] = (short) s;
+				}
+			}
+		}
+		if (eobRun > 0) {
+			for (; k <= se; k++) {
+				int z = offset + ZIGZAG[k];
+				if (coefficients[z] != 0)
+					refine(coefficients, z, p1, m1);
+			}
+			eobRun--;
+		}
+	}
+
+	private void refine(short[] coefficients, int z, int p1, int m1)
+			throws IOException {
+		if (getBit() != 0 && (coefficients[z] & p1) == 0) {
+			coefficients[z] += coefficients[z] >= 0 ? p1 : m1;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.jpeg;
+
+import java.io.IOException;
+
+/**
+ * A Huffman table from a DHT marker, arranged for decoding.
+ * <p>
+ * Codes that are up to {@link #LOOKUP_BITS} long are resolved with a single
+ * array lookup. Longer codes fall back to the canonical maximum-code search
+ * described in Annex F of the JPEG specification.
+ */
+class JPEGHuffmanTable {
+
+	/**
+	 * The number of bits resolved by the lookup table.
+	 */
+	static final int LOOKUP_BITS = 9;
+
+	/**
+	 * Indexed by the next <code>LOOKUP_BITS</code> bits of the stream. Each
+	 * nonzero entry is <code>(codeLength &lt;&lt; 8) | value</code>. Zero
+	 * means the code is longer than <code>LOOKUP_BITS</code>.
+	 */
+	final int[] lookup = new int[1 << LOOKUP_BITS];
+
+	/**
+	 * The largest code of each length, or -1 if there are no codes of that
+	 * length.
+	 */
+	final int[] maxCode = new int[17];
+
+	/**
+	 * Added to a code of a given length to find its index in
+	 * <code>values</code>.
+	 */
+	final int[] valueOffset = new int[17];
+
+	final byte[] values;
+
+	/**
+	 * @param counts
+	 *            the number of codes of each length, where
+	 *            <code>counts[1]</code> is the number of 1-bit codes.
+	 * @param values
+	 *            the symbols in order of increasing code length.
+	 */
+	JPEGHuffmanTable(int[] counts, byte[] values) throws IOException {
+		this.values = values;
+		int code = 0;
+		int k = 0;
+		for (int length = 1; length <= 16; length++) {
+			valueOffset[length] = k - code;
+			for (int i = 0; i < counts[length]; i++) {
+				if (k >= values.length)
+					throw new IOException("malformed Huffman table");
+				if (length <= LOOKUP_BITS) {
+					int shift = LOOKUP_BITS - length;
+					int entry = (length << 8) | (values[k] & 0xff);
+					int start = code << shift;
+					int end = (code + 1) << shift;
+					for (int j = start; j < end; j++) {
+						lookup[j] = entry;
+					}
+				}
+				code++;
+				k++;
+			}
+			maxCode[length] = counts[length] == 0 ? -1 : code - 1;
+			if (code > (1 << length))
+				throw new IOException("malformed Huffman table");
+			code <<= 1;
+		}
+	}
+}
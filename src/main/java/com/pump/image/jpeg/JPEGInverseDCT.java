@@ -0,0 +1,241 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.jpeg;
+
+/**
+ * A separable inverse DCT that can produce a block of 8x8, 4x4, 2x2 or 1x1
+ * samples from an 8x8 block of coefficients.
+ * <p>
+ * The reduced sizes only use the lowest NxN frequencies, evaluated with
+ * N-point cosines. This is what libjpeg calls DCT scaling: it is roughly what
+ * you'd get by decoding the block at full size and averaging it down, but it
+ * skips most of the arithmetic. A 1x1 block is simply the DC coefficient.
+ * <p>
+ * This object keeps scratch space, so it is not thread-safe.
+ */
+class JPEGInverseDCT {
+
+	/**
+	 * <code>cos(k * pi / 16) * sqrt(2)</code>, except the first value is 1.
+	 */
+	private static final double[] AAN_SCALE = new double[8];
+	static {
+		AAN_SCALE[0] = 1;
+		for (int k = 1; k < 8; k++) {
+			AAN_SCALE[k] = Math.cos(k * Math.PI / 16) * Math.sqrt(2);
+		}
+	}
+
+	final int size;
+
+	/**
+	 * <code>table[x * size + u]</code> is the weight of frequency u at sample
+	 * x, including the 1/2 and 1/sqrt(2) normalization factors.
+	 */
+	final float[] table;
+	final float[] workspace = new float[64];
+
+	/**
+	 * For the 8x8 transform: the most recent quantization table and that
+	 * table multiplied by the AAN scale factors.
+	 */
+	int[] aanQuantization;
+	final float[] aanMultipliers = new float[64];
+
+	/**
+	 * @param size
+	 *            the width and height of the output block: 8, 4, 2 or 1.
+	 */
+	JPEGInverseDCT(int size) {
+		if (!(size == 8 || size == 4 || size == 2 || size == 1))
+			throw new IllegalArgumentException("size (" + size
+					+ ") must be 8, 4, 2 or 1");
+		this.size = size;
+		table = new float[size * size];
+		for (int x = 0; x < size; x++) {
+			for (int u = 0; u < size; u++) {
+				double c = u == 0 ? Math.sqrt(.5) : 1;
+				table[x * size + u] = (float) (c / 2 * Math.cos((2 * x + 1)
+						* u * Math.PI / (2 * size)));
+			}
+		}
+	}
+
+	/**
+	 * Dequantizes and transforms one block.
+	 *
+	 * @param coefficients
+	 *            the quantized coefficients in natural order.
+	 * @param offset
+	 *            the index of the block's first coefficient.
+	 * @param quantization
+	 *            the quantization table in natural order.
+	 * @param dest
+	 *            the array to write <code>size x size</code> samples to.
+	 * @param destOffset
+	 *            the index of the block's top-left sample.
+	 * @param destStride
+	 *            the distance between rows in <code>dest</code>.
+	 */
+	void transform(short[] coefficients, int offset, int[] quantization,
+			byte[] dest, int destOffset, int destStride) {
+		if (size == 1) {
+			int dc = coefficients[offset] * quantization[0];
+			dest[destOffset] = clamp((dc + 4 >> 3) + 128);
+			return;
+		} else if (size == 8) {
+			transform8(coefficients, offset, quantization, dest, destOffset,
+					destStride);
+			return;
+		}
+
+		// rows: transform the horizontal frequencies of the first N rows
+		float[] w = workspace;
+		for (int v = 0; v < size; v++) {
+			int rowOffset = offset + 8 * v;
+			boolean acZero = true;
+			for (int u = 1; u < size; u++) {
+				if (coefficients[rowOffset + u] != 0) {
+					acZero = false;
+					break;
+				}
+			}
+			if (acZero) {
+				float dc = coefficients[rowOffset] * quantization[8 * v]
+						* table[0];
+				for (int x = 0; x < size; x++) {
+					w[v * 8 + x] = dc;
+				}
+			} else {
+				for (int x = 0; x < size; x++) {
+					float sum = 0;
+					int t = x * size;
+					for (int u = 0; u < size; u++) {
+						sum += table[t + u] * coefficients[rowOffset + u]
+								* quantization[8 * v + u];
+					}
+					w[v * 8 + x] = sum;
+				}
+			}
+		}
+
+		// columns
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				float sum = 0;
+				int t = y * size;
+				for (int v = 0; v < size; v++) {
+					sum += table[t + v] * w[v * 8 + x];
+				}
+				dest[destOffset + y * destStride + x] = clamp((int) (sum + 128.5f));
+			}
+		}
+	}
+
+	private void transform8(short[] coefficients, int offset,
+			int[] quantization, byte[] dest, int destOffset, int destStride) {
+		float[] m = aanMultipliers;
+		if (aanQuantization != quantization) {
+			for (int i = 0; i < 64; i++) {
+				m[i] = (float) (quantization[i] * AAN_SCALE[i / 8] * AAN_SCALE[i % 8]);
+			}
+			aanQuantization = quantization;
+		}
+
+		// columns
+		float[] w = workspace;
+		for (int x = 0; x < 8; x++) {
+			int i = offset + x;
+			if (coefficients[i + 8] == 0 && coefficients[i + 16] == 0
+					&& coefficients[i + 24] == 0 && coefficients[i + 32] == 0
+					&& coefficients[i + 40] == 0 && coefficients[i + 48] == 0
+					&& coefficients[i + 56] == 0) {
+				float dc = coefficients[i] * m[x];
+				for (int y = 0; y < 64; y += 8) {
+					w[y + x] = dc;
+				}
+				continue;
+			}
+
+			float tmp0 = coefficients[i] * m[x];
+			float tmp1 = coefficients[i + 16] * m[x + 16];
+			float tmp2 = coefficients[i + 32] * m[x + 32];
+			float tmp3 = coefficients[i + 48] * m[x + 48];
+			float tmp4 = coefficients[i + 8] * m[x + 8];
+			float tmp5 = coefficients[i + 24] * m[x + 24];
+			float tmp6 = coefficients[i + 40] * m[x + 40];
+			float tmp7 = coefficients[i + 56] * m[x + 56];
+			butterfly(w, x, 8, tmp0, tmp1, tmp2, tmp3, tmp4, tmp5, tmp6, tmp7);
+		}
+
+		// rows
+		for (int y = 0; y < 8; y++) {
+			int i = y * 8;
+			int d = destOffset + y * destStride;
+			butterfly(w, i, 1, w[i], w[i + 2], w[i + 4], w[i + 6], w[i + 1],
+					w[i + 3], w[i + 5], w[i + 7]);
+			for (int x = 0; x < 8; x++) {
+				dest[d + x] = clamp((int) (w[i + x] / 8 + 128.5f));
+			}
+		}
+	}
+
+	/**
+	 * The 1-D AAN transform. The even inputs (0, 2, 4, 6) are
+	 * <code>tmp0-tmp3</code> and the odd inputs (1, 3, 5, 7) are
+	 * <code>tmp4-tmp7</code>. The 8 outputs are written to <code>w</code>
+	 * starting at <code>i</code>, <code>step</code> apart.
+	 */
+	private static void butterfly(float[] w, int i, int step, float tmp0,
+			float tmp1, float tmp2, float tmp3, float tmp4, float tmp5,
+			float tmp6, float tmp7) {
+		// even part
+		float tmp10 = tmp0 + tmp2;
+		float tmp11 = tmp0 - tmp2;
+		float tmp13 = tmp1 + tmp3;
+		float tmp12 = (tmp1 - tmp3) * 1.414213562f - tmp13;
+		tmp0 = tmp10 + tmp13;
+		tmp3 = tmp10 - tmp13;
+		tmp1 = tmp11 + tmp12;
+		tmp2 = tmp11 - tmp12;
+
+		// odd part
+		float z13 = tmp6 + tmp5;
+		float z10 = tmp6 - tmp5;
+		float z11 = tmp4 + tmp7;
+		float z12 = tmp4 - tmp7;
+		tmp7 = z11 + z13;
+		tmp11 = (z11 - z13) * 1.414213562f;
+		float z5 = (z10 + z12) * 1.847759065f;
+		tmp10 = 1.082392200f * z12 - z5;
+		tmp12 = -2.613125930f * z10 + z5;
+		tmp6 = tmp12 - tmp7;
+		tmp5 = tmp11 - tmp6;
+		tmp4 = tmp10 + tmp5;
+
+		w[i] = tmp0 + tmp7;
+		w[i + 7 * step] = tmp0 - tmp7;
+		w[i + step] = tmp1 + tmp6;
+		w[i + 6 * step] = tmp1 - tmp6;
+		w[i + 2 * step] = tmp2 + tmp5;
+		w[i + 5 * step] = tmp2 - tmp5;
+		w[i + 4 * step] = tmp3 + tmp4;
+		w[i + 3 * step] = tmp3 - tmp4;
+	}
+
+	private static byte clamp(int v) {
+		if (v < 0)
+			return 0;
+		if (v > 255)
+			return (byte) 255;
+		return (byte) v;
+	}
+}
@@ -10,6 +10,7 @@
  */
 package com.pump.image.jpeg;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -67,8 +68,73 @@ public class JPEGMetaData {
 		}
 	}
 
+	/**
+	 * Returns the dimensions of a JPEG file by reading its start of frame
+	 * marker. The pixel data is never read, and the APPn markers are skipped
+	 * without being parsed.
+	 * 
+	 * @return the size of the image, or null if no start of frame marker
+	 *         precedes the image data.
+	 * @throws IOException
+	 *             if this is not a JPEG, or if an IO problem occurs.
+	 */
+	public static Dimension getSize(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return getSize(in);
+		}
+	}
+
+	/**
+	 * Returns the dimensions of a JPEG by reading its start of frame marker.
+	 * The pixel data is never read, and the APPn markers are skipped without
+	 * being parsed. The stream is not closed.
+	 * 
+	 * @return the size of the image, or null if no start of frame marker
+	 *         precedes the image data.
+	 * @throws IOException
+	 *             if this is not a JPEG, or if an IO problem occurs.
+	 */
+	public static Dimension getSize(InputStream in) throws IOException {
+		JPEGMarkerInputStream jpegIn = new JPEGMarkerInputStream(in);
+		String marker = jpegIn.getNextMarker();
+		if (!JPEGMarkerInputStream.START_OF_IMAGE_MARKER.equals(marker))
+			throw new IOException("error: expecting \""
+					+ JPEGMarkerInputStream.START_OF_IMAGE_MARKER
+					+ "\", but found \"" + marker + "\"");
+		while (true) {
+			marker = jpegIn.getNextMarker();
+			if (isStartOfFrame(marker))
+				return readFrameSize(jpegIn);
+			if (JPEGMarkerInputStream.START_OF_SCAN_MARKER.equals(marker)
+					|| JPEGMarkerInputStream.END_OF_IMAGE_MARKER
+							.equals(marker))
+				return null;
+		}
+	}
+
+	/**
+	 * Returns true if a marker is one of the 13 start of frame markers (SOF0
+	 * through SOF15, excluding DHT, JPG and DAC).
+	 */
+	private static boolean isStartOfFrame(String marker) {
+		return marker.length() == 4 && marker.startsWith("FFC")
+				&& !JPEGMarkerInputStream.DEFINE_HUFFMAN_MARKER.equals(marker)
+				&& !"FFC8".equals(marker) && !"FFCC".equals(marker);
+	}
+
+	private static Dimension readFrameSize(JPEGMarkerInputStream jpegIn)
+			throws IOException {
+		byte[] b = new byte[5];
+		if (jpegIn.readFully(b, 5) != 5)
+			throw new IOException("the start of frame marker was truncated");
+		int height = ((b[1] & 0xff) << 8) | (b[2] & 0xff);
+		int width = ((b[3] & 0xff) << 8) | (b[4] & 0xff);
+		return new Dimension(width, height);
+	}
+
 	Map<String, Object> properties = new HashMap<String, Object>();
 	BufferedImage thumbnail;
+	Dimension imageSize;
 	String[] comments = new String[0];
 
 	/**
@@ -151,6 +217,8 @@ public class JPEGMetaData {
 						t = jpegIn.read(b);
 					}
 					processComment(buffer.toString());
+				} else if (isStartOfFrame(marker)) {
+					imageSize = readFrameSize(jpegIn);
 				}
 			} catch (Exception e) {
 				processException(e, marker);
@@ -281,6 +349,14 @@ public class JPEGMetaData {
 		return copy;
 	}
 
+	/**
+	 * Returns the dimensions of the (full-size) image, as recorded in its
+	 * start of frame marker. This may return null.
+	 */
+	public Dimension getImageSize() {
+		return imageSize == null ? null : new Dimension(imageSize);
+	}
+
 	/**
 	 * Returns the thumbnail if one exists. This may return null.
 	 */
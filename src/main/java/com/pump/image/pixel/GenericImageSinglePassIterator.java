@@ -65,6 +65,9 @@ import com.pump.util.PushPullQueue;
  * safety nets. In many cases the AWT toolkit will only launch 4 "Image Fetcher"
  * threads at a time: if all 4 are hung for a minimum of 5 seconds, then <i>no
  * other images</i> can be processed through the AWT toolkit during that time.
+ * <p>
+ * For JPEGs consider the {@link com.pump.image.jpeg.JPEGDecoderIterator}
+ * instead: it decodes on the calling thread and can downscale as it decodes.
  * 
  * <a href=
  * "https://javagraphics.blogspot.com/2011/05/images-scaling-jpegs-and-pngs.html"
@@ -0,0 +1,303 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+
+import java.awt.image.BufferedImage;
+
+/**
+ * This iterator scales another iterator as it is being read using a
+ * {@link ResamplingKernel}.
+ * <p>
+ * The kernel is applied separably: each source row is resampled horizontally
+ * as it is read, and each destination row is a weighted sum of a small window
+ * of those resampled rows. The weights for every destination column and row are
+ * calculated once in the constructor, and only the window of rows the kernel
+ * covers is kept in memory. So, like the {@link ScalingIterator}, this reads
+ * the source image in a single pass.
+ * <p>
+ * Colors are filtered with premultiplied alpha, so fully transparent pixels do
+ * not bleed into their neighbors. This always produces
+ * <code>TYPE_INT_ARGB</code> or <code>TYPE_INT_RGB</code> pixels (depending on
+ * whether the source is opaque).
+ */
+public class KernelScalingIterator implements IntPixelIterator {
+
+	/**
+	 * The weights used to resample one dimension of an image.
+	 * <p>
+	 * Destination pixel <code>i</code> is the sum of the source pixels starting
+	 * at <code>starts[i]</code> multiplied by
+	 * <code>weights[i * taps + j]</code>. Source pixels that would fall
+	 * outside of the image are clamped to its edge, and the weights for each
+	 * destination pixel add up to 1.
+	 */
+	static class Weights {
+		final int taps;
+		final int[] starts;
+		final int[] lengths;
+		final float[] weights;
+
+		Weights(ResamplingKernel kernel, int srcLength, int dstLength) {
+			double scale = ((double) dstLength) / ((double) srcLength);
+			double filterScale = Math.min(1, scale);
+			double support = kernel.getRadius() / filterScale;
+			taps = Math.min(srcLength, (int) Math.ceil(2 * support) + 1);
+			starts = new int[dstLength];
+			lengths = new int[dstLength];
+			weights = new float[dstLength * taps];
+
+			double[] sums = new double[taps];
+			for (int i = 0; i < dstLength; i++) {
+				double center = (i + .5) / scale - .5;
+				int left = (int) Math.ceil(center - support);
+				int right = (int) Math.floor(center + support);
+				int start = clamp(left, srcLength);
+				int length = Math.min(taps, clamp(right, srcLength) - start + 1);
+				starts[i] = start;
+				lengths[i] = length;
+
+				double total = 0;
+				for (int j = 0; j < length; j++) {
+					sums[j] = 0;
+				}
+				for (int k = left; k <= right; k++) {
+					double w = kernel.evaluate((k - center) * filterScale);
+					int j = Math.min(length - 1, clamp(k, srcLength) - start);
+					sums[j] += w;
+					total += w;
+				}
+				for (int j = 0; j < length; j++) {
+					weights[i * taps + j] = (float) (sums[j] / total);
+				}
+			}
+		}
+
+		private static int clamp(int index, int length) {
+			return Math.max(0, Math.min(length - 1, index));
+		}
+	}
+
+	final IntPixelIterator srcIterator;
+	final ResamplingKernel kernel;
+	final boolean isOpaque;
+	final int srcW, srcH, dstW, dstH;
+	final Weights xWeights, yWeights;
+
+	/**
+	 * The most recent source rows after they were resampled horizontally,
+	 * stored as premultiplied ARGB floats. Source row <code>y</code> is stored
+	 * at <code>rows[y % rows.length]</code>.
+	 */
+	final float[][] rows;
+	final float[] srcAlphas, srcReds, srcGreens, srcBlues;
+	final int[] srcRow;
+	int srcY = 0;
+	int dstY = 0;
+
+	/**
+	 * Create a new <code>KernelScalingIterator</code>.
+	 * 
+	 * @param i
+	 *            the incoming image data to scale.
+	 * @param newWidth
+	 *            the new width.
+	 * @param newHeight
+	 *            the new height.
+	 * @param kernel
+	 *            the kernel used to resample the image.
+	 */
+	public KernelScalingIterator(PixelIterator i, int newWidth, int newHeight,
+			ResamplingKernel kernel) {
+		if (newWidth <= 0)
+			throw new IllegalArgumentException("newWidth (" + newWidth
+					+ ") must be greater than zero");
+		if (newHeight <= 0)
+			throw new IllegalArgumentException("newHeight (" + newHeight
+					+ ") must be greater than zero");
+		if (kernel == null)
+			throw new NullPointerException();
+		this.kernel = kernel;
+		isOpaque = i.isOpaque();
+		if (i.getType() == BufferedImage.TYPE_INT_ARGB) {
+			srcIterator = (IntPixelIterator) i;
+		} else {
+			srcIterator = new IntARGBConverter(i);
+		}
+		srcW = i.getWidth();
+		srcH = i.getHeight();
+		dstW = newWidth;
+		dstH = newHeight;
+		xWeights = new Weights(kernel, srcW, dstW);
+		yWeights = new Weights(kernel, srcH, dstH);
+
+		rows = new float[yWeights.taps][dstW * 4];
+		srcRow = new int[srcIterator.getMinimumArrayLength()];
+		srcReds = new float[srcW];
+		srcGreens = new float[srcW];
+		srcBlues = new float[srcW];
+		srcAlphas = isOpaque ? null : new float[srcW];
+	}
+
+	/**
+	 * Return the kernel this iterator resamples with.
+	 */
+	public ResamplingKernel getKernel() {
+		return kernel;
+	}
+
+	@Override
+	public int getType() {
+		return isOpaque ? BufferedImage.TYPE_INT_RGB
+				: BufferedImage.TYPE_INT_ARGB;
+	}
+
+	@Override
+	public boolean isOpaque() {
+		return isOpaque;
+	}
+
+	@Override
+	public int getPixelSize() {
+		return 1;
+	}
+
+	@Override
+	public boolean isDone() {
+		return dstY >= dstH;
+	}
+
+	@Override
+	public boolean isTopDown() {
+		return srcIterator.isTopDown();
+	}
+
+	@Override
+	public int getWidth() {
+		return dstW;
+	}
+
+	@Override
+	public int getHeight() {
+		return dstH;
+	}
+
+	@Override
+	public int getMinimumArrayLength() {
+		return dstW;
+	}
+
+	@Override
+	public void skip() {
+		next(new int[dstW]);
+	}
+
+	@Override
+	public void next(int[] dest) {
+		if (isDone())
+			throw new RuntimeException("no more rows to read");
+
+		int start = yWeights.starts[dstY];
+		int length = yWeights.lengths[dstY];
+		while (srcY < start + length) {
+			readSourceRow(rows[srcY % rows.length]);
+			srcY++;
+		}
+
+		int taps = yWeights.taps;
+		int offset = dstY * taps;
+		for (int x = 0, k = 0; x < dstW; x++, k += 4) {
+			float a = 0, r = 0, g = 0, b = 0;
+			for (int j = 0; j < length; j++) {
+				float w = yWeights.weights[offset + j];
+				float[] row = rows[(start + j) % rows.length];
+				a += w * row[k];
+				r += w * row[k + 1];
+				g += w * row[k + 2];
+				b += w * row[k + 3];
+			}
+			if (isOpaque) {
+				dest[x] = 0xff000000 | (toByte(r) << 16) | (toByte(g) << 8)
+						| toByte(b);
+			} else {
+				int alpha = toByte(a);
+				if (alpha == 0) {
+					dest[x] = 0;
+				} else {
+					float f = 255f / alpha;
+					dest[x] = (alpha << 24) | (toByte(r * f) << 16)
+							| (toByte(g * f) << 8) | toByte(b * f);
+				}
+			}
+		}
+
+		dstY++;
+		if (isDone()) {
+			while (!srcIterator.isDone()) {
+				srcIterator.skip();
+			}
+		}
+	}
+
+	private static int toByte(float v) {
+		if (v <= 0)
+			return 0;
+		if (v >= 255)
+			return 255;
+		return (int) (v + .5f);
+	}
+
+	/**
+	 * Read the next source row and resample it horizontally.
+	 */
+	private void readSourceRow(float[] dest) {
+		srcIterator.next(srcRow);
+		for (int x = 0; x < srcW; x++) {
+			int argb = srcRow[x];
+			float r = (argb >> 16) & 0xff;
+			float g = (argb >> 8) & 0xff;
+			float b = argb & 0xff;
+			if (srcAlphas != null) {
+				float a = argb >>> 24;
+				srcAlphas[x] = a;
+				r = r * a / 255f;
+				g = g * a / 255f;
+				b = b * a / 255f;
+			}
+			srcReds[x] = r;
+			srcGreens[x] = g;
+			srcBlues[x] = b;
+		}
+
+		int taps = xWeights.taps;
+		for (int x = 0, k = 0; x < dstW; x++, k += 4) {
+			int start = xWeights.starts[x];
+			int length = xWeights.lengths[x];
+			int offset = x * taps;
+			float a = 0, r = 0, g = 0, b = 0;
+			for (int j = 0; j < length; j++) {
+				float w = xWeights.weights[offset + j];
+				r += w * srcReds[start + j];
+				g += w * srcGreens[start + j];
+				b += w * srcBlues[start + j];
+			}
+			if (srcAlphas != null) {
+				for (int j = 0; j < length; j++) {
+					a += xWeights.weights[offset + j] * srcAlphas[start + j];
+				}
+			}
+			dest[k] = a;
+			dest[k + 1] = r;
+			dest[k + 2] = g;
+			dest[k + 3] = b;
+		}
+	}
+}
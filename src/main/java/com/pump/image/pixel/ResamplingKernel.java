@@ -0,0 +1,92 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+
+/**
+ * A filter used by the {@link KernelScalingIterator} to resample images.
+ * <p>
+ * Each kernel is a function of the distance (in source pixels) from the center
+ * of a destination pixel. When an image is scaled down the kernel is stretched
+ * so it covers every source pixel that contributes to a destination pixel.
+ */
+public enum ResamplingKernel {
+	/**
+	 * A windowed sinc function with three lobes. This is the sharpest kernel
+	 * here, but it may introduce slight ringing near high-contrast edges.
+	 */
+	LANCZOS3(3) {
+		@Override
+		public double evaluate(double x) {
+			x = Math.abs(x);
+			if (x < 1e-8)
+				return 1;
+			if (x >= 3)
+				return 0;
+			double px = Math.PI * x;
+			return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+		}
+	},
+	/**
+	 * The cubic filter Mitchell and Netravali recommended (B = C = 1/3). This
+	 * is a compromise between blurring and ringing.
+	 */
+	MITCHELL(2) {
+		@Override
+		public double evaluate(double x) {
+			return evaluateCubic(x, 1.0 / 3.0, 1.0 / 3.0);
+		}
+	},
+	/**
+	 * The Catmull-Rom spline (B = 0, C = 1/2). This is sharper than
+	 * {@link #MITCHELL} and passes through every source pixel.
+	 */
+	CATMULL_ROM(2) {
+		@Override
+		public double evaluate(double x) {
+			return evaluateCubic(x, 0, .5);
+		}
+	};
+
+	private final double radius;
+
+	ResamplingKernel(double radius) {
+		this.radius = radius;
+	}
+
+	/**
+	 * Return the distance from the center beyond which this kernel is zero.
+	 */
+	public double getRadius() {
+		return radius;
+	}
+
+	/**
+	 * Return the unnormalized weight of a source pixel at a given distance from
+	 * the center of a destination pixel.
+	 */
+	public abstract double evaluate(double x);
+
+	/**
+	 * Evaluate the Mitchell-Netravali family of cubic filters.
+	 */
+	private static double evaluateCubic(double x, double b, double c) {
+		x = Math.abs(x);
+		if (x < 1) {
+			return ((12 - 9 * b - 6 * c) * x * x * x
+					+ (-18 + 12 * b + 6 * c) * x * x + (6 - 2 * b)) / 6;
+		} else if (x < 2) {
+			return ((-b - 6 * c) * x * x * x + (6 * b + 30 * c) * x * x
+					+ (-12 * b - 48 * c) * x + (8 * b + 24 * c)) / 6;
+		}
+		return 0;
+	}
+}
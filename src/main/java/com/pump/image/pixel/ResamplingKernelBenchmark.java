@@ -0,0 +1,107 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * This compares the speed and aliasing of each {@link ResamplingKernel} with
+ * the box averaging and linear interpolation of the {@link ScalingIterator}.
+ * <p>
+ * The source image is a diagonal sine wave whose period is shorter than two
+ * destination pixels when it is scaled down, so an ideal filter turns it into
+ * a flat gray. The "Aliasing" column is the standard deviation (from 0-255) of
+ * the scaled-down image: lower is better.
+ * <p>
+ * The timing columns are the median time to scale a 4000x3000 image down to
+ * 1024x768 and a 400x300 image up to 1600x1200.
+ */
+class ResamplingKernelBenchmark {
+
+	static final int SAMPLE_COUNT = 5;
+
+	public static void main(String[] args) {
+		BufferedImage large = createImage(4000, 3000);
+		BufferedImage small = createImage(400, 300);
+		Dimension downSize = new Dimension(1024, 768);
+		Dimension upSize = new Dimension(1600, 1200);
+
+		ResamplingKernel[] kernels = new ResamplingKernel[ResamplingKernel
+				.values().length + 1];
+		System.arraycopy(ResamplingKernel.values(), 0, kernels, 1,
+				kernels.length - 1);
+
+		System.out.println("Kernel\tDown (ms)\tUp (ms)\tAliasing");
+		for (ResamplingKernel kernel : kernels) {
+			String name = kernel == null ? "ScalingIterator" : kernel
+					.toString();
+			long downTime = getMedianMillis(large, downSize, kernel);
+			long upTime = getMedianMillis(small, upSize, kernel);
+			double aliasing = getStandardDeviation(Scaling.resample(large,
+					null, downSize, kernel));
+			System.out.println(name + "\t" + downTime + "\t" + upTime + "\t"
+					+ (Math.round(aliasing * 100) / 100.0));
+		}
+		System.exit(0);
+	}
+
+	private static long getMedianMillis(BufferedImage source,
+			Dimension destSize, ResamplingKernel kernel) {
+		long[] times = new long[SAMPLE_COUNT];
+		for (int a = 0; a < SAMPLE_COUNT; a++) {
+			times[a] = System.nanoTime();
+			Scaling.resample(source, null, destSize, kernel);
+			times[a] = System.nanoTime() - times[a];
+		}
+		Arrays.sort(times);
+		return times[SAMPLE_COUNT / 2] / 1000000;
+	}
+
+	/**
+	 * Return the standard deviation of the green channel of an image.
+	 */
+	private static double getStandardDeviation(BufferedImage bi) {
+		int[] pixels = bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null,
+				0, bi.getWidth());
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (int argb : pixels) {
+			int g = (argb >> 8) & 0xff;
+			sum += g;
+			sumOfSquares += g * g;
+		}
+		double mean = sum / pixels.length;
+		return Math.sqrt(sumOfSquares / pixels.length - mean * mean);
+	}
+
+	/**
+	 * Create a gray image of a diagonal sine wave with a period of 2.5 pixels
+	 * along each axis.
+	 */
+	private static BufferedImage createImage(int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) bi.getRaster().getDataBuffer())
+				.getData();
+		for (int y = 0, i = 0; y < height; y++) {
+			for (int x = 0; x < width; x++, i++) {
+				int v = (int) Math.round(127.5 + 127.5 * Math.sin(2 * Math.PI
+						* (x + y) / 2.5));
+				pixels[i] = (v << 16) | (v << 8) | v;
+			}
+		}
+		return bi;
+	}
+}
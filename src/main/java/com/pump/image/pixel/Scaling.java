@@ -18,9 +18,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.concurrent.ForkJoinPool;
 
 import com.pump.image.ImageSize;
 import com.pump.image.bmp.BmpDecoderIterator;
+import com.pump.image.jpeg.JPEGDecoderIterator;
 
 /**
  * This contains a few static methods for scaling BufferedImages using the
@@ -33,6 +35,13 @@ import com.pump.image.bmp.BmpDecoderIterator;
  */
 public class Scaling {
 
+	/**
+	 * Source images with at least this many pixels are scaled on the common
+	 * <code>ForkJoinPool</code> by
+	 * {@link #scale(BufferedImage, BufferedImage, Dimension)}.
+	 */
+	static final long PARALLEL_THRESHOLD = 1000000;
+
 	/**
 	 * Scales the source image into the destination.
 	 * 
@@ -83,6 +92,10 @@ public class Scaling {
 
 	/**
 	 * Scales the source image file to a new, smaller size.
+	 * <p>
+	 * BMPs and JPEGs are decoded without the AWT toolkit. JPEGs are decoded
+	 * at the smallest DCT scale (1/2, 1/4 or 1/8) that is still at least
+	 * <code>destSize</code>, so most of the decoding work is skipped.
 	 * 
 	 * @param source
 	 *            the source image file.
@@ -103,29 +116,28 @@ public class Scaling {
 		if (pathLower.endsWith(".bmp")) {
 			try {
 				PixelIterator iter = BmpDecoderIterator.get(source);
-				PixelIterator scalingIter = destSize == null ? iter
-						: ScalingIterator.get(iter, destSize.width,
-								destSize.height);
-				PixelIterator finalIter = scalingIter;
-				if (preferredType == BufferedImage.TYPE_INT_ARGB
-						|| preferredType == BufferedImage.TYPE_INT_ARGB_PRE) {
-					finalIter = new IntARGBConverter(scalingIter);
-				} else if (preferredType == BufferedImage.TYPE_INT_RGB) {
-					finalIter = new IntRGBConverter(scalingIter);
-				} else if (preferredType == BufferedImage.TYPE_3BYTE_BGR) {
-					finalIter = new ByteBGRConverter(scalingIter);
-				} else if (preferredType == BufferedImage.TYPE_4BYTE_ABGR) {
-					finalIter = new ByteBGRAConverter(scalingIter);
-				} else {
-					throw new IllegalArgumentException("unrecognized type: "
-							+ preferredType);
-				}
-				BufferedImage image = BufferedImageIterator.create(finalIter,
-						null);
-				return image;
+				return create(iter, preferredType, destSize);
 			} catch (IOException e) {
 				return null;
 			}
+		} else if (pathLower.endsWith(".jpg") || pathLower.endsWith(".jpeg")) {
+			checkType(preferredType);
+			JPEGDecoderIterator iter = null;
+			try {
+				iter = JPEGDecoderIterator.get(source, destSize);
+				return create(iter, preferredType, destSize);
+			} catch (IOException | RuntimeException e) {
+				// this JPEG uses a feature the decoder doesn't support (or
+				// next() failed partway through the image), so let the
+				// toolkit try
+			} finally {
+				try {
+					if (iter != null)
+						iter.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 		Image image = Toolkit.getDefaultToolkit().createImage(
 				source.getAbsolutePath());
@@ -137,8 +149,52 @@ public class Scaling {
 		}
 	}
 
+	/**
+	 * Scales a decoded image file and converts it to the preferred type.
+	 * 
+	 * @param destSize
+	 *            the size of the new image, or null to keep the iterator's
+	 *            size.
+	 */
+	private static BufferedImage create(PixelIterator iter, int preferredType,
+			Dimension destSize) {
+		checkType(preferredType);
+		PixelIterator scalingIter = destSize == null ? iter : ScalingIterator
+				.get(iter, destSize.width, destSize.height);
+		PixelIterator finalIter = scalingIter;
+		if (preferredType == BufferedImage.TYPE_INT_ARGB
+				|| preferredType == BufferedImage.TYPE_INT_ARGB_PRE) {
+			finalIter = new IntARGBConverter(scalingIter);
+		} else if (preferredType == BufferedImage.TYPE_INT_RGB) {
+			finalIter = new IntRGBConverter(scalingIter);
+		} else if (preferredType == BufferedImage.TYPE_3BYTE_BGR) {
+			finalIter = new ByteBGRConverter(scalingIter);
+		} else {
+			finalIter = new ByteBGRAConverter(scalingIter);
+		}
+		return BufferedImageIterator.create(finalIter, null);
+	}
+
+	/**
+	 * Throw an IllegalArgumentException if {@link #create(PixelIterator, int,
+	 * Dimension)} does not support an image type.
+	 */
+	private static void checkType(int preferredType) {
+		if (!(preferredType == BufferedImage.TYPE_INT_ARGB
+				|| preferredType == BufferedImage.TYPE_INT_ARGB_PRE
+				|| preferredType == BufferedImage.TYPE_INT_RGB
+				|| preferredType == BufferedImage.TYPE_3BYTE_BGR
+				|| preferredType == BufferedImage.TYPE_4BYTE_ABGR))
+			throw new IllegalArgumentException("unrecognized type: "
+					+ preferredType);
+	}
+
 	/**
 	 * Scales the source image file to a new size.
+	 * <p>
+	 * BMPs and JPEGs are decoded without the AWT toolkit. JPEGs are decoded
+	 * at the smallest DCT scale (1/2, 1/4 or 1/8) that is still at least
+	 * <code>destSize</code>, so most of the decoding work is skipped.
 	 * 
 	 * @param source
 	 *            the source image file.
@@ -161,26 +217,7 @@ public class Scaling {
 			try {
 				in = source.openStream();
 				PixelIterator iter = BmpDecoderIterator.get(in);
-				PixelIterator scalingIter = destSize == null ? iter
-						: ScalingIterator.get(iter, destSize.width,
-								destSize.height);
-				PixelIterator finalIter = scalingIter;
-				if (preferredType == BufferedImage.TYPE_INT_ARGB
-						|| preferredType == BufferedImage.TYPE_INT_ARGB_PRE) {
-					finalIter = new IntARGBConverter(scalingIter);
-				} else if (preferredType == BufferedImage.TYPE_INT_RGB) {
-					finalIter = new IntRGBConverter(scalingIter);
-				} else if (preferredType == BufferedImage.TYPE_3BYTE_BGR) {
-					finalIter = new ByteBGRConverter(scalingIter);
-				} else if (preferredType == BufferedImage.TYPE_4BYTE_ABGR) {
-					finalIter = new ByteBGRAConverter(scalingIter);
-				} else {
-					throw new IllegalArgumentException("unrecognized type: "
-							+ preferredType);
-				}
-				BufferedImage image = BufferedImageIterator.create(finalIter,
-						null);
-				return image;
+				return create(iter, preferredType, destSize);
 			} catch (IOException e) {
 				return null;
 			} finally {
@@ -191,6 +228,25 @@ public class Scaling {
 					e.printStackTrace();
 				}
 			}
+		} else if (pathLower.endsWith(".jpg") || pathLower.endsWith(".jpeg")) {
+			checkType(preferredType);
+			InputStream in = null;
+			try {
+				in = source.openStream();
+				PixelIterator iter = JPEGDecoderIterator.get(in, destSize);
+				return create(iter, preferredType, destSize);
+			} catch (IOException | RuntimeException e) {
+				// this JPEG uses a feature the decoder doesn't support (or
+				// next() failed partway through the image), so let the
+				// toolkit try
+			} finally {
+				try {
+					if (in != null)
+						in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 		Image image = Toolkit.getDefaultToolkit().createImage(source);
 		try {
@@ -226,10 +282,117 @@ public class Scaling {
 	 */
 	public static BufferedImage scale(BufferedImage source, BufferedImage dest,
 			Dimension destSize) {
+		ForkJoinPool pool = null;
+		if (source != null && source != dest
+				&& ForkJoinPool.getCommonPoolParallelism() > 1) {
+			long pixelCount = (long) source.getWidth() * source.getHeight();
+			if (pixelCount >= PARALLEL_THRESHOLD)
+				pool = ForkJoinPool.commonPool();
+		}
+		return scale(source, dest, destSize, pool);
+	}
+
+	/**
+	 * Scales the source image into the dest, splitting the destination into
+	 * bands of rows that are scaled on a <code>ForkJoinPool</code>.
+	 * <p>
+	 * Each band independently reads the source rows it needs, so the result is
+	 * identical to scaling the image on one thread.
+	 * 
+	 * @param source
+	 *            the source image. This may not be null.
+	 * @param dest
+	 *            the destination image. If non-null: this image must be at
+	 *            least <code>destSize</code> pixels in size or an exception
+	 *            will be thrown. If this is null: an image will be created that
+	 *            is <code>destSize</code> pixels.
+	 *            <p>
+	 *            If this is the same as the <code>source</code> argument then
+	 *            the image is scaled on the calling thread, because bands
+	 *            would otherwise read rows other bands already replaced.
+	 * @param destSize
+	 *            the dimensions to write to. It is guaranteed that these pixels
+	 *            will be replaced in the dest image.
+	 * @param pool
+	 *            the pool used to scale bands of the image. If this is null
+	 *            then the image is scaled on the calling thread.
+	 * @return the <code>dest</code> argument, or a new image if no
+	 *         <code>dest</code> argument was provided.
+	 */
+	public static BufferedImage scale(BufferedImage source, BufferedImage dest,
+			Dimension destSize, ForkJoinPool pool) {
 		if (destSize == null && dest != null) {
 			destSize = new Dimension(dest.getWidth(), dest.getHeight());
 		}
+		dest = createDest(source, dest, destSize);
+
+		if (pool != null && dest != source) {
+			pool.invoke(new ScalingTask(source, dest, destSize.width,
+					destSize.height, pool.getParallelism()));
+			return dest;
+		}
+
+		PixelIterator pi = ScalingIterator.get(
+				BufferedImageIterator.get(source), destSize.width,
+				destSize.height);
+		if (pi instanceof BytePixelIterator) {
+			pi = new IntARGBConverter(pi);
+		}
+		writeRows((IntPixelIterator) pi, dest, destSize);
+		return dest;
+	}
 
+	/**
+	 * Scales the source image into the dest using a {@link ResamplingKernel}.
+	 * <p>
+	 * This is slower than the <code>scale</code> methods, but the kernels
+	 * reduce the aliasing of box averaging when scaling down and the blurring
+	 * of linear interpolation when scaling up.
+	 * 
+	 * @param source
+	 *            the source image. This may not be null.
+	 * @param dest
+	 *            the destination image. If non-null: this image must be at
+	 *            least <code>destSize</code> pixels in size or an exception
+	 *            will be thrown. If this is null: an image will be created that
+	 *            is <code>destSize</code> pixels. This may not be the same as
+	 *            the <code>source</code> argument.
+	 * @param destSize
+	 *            the dimensions to write to. It is guaranteed that these pixels
+	 *            will be replaced in the dest image.
+	 * @param kernel
+	 *            the kernel to resample with. If this is null then this is the
+	 *            same as calling
+	 *            {@link #scale(BufferedImage, BufferedImage, Dimension)}.
+	 * @return the <code>dest</code> argument, or a new image if no
+	 *         <code>dest</code> argument was provided.
+	 */
+	public static BufferedImage resample(BufferedImage source,
+			BufferedImage dest, Dimension destSize, ResamplingKernel kernel) {
+		if (kernel == null)
+			return scale(source, dest, destSize);
+		if (source == dest)
+			throw new IllegalArgumentException(
+					"the source and dest must be different images");
+
+		if (destSize == null && dest != null) {
+			destSize = new Dimension(dest.getWidth(), dest.getHeight());
+		}
+		dest = createDest(source, dest, destSize);
+
+		KernelScalingIterator i = new KernelScalingIterator(
+				BufferedImageIterator.get(source), destSize.width,
+				destSize.height, kernel);
+		writeRows(i, dest, destSize);
+		return dest;
+	}
+
+	/**
+	 * Validate the arguments of a <code>scale</code> method, and create the
+	 * dest image if it is null.
+	 */
+	private static BufferedImage createDest(BufferedImage source,
+			BufferedImage dest, Dimension destSize) {
 		if (source == null) {
 			throw new NullPointerException("no source image");
 		} else if (destSize == null) {
@@ -243,14 +406,14 @@ public class Scaling {
 						BufferedImage.TYPE_INT_RGB);
 			}
 		}
+		return dest;
+	}
 
-		PixelIterator pi = ScalingIterator.get(
-				BufferedImageIterator.get(source), destSize.width,
-				destSize.height);
-		if (pi instanceof BytePixelIterator) {
-			pi = new IntARGBConverter(pi);
-		}
-		IntPixelIterator i = (IntPixelIterator) pi;
+	/**
+	 * Write every row of an iterator to the dest image.
+	 */
+	private static void writeRows(IntPixelIterator i, BufferedImage dest,
+			Dimension destSize) {
 		int[] row = new int[i.getMinimumArrayLength()];
 		if (i.isTopDown()) {
 			for (int y = 0; y < destSize.height; y++) {
@@ -263,7 +426,6 @@ public class Scaling {
 				dest.getRaster().setDataElements(0, y, destSize.width, 1, row);
 			}
 		}
-		return dest;
 	}
 
 	/**
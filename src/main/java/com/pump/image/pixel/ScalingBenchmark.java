@@ -0,0 +1,88 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This measures how long it takes to scale a 40 megapixel image down to 1024
+ * pixels wide using ForkJoinPools with 1 to N threads.
+ * <p>
+ * N is the first argument if one is provided, otherwise it is the number of
+ * available processors. The source image alone requires about 160 MB, so this
+ * may need a larger heap than the default.
+ * <p>
+ * Each parallel result is also compared with the single-threaded result, and
+ * the benchmark stops with an exception if they differ.
+ */
+class ScalingBenchmark {
+
+	static final int SAMPLE_COUNT = 5;
+
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime
+				.getRuntime().availableProcessors();
+
+		BufferedImage source = createImage(7744, 5184);
+		Dimension destSize = new Dimension(1024, 1024 * source.getHeight()
+				/ source.getWidth());
+		BufferedImage expected = Scaling.scale(source, null, destSize, null);
+
+		System.out.println("Threads\tTime (ms)");
+		System.out.println("none\t" + getMedianMillis(source, destSize, null));
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			BufferedImage actual = Scaling.scale(source, null, destSize, pool);
+			if (!Arrays.equals(getPixels(expected), getPixels(actual)))
+				throw new RuntimeException("the parallel result for "
+						+ threads + " thread(s) was different");
+			System.out.println(threads + "\t"
+					+ getMedianMillis(source, destSize, pool));
+			pool.shutdown();
+		}
+		System.exit(0);
+	}
+
+	private static long getMedianMillis(BufferedImage source,
+			Dimension destSize, ForkJoinPool pool) {
+		long[] times = new long[SAMPLE_COUNT];
+		for (int a = 0; a < SAMPLE_COUNT; a++) {
+			times[a] = System.nanoTime();
+			Scaling.scale(source, null, destSize, pool);
+			times[a] = System.nanoTime() - times[a];
+		}
+		Arrays.sort(times);
+		return times[SAMPLE_COUNT / 2] / 1000000;
+	}
+
+	private static BufferedImage createImage(int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) bi.getRaster().getDataBuffer())
+				.getData();
+		Random random = new Random(0);
+		for (int a = 0; a < pixels.length; a++) {
+			pixels[a] = random.nextInt();
+		}
+		return bi;
+	}
+
+	private static int[] getPixels(BufferedImage bi) {
+		return bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null, 0,
+				bi.getWidth());
+	}
+}
@@ -647,7 +647,8 @@ public abstract class ScalingIterator implements PixelIterator {
 						lastRed = reds[x - 1] / sums[x - 1];
 						lastGreen = greens[x - 1] / sums[x - 1];
 						lastBlue = blues[x - 1] / sums[x - 1];
-						lastAlpha = alphas[x - 1] / sums[x - 1];
+						if (alphas != null)
+							lastAlpha = alphas[x - 1] / sums[x - 1];
 					}
 					int startX = x;
 					int span = 1;
@@ -656,7 +657,7 @@ public abstract class ScalingIterator implements PixelIterator {
 						span++;
 					}
 					if (x < sums.length) {
-						newAlpha = alphas[x] / sums[x];
+						newAlpha = alphas == null ? 0 : alphas[x] / sums[x];
 						newRed = reds[x] / sums[x];
 						newGreen = greens[x] / sums[x];
 						newBlue = blues[x] / sums[x];
@@ -679,7 +680,9 @@ public abstract class ScalingIterator implements PixelIterator {
 
 					for (int k = startX; k < x; k++) {
 						int f = k - startX + 1;
-						alphas[k] = ((lastAlpha * (span - f) + newAlpha * f) / span);
+						if (alphas != null)
+							alphas[k] = ((lastAlpha * (span - f) + newAlpha
+									* f) / span);
 						reds[k] = ((lastRed * (span - f) + newRed * f) / span);
 						greens[k] = ((lastGreen * (span - f) + newGreen * f) / span);
 						blues[k] = ((lastBlue * (span - f) + newBlue * f) / span);
@@ -1089,7 +1092,8 @@ public abstract class ScalingIterator implements PixelIterator {
 						lastRed = reds[x - 1] / sums[x - 1];
 						lastGreen = greens[x - 1] / sums[x - 1];
 						lastBlue = blues[x - 1] / sums[x - 1];
-						lastAlpha = alphas[x - 1] / sums[x - 1];
+						if (alphas != null)
+							lastAlpha = alphas[x - 1] / sums[x - 1];
 					}
 					int startX = x;
 					int span = 1;
@@ -1098,7 +1102,7 @@ public abstract class ScalingIterator implements PixelIterator {
 						span++;
 					}
 					if (x < sums.length) {
-						newAlpha = alphas[x] / sums[x];
+						newAlpha = alphas == null ? 0 : alphas[x] / sums[x];
 						newRed = reds[x] / sums[x];
 						newGreen = greens[x] / sums[x];
 						newBlue = blues[x] / sums[x];
@@ -1121,8 +1125,9 @@ public abstract class ScalingIterator implements PixelIterator {
 
 					for (int k = startX; k < x; k++) {
 						int f = k - startX + 1;
-						alphas[k] = (short) ((lastAlpha * (span - f) + newAlpha
-								* f) / span);
+						if (alphas != null)
+							alphas[k] = (short) ((lastAlpha * (span - f) + newAlpha
+									* f) / span);
 						reds[k] = (short) ((lastRed * (span - f) + newRed * f) / span);
 						greens[k] = (short) ((lastGreen * (span - f) + newGreen
 								* f) / span);
@@ -1352,6 +1357,22 @@ public abstract class ScalingIterator implements PixelIterator {
 		 */
 	}
 
+	/**
+	 * Position this iterator so the next row it returns is destination row
+	 * <code>dstY</code>. This only changes which source rows are skipped, so it
+	 * must be called before any rows are read.
+	 * <p>
+	 * Each destination row is calculated from its own window of source rows, so
+	 * this lets separate iterators scale separate bands of the same image.
+	 * 
+	 * @see ScalingTask
+	 */
+	void seek(int dstY) {
+		if (this.dstY != 0 || srcY != 0)
+			throw new IllegalStateException("rows have already been read");
+		this.dstY = dstY;
+	}
+
 	protected void flush() {
 		skipRemainingRows();
 		row = null;
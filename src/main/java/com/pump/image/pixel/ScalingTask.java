@@ -0,0 +1,112 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This scales a band of destination rows, splitting it into smaller bands for
+ * other threads to steal if it is large.
+ * <p>
+ * Every band reads the source through its own {@link ScalingIterator}, which
+ * skips ahead to the window of source rows its first destination row needs.
+ * Because each destination row only depends on that window, the pixels are
+ * identical to scaling the whole image in one pass.
+ */
+class ScalingTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The number of bands to create for each thread, so threads that finish
+	 * early can steal work from threads that are still busy.
+	 */
+	static final int BANDS_PER_THREAD = 4;
+
+	/**
+	 * The minimum number of destination rows in a band.
+	 */
+	static final int MIN_BAND_HEIGHT = 8;
+
+	final BufferedImage source, dest;
+	final int destWidth, destHeight, minY, maxY, bandHeight;
+
+	/**
+	 * @param source
+	 *            the image to read. This is never modified.
+	 * @param dest
+	 *            the image to write to. This must not be the source image.
+	 * @param destWidth
+	 *            the width of the scaled image.
+	 * @param destHeight
+	 *            the height of the scaled image.
+	 * @param parallelism
+	 *            the number of threads that will share this work.
+	 */
+	ScalingTask(BufferedImage source, BufferedImage dest, int destWidth,
+			int destHeight, int parallelism) {
+		this(source, dest, destWidth, destHeight, 0, destHeight, Math.max(
+				MIN_BAND_HEIGHT, destHeight
+						/ (Math.max(1, parallelism) * BANDS_PER_THREAD)));
+	}
+
+	private ScalingTask(BufferedImage source, BufferedImage dest,
+			int destWidth, int destHeight, int minY, int maxY, int bandHeight) {
+		this.source = source;
+		this.dest = dest;
+		this.destWidth = destWidth;
+		this.destHeight = destHeight;
+		this.minY = minY;
+		this.maxY = maxY;
+		this.bandHeight = bandHeight;
+	}
+
+	@Override
+	protected void compute() {
+		if (maxY - minY > bandHeight) {
+			int midY = (minY + maxY) / 2;
+			invokeAll(new ScalingTask(source, dest, destWidth, destHeight,
+					minY, midY, bandHeight), new ScalingTask(source, dest,
+					destWidth, destHeight, midY, maxY, bandHeight));
+			return;
+		}
+
+		PixelIterator pi = ScalingIterator.get(
+				BufferedImageIterator.get(source), destWidth, destHeight);
+		boolean topDown = pi.isTopDown();
+		// the first row the iterator returns, counting in its own direction
+		int firstRow = topDown ? minY : destHeight - maxY;
+		if (pi instanceof ScalingIterator) {
+			((ScalingIterator) pi).seek(firstRow);
+		} else {
+			for (int y = 0; y < firstRow; y++) {
+				pi.skip();
+			}
+		}
+		if (pi instanceof BytePixelIterator) {
+			pi = new IntARGBConverter(pi);
+		}
+		IntPixelIterator i = (IntPixelIterator) pi;
+		int[] row = new int[i.getMinimumArrayLength()];
+		if (topDown) {
+			for (int y = minY; y < maxY; y++) {
+				i.next(row);
+				dest.getRaster().setDataElements(0, y, destWidth, 1, row);
+			}
+		} else {
+			for (int y = maxY - 1; y >= minY; y--) {
+				i.next(row);
+				dest.getRaster().setDataElements(0, y, destWidth, 1, row);
+			}
+		}
+	}
+}
@@ -10,11 +10,6 @@
  */
 package com.pump.image.pixel.quantize;
 
-import java.util.Arrays;
-import java.util.Map;
-
-import com.pump.image.pixel.quantize.ColorSet.FrequencyComparator;
-
 /**
  * This is a modified <code>MedianCutColorQuantization</code>.
  * <p>
@@ -64,61 +59,43 @@ public class BiasedMedianCutColorQuantization extends ColorQuantization {
 	@Override
 	public ColorSet createReducedSet(ColorSet originalSet,
 			int maximumColorCount, boolean retainOriginalIntegrity) {
-		Map<Integer, Integer> frequencyMap = originalSet
-				.getRGBtoFrequencyMap(false);
-		long pixelCount = originalSet.getPixelCount();
+		int[] rgb;
+		int[] counts;
+		long pixelCount;
+		synchronized (originalSet) {
+			rgb = new int[originalSet.histogram.size()];
+			counts = new int[rgb.length];
+			originalSet.histogram.getColors(rgb, counts);
+			pixelCount = originalSet.getPixelCount();
+		}
 
 		ColorSet newGuy = new ColorSet();
 
 		/*
-		 * Process all the colors that occur above the pureColorThreshold:
+		 * Process all the colors that occur above the pureColorThreshold. The
+		 * remaining colors are copied into the front of the arrays, so the
+		 * originalSet is never modified.
 		 */
-		ColorSet remainingColors;
+		int remainingCount = rgb.length;
 		if (pureColorThreshold > 0) {
-			Integer[] rgb = frequencyMap.keySet().toArray(
-					new Integer[frequencyMap.size()]);
-			FrequencyComparator comparator = new FrequencyComparator(
-					originalSet, false);
-			Arrays.sort(rgb, comparator);
-
-			if (retainOriginalIntegrity) {
-				remainingColors = new ColorSet();
-				for (int a = 0; a < rgb.length; a++) {
-					int k = frequencyMap.get(rgb[a]);
-					double frequencyFraction = ((double) k)
-							/ ((double) pixelCount);
-					if (frequencyFraction >= pureColorThreshold) {
-						newGuy.addColor((rgb[a] >> 16) & 0xff,
-								(rgb[a] >> 8) & 0xff, (rgb[a] >> 0) & 0xff, k);
-					} else {
-						remainingColors.addColor((rgb[a] >> 16) & 0xff,
-								(rgb[a] >> 8) & 0xff, (rgb[a] >> 0) & 0xff, k);
-					}
-				}
-			} else {
-				remainingColors = originalSet;
-				identifyThresholdColors: for (int a = 0; a < rgb.length; a++) {
-					int k = frequencyMap.get(rgb[a]);
-					double frequencyFraction = ((double) k)
-							/ ((double) pixelCount);
-					if (frequencyFraction >= pureColorThreshold) {
-						newGuy.addColor((rgb[a] >> 16) & 0xff,
-								(rgb[a] >> 8) & 0xff, (rgb[a] >> 0) & 0xff, k);
-						frequencyMap.remove(rgb[a]);
-					} else {
-						break identifyThresholdColors;
-					}
+			remainingCount = 0;
+			for (int a = 0; a < rgb.length; a++) {
+				double frequencyFraction = ((double) counts[a])
+						/ ((double) pixelCount);
+				if (frequencyFraction >= pureColorThreshold) {
+					newGuy.histogram.add(rgb[a], counts[a]);
+				} else {
+					rgb[remainingCount] = rgb[a];
+					counts[remainingCount] = counts[a];
+					remainingCount++;
 				}
 			}
-		} else {
-			remainingColors = originalSet;
 		}
 
 		MedianCutColorQuantization m = new MedianCutColorQuantization();
-		newGuy.addColors(m.createReducedSet(remainingColors, maximumColorCount
-				- newGuy.getColorCount(), remainingColors == originalSet
-				&& retainOriginalIntegrity));
+		newGuy.addColors(m.createReducedSet(rgb, counts, remainingCount,
+				maximumColorCount - newGuy.getColorCount()));
 
 		return newGuy;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,360 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.pump.image.pixel.BufferedImageIterator;
+import com.pump.image.pixel.IntARGBConverter;
+
+/**
+ * This counts the number of occurrences of opaque RGB colors.
+ * <p>
+ * This is an open-addressing hash table of primitive ints, so adding a color
+ * never allocates an object. This class is not thread-safe: to process an
+ * image on several threads each thread should populate its own
+ * <code>ColorHistogram</code>, and then the results can be combined with
+ * {@link #add(ColorHistogram)}. {@link #create(BufferedImage)} does exactly
+ * this.
+ */
+public class ColorHistogram implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** The value in <code>keys</code> that indicates an unused slot. */
+	private static final int EMPTY = -1;
+
+	/**
+	 * Images with fewer pixels than this are processed on a single thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+	/**
+	 * This splits an image into bands of rows and populates a
+	 * <code>ColorHistogram</code> for each band.
+	 */
+	static class CreateHistogramTask extends RecursiveTask<ColorHistogram> {
+		private static final long serialVersionUID = 1L;
+
+		final BufferedImage image;
+		final int y, height;
+
+		CreateHistogramTask(BufferedImage image, int y, int height) {
+			this.image = image;
+			this.y = y;
+			this.height = height;
+		}
+
+		@Override
+		protected ColorHistogram compute() {
+			int width = image.getWidth();
+			if (height < 2 || ((long) width) * height <= PARALLEL_THRESHOLD) {
+				ColorHistogram histogram = new ColorHistogram();
+				histogram.addPixels(new IntARGBConverter(BufferedImageIterator
+						.get(image.getSubimage(0, y, width, height))));
+				return histogram;
+			}
+			int h1 = height / 2;
+			CreateHistogramTask top = new CreateHistogramTask(image, y, h1);
+			CreateHistogramTask bottom = new CreateHistogramTask(image,
+					y + h1, height - h1);
+			top.fork();
+			ColorHistogram h = bottom.compute();
+			ColorHistogram h2 = top.join();
+			if (h.size() < h2.size()) {
+				ColorHistogram t = h;
+				h = h2;
+				h2 = t;
+			}
+			h.add(h2);
+			return h;
+		}
+	}
+
+	/**
+	 * Create a ColorHistogram of every pixel in an image that is more than 50%
+	 * opaque. Large images are split into bands that are processed in
+	 * parallel.
+	 *
+	 * @param image
+	 *            the image to process.
+	 * @return a new ColorHistogram describing the image.
+	 */
+	public static ColorHistogram create(BufferedImage image) {
+		if (image.getHeight() == 0)
+			return new ColorHistogram();
+		return ForkJoinPool.commonPool().invoke(
+				new CreateHistogramTask(image, 0, image.getHeight()));
+	}
+
+	/**
+	 * RGB values (with no alpha component), or <code>EMPTY</code>.
+	 */
+	private int[] keys;
+
+	/**
+	 * The number of occurrences of the color in the same slot of
+	 * <code>keys</code>.
+	 */
+	private int[] counts;
+
+	private int size;
+	private long pixelCount;
+
+	/** Create an empty ColorHistogram. */
+	public ColorHistogram() {
+		this(64);
+	}
+
+	/**
+	 * Create an empty ColorHistogram.
+	 *
+	 * @param expectedColors
+	 *            the number of distinct colors this histogram should be able
+	 *            to store before it needs to resize.
+	 */
+	public ColorHistogram(int expectedColors) {
+		int capacity = 16;
+		while (capacity < 2 * expectedColors && capacity < (1 << 30)) {
+			capacity *= 2;
+		}
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		counts = new int[capacity];
+	}
+
+	private static int hash(int rgb) {
+		int h = rgb * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Return the slot <code>rgb</code> is stored in, or the empty slot it
+	 * should be stored in.
+	 */
+	private int getSlot(int rgb) {
+		int mask = keys.length - 1;
+		int slot = hash(rgb) & mask;
+		while (true) {
+			int k = keys[slot];
+			if (k == rgb || k == EMPTY)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void resize() {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		counts = new int[keys.length];
+		for (int a = 0; a < oldKeys.length; a++) {
+			if (oldKeys[a] != EMPTY) {
+				int slot = getSlot(oldKeys[a]);
+				keys[slot] = oldKeys[a];
+				counts[slot] = oldCounts[a];
+			}
+		}
+	}
+
+	/**
+	 * Add occurrences of a color.
+	 *
+	 * @param rgb
+	 *            the color to add. The alpha component is ignored.
+	 * @param occurrences
+	 *            the number of occurrences to add.
+	 */
+	public void add(int rgb, int occurrences) {
+		rgb = rgb & 0xffffff;
+		int slot = getSlot(rgb);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = rgb;
+			counts[slot] = occurrences;
+			size++;
+			if (2 * size > keys.length)
+				resize();
+		} else {
+			counts[slot] += occurrences;
+		}
+		pixelCount += occurrences;
+	}
+
+	/**
+	 * Add every pixel that is more than 50% opaque. This does not account for
+	 * premultiplied alpha.
+	 *
+	 * @param argb
+	 *            ARGB pixel data.
+	 * @param offset
+	 *            the index of the first pixel to add.
+	 * @param length
+	 *            the number of pixels to add.
+	 */
+	public void addPixels(int[] argb, int offset, int length) {
+		int end = offset + length;
+		int lastRGB = EMPTY;
+		int run = 0;
+		for (int a = offset; a < end; a++) {
+			int pixel = argb[a];
+			if (((pixel >> 24) & 0xff) > 128) {
+				int rgb = pixel & 0xffffff;
+				// runs of the same color are very common, so collapse them:
+				if (rgb == lastRGB) {
+					run++;
+				} else {
+					if (run > 0)
+						add(lastRGB, run);
+					lastRGB = rgb;
+					run = 1;
+				}
+			}
+		}
+		if (run > 0)
+			add(lastRGB, run);
+	}
+
+	/**
+	 * Add every pixel in an iterator that is more than 50% opaque.
+	 *
+	 * @param iter
+	 *            the pixel data to process.
+	 */
+	public void addPixels(IntARGBConverter iter) {
+		int w = iter.getWidth();
+		int[] row = new int[iter.getMinimumArrayLength()];
+		while (iter.isDone() == false) {
+			iter.next(row);
+			addPixels(row, 0, w);
+		}
+	}
+
+	/**
+	 * Add all the colors in another histogram to this histogram.
+	 *
+	 * @param other
+	 *            the histogram to merge into this one. This is not modified.
+	 */
+	public void add(ColorHistogram other) {
+		int[] otherKeys = other.keys;
+		int[] otherCounts = other.counts;
+		for (int a = 0; a < otherKeys.length; a++) {
+			if (otherKeys[a] != EMPTY) {
+				add(otherKeys[a], otherCounts[a]);
+			}
+		}
+	}
+
+	/**
+	 * Return the number of occurrences of a color.
+	 *
+	 * @param rgb
+	 *            the color to look up. The alpha component is ignored.
+	 * @return the number of times this color was added, or zero.
+	 */
+	public int get(int rgb) {
+		int slot = getSlot(rgb & 0xffffff);
+		return keys[slot] == EMPTY ? 0 : counts[slot];
+	}
+
+	/**
+	 * Return the number of distinct colors in this histogram.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the sum of all the occurrences in this histogram.
+	 */
+	public long getPixelCount() {
+		return pixelCount;
+	}
+
+	/**
+	 * Remove all colors from this histogram.
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(counts, 0);
+		size = 0;
+		pixelCount = 0;
+	}
+
+	/**
+	 * Copy the contents of this histogram into two parallel arrays, sorted in
+	 * ascending RGB order (which is the order a
+	 * {@link ColorSet.RGBChannelComparator} with offsets (16, 8, 0) uses).
+	 *
+	 * @param rgbDest
+	 *            the array to store RGB values in. This must be at least
+	 *            {@link #size()} elements long.
+	 * @param countDest
+	 *            the array to store the number of occurrences of each RGB
+	 *            value in. This must be at least {@link #size()} elements
+	 *            long, or it may be null.
+	 */
+	public void getColors(int[] rgbDest, int[] countDest) {
+		int ctr = 0;
+		for (int a = 0; a < keys.length; a++) {
+			if (keys[a] != EMPTY) {
+				rgbDest[ctr++] = keys[a];
+			}
+		}
+		Arrays.sort(rgbDest, 0, size);
+		if (countDest != null) {
+			for (int a = 0; a < size; a++) {
+				countDest[a] = get(rgbDest[a]);
+			}
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return size;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ColorHistogram))
+			return false;
+		return equals((ColorHistogram) obj, false);
+	}
+
+	/**
+	 * Return true if another histogram contains the same colors as this
+	 * histogram.
+	 *
+	 * @param other
+	 *            the histogram to compare against.
+	 * @param compareColorsOnly
+	 *            if true then the number of occurrences of each color is
+	 *            ignored.
+	 */
+	public boolean equals(ColorHistogram other, boolean compareColorsOnly) {
+		if (other.size != size)
+			return false;
+		for (int a = 0; a < keys.length; a++) {
+			if (keys[a] != EMPTY) {
+				int otherCount = other.get(keys[a]);
+				if (otherCount == 0)
+					return false;
+				if (!compareColorsOnly && otherCount != counts[a])
+					return false;
+			}
+		}
+		return true;
+	}
+}
@@ -23,6 +23,14 @@ import java.util.TreeSet;
  * subcubes. So instead of searching through all possible colors every time we
  * require a match: we hone in on the exact subcube and iterate outward a cycle
  * or two.
+ * <p>
+ * Alternatively this can precompute an inverse colormap: a dense table that
+ * divides the color cube into 32x32x32 cells and records which palette entry
+ * is closest to each cell. Most cells can only be matched to one palette entry,
+ * so most lookups become a single array read. Cells that straddle the boundary
+ * between palette entries store a short list of candidates that are compared
+ * exactly. These lookups never allocate memory, and (unlike the subcube search)
+ * they always return the true closest match.
  */
 public class ColorLUT {
 	public static class ColorNode implements Comparable<ColorNode> {
@@ -118,13 +126,147 @@ public class ColorLUT {
 			}
 		}
 
-		public void add(int red, int green, int blue, int index) {
+		public ColorNode add(int red, int green, int blue, int index) {
 			ColorNode n = new ColorNode(red, green, blue, index);
 			ColorNode[] newArray = new ColorNode[nodes.length + 1];
 			System.arraycopy(nodes, 0, newArray, 0, nodes.length);
 			newArray[newArray.length - 1] = n;
 
 			nodes = newArray;
+			return n;
+		}
+	}
+
+	/**
+	 * A dense table mapping 32x32x32 cells of the color cube to the palette
+	 * entries that may be closest to colors in that cell.
+	 */
+	private static class InverseColormap {
+		static final int BITS = 5;
+		static final int SHIFT = 8 - BITS;
+		static final int SPAN = 1 << SHIFT;
+
+		final ColorNode[] nodes;
+		final int[] red, green, blue;
+
+		/**
+		 * If a value is zero or greater: it is the only element in
+		 * <code>nodes</code> that can match this cell. Otherwise its
+		 * complement is an offset in <code>candidates</code>.
+		 */
+		final int[] cells = new int[1 << (3 * BITS)];
+
+		/**
+		 * Lists of candidates for ambiguous cells. Each list is the number of
+		 * candidates followed by their positions in <code>nodes</code>.
+		 */
+		final int[] candidates;
+
+		InverseColormap(ColorNode[] nodes) {
+			this.nodes = nodes;
+			red = new int[nodes.length];
+			green = new int[nodes.length];
+			blue = new int[nodes.length];
+			for (int a = 0; a < nodes.length; a++) {
+				red[a] = nodes[a].red;
+				green[a] = nodes[a].green;
+				blue[a] = nodes[a].blue;
+			}
+
+			int[] list = new int[1024];
+			int listSize = 0;
+			int[] cellCandidates = new int[nodes.length];
+			int cellsPerChannel = 1 << BITS;
+			for (int ri = 0; ri < cellsPerChannel; ri++) {
+				for (int gi = 0; gi < cellsPerChannel; gi++) {
+					for (int bi = 0; bi < cellsPerChannel; bi++) {
+						int minR = ri * SPAN, minG = gi * SPAN, minB = bi
+								* SPAN;
+						int maxR = minR + SPAN - 1, maxG = minG + SPAN - 1, maxB = minB
+								+ SPAN - 1;
+
+						// every color in this cell is at least this close to
+						// one node:
+						int leastMaxError = Integer.MAX_VALUE;
+						for (int a = 0; a < nodes.length; a++) {
+							int e = maxDistance(red[a], minR, maxR)
+									+ maxDistance(green[a], minG, maxG)
+									+ maxDistance(blue[a], minB, maxB);
+							if (e < leastMaxError)
+								leastMaxError = e;
+						}
+
+						// ... so only nodes within that range can match:
+						int count = 0;
+						for (int a = 0; a < nodes.length; a++) {
+							int e = minDistance(red[a], minR, maxR)
+									+ minDistance(green[a], minG, maxG)
+									+ minDistance(blue[a], minB, maxB);
+							if (e <= leastMaxError)
+								cellCandidates[count++] = a;
+						}
+
+						int cell = (ri << (2 * BITS)) | (gi << BITS) | bi;
+						if (count == 1) {
+							cells[cell] = cellCandidates[0];
+						} else {
+							if (listSize + count + 1 > list.length) {
+								int[] newList = new int[Math.max(
+										list.length * 2, listSize + count + 1)];
+								System.arraycopy(list, 0, newList, 0,
+										listSize);
+								list = newList;
+							}
+							cells[cell] = ~listSize;
+							list[listSize++] = count;
+							System.arraycopy(cellCandidates, 0, list,
+									listSize, count);
+							listSize += count;
+						}
+					}
+				}
+			}
+			candidates = new int[listSize];
+			System.arraycopy(list, 0, candidates, 0, listSize);
+		}
+
+		private static int maxDistance(int v, int min, int max) {
+			int d = Math.max(v - min, max - v);
+			return d * d;
+		}
+
+		private static int minDistance(int v, int min, int max) {
+			int d = v < min ? min - v : v > max ? v - max : 0;
+			return d * d;
+		}
+
+		/**
+		 * Return the position in <code>nodes</code> of the closest match. If
+		 * several nodes are equally close this returns the first one.
+		 */
+		int getNodeIndex(int r, int g, int b) {
+			int cell = ((r >> SHIFT) << (2 * BITS)) | ((g >> SHIFT) << BITS)
+					| (b >> SHIFT);
+			int v = cells[cell];
+			if (v >= 0)
+				return v;
+
+			int offset = ~v;
+			int end = offset + 1 + candidates[offset];
+			int bestNode = -1;
+			int bestError = Integer.MAX_VALUE;
+			for (int a = offset + 1; a < end; a++) {
+				int n = candidates[a];
+				int dr = r - red[n];
+				int dg = g - green[n];
+				int db = b - blue[n];
+				int errorSquared = dr * dr + dg * dg + db * db;
+				if (errorSquared < bestError) {
+					bestError = errorSquared;
+					bestNode = n;
+				}
+			}
+			return bestNode;
 		}
 	}
 
@@ -132,6 +274,8 @@ public class ColorLUT {
 	int span = 256 / divisions;
 	Cluster[][][] subcubes = new Cluster[divisions][divisions][divisions];
 	IndexColorModel indexColorModel;
+	ColorNode[] allNodes = new ColorNode[0];
+	InverseColormap inverseColormap;
 
 	/** Create a ColorLUT where every color has an index of -1. */
 	public ColorLUT(Integer[] rgb) {
@@ -145,6 +289,23 @@ public class ColorLUT {
 
 	/** Create a ColorLUT from a <code>IndexColorModel</code>. */
 	public ColorLUT(IndexColorModel icm) {
+		this(icm, false);
+	}
+
+	/**
+	 * Create a ColorLUT from a <code>IndexColorModel</code>.
+	 * 
+	 * @param icm
+	 *            the colors to match against.
+	 * @param useInverseColormap
+	 *            if true then this precomputes a table to accelerate matches
+	 *            and make them exact. The setup time grows with the number
+	 *            of colors (for 256 colors this may take a tenth of a second)
+	 *            and the table requires at least 128 KB of memory, so this is
+	 *            appropriate when this ColorLUT will be used to map the pixels
+	 *            of an image.
+	 */
+	public ColorLUT(IndexColorModel icm, boolean useInverseColormap) {
 		this.indexColorModel = icm;
 
 		for (int a = 0; a < icm.getMapSize(); a++) {
@@ -155,6 +316,8 @@ public class ColorLUT {
 				addRGB(red, green, blue, a);
 			}
 		}
+		if (useInverseColormap && allNodes.length > 0)
+			inverseColormap = new InverseColormap(allNodes);
 	}
 
 	/**
@@ -174,7 +337,12 @@ public class ColorLUT {
 			subcubes[i1][i2][i3] = new Cluster(i1 * span, i2 * span, i3 * span,
 					span - 1);
 		}
-		subcubes[i1][i2][i3].add(red, green, blue, index);
+		ColorNode node = subcubes[i1][i2][i3].add(red, green, blue, index);
+
+		ColorNode[] newNodes = new ColorNode[allNodes.length + 1];
+		System.arraycopy(allNodes, 0, newNodes, 0, allNodes.length);
+		newNodes[allNodes.length] = node;
+		allNodes = newNodes;
 	}
 
 	/** A response to a query for approximate matches. */
@@ -200,8 +368,21 @@ public class ColorLUT {
 	}
 
 	public int getIndexMatch(int red, int green, int blue) {
-		Match match = getMatch(red, green, blue);
-		return match.node.index;
+		return getNodeMatch(red, green, blue).index;
+	}
+
+	/**
+	 * Return the closest color to the argument.
+	 * <p>
+	 * If this ColorLUT uses an inverse colormap then this does not allocate
+	 * any memory.
+	 */
+	public ColorNode getNodeMatch(int red, int green, int blue) {
+		if (inverseColormap != null) {
+			return inverseColormap.nodes[inverseColormap.getNodeIndex(red,
+					green, blue)];
+		}
+		return getMatch(red, green, blue).node;
 	}
 
 	private static Set<Match> scratchMatches = new TreeSet<Match>();
@@ -226,6 +407,13 @@ public class ColorLUT {
 	private static Set<Cluster> outerRing = new HashSet<Cluster>();
 
 	public Match getMatch(int red, int green, int blue) {
+		if (inverseColormap != null) {
+			ColorNode node = getNodeMatch(red, green, blue);
+			int dr = red - node.red;
+			int dg = green - node.green;
+			int db = blue - node.blue;
+			return new Match(node, dr * dr + dg * dg + db * db);
+		}
 		int i1 = red / span;
 		int i2 = green / span;
 		int i3 = blue / span;
@@ -0,0 +1,91 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel.quantize;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This measures how long it takes to quantize a 3840x2160 image against a
+ * 256-color palette, with and without an inverse colormap in the ColorLUT.
+ * <p>
+ * It first reports the one-time cost of building the inverse colormap, and
+ * then the median time of nearest-neighbor and error-diffusion quantization
+ * using the inverse colormap and using the original subcube search.
+ */
+class ColorLUTBenchmark {
+
+	static final int SAMPLE_COUNT = 5;
+
+	public static void main(String[] args) {
+		BufferedImage image = createImage(3840, 2160);
+		ColorSet colors = new ColorSet(image);
+		IndexColorModel icm = new BiasedMedianCutColorQuantization()
+				.createReducedSet(colors, 256, true).createIndexColorModel(
+						false, false);
+		System.out.println("Palette size: " + icm.getMapSize());
+
+		long[] times = new long[SAMPLE_COUNT];
+		for (int a = 0; a < times.length; a++) {
+			times[a] = System.currentTimeMillis();
+			new ColorLUT(icm, true);
+			times[a] = System.currentTimeMillis() - times[a];
+		}
+		System.out.println("Build inverse colormap: " + median(times) + " ms");
+
+		ImageQuantization[] quantizations = new ImageQuantization[] {
+				ImageQuantization.NEAREST_NEIGHBOR,
+				ImageQuantization.MEDIUM_DIFFUSION };
+		for (ImageQuantization q : quantizations) {
+			for (boolean inverse : new boolean[] { false, true }) {
+				ColorLUT lut = new ColorLUT(icm, inverse);
+				for (int a = 0; a < times.length; a++) {
+					times[a] = System.currentTimeMillis();
+					q.createImage(image, lut);
+					times[a] = System.currentTimeMillis() - times[a];
+				}
+				System.out.println(q + (inverse ? " (inverse colormap): "
+						: " (subcubes): ") + median(times) + " ms");
+			}
+		}
+	}
+
+	static long median(long[] times) {
+		long[] copy = times.clone();
+		Arrays.sort(copy);
+		return copy[copy.length / 2];
+	}
+
+	static BufferedImage createImage(int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setPaint(new GradientPaint(0, 0, new Color(0x2d3436), width, height,
+				new Color(0x74b9ff)));
+		g.fillRect(0, 0, width, height);
+		Random random = new Random(0);
+		for (int a = 0; a < 400; a++) {
+			g.setColor(new Color(random.nextInt(0xffffff)));
+			int r = 20 + random.nextInt(200);
+			g.fillOval(random.nextInt(width), random.nextInt(height), r, r);
+		}
+		g.dispose();
+		return bi;
+	}
+}
@@ -19,20 +19,21 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 
-import com.pump.image.pixel.BufferedImageIterator;
 import com.pump.image.pixel.IntARGBConverter;
 
 /**
  * This class stores information about the frequency of colors. This assumes all
  * colors are opaque.
- * 
+ * <p>
+ * The frequencies are stored in a {@link ColorHistogram}. The methods in this
+ * class are synchronized, but large images are added by populating separate
+ * histograms on several threads and merging the results.
  */
 public class ColorSet implements Serializable {
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
 	/**
 	 * Sort RGB values in order of frequency. This has to be relative to a
@@ -57,8 +58,8 @@ public class ColorSet implements Serializable {
 		}
 
 		public int compare(Integer rgb1, Integer rgb2) {
-			int p1 = set.tree.get(rgb1);
-			int p2 = set.tree.get(rgb2);
+			int p1 = set.histogram.get(rgb1);
+			int p2 = set.histogram.get(rgb2);
 			if (ascending) {
 				if (p1 < p2) {
 					return -1;
@@ -133,14 +134,7 @@ public class ColorSet implements Serializable {
 			16, 8, 0);
 
 	/** Map RGB values to the number of occurrences. */
-	TreeMap<Integer, Integer> tree = new TreeMap<Integer, Integer>(
-			redComparator);
-
-	/**
-	 * A cached value of the number of pixels. This is equivalent to the sum of
-	 * all the values in <code>tree</code>.
-	 */
-	private long pixelCount = 0;
+	ColorHistogram histogram = new ColorHistogram();
 
 	/** Create an empty ColorSet. */
 	public ColorSet() {
@@ -198,7 +192,7 @@ public class ColorSet implements Serializable {
 				count = 1;
 			}
 			int rgb = r << 16 + (g << 8) + b;
-			tree.put(rgb, count);
+			histogram.add(rgb, count);
 			i = i3 + 1;
 		}
 	}
@@ -207,19 +201,32 @@ public class ColorSet implements Serializable {
 	 * @return a map of RGB colors to the number of occurrences of each color.
 	 * 
 	 * @param cloneData
-	 *            if true then the inner data in this object will be safely
-	 *            cloned. If false then this will return a pointer to the data
-	 *            that backs this object. This may help the efficiency of some
-	 *            algorithms, but of course it needs to be done with caution.
+	 *            this is ignored: this data is no longer stored in a
+	 *            <code>Map</code>, so this always returns a new copy. Changes
+	 *            to the returned map do not affect this set.
+	 *            {@link #getHistogram()} provides the same data without
+	 *            boxing.
 	 */
-	public Map<Integer, Integer> getRGBtoFrequencyMap(boolean cloneData) {
-		if (cloneData) {
-			TreeMap<Integer, Integer> newCopy = new TreeMap<Integer, Integer>(
-					redComparator);
-			newCopy.putAll(tree);
-			return newCopy;
+	public synchronized Map<Integer, Integer> getRGBtoFrequencyMap(
+			boolean cloneData) {
+		TreeMap<Integer, Integer> newCopy = new TreeMap<Integer, Integer>(
+				redComparator);
+		int[] rgb = new int[histogram.size()];
+		int[] counts = new int[rgb.length];
+		histogram.getColors(rgb, counts);
+		for (int a = 0; a < rgb.length; a++) {
+			newCopy.put(rgb[a], counts[a]);
 		}
-		return tree;
+		return newCopy;
+	}
+
+	/**
+	 * @return a copy of the histogram of RGB colors this set stores.
+	 */
+	public synchronized ColorHistogram getHistogram() {
+		ColorHistogram copy = new ColorHistogram(histogram.size());
+		copy.add(histogram);
+		return copy;
 	}
 
 	/**
@@ -242,10 +249,9 @@ public class ColorSet implements Serializable {
 	 */
 	public int getOccurrences(int red, int green, int blue) {
 		int rgb = (red << 16) + (green << 8) + blue;
-		Integer count = tree.get(rgb);
-		if (count == null)
-			return 0;
-		return count;
+		synchronized (this) {
+			return histogram.get(rgb);
+		}
 	}
 
 	public boolean equals(Object obj) {
@@ -267,17 +273,12 @@ public class ColorSet implements Serializable {
 	 */
 	public synchronized boolean equals(ColorSet l, boolean compareColorsOnly) {
 		synchronized (l) {
-			if (l.tree.size() != tree.size())
-				return false;
-			if (compareColorsOnly) {
-				return tree.keySet().equals(l.tree.keySet());
-			}
-			return tree.equals(l.tree);
+			return histogram.equals(l.histogram, compareColorsOnly);
 		}
 	}
 
 	public String toString() {
-		StringWriter s = new StringWriter(tree.size() * 18);
+		StringWriter s = new StringWriter(getColorCount() * 18);
 		try {
 			write(s);
 		} catch (IOException e) {
@@ -289,13 +290,15 @@ public class ColorSet implements Serializable {
 
 	public synchronized void write(Writer out) throws IOException {
 		out.write(ColorSet.class.getName() + "[");
-		Iterator<Integer> keyIter = tree.keySet().iterator();
-		while (keyIter.hasNext()) {
-			int rgb = keyIter.next();
+		int[] allColors = new int[histogram.size()];
+		int[] allCounts = new int[allColors.length];
+		histogram.getColors(allColors, allCounts);
+		for (int a = 0; a < allColors.length; a++) {
+			int rgb = allColors[a];
 			int r = (rgb >> 16) & 0xff;
 			int g = (rgb >> 8) & 0xff;
 			int b = (rgb >> 0) & 0xff;
-			int count = tree.get(rgb);
+			int count = allCounts[a];
 
 			out.write('(');
 			out.write(r + "");
@@ -308,7 +311,7 @@ public class ColorSet implements Serializable {
 				out.write('x');
 				out.write(count + "");
 			}
-			if (keyIter.hasNext()) {
+			if (a + 1 < allColors.length) {
 				out.write(',');
 			}
 		}
@@ -341,28 +344,21 @@ public class ColorSet implements Serializable {
 			throw new IllegalArgumentException("b must be between 0 and 255");
 		int rgb = (r << 16) + (g << 8) + b;
 
-		Integer count = tree.get(rgb);
-		if (count == null) {
-			tree.put(rgb, occurrence);
-		} else {
-			tree.put(rgb, count + occurrence);
-		}
-
-		pixelCount += occurrence;
+		histogram.add(rgb, occurrence);
 	}
 
 	/**
 	 * @return the number of colors represented in this <code>ColorSet</code>.
 	 */
 	public synchronized int getColorCount() {
-		return tree.size();
+		return histogram.size();
 	}
 
 	/**
 	 * @return the number of pixels represented in this <code>ColorSet</code>.
 	 */
 	public synchronized long getPixelCount() {
-		return pixelCount;
+		return histogram.getPixelCount();
 	}
 
 	/**
@@ -402,7 +398,9 @@ public class ColorSet implements Serializable {
 			throw new IllegalStateException("There are too many colors ("
 					+ colorCount + ") to make an IndexColorModel (max is 256)");
 
-		Integer[] allColors = tree.keySet().toArray(new Integer[tree.size()]);
+		int[] allColors = new int[colorCount];
+		int[] allCounts = new int[colorCount];
+		histogram.getColors(allColors, allCounts);
 
 		int offset = includeTransparentPixel ? 1 : 0;
 		if (optimizeForGifs == false) {
@@ -424,7 +422,15 @@ public class ColorSet implements Serializable {
 			return new IndexColorModel(8, allColors.length, r, g, b);
 		}
 
-		Arrays.sort(allColors, new FrequencyComparator(this, true));
+		// sort by increasing frequency (see FrequencyComparator):
+		long[] sortKeys = new long[colorCount];
+		for (int a = 0; a < colorCount; a++) {
+			sortKeys[a] = (((long) allCounts[a]) << 32) | allColors[a];
+		}
+		Arrays.sort(sortKeys);
+		for (int a = 0; a < colorCount; a++) {
+			allColors[a] = (int) sortKeys[a];
+		}
 
 		int size = colorCount + offset;
 		int[] order; // only used for optimized
@@ -527,8 +533,7 @@ public class ColorSet implements Serializable {
 	 *            the image to process.
 	 */
 	public void addColors(BufferedImage i) {
-		IntARGBConverter g = new IntARGBConverter(BufferedImageIterator.get(i));
-		addColors(g);
+		addColors(ColorHistogram.create(i));
 	}
 
 	/**
@@ -539,23 +544,19 @@ public class ColorSet implements Serializable {
 	 *            the pixel data to process.
 	 */
 	public void addColors(IntARGBConverter i) {
+		ColorHistogram h = new ColorHistogram();
+		h.addPixels(i);
+		addColors(h);
+	}
 
-		int w = i.getWidth();
-
-		int r, g, b, alpha;
-		int[] t = new int[i.getMinimumArrayLength()];
-		while (i.isDone() == false) {
-			i.next(t);
-			for (int a = 0; a < w; a++) {
-				alpha = ((t[a] >> 24) & 0xff);
-				if (alpha > 128) {
-					r = ((t[a] >> 16) & 0xff);
-					g = ((t[a] >> 8) & 0xff);
-					b = ((t[a]) & 0xff);
-					addColor(r, g, b, 1);
-				}
-			}
-		}
+	/**
+	 * Add all the colors in a histogram to this ColorSet.
+	 * 
+	 * @param h
+	 *            the incoming histogram to add to this set.
+	 */
+	public synchronized void addColors(ColorHistogram h) {
+		histogram.add(h);
 	}
 
 	/**
@@ -589,13 +590,7 @@ public class ColorSet implements Serializable {
 	 *            the incoming ColorSet to add to this set.
 	 */
 	public synchronized void addColors(ColorSet l) {
-		for (Integer rgb : l.tree.keySet()) {
-			int count = l.tree.get(rgb);
-			int r = (rgb >> 16) & 0xff;
-			int g = (rgb >> 8) & 0xff;
-			int b = (rgb >> 0) & 0xff;
-			addColor(r, g, b, count);
-		}
+		histogram.add(l.histogram);
 	}
 
 	/**
@@ -606,12 +601,14 @@ public class ColorSet implements Serializable {
 	 */
 	public synchronized Color[] getColors(boolean prependTransparentPixel) {
 		int extra = prependTransparentPixel ? 1 : 0;
-		Color[] array = new Color[tree.size() + extra];
+		int[] allColors = new int[histogram.size()];
+		histogram.getColors(allColors, null);
+		Color[] array = new Color[allColors.length + extra];
 		int ctr = 0;
 		if (prependTransparentPixel) {
 			array[ctr++] = new Color(0, 0, 0, 0);
 		}
-		for (Integer rgb : tree.keySet()) {
+		for (int rgb : allColors) {
 			int r = (rgb >> 16) & 0xff;
 			int g = (rgb >> 8) & 0xff;
 			int b = (rgb >> 0) & 0xff;
@@ -88,7 +88,8 @@ public abstract class ImageQuantization {
 		ColorSet set = new ColorSet(src);
 		BiasedMedianCutColorQuantization b = new BiasedMedianCutColorQuantization();
 		set = b.createReducedSet(set, maxColors, false);
-		ColorLUT lut = new ColorLUT(set.createIndexColorModel(false, false));
+		ColorLUT lut = new ColorLUT(set.createIndexColorModel(false, false),
+				true);
 		return MOST_DIFFUSION.createImage(src, lut);
 	}
 
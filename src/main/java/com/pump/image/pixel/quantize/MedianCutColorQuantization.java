@@ -11,9 +11,6 @@
 package com.pump.image.pixel.quantize;
 
 import java.util.Arrays;
-import java.util.Map;
-
-import com.pump.image.pixel.quantize.ColorSet.RGBChannelComparator;
 
 /**
  * This is a <a href="http://en.wikipedia.org/wiki/Median_cut">median cut color
@@ -36,36 +33,66 @@ import com.pump.image.pixel.quantize.ColorSet.RGBChannelComparator;
  *
  */
 public class MedianCutColorQuantization extends ColorQuantization {
-	private static RGBChannelComparator redComparator = new RGBChannelComparator(
-			16, 8, 0);
-	private static RGBChannelComparator greenComparator = new RGBChannelComparator(
-			8, 0, 16);
-	private static RGBChannelComparator blueComparator = new RGBChannelComparator(
-			0, 16, 8);
 
-	private static RGBChannelComparator[] comparators = new RGBChannelComparator[] {
-			redComparator, greenComparator, blueComparator };
+	/**
+	 * The channel offsets to sort by, in the same order as the
+	 * <code>RGBChannelComparators</code> this class previously used: red, then
+	 * green, then blue.
+	 */
+	private static final int[][] channelOffsets = new int[][] { { 16, 8, 0 },
+			{ 8, 0, 16 }, { 0, 16, 8 } };
 
 	@Override
 	public ColorSet createReducedSet(ColorSet originalSet,
 			int maximumColorCount, boolean retainOriginalIntegrity) {
+		if (originalSet.getColorCount() <= maximumColorCount
+				&& maximumColorCount >= 2) {
+			return originalSet;
+		}
+		int[] rgb;
+		int[] counts;
+		synchronized (originalSet) {
+			rgb = new int[originalSet.histogram.size()];
+			counts = new int[rgb.length];
+			originalSet.histogram.getColors(rgb, counts);
+		}
+		return createReducedSet(rgb, counts, rgb.length, maximumColorCount);
+	}
+
+	/**
+	 * Reduce colors that are stored in two parallel arrays.
+	 * 
+	 * @param rgb
+	 *            the RGB values to reduce. These must be unique. This array is
+	 *            reordered.
+	 * @param counts
+	 *            the number of occurrences of each RGB value. This array is
+	 *            reordered.
+	 * @param length
+	 *            the number of elements in the arrays to use.
+	 * @param maximumColorCount
+	 *            the number of colors to reduce to.
+	 */
+	ColorSet createReducedSet(int[] rgb, int[] counts, int length,
+			int maximumColorCount) {
 		if (maximumColorCount < 2)
 			throw new IllegalArgumentException("maximumColorCount ("
 					+ maximumColorCount + ") must be 2 or greater");
-		if (originalSet.getColorCount() <= maximumColorCount) {
-			return originalSet;
-		}
 		ColorSet newGuy = new ColorSet();
-		Map<Integer, Integer> frequencyMap = originalSet
-				.getRGBtoFrequencyMap(false);
-		Integer[] rgb = frequencyMap.keySet().toArray(
-				new Integer[originalSet.tree.size()]);
-		split(rgb, frequencyMap, 0, rgb.length, maximumColorCount, 0, newGuy);
+		if (length <= maximumColorCount) {
+			for (int a = 0; a < length; a++) {
+				newGuy.histogram.add(rgb[a], counts[a]);
+			}
+			return newGuy;
+		}
+		long[] scratch = new long[length];
+		split(rgb, counts, scratch, 0, length, maximumColorCount, 0,
+				newGuy.histogram);
 		return newGuy;
 	}
 
-	private long split(Integer[] rgb, Map<Integer, Integer> rgbToFrequencyMap,
-			int ctr, int len, int count, int comparatorIndex, ColorSet dest) {
+	private long split(int[] rgb, int[] counts, long[] scratch, int ctr,
+			int len, int count, int comparatorIndex, ColorHistogram dest) {
 		if (count == 1) {
 			long r = 0;
 			long g = 0;
@@ -73,7 +100,7 @@ public class MedianCutColorQuantization extends ColorQuantization {
 			int pixelSum = 0;
 			int k = ctr + len;
 			for (int a = ctr; a < k; a++) {
-				int z = rgbToFrequencyMap.get(rgb[a]);
+				int z = counts[a];
 				r += ((rgb[a] >> 16) & 0xff) * z;
 				g += ((rgb[a] >> 8) & 0xff) * z;
 				b += ((rgb[a] >> 0) & 0xff) * z;
@@ -82,18 +109,43 @@ public class MedianCutColorQuantization extends ColorQuantization {
 			r = r / pixelSum;
 			g = g / pixelSum;
 			b = b / pixelSum;
-			dest.addColor((int) r, (int) g, (int) b, pixelSum);
+			dest.add((int) ((r << 16) + (g << 8) + b), pixelSum);
 			return pixelSum;
 		}
-		Arrays.sort(rgb, ctr, ctr + len, comparators[comparatorIndex]);
+		sort(rgb, counts, scratch, ctr, ctr + len,
+				channelOffsets[comparatorIndex]);
 		comparatorIndex = (comparatorIndex + 1) % 3;
 		int leftHalfCount = count / 2;
 		int rightHalfCount = count - leftHalfCount;
 		int leftLen = len / 2;
-		long sum = split(rgb, rgbToFrequencyMap, ctr, leftLen, leftHalfCount,
+		long sum = split(rgb, counts, scratch, ctr, leftLen, leftHalfCount,
 				comparatorIndex, dest);
-		sum += split(rgb, rgbToFrequencyMap, ctr + leftLen, len - leftLen,
+		sum += split(rgb, counts, scratch, ctr + leftLen, len - leftLen,
 				rightHalfCount, comparatorIndex, dest);
 		return sum;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Sort a range of colors by the given channels. Each color is packed into
+	 * a long whose upper bits are the color's channels in sorting order and
+	 * whose lower bits are the color's count, so no comparator is needed.
+	 */
+	private static void sort(int[] rgb, int[] counts, long[] scratch,
+			int start, int end, int[] offsets) {
+		int o1 = offsets[0];
+		int o2 = offsets[1];
+		int o3 = offsets[2];
+		for (int a = start; a < end; a++) {
+			long key = (((rgb[a] >> o1) & 0xff) << 16)
+					| (((rgb[a] >> o2) & 0xff) << 8) | ((rgb[a] >> o3) & 0xff);
+			scratch[a] = (key << 32) | (counts[a] & 0xffffffffL);
+		}
+		Arrays.sort(scratch, start, end);
+		for (int a = start; a < end; a++) {
+			int key = (int) (scratch[a] >>> 32);
+			rgb[a] = (((key >> 16) & 0xff) << o1)
+					| (((key >> 8) & 0xff) << o2) | ((key & 0xff) << o3);
+			counts[a] = (int) scratch[a];
+		}
+	}
+}
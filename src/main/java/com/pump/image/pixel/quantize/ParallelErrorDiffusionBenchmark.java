@@ -0,0 +1,60 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This compares the sequential {@link ErrorDiffusionImageQuantization} with
+ * the {@link ParallelErrorDiffusionImageQuantization} as the number of threads
+ * increases, using a 3840x2160 image and a 256-color palette.
+ * <p>
+ * The thread count doubles from 1 up to the number of available processors,
+ * and each row reports the median time of the wavefront (left-to-right) and
+ * serpentine band strategies.
+ */
+class ParallelErrorDiffusionBenchmark {
+
+	public static void main(String[] args) {
+		BufferedImage image = ColorLUTBenchmark.createImage(3840, 2160);
+		IndexColorModel icm = new BiasedMedianCutColorQuantization()
+				.createReducedSet(new ColorSet(image), 256, true)
+				.createIndexColorModel(false, false);
+		ColorLUT lut = new ColorLUT(icm, true);
+		ErrorDiffusionImageQuantization sequential = (ErrorDiffusionImageQuantization) ImageQuantization.MOST_DIFFUSION;
+
+		System.out.println("Sequential: " + run(sequential, image, lut)
+				+ " ms");
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		System.out.println("Threads\tWavefront (ms)\tSerpentine bands (ms)");
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long wavefront = run(new ParallelErrorDiffusionImageQuantization(
+					sequential.kernel, false, pool), image, lut);
+			long serpentine = run(new ParallelErrorDiffusionImageQuantization(
+					sequential.kernel, true, pool), image, lut);
+			pool.shutdown();
+			System.out.println(threads + "\t" + wavefront + "\t" + serpentine);
+		}
+	}
+
+	static long run(ImageQuantization q, BufferedImage image, ColorLUT lut) {
+		long[] times = new long[ColorLUTBenchmark.SAMPLE_COUNT];
+		for (int a = 0; a < times.length; a++) {
+			times[a] = System.currentTimeMillis();
+			q.createImage(image, lut);
+			times[a] = System.currentTimeMillis() - times[a];
+		}
+		return ColorLUTBenchmark.median(times);
+	}
+}
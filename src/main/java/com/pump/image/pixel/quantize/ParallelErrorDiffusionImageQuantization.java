@@ -0,0 +1,493 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.pump.image.pixel.BufferedImageIterator;
+import com.pump.image.pixel.IndexedBytePixelIterator;
+import com.pump.image.pixel.IntARGBConverter;
+import com.pump.image.pixel.quantize.ColorLUT.ColorNode;
+
+/**
+ * This applies error diffusion to an image using several threads.
+ * <p>
+ * When rows are scanned left-to-right this produces exactly the same pixels as
+ * the {@link ErrorDiffusionImageQuantization} it is modeled after. Every row
+ * is a separate unit of work, and a row is processed in chunks of columns: a
+ * chunk may begin as soon as the rows above it have processed every pixel that
+ * diffuses error into that chunk. So the rows proceed in a staggered wavefront
+ * and as many rows are in progress as the <code>ForkJoinPool</code> has
+ * threads.
+ * <p>
+ * Serpentine scanning (where every other row is scanned right-to-left) can't
+ * be staggered like that, because each row needs the entire previous row to
+ * start. So when serpentine scanning is used the image is split into
+ * horizontal bands of a fixed height that are processed independently. Each
+ * band first dithers a few rows above its top edge and discards them, so the
+ * error entering the band resembles the error a sequential scan would
+ * produce. The results are deterministic: they do not depend on the number of
+ * threads.
+ * <p>
+ * The iterator this creates dithers the whole image the first time a row is
+ * requested, so it uses one byte per pixel of memory.
+ */
+public class ParallelErrorDiffusionImageQuantization extends
+		ErrorDiffusionImageQuantization {
+
+	/**
+	 * The number of columns a row processes before it publishes its progress
+	 * to the rows below it.
+	 */
+	static final int CHUNK_WIDTH = 64;
+
+	/** The height of each band when serpentine scanning is used. */
+	static final int BAND_HEIGHT = 64;
+
+	/**
+	 * The number of rows above a band that are dithered (and discarded) to
+	 * seed the error entering that band.
+	 */
+	static final int WARMUP_ROWS = 8;
+
+	/**
+	 * This dithers an image into a byte array, using either a wavefront of
+	 * rows or independent bands.
+	 */
+	class Dither {
+		final BufferedImage source;
+		final ColorLUT lut;
+		final int width, height, transparentIndex, z;
+		final byte[] dest;
+
+		/**
+		 * For each row of a wavefront: the number of columns that have been
+		 * processed.
+		 */
+		AtomicIntegerArray progress;
+
+		/**
+		 * The ring of error buffers rows in a wavefront use, indexed by [row %
+		 * length][ky - 1][channel][column].
+		 */
+		int[][][][] slots;
+		AtomicInteger nextRow;
+		volatile Throwable failure;
+
+		/**
+		 * Rows that are waiting for other rows wait on this monitor. The
+		 * number of waiting rows is tracked so rows only notify it when
+		 * another row is actually waiting.
+		 */
+		final Object progressLock = new Object();
+		final AtomicInteger waitingRows = new AtomicInteger();
+
+		Dither(BufferedImage source, ColorLUT lut) {
+			this.source = source;
+			this.lut = lut;
+			width = source.getWidth();
+			height = source.getHeight();
+			transparentIndex = lut.getIndexColorModel().getTransparentPixel();
+			z = kernel[0].length / 2;
+			dest = new byte[width * height];
+		}
+
+		void run() {
+			List<RecursiveAction> tasks = new ArrayList<>();
+			if (serpentine) {
+				for (int y = 0; y < height; y += BAND_HEIGHT) {
+					tasks.add(new BandTask(y, Math.min(height, y + BAND_HEIGHT)));
+				}
+			} else {
+				int taskCount = Math.max(1,
+						Math.min(pool.getParallelism(), height));
+				progress = new AtomicIntegerArray(height);
+				slots = new int[kernel.length + 2 * taskCount][kernel.length - 1][3][width];
+				nextRow = new AtomicInteger();
+				for (int a = 0; a < taskCount; a++) {
+					tasks.add(new WavefrontTask());
+				}
+			}
+			final List<RecursiveAction> allTasks = tasks;
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(allTasks);
+				}
+			});
+		}
+
+		/**
+		 * Wait until a row of the wavefront has processed a given number of
+		 * columns. This blocks through
+		 * {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}, so
+		 * a waiting row doesn't occupy a core and the pool may compensate
+		 * for it.
+		 */
+		void await(final int y, final int columns) {
+			if (y < 0 || progress.get(y) >= columns)
+				return;
+			try {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					public boolean isReleasable() {
+						return progress.get(y) >= columns || failure != null;
+					}
+
+					public boolean block() throws InterruptedException {
+						synchronized (progressLock) {
+							waitingRows.incrementAndGet();
+							try {
+								while (!isReleasable()) {
+									progressLock.wait();
+								}
+							} finally {
+								waitingRows.decrementAndGet();
+							}
+						}
+						return true;
+					}
+				});
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			if (failure != null)
+				throw new RuntimeException("Another row failed", failure);
+		}
+
+		/**
+		 * Record that a row of the wavefront has processed a given number of
+		 * columns, and wake any rows waiting for it.
+		 */
+		void publish(int y, int columns) {
+			progress.set(y, columns);
+			if (waitingRows.get() > 0) {
+				synchronized (progressLock) {
+					progressLock.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * This claims one row at a time and dithers it as soon as the rows
+		 * above it have progressed far enough.
+		 */
+		class WavefrontTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				try {
+					int[] argb = new int[width];
+					int[][] rowError = new int[3][width];
+					int[][][] incoming = new int[kernel.length - 1][][];
+					while (true) {
+						int y = nextRow.getAndIncrement();
+						if (y >= height)
+							return;
+
+						// the previous owner of this slot must be finished,
+						// and so must every row it diffuses error into:
+						await(y - slots.length + kernel.length - 1, width);
+						int[][][] outgoing = slots[y % slots.length];
+						clear(outgoing);
+						clear(rowError);
+						for (int k = 0; k < incoming.length; k++) {
+							int y2 = y - k - 1;
+							incoming[k] = y2 < 0 ? null
+									: slots[y2 % slots.length][k];
+						}
+						readRow(y, argb);
+
+						for (int x0 = 0; x0 < width; x0 += CHUNK_WIDTH) {
+							int x1 = Math.min(width, x0 + CHUNK_WIDTH);
+							int required = Math.min(width, x1 + z);
+							for (int k = 0; k < incoming.length; k++) {
+								await(y - k - 1, required);
+							}
+							dither(argb, x0, x1, true, rowError, incoming,
+									outgoing, y * width);
+							publish(y, x1);
+						}
+					}
+				} catch (RuntimeException | Error e) {
+					failure = e;
+					synchronized (progressLock) {
+						progressLock.notifyAll();
+					}
+					throw e;
+				}
+			}
+		}
+
+		/**
+		 * This dithers a band of rows, alternating the direction of each row.
+		 */
+		class BandTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			final int y0, y1;
+
+			BandTask(int y0, int y1) {
+				this.y0 = y0;
+				this.y1 = y1;
+			}
+
+			@Override
+			protected void compute() {
+				int[] argb = new int[width];
+				int[][] rowError = new int[3][width];
+				int[][][] incoming = new int[kernel.length - 1][][];
+				int[][][][] ring = new int[kernel.length][kernel.length - 1][3][width];
+				int start = Math.max(0, y0 - WARMUP_ROWS);
+				for (int y = start; y < y1; y++) {
+					int[][][] outgoing = ring[y % ring.length];
+					clear(outgoing);
+					clear(rowError);
+					for (int k = 0; k < incoming.length; k++) {
+						int y2 = y - k - 1;
+						incoming[k] = y2 < start ? null
+								: ring[y2 % ring.length][k];
+					}
+					readRow(y, argb);
+					dither(argb, 0, width, y % 2 == 0, rowError, incoming,
+							outgoing, y < y0 ? -1 : y * width);
+				}
+			}
+		}
+
+		void readRow(int y, int[] argb) {
+			int type = source.getType();
+			if (type == BufferedImage.TYPE_INT_ARGB
+					|| type == BufferedImage.TYPE_INT_RGB) {
+				source.getRaster().getDataElements(0, y, width, 1, argb);
+				if (type == BufferedImage.TYPE_INT_RGB) {
+					for (int x = 0; x < width; x++) {
+						argb[x] |= 0xff000000;
+					}
+				}
+			} else {
+				IntARGBConverter iter = new IntARGBConverter(
+						BufferedImageIterator.get(source.getSubimage(0, y,
+								width, 1)));
+				iter.next(argb);
+			}
+		}
+
+		/**
+		 * Dither a range of pixels in one row.
+		 *
+		 * @param argb
+		 *            the ARGB pixels of the row.
+		 * @param x0
+		 *            the first column to process.
+		 * @param x1
+		 *            the column after the last column to process.
+		 * @param leftToRight
+		 *            whether to scan this range from left to right. If this is
+		 *            false the kernel is mirrored horizontally.
+		 * @param rowError
+		 *            the error diffused from pixels in this row, indexed by
+		 *            [channel][column].
+		 * @param incoming
+		 *            the error diffused into this row from each of the
+		 *            previous rows, indexed by [ky - 1][channel][column].
+		 *            Elements may be null.
+		 * @param outgoing
+		 *            the error this row diffuses into each of the following
+		 *            rows, indexed by [ky - 1][channel][column].
+		 * @param destOffset
+		 *            the index in <code>dest</code> of the first pixel in this
+		 *            row, or -1 if the results should be discarded.
+		 */
+		void dither(int[] argb, int x0, int x1, boolean leftToRight,
+				int[][] rowError, int[][][] incoming, int[][][] outgoing,
+				int destOffset) {
+			int step = leftToRight ? 1 : -1;
+			int x = leftToRight ? x0 : x1 - 1;
+			int end = leftToRight ? x1 : x0 - 1;
+			for (; x != end; x += step) {
+				int pixel = argb[x];
+				int index;
+				if (transparentIndex >= 0 && ((pixel >> 24) & 0xff) < 128) {
+					index = transparentIndex;
+				} else {
+					int er = rowError[0][x];
+					int eg = rowError[1][x];
+					int eb = rowError[2][x];
+					for (int k = 0; k < incoming.length; k++) {
+						int[][] e = incoming[k];
+						if (e != null) {
+							er += e[0][x];
+							eg += e[1][x];
+							eb += e[2][x];
+						}
+					}
+					int r = Math.min(Math.max(((pixel >> 16) & 0xff) + er
+							/ kernelSum, 0), 255);
+					int g = Math.min(Math.max(((pixel >> 8) & 0xff) + eg
+							/ kernelSum, 0), 255);
+					int b = Math.min(Math.max((pixel & 0xff) + eb / kernelSum,
+							0), 255);
+
+					ColorNode match = lut.getNodeMatch(r, g, b);
+					index = match.index;
+
+					int dr = r - match.red;
+					int dg = g - match.green;
+					int db = b - match.blue;
+					for (int ky = 0; ky < kernel.length; ky++) {
+						int[][] target = ky == 0 ? rowError : outgoing[ky - 1];
+						int[] k = kernel[ky];
+						for (int kx = 0; kx < k.length; kx++) {
+							int tx = x + step * (kx - z);
+							if (k[kx] != 0 && tx >= 0 && tx < width) {
+								target[0][tx] += dr * k[kx];
+								target[1][tx] += dg * k[kx];
+								target[2][tx] += db * k[kx];
+							}
+						}
+					}
+				}
+				if (destOffset >= 0)
+					dest[destOffset + x] = (byte) index;
+			}
+		}
+	}
+
+	/**
+	 * The pixel iterator that returns rows from a {@link Dither}.
+	 */
+	protected class ParallelErrorDiffusionIndexedBytePixelIterator extends
+			AbstractIndexedBytePixelIterator {
+		byte[] pixels;
+		int y = 0;
+
+		ParallelErrorDiffusionIndexedBytePixelIterator(BufferedImage source,
+				ColorLUT lut) {
+			super(source, lut);
+		}
+
+		public void next(byte[] dest) {
+			if (pixels == null) {
+				Dither dither = new Dither(source, lut);
+				dither.run();
+				pixels = dither.dest;
+			}
+			int w = getWidth();
+			System.arraycopy(pixels, y * w, dest, 0, w);
+			y++;
+		}
+
+		public boolean isDone() {
+			return y == getHeight();
+		}
+
+		public void skip() {
+			y++;
+		}
+	}
+
+	static void clear(int[][] array) {
+		for (int[] row : array) {
+			Arrays.fill(row, 0);
+		}
+	}
+
+	static void clear(int[][][] array) {
+		for (int[][] row : array) {
+			clear(row);
+		}
+	}
+
+	final boolean serpentine;
+	final ForkJoinPool pool;
+
+	/**
+	 * Create a new ParallelErrorDiffusionImageQuantization that scans
+	 * left-to-right on the common <code>ForkJoinPool</code>.
+	 *
+	 * @param kernel
+	 *            a two-dimension kernel used to distribute error to adjacent
+	 *            pixels. See
+	 *            {@link ErrorDiffusionImageQuantization#ErrorDiffusionImageQuantization(int[][])}
+	 *            .
+	 */
+	public ParallelErrorDiffusionImageQuantization(int[][] kernel) {
+		this(kernel, false, null);
+	}
+
+	/**
+	 * Create a new ParallelErrorDiffusionImageQuantization that uses the same
+	 * kernel as another ErrorDiffusionImageQuantization.
+	 *
+	 * @param q
+	 *            the quantization whose kernel should be used, such as
+	 *            {@link ImageQuantization#MOST_DIFFUSION}.
+	 * @param serpentine
+	 *            whether every other row should be scanned right-to-left.
+	 */
+	public ParallelErrorDiffusionImageQuantization(
+			ErrorDiffusionImageQuantization q, boolean serpentine) {
+		this(q.kernel, serpentine, null);
+	}
+
+	/**
+	 * Create a new ParallelErrorDiffusionImageQuantization.
+	 *
+	 * @param kernel
+	 *            a two-dimension kernel used to distribute error to adjacent
+	 *            pixels. See
+	 *            {@link ErrorDiffusionImageQuantization#ErrorDiffusionImageQuantization(int[][])}
+	 *            .
+	 * @param serpentine
+	 *            whether every other row should be scanned right-to-left. This
+	 *            reduces the directional artifacts error diffusion can
+	 *            produce, but then the output is not identical to a
+	 *            sequential scan.
+	 * @param pool
+	 *            the pool to run on. If this is null then the common
+	 *            <code>ForkJoinPool</code> is used.
+	 */
+	public ParallelErrorDiffusionImageQuantization(int[][] kernel,
+			boolean serpentine, ForkJoinPool pool) {
+		super(kernel);
+		this.serpentine = serpentine;
+		this.pool = pool == null ? ForkJoinPool.commonPool() : pool;
+	}
+
+	/**
+	 * Return true if every other row is scanned right-to-left.
+	 */
+	public boolean isSerpentine() {
+		return serpentine;
+	}
+
+	@Override
+	public IndexedBytePixelIterator createImageData(BufferedImage source,
+			ColorLUT colorLUT) {
+		// the subcube search in a ColorLUT is synchronized, so it would
+		// serialize every thread:
+		if (colorLUT.inverseColormap == null)
+			colorLUT = new ColorLUT(colorLUT.getIndexColorModel(), true);
+		return new ParallelErrorDiffusionIndexedBytePixelIterator(source,
+				colorLUT);
+	}
+}
@@ -0,0 +1,306 @@
+package com.pump.image.shadow;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This represents the alpha channel of an image, using one byte per pixel.
+ * <p>
+ * Shadow renderers only read the alpha channel of their source and only write
+ * one color, so this uses a quarter of the memory of an {@link ARGBPixels}.
+ * <p>
+ * As an image this is represented as a <code>TYPE_BYTE_INDEXED</code>
+ * BufferedImage whose palette is black at every level of opacity, so the byte
+ * that represents each pixel is also its alpha value. Like ARGBPixels, some
+ * methods include the option to directly reference the byte array such an
+ * image uses.
+ */
+public class AlphaPixels implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static IndexColorModel alphaColorModel;
+
+	/**
+	 * Return an IndexColorModel where the color at every index is black and the
+	 * alpha is the index.
+	 */
+	public static synchronized IndexColorModel getAlphaColorModel() {
+		if (alphaColorModel == null) {
+			byte[] black = new byte[256];
+			byte[] alpha = new byte[256];
+			for (int a = 0; a < alpha.length; a++) {
+				alpha[a] = (byte) a;
+			}
+			alphaColorModel = new IndexColorModel(8, 256, black, black, black,
+					alpha);
+		}
+		return alphaColorModel;
+	}
+
+	private int width, height;
+	private byte[] pixels;
+
+	/**
+	 * Create a blank AlphaPixels.
+	 * 
+	 * @param width
+	 * @param height
+	 */
+	public AlphaPixels(int width, int height) {
+		if (width <= 0)
+			throw new IllegalArgumentException(
+					"width (" + width + ") must be greater than zero");
+		if (height <= 0)
+			throw new IllegalArgumentException(
+					"height (" + height + ") must be greater than zero");
+		this.width = width;
+		this.height = height;
+		pixels = new byte[width * height];
+	}
+
+	/**
+	 * Create an AlphaPixels that copies the alpha channel of an ARGBPixels.
+	 */
+	public AlphaPixels(ARGBPixels src) {
+		this(src.getWidth(), src.getHeight());
+		int[] argb = src.getPixels();
+		for (int a = 0; a < pixels.length; a++) {
+			pixels[a] = (byte) (argb[a] >>> 24);
+		}
+	}
+
+	/**
+	 * Create an AlphaPixels that copies the alpha channel of an image.
+	 * 
+	 * @param srcImage
+	 *            the image to copy data from.
+	 */
+	public AlphaPixels(BufferedImage srcImage) {
+		this(srcImage, false);
+	}
+
+	/**
+	 * Create an AlphaPixels based on the alpha channel of an image.
+	 * 
+	 * @param srcImage
+	 *            the image used to copy or reference the alpha channel. If this
+	 *            image is opaque then every pixel is 255.
+	 * @param referencePixels
+	 *            if true and the image was created by
+	 *            {@link #createBufferedImage(boolean)} (or otherwise stores
+	 *            one alpha byte per pixel) then this references the image's
+	 *            byte array instead of copying it. Otherwise this copies the
+	 *            image's alpha raster.
+	 */
+	public AlphaPixels(BufferedImage srcImage, boolean referencePixels) {
+		this.width = srcImage.getWidth();
+		this.height = srcImage.getHeight();
+
+		if (referencePixels && isAlphaImage(srcImage)) {
+			DataBufferByte dbb = (DataBufferByte) srcImage.getRaster()
+					.getDataBuffer();
+			if (dbb.getNumBanks() == 1 && dbb.getOffset() == 0
+					&& dbb.getData().length == width * height) {
+				pixels = dbb.getData();
+				return;
+			}
+		}
+
+		pixels = new byte[width * height];
+		if (isAlphaImage(srcImage)) {
+			srcImage.getRaster().getDataElements(0, 0, width, height, pixels);
+		} else if (srcImage.getType() == BufferedImage.TYPE_INT_ARGB
+				|| srcImage.getType() == BufferedImage.TYPE_INT_ARGB_PRE) {
+			DataBufferInt dbi = (DataBufferInt) srcImage.getRaster()
+					.getDataBuffer();
+			if (dbi.getNumBanks() == 1 && dbi.getOffset() == 0
+					&& dbi.getData().length == width * height) {
+				int[] argb = dbi.getData();
+				for (int a = 0; a < pixels.length; a++) {
+					pixels[a] = (byte) (argb[a] >>> 24);
+				}
+			} else {
+				copyAlphaRaster(srcImage.getAlphaRaster());
+			}
+		} else if (srcImage.getAlphaRaster() != null) {
+			copyAlphaRaster(srcImage.getAlphaRaster());
+		} else {
+			Arrays.fill(pixels, (byte) 255);
+		}
+	}
+
+	private void copyAlphaRaster(WritableRaster alphaRaster) {
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			alphaRaster.getSamples(0, y, width, 1, 0, row);
+			for (int x = 0, i = y * width; x < width; x++, i++) {
+				pixels[i] = (byte) row[x];
+			}
+		}
+	}
+
+	/**
+	 * Return true if an image stores one byte per pixel and each byte is the
+	 * alpha of that pixel.
+	 */
+	private static boolean isAlphaImage(BufferedImage bi) {
+		if (bi.getType() != BufferedImage.TYPE_BYTE_INDEXED)
+			return false;
+		SampleModel sm = bi.getSampleModel();
+		if (!(sm instanceof ComponentSampleModel)
+				|| sm.getDataType() != DataBuffer.TYPE_BYTE)
+			return false;
+		ComponentSampleModel csm = (ComponentSampleModel) sm;
+		if (csm.getPixelStride() != 1
+				|| csm.getScanlineStride() != bi.getWidth())
+			return false;
+		IndexColorModel icm = (IndexColorModel) bi.getColorModel();
+		if (icm.getMapSize() != 256)
+			return false;
+		for (int a = 0; a < 256; a++) {
+			if (icm.getRGB(a) != (a << 24))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return the width of this pixel data.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Return the height of this pixel data.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Return the alpha values in this object.
+	 * <p>
+	 * This returns the actual pixel data (not a copy of the array).
+	 */
+	public byte[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Create an ARGBPixels that is black and uses this alpha channel.
+	 */
+	public ARGBPixels createARGBPixels() {
+		ARGBPixels returnValue = new ARGBPixels(width, height);
+		writeTo(returnValue, 0, 0, width, height);
+		return returnValue;
+	}
+
+	/**
+	 * Replace a rectangle of ARGB pixels with black pixels that use this alpha
+	 * channel.
+	 */
+	void writeTo(ARGBPixels dst, int x, int y, int w, int h) {
+		int[] argb = dst.getPixels();
+		int dstWidth = dst.getWidth();
+		for (int row = y; row < y + h; row++) {
+			for (int i = row * width + x, j = row * dstWidth + x, end = i
+					+ w; i < end; i++, j++) {
+				argb[j] = (pixels[i] & 0xff) << 24;
+			}
+		}
+	}
+
+	/**
+	 * Create a new BufferedImage that copies the pixel data in this object.
+	 */
+	public BufferedImage createBufferedImage() {
+		return createBufferedImage(false);
+	}
+
+	/**
+	 * Create a new <code>TYPE_BYTE_INDEXED</code> BufferedImage based on this
+	 * alpha channel.
+	 * 
+	 * @param createUntrackable
+	 *            if true then this returns a BufferedImage that is directly
+	 *            backed by {@link #getPixels()}. (See the
+	 *            {@link ARGBPixels#createBufferedImage(boolean)} for a
+	 *            discussion of untrackable images.) If false then this copies
+	 *            {@link #getPixels()} into a new image.
+	 */
+	public BufferedImage createBufferedImage(boolean createUntrackable) {
+		if (createUntrackable) {
+			DataBufferByte dataBuffer = new DataBufferByte(pixels,
+					pixels.length);
+			WritableRaster raster = Raster.createInterleavedRaster(
+					dataBuffer, width, height, width, 1, new int[] { 0 },
+					null);
+			return new BufferedImage(getAlphaColorModel(), raster, false,
+					null);
+		}
+		BufferedImage returnValue = new BufferedImage(width, height,
+				BufferedImage.TYPE_BYTE_INDEXED, getAlphaColorModel());
+		returnValue.getRaster().setDataElements(0, 0, width, height, pixels);
+		return returnValue;
+	}
+
+	@Override
+	public int hashCode() {
+		int k = getWidth() * getHeight();
+		k ^= pixels[getHeight() * getWidth() / 2];
+		return k;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof AlphaPixels))
+			return false;
+		AlphaPixels other = (AlphaPixels) obj;
+		if (other.getWidth() != getWidth())
+			return false;
+		if (other.getHeight() != getHeight())
+			return false;
+		if (!Arrays.equals(getPixels(), other.getPixels()))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[ width=" + getWidth()
+				+ ", height=" + getHeight() + "]";
+	}
+
+	private void writeObject(java.io.ObjectOutputStream out)
+			throws IOException {
+		out.writeInt(0);
+		out.writeInt(getWidth());
+		out.writeInt(getHeight());
+		out.writeObject(getPixels());
+	}
+
+	private void readObject(java.io.ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		int version = in.readInt();
+		if (version == 0) {
+			width = in.readInt();
+			height = in.readInt();
+			pixels = (byte[]) in.readObject();
+		} else {
+			throw new IOException("unsupported internal version: " + version);
+		}
+	}
+}
@@ -17,8 +17,10 @@ import java.util.Objects;
  * weighted edges has to do with giving the DoubleBoxShadowRenderer a greater
  * depth of support.)
  * <p>
- * This supports using the same int array as both the source and the
- * destination.
+ * This supports using the same array as both the source and the destination.
+ * <p>
+ * The blur is applied to {@link AlphaPixels}. When ARGBPixels are used the
+ * alpha channel is extracted before the blur and expanded after it.
  * <p>
  * This was originally based on JDesktop's ShadowRenderer class by Sebastien
  * Petrucci and Romain Guy, but the current implementation is a complete rewrite
@@ -36,9 +38,8 @@ public class BoxShadowRenderer implements ShadowRenderer {
 		/**
 		 * This must run after the VerticalRenderer.
 		 * <p>
-		 * This looks for data in the rightmost 8 bits of the dest buffer (the
-		 * blue channel) and ends up blurring it and moving it to the leftmost 8
-		 * bits (the alpha channel)
+		 * This blurs the values the VerticalRenderer wrote to the dest buffer
+		 * and multiplies them by the shadow opacity.
 		 */
 		class HorizontalRenderer {
 			int xMin, xMin_plusHistory, xMax_minusHistory, xMax;
@@ -50,8 +51,8 @@ public class BoxShadowRenderer implements ShadowRenderer {
 				int shadowMultiplier = (int) (shadowOpacity * 0xff);
 				int shadowDivisor = (int) (weightedShadowSize * 0xff);
 				for (int i = 0; i < divideByShadowSizeLUT.length; i++) {
-					divideByShadowSizeLUT[i] = ((i * shadowMultiplier
-							/ shadowDivisor) & 0xff) << 24;
+					divideByShadowSizeLUT[i] = (byte) (i * shadowMultiplier
+							/ shadowDivisor);
 				}
 
 				xMin = dstX - kernelSize;
@@ -83,7 +84,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 						int readIndex = readIndexBase;
 						int writeIndex = writeIndexBase;
 						while (x < xMin_plusHistory) {
-							int alpha = dstBuffer[readIndex];
+							int alpha = dstBuffer[readIndex] & 0xff;
 							aHistory[++aHistoryIdx] = alpha;
 							aSum += alpha;
 							dstBuffer[writeIndex] = divideByShadowSizeLUT[aSum];
@@ -96,7 +97,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 							aHistoryIdx++;
 							if (aHistoryIdx == shadowSize)
 								aHistoryIdx = 0;
-							int alpha = dstBuffer[readIndex];
+							int alpha = dstBuffer[readIndex] & 0xff;
 							aSum += alpha - aHistory[aHistoryIdx];
 							aHistory[aHistoryIdx] = alpha;
 							dstBuffer[writeIndex] = divideByShadowSizeLUT[aSum];
@@ -129,7 +130,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 						int readIndex = readIndexBase;
 						int writeIndex = writeIndexBase;
 						while (x < xMin_plusHistory) {
-							int alpha = dstBuffer[readIndex];
+							int alpha = dstBuffer[readIndex] & 0xff;
 							aHistoryIdx = nextAlphaHistoryIndex;
 							aHistory[aHistoryIdx] = alpha;
 							aSum += alpha;
@@ -148,7 +149,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 
 						while (x < xMax_minusHistory) {
 							aHistoryIdx = nextAlphaHistoryIndex;
-							int alpha = dstBuffer[readIndex];
+							int alpha = dstBuffer[readIndex] & 0xff;
 							aSum += alpha - aHistory[aHistoryIdx];
 							aHistory[aHistoryIdx] = alpha;
 
@@ -209,7 +210,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 							if (aHistoryIdx == shadowSize)
 								aHistoryIdx = 0;
 							int alpha = readIndex < dstBuffer.length
-									? dstBuffer[readIndex]
+									? dstBuffer[readIndex] & 0xff
 									: 0;
 							aSum += alpha - aHistory[aHistoryIdx];
 							aHistory[aHistoryIdx] = alpha;
@@ -234,7 +235,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 							aHistoryIdx = nextAlphaHistoryIndex;
 
 							int alpha = readIndex < dstBuffer.length
-									? dstBuffer[readIndex]
+									? dstBuffer[readIndex] & 0xff
 									: 0;
 							aSum += alpha - aHistory[aHistoryIdx];
 							aHistory[aHistoryIdx] = alpha;
@@ -262,9 +263,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 		/**
 		 * This must run before the HorizontalRender.
 		 * <p>
-		 * This looks for data in the leftmost 8 bits of the src buffer (the
-		 * alpha channel) and ends up blurring it and moving it to the rightmost
-		 * 8 bits of the dest buffer (the blue channel)
+		 * This blurs the src buffer and writes the result to the dest buffer.
 		 */
 		class VerticalRenderer {
 			int yMin, yMin_plusHistory, yMax_minusHistory, yMax;
@@ -275,7 +274,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 
 			public VerticalRenderer() {
 				for (int i = 0; i < divideByShadowSizeLUT.length; i++) {
-					divideByShadowSizeLUT[i] = (int) (i / weightedShadowSize);
+					divideByShadowSizeLUT[i] = (byte) (i / weightedShadowSize);
 				}
 				yMin = dstY - kernelSize;
 				yMin_plusHistory = dstY + kernelSize + 1;
@@ -309,7 +308,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 						int srcIndex = srcIndexBase + x;
 						int dstIndex = dstIndexBase + x;
 						while (y < yMin_plusHistory) {
-							int alpha = srcBuffer[srcIndex] >>> 24;
+							int alpha = srcBuffer[srcIndex] & 0xff;
 							aHistory[++aHistoryIdx] = alpha;
 							aSum += alpha;
 							dstBuffer[dstIndex] = divideByShadowSizeLUT[aSum];
@@ -322,7 +321,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 							aHistoryIdx++;
 							if (aHistoryIdx == shadowSize)
 								aHistoryIdx = 0;
-							int alpha = srcBuffer[srcIndex] >>> 24;
+							int alpha = srcBuffer[srcIndex] & 0xff;
 							aSum += alpha - aHistory[aHistoryIdx];
 							aHistory[aHistoryIdx] = alpha;
 							dstBuffer[dstIndex] = divideByShadowSizeLUT[aSum];
@@ -352,7 +351,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 						int srcIndex = srcIndexBase + x;
 						int dstIndex = dstIndexBase + x;
 						while (y < yMin_plusHistory) {
-							int alpha = srcBuffer[srcIndex] >>> 24;
+							int alpha = srcBuffer[srcIndex] & 0xff;
 							aHistoryIdx = nextAlphaHistoryIndex;
 							aHistory[aHistoryIdx] = alpha;
 							aSum += alpha;
@@ -371,7 +370,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 
 						while (y < yMax_minusHistory) {
 							aHistoryIdx = nextAlphaHistoryIndex;
-							int alpha = srcBuffer[srcIndex] >>> 24;
+							int alpha = srcBuffer[srcIndex] & 0xff;
 							aSum += alpha - aHistory[aHistoryIdx];
 
 							nextAlphaHistoryIndex++;
@@ -435,7 +434,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 							if (aHistoryIdx == shadowSize)
 								aHistoryIdx = 0;
 							if (loopCtr <= whenAddingStops) {
-								int alpha = srcBuffer[srcIndex] >>> 24;
+								int alpha = srcBuffer[srcIndex] & 0xff;
 								aSum += alpha;
 								aHistory[aHistoryIdx] = alpha;
 								srcIndex += srcWidth;
@@ -462,7 +461,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 							if (loopCtr >= shadowSize)
 								aSum -= aHistory[aHistoryIdx];
 							if (loopCtr <= whenAddingStops) {
-								int alpha = srcBuffer[srcIndex] >>> 24;
+								int alpha = srcBuffer[srcIndex] & 0xff;
 								aSum += alpha;
 								aHistory[aHistoryIdx] = alpha;
 								srcIndex += srcWidth;
@@ -487,8 +486,8 @@ public class BoxShadowRenderer implements ShadowRenderer {
 			}
 		}
 
-		ARGBPixels src, dst;
-		int[] srcBuffer, dstBuffer;
+		AlphaPixels src, dst;
+		byte[] srcBuffer, dstBuffer;
 		int shadowSize, kernelSize;
 		float weightedShadowSize;
 
@@ -497,7 +496,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 		int edgeWeight, edgeWeightComplement;
 		int[] aHistory;
 
-		int[] divideByShadowSizeLUT;
+		byte[] divideByShadowSizeLUT;
 		float shadowOpacity;
 
 		/**
@@ -516,13 +515,13 @@ public class BoxShadowRenderer implements ShadowRenderer {
 		 *            pixels in a kernel should receive.
 		 * @param shadowOpacity
 		 */
-		public Renderer(ARGBPixels src, ARGBPixels dst, int srcX, int srcY,
+		public Renderer(AlphaPixels src, AlphaPixels dst, int srcX, int srcY,
 				int dstX, int dstY, int width, int height, int kernelSize,
 				int edgeWeight, float shadowOpacity) {
 			Objects.requireNonNull(src);
 
 			if (dst == null) {
-				dst = new ARGBPixels(dstX + width + kernelSize,
+				dst = new AlphaPixels(dstX + width + kernelSize,
 						dstY + height + kernelSize);
 			}
 			if (shadowOpacity < 0 || shadowOpacity > 1)
@@ -558,7 +557,7 @@ public class BoxShadowRenderer implements ShadowRenderer {
 			dstBuffer = dst.getPixels();
 
 			aHistory = new int[shadowSize];
-			divideByShadowSizeLUT = new int[256 * shadowSize];
+			divideByShadowSizeLUT = new byte[256 * shadowSize];
 
 			// make sure our src bounds will fit within src:
 			if (srcX < 0)
@@ -604,8 +603,29 @@ public class BoxShadowRenderer implements ShadowRenderer {
 		return createShadow(src, dst, r, r, attr);
 	}
 
+	@Override
+	public AlphaPixels createShadow(AlphaPixels src, AlphaPixels dst,
+			ShadowAttributes attr) {
+		int r = getKernel(attr).getKernelRadius();
+		return createShadow(src, dst, r, r, attr);
+	}
+
 	public ARGBPixels createShadow(ARGBPixels src, ARGBPixels dst,
 			int srcToDstX, int srcToDstY, ShadowAttributes attr) {
+		AlphaPixels alphaDst = dst == null ? null
+				: new AlphaPixels(dst.getWidth(), dst.getHeight());
+		alphaDst = createShadow(new AlphaPixels(src), alphaDst, srcToDstX,
+				srcToDstY, attr);
+		if (dst == null)
+			dst = new ARGBPixels(alphaDst.getWidth(), alphaDst.getHeight());
+		int k = getKernel(attr).getKernelRadius();
+		alphaDst.writeTo(dst, srcToDstX - k, srcToDstY - k,
+				src.getWidth() + 2 * k, src.getHeight() + 2 * k);
+		return dst;
+	}
+
+	public AlphaPixels createShadow(AlphaPixels src, AlphaPixels dst,
+			int srcToDstX, int srcToDstY, ShadowAttributes attr) {
 		GaussianKernel k = getKernel(attr);
 		int edgeWeight = getEdgeWeight(attr.getShadowKernelRadius());
 		Renderer renderer = new Renderer(src, dst, 0, 0, srcToDstX, srcToDstY,
@@ -617,6 +637,14 @@ public class BoxShadowRenderer implements ShadowRenderer {
 
 	public void applyShadow(ARGBPixels pixels, int x, int y, int width,
 			int height, ShadowAttributes attr) {
+		AlphaPixels alpha = new AlphaPixels(pixels);
+		applyShadow(alpha, x, y, width, height, attr);
+		int k = getKernel(attr).getKernelRadius();
+		alpha.writeTo(pixels, x - k, y - k, width + 2 * k, height + 2 * k);
+	}
+
+	public void applyShadow(AlphaPixels pixels, int x, int y, int width,
+			int height, ShadowAttributes attr) {
 		GaussianKernel k = getKernel(attr);
 		int edgeWeight = getEdgeWeight(attr.getShadowKernelRadius());
 		Renderer renderer = new Renderer(pixels, pixels, x, y, x, y, width,
@@ -109,14 +109,14 @@ public class DoubleBoxShadowRenderer implements ShadowRenderer {
 			return sortedRadii.hashCode();
 		}
 
-		public ARGBPixels createShadow(ARGBPixels srcImage,
-				ARGBPixels destImage, float shadowOpacity) {
+		public AlphaPixels createShadow(AlphaPixels srcImage,
+				AlphaPixels destImage, float shadowOpacity) {
 
 			int dstWidth = srcImage.getWidth() + 2 * radiiSum;
 			int dstHeight = srcImage.getHeight() + 2 * radiiSum;
 
 			if (destImage == null) {
-				destImage = new ARGBPixels(dstWidth, dstHeight);
+				destImage = new AlphaPixels(dstWidth, dstHeight);
 			} else {
 				if (destImage.getWidth() < dstWidth)
 					throw new IllegalArgumentException(
@@ -161,6 +161,25 @@ public class DoubleBoxShadowRenderer implements ShadowRenderer {
 	@Override
 	public ARGBPixels createShadow(ARGBPixels srcImage, ARGBPixels destImage,
 			ShadowAttributes attr) {
+		Combo combo = getCombo(attr.getShadowKernelRadius());
+		if (combo == null) {
+			GaussianShadowRenderer r = new GaussianShadowRenderer();
+			return r.createShadow(srcImage, destImage, attr);
+		}
+
+		int dstWidth = srcImage.getWidth() + 2 * combo.radiiSum;
+		int dstHeight = srcImage.getHeight() + 2 * combo.radiiSum;
+		AlphaPixels shadow = combo.createShadow(new AlphaPixels(srcImage),
+				null, attr.getShadowOpacity());
+		if (destImage == null)
+			destImage = new ARGBPixels(dstWidth, dstHeight);
+		shadow.writeTo(destImage, 0, 0, dstWidth, dstHeight);
+		return destImage;
+	}
+
+	@Override
+	public AlphaPixels createShadow(AlphaPixels srcImage,
+			AlphaPixels destImage, ShadowAttributes attr) {
 		float kernelRadius = attr.getShadowKernelRadius();
 
 		Combo combo = getCombo(kernelRadius);
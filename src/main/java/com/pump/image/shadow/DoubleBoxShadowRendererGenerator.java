@@ -150,10 +150,9 @@ class DoubleBoxShadowRendererGenerator
 				// v3.add(incr)) {
 				Combo combo = new Combo(v1.floatValue(), v2.floatValue()); // ),
 																			// v3.floatValue());
-				int width = 2 * combo.radiiSum + starPixels.getWidth();
-				int height = 2 * combo.radiiSum + starPixels.getHeight();
-				ARGBPixels shadowPixels = new ARGBPixels(width, height);
-				combo.createShadow(starPixels, shadowPixels, SHADOW_OPACITY);
+				ARGBPixels shadowPixels = combo.createShadow(
+						new AlphaPixels(starPixels), null, SHADOW_OPACITY)
+						.createARGBPixels();
 				long error = getError(gaussianShadowImage,
 						shadowPixels.createBufferedImage(true));
 				Results results = new Results(error, combo, shadowPixels, v1,
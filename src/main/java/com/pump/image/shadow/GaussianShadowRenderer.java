@@ -1,6 +1,7 @@
 package com.pump.image.shadow;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -9,6 +10,9 @@ import java.util.concurrent.ThreadFactory;
 
 /**
  * This renderer uses a Gaussian kernel to blur a shadow.
+ * <p>
+ * The blur is applied to {@link AlphaPixels}. When ARGBPixels are used the
+ * alpha channel is extracted before the blur and expanded after it.
  */
 public class GaussianShadowRenderer implements ShadowRenderer {
 
@@ -32,7 +36,7 @@ public class GaussianShadowRenderer implements ShadowRenderer {
 							* srcWidth; dstY < dstHeight; dstY++, g++, z += srcWidth) {
 						int w;
 						if (z >= 0 && z < srcBuffer.length) {
-							w = (srcBuffer[z] >>> 24);
+							w = srcBuffer[z] & 0xff;
 						} else {
 							w = 0;
 						}
@@ -46,14 +50,14 @@ public class GaussianShadowRenderer implements ShadowRenderer {
 									- 1; j++, kernelY++) {
 								if (kernelY >= 0 && kernelY < srcHeight) {
 									w += (srcBuffer[srcX
-											+ kernelY * srcWidth] >>> 24)
+											+ kernelY * srcWidth] & 0xff)
 											* kernel[j];
 								}
 							}
 							prevSum = w;
 							w = w / kernelSum;
 						}
-						dstBuffer[dstY * dstWidth + dstX] = w;
+						dstBuffer[dstY * dstWidth + dstX] = (byte) w;
 					}
 				}
 				return null;
@@ -74,8 +78,9 @@ public class GaussianShadowRenderer implements ShadowRenderer {
 				int maxSum = kernelSum * 255;
 
 				for (int dstY = minY; dstY < maxY; dstY++) {
-					System.arraycopy(dstBuffer, dstY * dstWidth, row, 0,
-							row.length);
+					for (int x = 0, i = dstY * dstWidth; x < dstWidth; x++, i++) {
+						row[x] = dstBuffer[i] & 0xff;
+					}
 					int prevSum = -1;
 					for (int dstX = 0, z = dstX - k + kernel.length
 							- 1; dstX < dstWidth; dstX++, z++) {
@@ -118,13 +123,13 @@ public class GaussianShadowRenderer implements ShadowRenderer {
 
 		final int k;
 		final int srcWidth, srcHeight, dstWidth, dstHeight;
-		volatile int[] dstBuffer;
-		final int[] srcBuffer;
+		volatile byte[] dstBuffer;
+		final byte[] srcBuffer;
 		final int[] kernel;
 		final int kernelSum;
-		int[] opacityLookup = new int[256];
+		byte[] opacityLookup = new byte[256];
 
-		public Renderer(ARGBPixels srcPixels, ARGBPixels dstPixels,
+		public Renderer(AlphaPixels srcPixels, AlphaPixels dstPixels,
 				GaussianKernel kernel, float shadowOpacity) {
 			k = kernel.getKernelRadius();
 			int shadowSize = k * 2;
@@ -142,7 +147,7 @@ public class GaussianShadowRenderer implements ShadowRenderer {
 			kernelSum = kernel.getArraySum();
 
 			for (int a = 0; a < opacityLookup.length; a++) {
-				opacityLookup[a] = ((int) (a * shadowOpacity)) << 24;
+				opacityLookup[a] = (byte) (a * shadowOpacity);
 			}
 		}
 
@@ -178,6 +183,22 @@ public class GaussianShadowRenderer implements ShadowRenderer {
 		if (dst == null)
 			dst = new ARGBPixels(src.getWidth() + 2 * k,
 					src.getHeight() + 2 * k);
+		AlphaPixels shadow = createShadow(new AlphaPixels(src), null, attr);
+		shadow.writeTo(dst, 0, 0, shadow.getWidth(), shadow.getHeight());
+		return dst;
+	}
+
+	@Override
+	public AlphaPixels createShadow(AlphaPixels src, AlphaPixels dst,
+			ShadowAttributes attr) {
+		int k = getKernel(attr).getKernelRadius();
+		if (dst == null) {
+			dst = new AlphaPixels(src.getWidth() + 2 * k,
+					src.getHeight() + 2 * k);
+		} else {
+			// the vertical pass only writes the columns below the source
+			Arrays.fill(dst.getPixels(), (byte) 0);
+		}
 		Renderer r = new Renderer(src, dst, getKernel(attr),
 				attr.getShadowOpacity());
 		try {
@@ -0,0 +1,432 @@
+package com.pump.image.shadow;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This caches the shadows a {@link ShadowRenderer} creates, so the same
+ * silhouette is not blurred again every time it is painted.
+ * <p>
+ * Shadows are keyed by the alpha channel of their source (the silhouette) and
+ * by the {@link ShadowAttributes} that affect the blur (the kernel radius and
+ * the opacity). The least recently used shadows are discarded when the cache
+ * exceeds its memory limit.
+ * <p>
+ * Rectangles and rounded rectangles are rendered as nine-slice shadows: a
+ * small rectangle with the same corners is blurred once, and its corners,
+ * edges and center are stretched to fit any larger rectangle.
+ * <p>
+ * Shadows are stored as {@link AlphaPixels} images, which use one byte per
+ * pixel. This class is thread-safe. The images it returns are shared, so they
+ * must not be modified.
+ */
+public class ShadowCache {
+
+	/**
+	 * The default number of bytes a ShadowCache may use.
+	 */
+	public static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+
+	/**
+	 * This identifies the shadow of a silhouette.
+	 */
+	static class SilhouetteKey {
+		final int width, height, hashCode;
+		final byte[] alpha;
+		final ShadowAttributes attr;
+
+		SilhouetteKey(AlphaPixels src, ShadowAttributes attr) {
+			width = src.getWidth();
+			height = src.getHeight();
+			alpha = src.getPixels();
+			this.attr = attr;
+			hashCode = Objects.hash(width, height, Arrays.hashCode(alpha),
+					attr);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SilhouetteKey))
+				return false;
+			SilhouetteKey other = (SilhouetteKey) obj;
+			return hashCode == other.hashCode && width == other.width
+					&& height == other.height && attr.equals(other.attr)
+					&& Arrays.equals(alpha, other.alpha);
+		}
+	}
+
+	/**
+	 * This identifies the nine-slice shadow of a rounded rectangle.
+	 */
+	static class RoundRectangleKey {
+		final float arcWidth, arcHeight;
+		final ShadowAttributes attr;
+
+		RoundRectangleKey(float arcWidth, float arcHeight, ShadowAttributes attr) {
+			this.arcWidth = arcWidth;
+			this.arcHeight = arcHeight;
+			this.attr = attr;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(arcWidth, arcHeight, attr);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RoundRectangleKey))
+				return false;
+			RoundRectangleKey other = (RoundRectangleKey) obj;
+			return arcWidth == other.arcWidth && arcHeight == other.arcHeight
+					&& attr.equals(other.attr);
+		}
+	}
+
+	/**
+	 * A cached shadow.
+	 */
+	static class Entry {
+		final BufferedImage shadow;
+		final long byteCount;
+
+		/**
+		 * For nine-slice shadows: the column and row in the shadow image that
+		 * is stretched to fill the middle.
+		 */
+		final int centerX, centerY;
+
+		Entry(BufferedImage shadow, long keyByteCount, int centerX,
+				int centerY) {
+			this.shadow = shadow;
+			this.byteCount = ((long) shadow.getWidth()) * shadow.getHeight()
+					+ keyByteCount;
+			this.centerX = centerX;
+			this.centerY = centerY;
+		}
+	}
+
+	final ShadowRenderer renderer;
+	final long maxMemory;
+	final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16,
+			.75f, true);
+	long memoryUsage, hitCount, missCount, evictionCount;
+
+	/**
+	 * Create a cache for a {@link GaussianShadowRenderer} that uses up to
+	 * {@link #DEFAULT_MAX_MEMORY} bytes.
+	 */
+	public ShadowCache() {
+		this(new GaussianShadowRenderer(), DEFAULT_MAX_MEMORY);
+	}
+
+	/**
+	 * @param renderer
+	 *            the renderer used to create shadows.
+	 * @param maxMemory
+	 *            the number of bytes the cached shadows may use. A shadow
+	 *            that is larger than this is never cached.
+	 */
+	public ShadowCache(ShadowRenderer renderer, long maxMemory) {
+		Objects.requireNonNull(renderer);
+		if (maxMemory < 0)
+			throw new IllegalArgumentException("maxMemory (" + maxMemory
+					+ ") must not be negative");
+		this.renderer = renderer;
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * Return the renderer this cache creates shadows with.
+	 */
+	public ShadowRenderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * Return the shadow of an image.
+	 * <p>
+	 * This resembles <code>getRenderer().createShadow(srcImage, attr)</code>,
+	 * except the image that is returned is a
+	 * {@link AlphaPixels#createBufferedImage() TYPE_BYTE_INDEXED} image that may
+	 * be shared and must not be modified.
+	 * 
+	 * @param srcImage
+	 *            the image whose alpha channel is the silhouette of the
+	 *            shadow.
+	 * @param attr
+	 *            the attributes of the shadow. The shadow offset is ignored.
+	 * @return an image that is padded by the kernel radius on every side.
+	 */
+	public BufferedImage getShadow(BufferedImage srcImage,
+			ShadowAttributes attr) {
+		AlphaPixels src = new AlphaPixels(srcImage);
+		SilhouetteKey key = new SilhouetteKey(src, getBlurAttributes(attr));
+		Entry entry = get(key);
+		if (entry == null) {
+			BufferedImage shadow = renderer.createShadow(src, null, attr)
+					.createBufferedImage();
+			entry = put(key, new Entry(shadow, key.alpha.length, 0, 0));
+		}
+		return entry.shadow;
+	}
+
+	/**
+	 * Paint the shadow of a shape.
+	 * <p>
+	 * The shadow is offset according to the ShadowAttributes, so the shape
+	 * itself should be painted after this method returns. Rectangles and
+	 * rounded rectangles whose bounds are whole numbers are painted as
+	 * nine-slice shadows; other shapes are cached by their silhouette.
+	 * 
+	 * @param g
+	 *            the graphics to paint to.
+	 * @param shape
+	 *            the shape to paint the shadow of.
+	 * @param attr
+	 *            the attributes of the shadow.
+	 */
+	public void paintShadow(Graphics2D g, Shape shape, ShadowAttributes attr) {
+		double dx = attr.getShadowOffsetDistance()
+				* Math.cos(attr.getShadowOffsetAngle());
+		double dy = attr.getShadowOffsetDistance()
+				* Math.sin(attr.getShadowOffsetAngle());
+		int k = renderer.getKernel(attr).getKernelRadius();
+		Graphics2D g2 = (Graphics2D) g.create();
+		try {
+			g2.translate(dx, dy);
+			if (shape instanceof RoundRectangle2D) {
+				RoundRectangle2D r = (RoundRectangle2D) shape;
+				if (paintNineSlice(g2, r.getFrame(), (float) r.getArcWidth(),
+						(float) r.getArcHeight(), attr, k))
+					return;
+			} else if (shape instanceof Rectangle2D) {
+				if (paintNineSlice(g2, (Rectangle2D) shape, 0, 0, attr, k))
+					return;
+			}
+
+			Rectangle2D bounds = shape.getBounds2D();
+			int x = (int) Math.floor(bounds.getMinX());
+			int y = (int) Math.floor(bounds.getMinY());
+			int width = (int) Math.ceil(bounds.getMaxX()) - x;
+			int height = (int) Math.ceil(bounds.getMaxY()) - y;
+			if (width <= 0 || height <= 0)
+				return;
+			BufferedImage silhouette = createSilhouette(shape, x, y, width,
+					height);
+			g2.drawImage(getShadow(silhouette, attr), x - k, y - k, null);
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Paint the shadow of a rounded rectangle by stretching the shadow of a
+	 * smaller rounded rectangle.
+	 * 
+	 * @return false if the rectangle is not aligned to whole pixels or is
+	 *         smaller than the rectangle the cached shadow is based on.
+	 */
+	private boolean paintNineSlice(Graphics2D g, Rectangle2D frame,
+			float arcWidth, float arcHeight, ShadowAttributes attr, int k) {
+		if (!isInteger(frame.getX()) || !isInteger(frame.getY())
+				|| !isInteger(frame.getWidth())
+				|| !isInteger(frame.getHeight()))
+			return false;
+		int cornerWidth = (int) Math.ceil(Math.max(0, arcWidth) / 2);
+		int cornerHeight = (int) Math.ceil(Math.max(0, arcHeight) / 2);
+
+		// the middle three columns/rows of the source are at least k pixels
+		// from the corners, so their shadows are identical:
+		int srcWidth = 2 * (cornerWidth + k) + 3;
+		int srcHeight = 2 * (cornerHeight + k) + 3;
+		int width = (int) frame.getWidth();
+		int height = (int) frame.getHeight();
+		if (width < srcWidth || height < srcHeight)
+			return false;
+
+		RoundRectangleKey key = new RoundRectangleKey(arcWidth, arcHeight,
+				getBlurAttributes(attr));
+		Entry entry = get(key);
+		if (entry == null) {
+			BufferedImage silhouette = createSilhouette(
+					new RoundRectangle2D.Float(0, 0, srcWidth, srcHeight,
+							arcWidth, arcHeight), 0, 0, srcWidth, srcHeight);
+			BufferedImage shadow = renderer.createShadow(
+					new AlphaPixels(silhouette), null, attr)
+					.createBufferedImage();
+			entry = put(key, new Entry(shadow, 0, shadow.getWidth() / 2,
+					shadow.getHeight() / 2));
+		}
+
+		BufferedImage shadow = entry.shadow;
+		int[] srcX = new int[] { 0, entry.centerX, entry.centerX + 1,
+				shadow.getWidth() };
+		int[] srcY = new int[] { 0, entry.centerY, entry.centerY + 1,
+				shadow.getHeight() };
+		int x = (int) frame.getX() - k;
+		int y = (int) frame.getY() - k;
+		int[] dstX = new int[] { x, x + entry.centerX,
+				x + width + 2 * k - (shadow.getWidth() - entry.centerX - 1),
+				x + width + 2 * k };
+		int[] dstY = new int[] { y, y + entry.centerY,
+				y + height + 2 * k - (shadow.getHeight() - entry.centerY - 1),
+				y + height + 2 * k };
+		for (int row = 0; row < 3; row++) {
+			for (int column = 0; column < 3; column++) {
+				g.drawImage(shadow, dstX[column], dstY[row], dstX[column + 1],
+						dstY[row + 1], srcX[column], srcY[row],
+						srcX[column + 1], srcY[row + 1], null);
+			}
+		}
+		return true;
+	}
+
+	private static boolean isInteger(double d) {
+		return d == Math.rint(d);
+	}
+
+	/**
+	 * Fill a shape in white in an image whose origin is (x, y).
+	 */
+	private static BufferedImage createSilhouette(Shape shape, int x, int y,
+			int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.translate(-x, -y);
+		g.setColor(Color.white);
+		g.fill(shape);
+		g.dispose();
+		return bi;
+	}
+
+	/**
+	 * Return a copy of the attributes that affect the blur. (The offset only
+	 * affects where a shadow is painted.)
+	 */
+	private static ShadowAttributes getBlurAttributes(ShadowAttributes attr) {
+		return new ShadowAttributes(attr.getShadowKernelRadius(),
+				attr.getShadowOpacity());
+	}
+
+	private synchronized Entry get(Object key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Add an entry and evict the least recently used entries until the cache
+	 * fits in its memory limit.
+	 * 
+	 * @return the entry for the key, which may have been added by another
+	 *         thread while this thread was creating the shadow.
+	 */
+	private synchronized Entry put(Object key, Entry entry) {
+		if (entry.byteCount > maxMemory)
+			return entry;
+		Entry existing = entries.get(key);
+		if (existing != null)
+			return existing;
+		entries.put(key, entry);
+		memoryUsage += entry.byteCount;
+		Iterator<Map.Entry<Object, Entry>> iter = entries.entrySet()
+				.iterator();
+		while (memoryUsage > maxMemory) {
+			Entry eldest = iter.next().getValue();
+			iter.remove();
+			memoryUsage -= eldest.byteCount;
+			evictionCount++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Remove every cached shadow. This does not reset the hit and miss counts.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		memoryUsage = 0;
+	}
+
+	/**
+	 * Return the number of shadows that were found in this cache.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Return the number of shadows that had to be rendered.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Return the fraction of requests (from 0 to 1) that were found in this
+	 * cache, or zero if nothing has been requested yet.
+	 */
+	public synchronized double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : ((double) hitCount) / ((double) total);
+	}
+
+	/**
+	 * Return the number of shadows that were removed to stay within the
+	 * memory limit.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Return the number of shadows currently cached.
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Return the approximate number of bytes the cached shadows use.
+	 */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/**
+	 * Return the number of bytes the cached shadows may use.
+	 */
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ShadowCache[ entries=" + entries.size() + ", memoryUsage="
+				+ memoryUsage + ", maxMemory=" + maxMemory + ", hitRate="
+				+ getHitRate() + ", evictions=" + evictionCount + "]";
+	}
+}
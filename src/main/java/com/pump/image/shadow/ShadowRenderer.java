@@ -47,6 +47,42 @@ public interface ShadowRenderer {
 	public ARGBPixels createShadow(ARGBPixels srcImage, ARGBPixels destImage,
 			ShadowAttributes attr);
 
+	/**
+	 * Write the alpha channel of a shadow based on the alpha channel of the
+	 * source image.
+	 * <p>
+	 * The default implementation converts to and from ARGBPixels. Renderers
+	 * that blur the alpha channel directly should override this, because
+	 * AlphaPixels only use a quarter of the memory.
+	 * 
+	 * @param srcImage
+	 *            the image to create a shadow for.
+	 * @param destImage
+	 *            an optional destination to write to. If null then a new
+	 *            destination is created.
+	 * @param attr
+	 *            a description of the shadow attributes.
+	 * @return the alpha channel of the shadow.
+	 */
+	public default AlphaPixels createShadow(AlphaPixels srcImage,
+			AlphaPixels destImage, ShadowAttributes attr) {
+		ARGBPixels shadow = createShadow(srcImage.createARGBPixels(), null,
+				attr);
+		if (destImage == null)
+			return new AlphaPixels(shadow);
+		int[] argb = shadow.getPixels();
+		byte[] alpha = destImage.getPixels();
+		if (alpha.length != argb.length)
+			throw new IllegalArgumentException("The destination ("
+					+ destImage.getWidth() + "x" + destImage.getHeight()
+					+ ") must be " + shadow.getWidth() + "x"
+					+ shadow.getHeight());
+		for (int a = 0; a < argb.length; a++) {
+			alpha[a] = (byte) (argb[a] >>> 24);
+		}
+		return destImage;
+	}
+
 	/**
 	 * Return the GaussianKernel this renderer will apply based on a set of
 	 * attributes.
@@ -0,0 +1,371 @@
+package com.pump.image.shadow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This approximates a {@link GaussianShadowRenderer} by applying three box
+ * blurs in each dimension.
+ * <p>
+ * Each box blur uses a running sum, so the cost per pixel does not depend on
+ * the kernel radius. The box widths are chosen so the three boxes have the
+ * same variance as the Gaussian kernel (see "Fast Almost-Gaussian Filtering"
+ * by Peter Kovesi). For large kernels this is much faster than the
+ * GaussianShadowRenderer, and the difference in opacity is usually only one
+ * or two units (out of 255). Small kernels are rendered by a
+ * GaussianShadowRenderer.
+ * <p>
+ * The blur is applied to {@link AlphaPixels}: the horizontal pass writes to the
+ * destination's <code>byte</code> array, and the vertical pass reads and
+ * replaces each column of that array. Each row or column is blurred in
+ * fixed-point arithmetic so rounding errors don't accumulate between boxes.
+ */
+public class SlidingGaussianShadowRenderer implements ShadowRenderer {
+
+	/**
+	 * The number of box blurs applied in each dimension.
+	 */
+	static final int BOX_COUNT = 3;
+
+	/**
+	 * Images with fewer pixels than this are blurred on the calling thread.
+	 */
+	static final int MIN_PARALLEL_AREA = 128 * 128;
+
+	/**
+	 * Kernels smaller than this are delegated to a
+	 * {@link GaussianShadowRenderer}. When the boxes are only a few pixels wide
+	 * they don't resemble a Gaussian curve (especially near sharp corners), and
+	 * a small kernel is already inexpensive to apply exactly.
+	 */
+	static final float MIN_BOX_KERNEL_RADIUS = 12;
+
+	/**
+	 * Return the widths of the box blurs that resemble a Gaussian blur.
+	 * 
+	 * @param sigma
+	 *            the standard deviation of the Gaussian blur.
+	 * @return an array of {@link #BOX_COUNT} odd widths.
+	 */
+	static int[] getBoxWidths(double sigma) {
+		double idealWidth = Math.sqrt(12 * sigma * sigma / BOX_COUNT + 1);
+		int lowerWidth = (int) idealWidth;
+		if (lowerWidth % 2 == 0)
+			lowerWidth--;
+		int upperWidth = lowerWidth + 2;
+		int lowerCount = (int) Math.round((12 * sigma * sigma - BOX_COUNT
+				* lowerWidth * lowerWidth - 4 * BOX_COUNT * lowerWidth - 3
+				* BOX_COUNT)
+				/ (-4 * lowerWidth - 4));
+		int[] widths = new int[BOX_COUNT];
+		for (int a = 0; a < BOX_COUNT; a++) {
+			widths[a] = a < lowerCount ? lowerWidth : upperWidth;
+		}
+		return widths;
+	}
+
+	static class Renderer {
+
+		/**
+		 * Values are stored with this many fractional bits while a row or
+		 * column is blurred.
+		 */
+		static final int FRACTION_BITS = 8;
+
+		final int k;
+		final int srcWidth, srcHeight, dstWidth, dstHeight;
+		final byte[] srcBuffer, dstBuffer;
+		final int[] boxRadii;
+		final long[] boxReciprocals;
+		final byte[] opacityLookup = new byte[256];
+
+		Renderer(AlphaPixels srcPixels, AlphaPixels dstPixels, int k,
+				double sigma, float shadowOpacity) {
+			this.k = k;
+			srcWidth = srcPixels.getWidth();
+			srcHeight = srcPixels.getHeight();
+			dstWidth = srcWidth + 2 * k;
+			dstHeight = srcHeight + 2 * k;
+			srcBuffer = srcPixels.getPixels();
+			dstBuffer = dstPixels.getPixels();
+
+			int[] widths = getBoxWidths(sigma);
+			boxRadii = new int[widths.length];
+			boxReciprocals = new long[widths.length];
+			for (int a = 0; a < widths.length; a++) {
+				boxRadii[a] = Math.max(0, widths[a] / 2);
+				int width = 2 * boxRadii[a] + 1;
+				boxReciprocals[a] = ((1L << 32) + width - 1) / width;
+			}
+
+			for (int a = 0; a < opacityLookup.length; a++) {
+				opacityLookup[a] = (byte) (a * shadowOpacity);
+			}
+		}
+
+		/**
+		 * Apply every box blur to a row or column.
+		 * 
+		 * @param data
+		 *            the values to blur, with FRACTION_BITS of fraction. This
+		 *            is overwritten with the result.
+		 * @param scratch
+		 *            an array at least as long as <code>length</code>.
+		 * @param length
+		 *            the number of values to blur.
+		 */
+		void blur(int[] data, int[] scratch, int length) {
+			int[] src = data;
+			int[] dst = scratch;
+			for (int a = 0; a < boxRadii.length; a++) {
+				int r = boxRadii[a];
+				long reciprocal = boxReciprocals[a];
+				long sum = 0;
+				for (int i = 0, max = Math.min(r, length - 1); i <= max; i++) {
+					sum += src[i];
+				}
+				for (int i = 0; i < length; i++) {
+					dst[i] = (int) ((sum * reciprocal) >>> 32);
+					int add = i + r + 1;
+					if (add < length)
+						sum += src[add];
+					int remove = i - r;
+					if (remove >= 0)
+						sum -= src[remove];
+				}
+				int[] t = src;
+				src = dst;
+				dst = t;
+			}
+			if (src != data)
+				System.arraycopy(src, 0, data, 0, length);
+		}
+
+		/**
+		 * Blur rows of the source image horizontally and store them in the
+		 * destination.
+		 */
+		class HorizontalPass implements Callable<Void> {
+			final int minY, maxY;
+
+			HorizontalPass(int minY, int maxY) {
+				this.minY = minY;
+				this.maxY = maxY;
+			}
+
+			@Override
+			public Void call() {
+				int[] row = new int[dstWidth];
+				int[] scratch = new int[dstWidth];
+				int half = 1 << (FRACTION_BITS - 1);
+				for (int srcY = minY; srcY < maxY; srcY++) {
+					for (int srcX = 0, i = srcY * srcWidth; srcX < srcWidth; srcX++, i++) {
+						row[k + srcX] = (srcBuffer[i] & 0xff) << FRACTION_BITS;
+					}
+					for (int x = 0; x < k; x++) {
+						row[x] = 0;
+						row[dstWidth - 1 - x] = 0;
+					}
+					blur(row, scratch, dstWidth);
+					for (int x = 0, i = (srcY + k) * dstWidth; x < dstWidth; x++, i++) {
+						dstBuffer[i] = (byte) ((row[x] + half) >> FRACTION_BITS);
+					}
+				}
+				return null;
+			}
+		}
+
+		/**
+		 * Blur columns of the destination vertically and apply the shadow
+		 * opacity.
+		 */
+		class VerticalPass implements Callable<Void> {
+			final int minX, maxX;
+
+			VerticalPass(int minX, int maxX) {
+				this.minX = minX;
+				this.maxX = maxX;
+			}
+
+			@Override
+			public Void call() {
+				int[] column = new int[dstHeight];
+				int[] scratch = new int[dstHeight];
+				int half = 1 << (FRACTION_BITS - 1);
+				for (int x = minX; x < maxX; x++) {
+					for (int y = 0, i = x; y < dstHeight; y++, i += dstWidth) {
+						column[y] = (dstBuffer[i] & 0xff) << FRACTION_BITS;
+					}
+					blur(column, scratch, dstHeight);
+					for (int y = 0, i = x; y < dstHeight; y++, i += dstWidth) {
+						dstBuffer[i] = opacityLookup[(column[y] + half) >> FRACTION_BITS];
+					}
+				}
+				return null;
+			}
+		}
+
+		void run(ExecutorService executor) {
+			if (dstWidth * dstHeight < MIN_PARALLEL_AREA)
+				executor = null;
+			int threads = executor == null ? 1 : Runtime.getRuntime()
+					.availableProcessors();
+			if (executor instanceof ForkJoinPool)
+				threads = Math.min(threads,
+						((ForkJoinPool) executor).getParallelism());
+
+			// the horizontal pass only writes the rows next to the source
+			Arrays.fill(dstBuffer, 0, k * dstWidth, (byte) 0);
+			Arrays.fill(dstBuffer, (k + srcHeight) * dstWidth,
+					dstBuffer.length, (byte) 0);
+
+			List<Callable<Void>> horizontalPasses = new ArrayList<>();
+			int rows = Math.max(16, srcHeight / (4 * threads));
+			for (int y = 0; y < srcHeight; y += rows) {
+				horizontalPasses.add(new HorizontalPass(y, Math.min(srcHeight,
+						y + rows)));
+			}
+			invokeAll(executor, horizontalPasses);
+
+			List<Callable<Void>> verticalPasses = new ArrayList<>();
+			int columns = Math.max(16, dstWidth / (4 * threads));
+			for (int x = 0; x < dstWidth; x += columns) {
+				verticalPasses.add(new VerticalPass(x, Math.min(dstWidth, x
+						+ columns)));
+			}
+			invokeAll(executor, verticalPasses);
+		}
+
+		private void invokeAll(ExecutorService executor,
+				List<Callable<Void>> tasks) {
+			try {
+				if (executor == null || tasks.size() == 1) {
+					for (Callable<Void> task : tasks) {
+						task.call();
+					}
+				} else {
+					for (Future<Void> f : executor.invokeAll(tasks)) {
+						f.get();
+					}
+				}
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new RuntimeException(e.getCause());
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	final ExecutorService executor;
+	final GaussianShadowRenderer smallKernelRenderer = new GaussianShadowRenderer();
+
+	/**
+	 * Create a renderer that uses the common <code>ForkJoinPool</code>.
+	 */
+	public SlidingGaussianShadowRenderer() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a renderer that uses a specific executor.
+	 * 
+	 * @param executor
+	 *            the executor to blur rows and columns in. If this is null
+	 *            then shadows are rendered on the calling thread.
+	 */
+	public SlidingGaussianShadowRenderer(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public ARGBPixels createShadow(ARGBPixels src, ARGBPixels dst,
+			ShadowAttributes attr) {
+		if (attr.getShadowKernelRadius() < MIN_BOX_KERNEL_RADIUS)
+			return smallKernelRenderer.createShadow(src, dst, attr);
+
+		int k = getKernel(attr).getKernelRadius();
+		int dstWidth = src.getWidth() + 2 * k;
+		int dstHeight = src.getHeight() + 2 * k;
+		if (dst == null) {
+			dst = new ARGBPixels(dstWidth, dstHeight);
+		} else if (dst.getWidth() != dstWidth || dst.getHeight() != dstHeight) {
+			throw new IllegalArgumentException("The destination ("
+					+ dst.getWidth() + "x" + dst.getHeight() + ") must be "
+					+ dstWidth + "x" + dstHeight);
+		}
+		AlphaPixels shadow = createShadow(new AlphaPixels(src), null, attr);
+		shadow.writeTo(dst, 0, 0, dstWidth, dstHeight);
+		return dst;
+	}
+
+	@Override
+	public AlphaPixels createShadow(AlphaPixels src, AlphaPixels dst,
+			ShadowAttributes attr) {
+		if (attr.getShadowKernelRadius() < MIN_BOX_KERNEL_RADIUS)
+			return smallKernelRenderer.createShadow(src, dst, attr);
+
+		int k = getKernel(attr).getKernelRadius();
+		int dstWidth = src.getWidth() + 2 * k;
+		int dstHeight = src.getHeight() + 2 * k;
+		if (dst == null) {
+			dst = new AlphaPixels(dstWidth, dstHeight);
+		} else if (dst.getWidth() != dstWidth || dst.getHeight() != dstHeight) {
+			throw new IllegalArgumentException("The destination ("
+					+ dst.getWidth() + "x" + dst.getHeight() + ") must be "
+					+ dstWidth + "x" + dstHeight);
+		}
+
+		double sigma = getSigma(attr);
+		Renderer r = new Renderer(src, dst, k, sigma,
+				attr.getShadowOpacity());
+		r.run(executor);
+		return dst;
+	}
+
+	/**
+	 * Return the standard deviation of the blur. Like a {@link GaussianKernel}
+	 * this is one third of the kernel radius.
+	 */
+	static double getSigma(ShadowAttributes attr) {
+		return attr.getShadowKernelRadius() / 3.0;
+	}
+
+	/**
+	 * Return the Gaussian kernel this renderer approximates.
+	 * <p>
+	 * Unlike <code>new GaussianKernel(radius)</code> this kernel is normalized
+	 * before it is converted to integers, so large kernels keep their shape.
+	 * (The GaussianKernel constructor rounds the tails of large kernels to
+	 * zero, which makes it resemble a smaller box blur.)
+	 */
+	@Override
+	public GaussianKernel getKernel(ShadowAttributes attr) {
+		if (attr.getShadowKernelRadius() < MIN_BOX_KERNEL_RADIUS)
+			return smallKernelRenderer.getKernel(attr);
+
+		double sigma = getSigma(attr);
+		int radius = (int) Math.ceil(attr.getShadowKernelRadius());
+		double[] weights = new double[2 * radius + 1];
+		double sum = 0;
+		for (int a = 0; a < weights.length; a++) {
+			int x = a - radius;
+			weights[a] = Math.exp(-x * x / (2 * sigma * sigma));
+			sum += weights[a];
+		}
+		int[] kernel = new int[weights.length];
+		for (int a = 0; a < weights.length; a++) {
+			kernel[a] = Math.max(1, (int) (0x10000 * weights[a] / sum));
+		}
+		return new GaussianKernel(kernel);
+	}
+}
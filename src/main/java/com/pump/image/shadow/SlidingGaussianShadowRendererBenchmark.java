@@ -0,0 +1,153 @@
+package com.pump.image.shadow;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import com.pump.geom.StarPolygon;
+
+/**
+ * This compares the speed and accuracy of the
+ * {@link SlidingGaussianShadowRenderer}, the {@link GaussianShadowRenderer} and
+ * the {@link DoubleBoxShadowRenderer}.
+ * <p>
+ * The error columns describe how far each renderer's shadow opacity is from a
+ * Gaussian blur calculated with <code>doubles</code>, where opacity ranges
+ * from 0-255. (The GaussianShadowRenderer's integer kernel loses precision
+ * as the radius increases, so it is not used as the reference.)
+ */
+class SlidingGaussianShadowRendererBenchmark {
+
+	static final int SAMPLE_COUNT = 5;
+
+	public static void main(String[] args) {
+		ARGBPixels src = new ARGBPixels(createImage(), true);
+		ShadowRenderer[] renderers = new ShadowRenderer[] {
+				new GaussianShadowRenderer(), new DoubleBoxShadowRenderer(),
+				new SlidingGaussianShadowRenderer() };
+
+		System.out.println("Radius\tRenderer\tTime (ms)\tMax Error\tMean Error");
+		for (int radius : new int[] { 5, 15, 30, 60, 100 }) {
+			ShadowAttributes attr = new ShadowAttributes(radius, 1);
+			double[][] expected = createExactShadow(src, radius);
+			for (ShadowRenderer renderer : renderers) {
+				long[] times = new long[SAMPLE_COUNT];
+				ARGBPixels actual = null;
+				for (int a = 0; a < SAMPLE_COUNT; a++) {
+					times[a] = System.nanoTime();
+					actual = renderer.createShadow(src, null, attr);
+					times[a] = System.nanoTime() - times[a];
+				}
+				Arrays.sort(times);
+				double[] error = getError(expected, actual);
+				System.out.println(radius + "\t"
+						+ renderer.getClass().getSimpleName() + "\t"
+						+ (times[SAMPLE_COUNT / 2] / 1000000) + "\t"
+						+ error[0] + "\t" + error[1]);
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Blur the alpha channel of an image with a Gaussian kernel whose standard
+	 * deviation is one third of the radius.
+	 * 
+	 * @return the opacity (from 0-255) of a shadow that is padded by
+	 *         <code>ceil(radius)</code> pixels on every side, indexed as
+	 *         <code>[y][x]</code>.
+	 */
+	private static double[][] createExactShadow(ARGBPixels src, double radius) {
+		int k = (int) Math.ceil(radius);
+		double sigma = radius / 3;
+		double[] kernel = new double[2 * k + 1];
+		double sum = 0;
+		for (int a = 0; a < kernel.length; a++) {
+			kernel[a] = Math.exp(-(a - k) * (a - k) / (2 * sigma * sigma));
+			sum += kernel[a];
+		}
+		for (int a = 0; a < kernel.length; a++) {
+			kernel[a] /= sum;
+		}
+
+		int w = src.getWidth() + 2 * k;
+		int h = src.getHeight() + 2 * k;
+		int[] pixels = src.getPixels();
+		double[][] rows = new double[h][w];
+		for (int y = 0; y < src.getHeight(); y++) {
+			for (int x = 0; x < w; x++) {
+				double v = 0;
+				for (int j = 0; j < kernel.length; j++) {
+					int srcX = x - 2 * k + j;
+					if (srcX >= 0 && srcX < src.getWidth())
+						v += kernel[j]
+								* (pixels[y * src.getWidth() + srcX] >>> 24);
+				}
+				rows[y + k][x] = v;
+			}
+		}
+		double[][] shadow = new double[h][w];
+		for (int x = 0; x < w; x++) {
+			for (int y = 0; y < h; y++) {
+				double v = 0;
+				for (int j = 0; j < kernel.length; j++) {
+					int y2 = y - k + j;
+					if (y2 >= 0 && y2 < h)
+						v += kernel[j] * rows[y2][x];
+				}
+				shadow[y][x] = v;
+			}
+		}
+		return shadow;
+	}
+
+	/**
+	 * Return the maximum and mean difference in opacity between a reference
+	 * shadow and a rendered shadow. If their padding is different then their
+	 * centers are aligned, and pixels outside of either image are zero.
+	 */
+	private static double[] getError(double[][] expected, ARGBPixels actual) {
+		int w = expected[0].length;
+		int h = expected.length;
+		int dx = (actual.getWidth() - w) / 2;
+		int dy = (actual.getHeight() - h) / 2;
+		int[] p = actual.getPixels();
+		double max = 0;
+		double sum = 0;
+		for (int y = Math.min(0, dy); y < Math.max(h, h + dy); y++) {
+			for (int x = Math.min(0, dx); x < Math.max(w, w + dx); x++) {
+				double v1 = x >= 0 && y >= 0 && x < w && y < h ? expected[y][x]
+						: 0;
+				int x2 = x + dx;
+				int y2 = y + dy;
+				double v2 = x2 >= 0 && y2 >= 0 && x2 < actual.getWidth()
+						&& y2 < actual.getHeight() ? p[y2 * actual.getWidth()
+						+ x2] >>> 24 : 0;
+				double d = Math.abs(v1 - v2);
+				max = Math.max(max, d);
+				sum += d;
+			}
+		}
+		return new double[] { Math.round(max * 10) / 10.0,
+				Math.round(sum / (w * h) * 1000) / 1000.0 };
+	}
+
+	private static BufferedImage createImage() {
+		BufferedImage bi = new BufferedImage(800, 600,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(Color.white);
+		g.fill(new RoundRectangle2D.Float(40, 40, 500, 300, 60, 60));
+		StarPolygon star = new StarPolygon(200);
+		star.setCenter(550, 380);
+		g.setColor(new Color(0x801BE7FF, true));
+		g.fill(star);
+		g.dispose();
+		return bi;
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.thumbnail;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import com.pump.awt.Dimension2D;
+import com.pump.image.ImageSize;
+import com.pump.image.jpeg.JPEGMetaData;
+import com.pump.image.pixel.Scaling;
+
+/**
+ * This creates thumbnails of image files while reading as little of each file
+ * as possible.
+ * <p>
+ * The image's dimensions are read from its header (see
+ * {@link ImageSize#getFromHeader(InputStream)}). If the image is a JPEG with an
+ * embedded (EXIF or JFIF) thumbnail that is at least as large as the requested
+ * thumbnail and has the same aspect ratio, then that thumbnail is scaled and
+ * the image data is never read. Otherwise the image is passed to
+ * {@link Scaling#scale(URL, int, Dimension)}, which decodes JPEGs at a reduced
+ * DCT scale.
+ * <p>
+ * Unlike {@link Thumbnail} this does not decorate the thumbnail.
+ */
+public class ThumbnailGenerator {
+
+	/**
+	 * The largest relative difference between the aspect ratio of an embedded
+	 * thumbnail and the aspect ratio of its image. Many cameras store 160x120
+	 * thumbnails of 3:2 photos with black bars, and those should be ignored.
+	 */
+	private static final double ASPECT_RATIO_TOLERANCE = .03;
+
+	/**
+	 * A JPEGMetaData that ignores problems with individual markers. Those are
+	 * common in camera files, and a directory listing shouldn't print a stack
+	 * trace for each one.
+	 */
+	private static class QuietJPEGMetaData extends JPEGMetaData {
+		QuietJPEGMetaData(InputStream in) throws IOException {
+			super(in, true);
+		}
+
+		@Override
+		protected void processException(Exception e, String marker) {
+		}
+	}
+
+	/**
+	 * Creates a thumbnail of an image file.
+	 *
+	 * @param file
+	 *            a JPEG, PNG, GIF or BMP file.
+	 * @param maxSize
+	 *            the largest the thumbnail may be. Images that are smaller
+	 *            than this are not scaled up.
+	 * @return a thumbnail, or null if the image could not be read.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public static BufferedImage create(File file, Dimension maxSize)
+			throws IOException {
+		return create(file.toURI().toURL(), maxSize);
+	}
+
+	/**
+	 * Creates a thumbnail of an image.
+	 *
+	 * @param url
+	 *            a JPEG, PNG, GIF or BMP image.
+	 * @param maxSize
+	 *            the largest the thumbnail may be. Images that are smaller
+	 *            than this are not scaled up.
+	 * @return a thumbnail, or null if the image could not be read.
+	 * @throws IOException
+	 *             if an IO problem occurs.
+	 */
+	public static BufferedImage create(URL url, Dimension maxSize)
+			throws IOException {
+		Dimension imageSize = null;
+		BufferedImage embeddedThumbnail = null;
+		try (InputStream in = new BufferedInputStream(url.openStream())) {
+			in.mark(2);
+			boolean jpeg = in.read() == 0xff && in.read() == 0xd8;
+			in.reset();
+			if (jpeg) {
+				JPEGMetaData metaData = new QuietJPEGMetaData(in);
+				imageSize = metaData.getImageSize();
+				embeddedThumbnail = metaData.getThumbnail();
+			} else {
+				imageSize = ImageSize.getFromHeader(in);
+			}
+		}
+		if (imageSize == null || imageSize.width <= 0
+				|| imageSize.height <= 0) {
+			try {
+				imageSize = ImageSize.get(url);
+			} catch (IllegalArgumentException e) {
+				// this isn't an image the toolkit recognizes either
+				return null;
+			}
+			if (imageSize == null || imageSize.width <= 0
+					|| imageSize.height <= 0)
+				return null;
+		}
+
+		Dimension thumbnailSize = getThumbnailSize(imageSize, maxSize);
+		if (embeddedThumbnail != null
+				&& isUsable(embeddedThumbnail, imageSize, thumbnailSize)) {
+			if (embeddedThumbnail.getWidth() == thumbnailSize.width
+					&& embeddedThumbnail.getHeight() == thumbnailSize.height)
+				return embeddedThumbnail;
+			return Scaling.scale(embeddedThumbnail, thumbnailSize);
+		}
+		return Scaling.scale(url, BufferedImage.TYPE_INT_ARGB, thumbnailSize);
+	}
+
+	/**
+	 * Returns the size of the thumbnail of an image: the image is scaled
+	 * proportionally to fit inside <code>maxSize</code>, but it is never
+	 * scaled up.
+	 */
+	public static Dimension getThumbnailSize(Dimension imageSize,
+			Dimension maxSize) {
+		if (imageSize.width <= maxSize.width
+				&& imageSize.height <= maxSize.height)
+			return new Dimension(imageSize);
+		Dimension d = Dimension2D.scaleProportionally(imageSize, maxSize);
+		d.width = Math.max(1, d.width);
+		d.height = Math.max(1, d.height);
+		return d;
+	}
+
+	/**
+	 * Returns true if an embedded thumbnail is large enough to be scaled to
+	 * <code>thumbnailSize</code> and has the same shape as the image.
+	 */
+	private static boolean isUsable(BufferedImage embeddedThumbnail,
+			Dimension imageSize, Dimension thumbnailSize) {
+		int w = embeddedThumbnail.getWidth();
+		int h = embeddedThumbnail.getHeight();
+		if (w < thumbnailSize.width || h < thumbnailSize.height)
+			return false;
+		double imageRatio = ((double) imageSize.width) / imageSize.height;
+		double thumbnailRatio = ((double) w) / h;
+		return Math.abs(thumbnailRatio - imageRatio) / imageRatio <= ASPECT_RATIO_TOLERANCE;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This reads the remaining bytes of a <code>ByteBuffer</code>.
+ * <P>
+ * This is a convenient way to feed a memory-mapped file to code that expects
+ * an <code>InputStream</code>. Reading this stream advances the buffer's
+ * position, so you may want to pass a {@link ByteBuffer#duplicate()} to the
+ * constructor.
+ */
+public class ByteBufferInputStream extends InputStream {
+	protected final ByteBuffer buffer;
+	private int mark = -1;
+
+	/**
+	 * Creates a new <code>ByteBufferInputStream</code>.
+	 * 
+	 * @param buffer
+	 *            the buffer to read from its current position to its limit.
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		int remaining = buffer.remaining();
+		if (remaining == 0)
+			return -1;
+		len = Math.min(len, remaining);
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0)
+			return 0;
+		int k = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + k);
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		mark = buffer.position();
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		if (mark == -1)
+			throw new IOException("mark() was not called");
+		buffer.position(mark);
+	}
+}
@@ -36,11 +36,9 @@ import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 import javax.swing.tree.TreePath;
 
-import com.pump.awt.Dimension2D;
-import com.pump.image.ImageSize;
 import com.pump.image.jpeg.JPEGMetaData;
-import com.pump.image.pixel.Scaling;
 import com.pump.image.thumbnail.BasicThumbnail;
+import com.pump.image.thumbnail.ThumbnailGenerator;
 import com.pump.swing.BasicCancellable;
 import com.pump.swing.Cancellable;
 import com.pump.util.BasicReceiver;
@@ -646,21 +644,6 @@ public abstract class IOLocation {
 		suffix = suffix.toLowerCase();
 
 		try {
-			if (suffix.equals("jpeg") || suffix.equals("jpg")) {
-				InputStream in = createInputStream();
-				try {
-					JPEGMetaData metaData = new JPEGMetaData(in, true);
-					BufferedImage bi = metaData.getThumbnail();
-					if (bi != null)
-						return bi;
-				} finally {
-					try {
-						in.close();
-					} catch (IOException e) {
-					}
-				}
-			}
-
 			if (suffix.equals("jpg") || suffix.equals("jpeg")
 					|| suffix.equals("png") || suffix.equals("gif")
 					|| suffix.equals("bmp")) {
@@ -668,15 +651,28 @@ public abstract class IOLocation {
 				URL url = getURL();
 				if (url != null) {
 					try {
-						Dimension d = ImageSize.get(url);
-						d = Dimension2D.scaleProportionally(d, maxSize);
-						return Scaling.scale(url, BufferedImage.TYPE_INT_ARGB,
-								d);
+						BufferedImage bi = ThumbnailGenerator.create(url,
+								maxSize);
+						if (bi != null)
+							return bi;
 					} catch (Throwable t) {
 						// do nothing. Pity this failed.
 					}
-					// TODO: we could do more here. For example: we can parse
-					// our own BMPs.
+				}
+
+				if (suffix.equals("jpeg") || suffix.equals("jpg")) {
+					InputStream in = createInputStream();
+					try {
+						JPEGMetaData metaData = new JPEGMetaData(in, true);
+						BufferedImage bi = metaData.getThumbnail();
+						if (bi != null)
+							return bi;
+					} finally {
+						try {
+							in.close();
+						} catch (IOException e) {
+						}
+					}
 				}
 
 				InputStream in = createInputStream();
@@ -18,121 +18,270 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.geom.GeneralPath;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioFormat.Encoding;
 import javax.swing.JComponent;
 import javax.swing.JSlider;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.MouseInputAdapter;
 import javax.swing.plaf.basic.BasicSliderUI;
 
+import com.pump.audio.PCMCodec;
 import com.pump.audio.WavReader;
-import com.pump.geom.ShapeBounds;
+import com.pump.audio.WaveformSummary;
+import com.pump.desktop.cache.CacheManager;
 import com.pump.geom.TransformUtils;
-import com.pump.math.function.Function;
-import com.pump.math.function.PolynomialFunction;
 
 /**
  * This SliderUI renders a waveform over the track of the slider, and the thumb
  * is rendered as a one-pixel line.
  * <p>
+ * The waveform is drawn from a {@link WaveformSummary}, so painting only reads
+ * about one summary value per pixel regardless of the length of the audio. The
+ * summary is built on a background thread when this UI is installed, and the
+ * slider is repainted as more of the audio is analyzed. If the
+ * {@link CacheManager} is initialized then the summaries of local files are
+ * saved, so they only need to be built once.
+ * <p>
  * Currently this only supports WAV files.
  */
 public class WaveformSliderUI extends BasicSliderUI {
 
+	/**
+	 * The maximum number of summaries stored in the CacheManager's directory.
+	 */
+	private static final int MAX_CACHED_SUMMARIES = 200;
+
+	/**
+	 * The interval (in milliseconds) the slider is repainted at while the
+	 * summary is being built.
+	 */
+	private static final int REPAINT_INTERVAL = 100;
+
+	/**
+	 * Create a waveform that spans a 1x1 square.
+	 * <p>
+	 * This reads all of the audio before it returns.
+	 */
 	public static Shape createWaveform(URL source) throws IOException {
-		final GeneralPath path = new GeneralPath();
-		final AudioFormat audioFormat;
-		long totalDataSize;
-		try (InputStream in = source.openStream()) {
+		WaveformSummary summary = createSummary(source);
+		readSummary(source, summary, null);
+		return createWaveform(summary, 1000, false);
+	}
 
-			WavReader r = new WavReader(in);
-			totalDataSize = r.skip();
-			audioFormat = r.getAudioFormat();
+	/**
+	 * Create a waveform that spans a 1x1 square.
+	 *
+	 * @param summary
+	 *            the summary to draw. If this summary is incomplete then only
+	 *            the part that has been analyzed is drawn.
+	 * @param width
+	 *            the number of points along the waveform to plot.
+	 * @param rms
+	 *            if true then the waveform represents the RMS amplitude. If
+	 *            false then it represents the peak amplitude.
+	 */
+	public static Shape createWaveform(WaveformSummary summary, int width,
+			boolean rms) {
+		float[] top = new float[width];
+		float[] bottom = new float[width];
+		int columns;
+		if (rms) {
+			columns = summary.getColumns(width, null, null, top);
+			for (int x = 0; x < columns; x++) {
+				bottom[x] = -top[x];
+			}
+		} else {
+			columns = summary.getColumns(width, bottom, top, null);
 		}
 
-		path.moveTo(0, 0);
+		GeneralPath path = new GeneralPath();
+		if (columns == 0)
+			return path;
+		path.moveTo(0, (1 - top[0]) / 2);
+		for (int x = 0; x < columns; x++) {
+			path.lineTo(((float) x + 1) / width, (1 - top[x]) / 2);
+		}
+		for (int x = columns - 1; x >= 0; x--) {
+			path.lineTo(((float) x + 1) / width, (1 - bottom[x]) / 2);
+		}
+		path.lineTo(0, (1 - bottom[0]) / 2);
+		path.closePath();
+		return path;
+	}
+
+	/**
+	 * Create an empty summary for a WAV file. This reads the file's format
+	 * and the size of its data, but not the data itself.
+	 */
+	private static WaveformSummary createSummary(URL source)
+			throws IOException {
 		try (InputStream in = source.openStream()) {
-			int sampleSizeInBits = audioFormat.getSampleSizeInBits();
-			if (!(sampleSizeInBits == 8 || sampleSizeInBits == 16))
-				throw new IOException("sampleSizeInBits = " + sampleSizeInBits);
-			if (!(audioFormat.getEncoding().equals(Encoding.PCM_SIGNED) || audioFormat
-					.getEncoding().equals(Encoding.PCM_UNSIGNED)))
-				throw new IOException("sunpported encoding \""
-						+ audioFormat.getEncoding() + "\"");
-			final int sampleSize = sampleSizeInBits / 8;
-			final boolean isSigned = audioFormat.getEncoding().equals(
-					Encoding.PCM_SIGNED);
-			final int minSampleValue = isSigned ? (int) (-Math.pow(256,
-					sampleSize)) / 2 : 0;
-			final int maxSampleValue = isSigned ? (int) (Math.pow(256,
-					sampleSize)) / 2 - 1
-					: (int) (Math.pow(256, sampleSize)) - 1;
-
-			// we're going to assume 1000 pixels of data is plenty
-			final Function sampleIndexToPixel = PolynomialFunction.createFit(0,
-					0, totalDataSize / audioFormat.getChannels(), 1000);
+			WavReader r = new WavReader(in);
+			long totalDataSize = r.skip();
+			AudioFormat audioFormat = r.getAudioFormat();
+			if (!PCMCodec.isSupported(audioFormat))
+				throw new IOException("unsupported format \"" + audioFormat
+						+ "\"");
+			return new WaveformSummary(audioFormat, totalDataSize
+					/ audioFormat.getFrameSize());
+		}
+	}
 
+	/**
+	 * Pass all the audio data in a WAV file to a summary.
+	 *
+	 * @param thread
+	 *            an optional thread. If this is interrupted then this method
+	 *            throws an InterruptedIOException.
+	 */
+	private static void readSummary(URL source, final WaveformSummary summary,
+			final Thread thread) throws IOException {
+		try (InputStream in = source.openStream()) {
 			WavReader r = new WavReader(in) {
-
-				int currentX = 0;
-				int currentMaxY = 0;
-				long sampleIndex = 0;
-
 				@Override
 				protected void processSamples(byte[] sample, int offset,
 						int length, int numberOfSamples) throws IOException {
-					for (int a = offset; a < offset + length; a += sampleSize) {
-						final int value = com.pump.audio.PCMUtils.decodeSample(
-								sample, a, sampleSize, isSigned,
-								audioFormat.isBigEndian());
-						int range = maxSampleValue + minSampleValue;
-						int z = Math.abs(value - range / 2);
-
-						int x = (int) Math.floor(sampleIndexToPixel
-								.evaluate(sampleIndex++));
-						if (x == currentX) {
-							currentMaxY = Math.max(currentMaxY, z);
-						} else {
-							path.lineTo(currentX, -currentMaxY);
-							currentX = x;
-							currentMaxY = z;
-						}
-					}
-					path.lineTo(currentX, -currentMaxY);
+					if (thread != null && thread.isInterrupted())
+						throw new InterruptedIOException();
+					summary.add(sample, offset, length);
 				}
-
 			};
 			r.read();
+		}
+		summary.finish();
+	}
 
-			Rectangle unitRect = new Rectangle(0, 0, 1, 1);
-			Rectangle2D bounds = ShapeBounds.getBounds(path);
+	/**
+	 * Return the file a summary of a URL is saved in, or null if the URL is
+	 * not a local file or the CacheManager isn't initialized.
+	 */
+	private static File getCacheFile(URL source) {
+		if (!CacheManager.isInitialized() || !"file".equals(source.getProtocol()))
+			return null;
+		try {
+			File file = new File(source.toURI());
+			if (!file.exists())
+				return null;
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			String str = file.getAbsolutePath() + "\n" + file.lastModified()
+					+ "\n" + file.length();
+			byte[] hash = digest.digest(str.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			File dir = new File(CacheManager.get().getDirectory(false),
+					"Waveforms");
+			return new File(dir, sb + ".waveform");
+		} catch (URISyntaxException | NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Return a saved summary, or null if there isn't one.
+	 */
+	private static WaveformSummary readCachedSummary(File file) {
+		if (file == null || !file.exists())
+			return null;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(
+				file))) {
+			WaveformSummary summary = WaveformSummary.read(in);
+			file.setLastModified(System.currentTimeMillis());
+			return summary;
+		} catch (IOException e) {
+			file.delete();
+			return null;
+		}
+	}
 
-			path.lineTo(bounds.getMaxX(), bounds.getMaxY());
-			path.closePath();
+	/**
+	 * Save a summary, and delete the least recently used summaries if there
+	 * are too many.
+	 */
+	private static void writeCachedSummary(File file, WaveformSummary summary) {
+		File dir = file.getParentFile();
+		File tmp = new File(dir, file.getName() + ".tmp");
+		try {
+			if (!dir.exists() && !dir.mkdirs())
+				throw new IOException("mkdirs failed for "
+						+ dir.getAbsolutePath());
+			try (OutputStream out = new BufferedOutputStream(
+					new FileOutputStream(tmp))) {
+				summary.write(out);
+			}
+			if (!tmp.renameTo(file))
+				throw new IOException("renameTo failed for "
+						+ file.getAbsolutePath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			tmp.delete();
+			return;
+		}
 
-			// manually set the height, so for really quiet sounds we show
-			// sufficient extra padding
-			int h = (maxSampleValue - minSampleValue) / 2;
-			bounds.setFrame(bounds.getX(), -h, bounds.getWidth(), h);
-			path.transform(TransformUtils.createAffineTransform(bounds,
-					unitRect));
+		File[] files = dir.listFiles();
+		if (files != null && files.length > MAX_CACHED_SUMMARIES) {
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					return Long.compare(f1.lastModified(), f2.lastModified());
+				}
+			});
+			for (int a = 0; a < files.length - MAX_CACHED_SUMMARIES; a++) {
+				files[a].delete();
+			}
 		}
-		return path;
 	}
 
 	URL source;
-	Shape waveform;
+	volatile WaveformSummary summary;
+	Thread buildThread;
+	boolean buildStarted = false;
 	boolean isDragging = false;
 
+	/**
+	 * The waveforms painted in the track, and the width and number of analyzed
+	 * frames they were created for.
+	 */
+	Shape peakWaveform, rmsWaveform;
+	int waveformWidth;
+	long waveformFrames = -1;
+
+	Timer repaintTimer = new Timer(REPAINT_INTERVAL, new ActionListener() {
+		@Override
+		public void actionPerformed(ActionEvent e) {
+			if (slider == null)
+				return;
+			if (summary.getAnalyzedFrameCount() != waveformFrames)
+				slider.repaint();
+			if (summary.isComplete())
+				repaintTimer.stop();
+		}
+	});
+
 	/**
 	 * The BasicSliderUI users a Timer to scroll the thumb to where you clicked.
 	 * But in this UI we just jump straight to where the mouse is. just
@@ -190,10 +339,107 @@ public class WaveformSliderUI extends BasicSliderUI {
 		}
 	};
 
+	/**
+	 * Create a WaveformSliderUI.
+	 * <p>
+	 * This reads the header of the WAV file immediately, but the waveform is
+	 * built on a background thread when this UI is installed (unless a saved
+	 * summary is available).
+	 *
+	 * @throws IOException
+	 *             if the source can't be read or is not a supported WAV file.
+	 */
 	public WaveformSliderUI(JSlider slider, URL source) throws IOException {
 		super(slider);
 		this.source = source;
-		waveform = createWaveform(source);
+		summary = readCachedSummary(getCacheFile(source));
+		if (summary == null)
+			summary = createSummary(source);
+	}
+
+	/**
+	 * Return the summary this UI paints. This may still be in progress.
+	 */
+	public WaveformSummary getSummary() {
+		return summary;
+	}
+
+	@Override
+	public void installUI(JComponent c) {
+		super.installUI(c);
+		if (!summary.isComplete()) {
+			startBuildThread();
+			repaintTimer.start();
+		}
+	}
+
+	@Override
+	public void uninstallUI(JComponent c) {
+		repaintTimer.stop();
+		synchronized (this) {
+			if (buildThread != null) {
+				buildThread.interrupt();
+				buildThread = null;
+			}
+		}
+		super.uninstallUI(c);
+	}
+
+	private synchronized void startBuildThread() {
+		if (buildThread != null)
+			return;
+		final boolean restart = buildStarted;
+		buildStarted = true;
+		buildThread = new Thread("WaveformSliderUI: " + source) {
+			@Override
+			public void run() {
+				boolean failed = false;
+				try {
+					WaveformSummary s = summary;
+					if (restart) {
+						// a previous thread was interrupted, so start over
+						s = createSummary(source);
+						summary = s;
+					}
+					readSummary(source, s, this);
+					File cacheFile = getCacheFile(source);
+					if (cacheFile != null)
+						writeCachedSummary(cacheFile, s);
+				} catch (InterruptedIOException e) {
+					// uninstallUI() was called
+				} catch (IOException e) {
+					e.printStackTrace();
+					failed = true;
+					// the summary will never be complete, so stop polling it
+					// (after painting what was analyzed). This thread stays
+					// the buildThread until then, so if the UI is reinstalled
+					// in the meantime the timer belongs to the new build and
+					// is left running.
+					final Thread thread = this;
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							synchronized (WaveformSliderUI.this) {
+								if (buildThread != thread)
+									return;
+								buildThread = null;
+								repaintTimer.stop();
+							}
+							if (slider != null)
+								slider.repaint();
+						}
+					});
+				} finally {
+					if (!failed) {
+						synchronized (WaveformSliderUI.this) {
+							if (buildThread == this)
+								buildThread = null;
+						}
+					}
+				}
+			}
+		};
+		buildThread.setDaemon(true);
+		buildThread.start();
 	}
 
 	/**
@@ -213,13 +459,27 @@ public class WaveformSliderUI extends BasicSliderUI {
 
 	@Override
 	public void paintTrack(Graphics g0) {
+		int width = Math.max(1, trackRect.width);
+		long frames = summary.getAnalyzedFrameCount();
+		if (peakWaveform == null || waveformWidth != width
+				|| waveformFrames != frames) {
+			peakWaveform = createWaveform(summary, width, false);
+			rmsWaveform = createWaveform(summary, width, true);
+			waveformWidth = width;
+			waveformFrames = frames;
+		}
+
 		Graphics2D g = (Graphics2D) g0.create();
 		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				RenderingHints.VALUE_ANTIALIAS_ON);
-		g.setColor(slider.getForeground());
 		Rectangle unitRect = new Rectangle(0, 0, 1, 1);
 		g.transform(TransformUtils.createAffineTransform(unitRect, trackRect));
-		g.fill(waveform);
+		Color foreground = slider.getForeground();
+		g.setColor(new Color(foreground.getRed(), foreground.getGreen(),
+				foreground.getBlue(), foreground.getAlpha() / 2));
+		g.fill(peakWaveform);
+		g.setColor(foreground);
+		g.fill(rmsWaveform);
 		g.dispose();
 	}
 
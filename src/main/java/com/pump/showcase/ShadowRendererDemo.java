@@ -53,6 +53,7 @@ import com.pump.image.shadow.GaussianKernel;
 import com.pump.image.shadow.GaussianShadowRenderer;
 import com.pump.image.shadow.ShadowAttributes;
 import com.pump.image.shadow.ShadowRenderer;
+import com.pump.image.shadow.SlidingGaussianShadowRenderer;
 import com.pump.inspector.Inspector;
 import com.pump.plaf.AngleSliderUI;
 import com.pump.showcase.chart.LineChartRenderer;
@@ -284,6 +285,7 @@ public class ShadowRendererDemo extends ShowcaseExampleDemo {
 		rendererComboBox.addItem("Box");
 		rendererComboBox.addItem("Double Box");
 		rendererComboBox.addItem("Gaussian");
+		rendererComboBox.addItem("Sliding Gaussian");
 
 		addSliderPopover(opacitySlider, "%");
 		addSliderPopover(offsetSlider, " pixels");
@@ -416,7 +418,8 @@ public class ShadowRendererDemo extends ShowcaseExampleDemo {
 			Collection<ShadowRenderer> renderers = Arrays.asList(
 					new OriginalGaussianShadowRenderer(),
 					new GaussianShadowRenderer(), new DoubleBoxShadowRenderer(),
-					new BoxShadowRenderer());
+					new BoxShadowRenderer(),
+					new SlidingGaussianShadowRenderer());
 
 			public void actionPerformed(ActionEvent e) {
 				progressBar = new JProgressBar(SwingConstants.HORIZONTAL, 0,
@@ -502,6 +505,8 @@ public class ShadowRendererDemo extends ShowcaseExampleDemo {
 			renderer = new BoxShadowRenderer();
 		} else if (rendererComboBox.getSelectedIndex() == 1) {
 			renderer = new DoubleBoxShadowRenderer();
+		} else if (rendererComboBox.getSelectedIndex() == 3) {
+			renderer = new SlidingGaussianShadowRenderer();
 		} else {
 			renderer = new GaussianShadowRenderer();
 		}
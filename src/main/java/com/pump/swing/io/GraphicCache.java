@@ -17,147 +17,315 @@ import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.Icon;
 
+import com.pump.desktop.cache.ThumbnailDiskCache;
 import com.pump.io.location.IOLocation;
 import com.pump.swing.BasicCancellable;
 import com.pump.swing.Cancellable;
+import com.pump.util.Cache;
 
 /**
  * This caches icons and thumbnails of <code>IOLocations</code>. Calling
  * <code>clear()</code> empties all cached graphics.
+ * <p>
+ * Graphics are kept in bounded least-recently-used caches. Thumbnails may
+ * also be stored in a {@link ThumbnailDiskCache}, so they survive after this
+ * application quits. By default this uses
+ * {@link ThumbnailDiskCache#getDefault()}, which is only available if the
+ * <code>CacheManager</code> has been initialized.
+ * <p>
+ * Graphics are retrieved by a small pool of threads shared by all
+ * GraphicCaches. Icons are retrieved before thumbnails, and the most recent
+ * requests are retrieved first, so the cells a user just scrolled to are
+ * loaded before cells they scrolled past.
+ * <p>
+ * Several components may share a GraphicCache, and a thumbnail that several
+ * components request is only retrieved once. Components should identify
+ * themselves with {@link #requestThumbnail(IOLocation, Object)} and call
+ * {@link #cancelThumbnailRequest(IOLocation, Object)} as they scroll to
+ * withdraw the requests that are no longer visible. A request is only
+ * cancelled when every component that made it has withdrawn it.
  */
 public class GraphicCache {
 	public static final String ICON_PROPERTY = "icon";
 	public static final String THUMBNAIL_PROPERTY = "thumbnail";
 
-	private static BufferedImage scratchImage = new BufferedImage(16, 16,
-			BufferedImage.TYPE_INT_ARGB);
+	/**
+	 * The maximum number of icons kept in memory.
+	 */
+	public static final int MAX_ICONS = 1000;
 
-	List<ActionListener> exceptionHandlers = new ArrayList<ActionListener>();
-	final Map<IOLocation, Icon> icons = new HashMap<>();
-	final Map<IOLocation, BufferedImage> thumbnails = new HashMap<>();
+	/**
+	 * The maximum number of thumbnails kept in memory.
+	 */
+	public static final int MAX_THUMBNAILS = 500;
 
-	final List<IOLocation> requestIconList = new ArrayList<IOLocation>();
-	final List<IOLocation> requestThumbnailList = new ArrayList<IOLocation>();
-	final List<PropertyChangeListener> propertyListeners = new ArrayList<PropertyChangeListener>();
-	Dimension thumbnailSize = new Dimension(64, 64);
+	/**
+	 * The maximum number of pending thumbnail requests. When this is exceeded
+	 * the oldest requests are cancelled.
+	 */
+	public static final int MAX_PENDING_THUMBNAILS = 200;
+
+	private static BufferedImage scratchImage = new BufferedImage(16, 16,
+			BufferedImage.TYPE_INT_ARGB);
 
 	/**
-	 * An array of threads used to retrieve icons simultaneously.
+	 * The threads used to retrieve graphics simultaneously.
 	 * <p>
 	 * This should probably not be greater than 4 if the AWT package is being
 	 * used to load images. Only 4 "Image Fetcher" threads are opened
 	 * simultaneously. The pump Scaling class uses the AWT classes.
-	 * 
 	 */
-	final Thread[] iconThreads = new Thread[3];
-	Cancellable cancellable = new BasicCancellable();
+	private static final ThreadPoolExecutor executor;
 
-	static HashSet<String> noThumbnails = new HashSet<String>();
-	static HashSet<String> noIcons = new HashSet<String>();
+	private static final AtomicLong requestCounter = new AtomicLong();
 
-	final Runnable iconRunnable = new Runnable() {
-		public void run() {
-			while (true) {
-				IOLocation loc = null;
-				synchronized (requestIconList) {
-					if (requestIconList.size() == 0)
-						return;
+	/**
+	 * The requester of thumbnails requested without a requester.
+	 */
+	private static final Object ANONYMOUS_REQUESTER = new Object();
 
-					loc = requestIconList.remove(requestIconList.size() - 1);
-				}
-				Cancellable myCancellable = cancellable;
-				Icon icon = null;
-				try {
-					icon = loc.isDirectory() ? IOLocation.FOLDER_ICON
-							: IOLocation.FILE_ICON; // loc.getIcon(myCancellable);
-				} catch (Throwable e) {
-					handleUncaughtException(e);
+	static {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			int ctr = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "GraphicCache Fetcher " + (ctr++));
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(3, 3, 5, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	static Set<String> noThumbnails = Collections
+			.synchronizedSet(new HashSet<String>());
+	static Set<String> noIcons = Collections
+			.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * A request to retrieve one graphic. Requests are ordered so icons come
+	 * before thumbnails, and newer requests come before older requests.
+	 */
+	abstract class Request implements Runnable, Comparable<Request> {
+		final IOLocation loc;
+		final long id = requestCounter.incrementAndGet();
+		final Cancellable cancellable = new BasicCancellable();
+
+		Request(IOLocation loc) {
+			this.loc = loc;
+		}
+
+		abstract boolean isIcon();
+
+		public int compareTo(Request other) {
+			if (isIcon() != other.isIcon())
+				return isIcon() ? -1 : 1;
+			return Long.compare(other.id, id);
+		}
+
+		public void run() {
+			try {
+				if (!cancellable.isCancelled())
+					retrieve();
+			} catch (Throwable t) {
+				handleUncaughtException(t);
+			} finally {
+				synchronized (GraphicCache.this) {
+					Map<IOLocation, ? extends Request> pending = isIcon()
+							? pendingIcons : pendingThumbnails;
+					if (pending.get(loc) == this)
+						pending.remove(loc);
 				}
-				if (icon != null) {
-					/**
-					 * Unfortunately there's more. Macs would still often jam up
-					 * in the event dispatch thread with this stack trace:
-					 * AWT-EventQueue-0 (id = 13)
-					 * apple.awt.CImage.getNativeFileSystemIconFor(Native
-					 * Method) apple.awt.CImage.access$300(CImage.java:12)
-					 * apple.
-					 * awt.CImage$Creator.createImageOfFile(CImage.java:90)
-					 * com.apple
-					 * .laf.AquaIcon$FileIcon.createImage(AquaIcon.java:230)
-					 * com.
-					 * apple.laf.AquaIcon$CachingScalingIcon.getOptimizedImage
-					 * (AquaIcon.java:133)
-					 * com.apple.laf.AquaIcon$CachingScalingIcon
-					 * .getImage(AquaIcon.java:126)
-					 * com.apple.laf.AquaIcon$CachingScalingIcon
-					 * .paintIcon(AquaIcon.java:168)
-					 * 
-					 * I'm interpreting this to mean: the Icon object exists,
-					 * but the underlying mechanism still isn't ready to paint
-					 * it. Which completely defeats the purpose of creating this
-					 * object in a separate thread. So let's try to force the
-					 * AquaIcon to prep itself:
-					 */
+			}
+		}
+
+		abstract void retrieve() throws Exception;
+	}
+
+	class IconRequest extends Request {
+		IconRequest(IOLocation loc) {
+			super(loc);
+		}
+
+		@Override
+		boolean isIcon() {
+			return true;
+		}
+
+		@Override
+		void retrieve() {
+			Icon icon = loc.isDirectory() ? IOLocation.FOLDER_ICON
+					: IOLocation.FILE_ICON; // loc.getIcon(cancellable);
+			if (icon != null) {
+				/**
+				 * Unfortunately there's more. Macs would still often jam up in
+				 * the event dispatch thread with this stack trace:
+				 * AWT-EventQueue-0 (id = 13)
+				 * apple.awt.CImage.getNativeFileSystemIconFor(Native Method)
+				 * apple.awt.CImage.access$300(CImage.java:12) apple.
+				 * awt.CImage$Creator.createImageOfFile(CImage.java:90)
+				 * com.apple
+				 * .laf.AquaIcon$FileIcon.createImage(AquaIcon.java:230) com.
+				 * apple.laf.AquaIcon$CachingScalingIcon.getOptimizedImage
+				 * (AquaIcon.java:133) com.apple.laf.AquaIcon$CachingScalingIcon
+				 * .getImage(AquaIcon.java:126)
+				 * com.apple.laf.AquaIcon$CachingScalingIcon
+				 * .paintIcon(AquaIcon.java:168)
+				 * 
+				 * I'm interpreting this to mean: the Icon object exists, but
+				 * the underlying mechanism still isn't ready to paint it. Which
+				 * completely defeats the purpose of creating this object in a
+				 * separate thread. So let's try to force the AquaIcon to prep
+				 * itself:
+				 */
+				synchronized (scratchImage) {
 					Graphics2D g = scratchImage.createGraphics();
 					icon.paintIcon(null, g, 0, 0);
 					g.dispose();
-
-					icons.put(loc, icon);
-					firePropertyChangeListener(ICON_PROPERTY, loc, null, icon);
-				} else if (myCancellable.isCancelled() == false) {
-					noIcons.add(loc.toString());
 				}
+
+				if (cancellable.isCancelled())
+					return;
+				icons.put(loc, icon);
+				firePropertyChangeListener(ICON_PROPERTY, loc, null, icon);
+			} else if (!cancellable.isCancelled()) {
+				noIcons.add(loc.toString());
 			}
 		}
-	};
+	}
 
-	final Thread[] thumbnailThreads = new Thread[3];
+	class ThumbnailRequest extends Request {
+		final Dimension size;
 
-	final Runnable thumbnailRunnable = new Runnable() {
-		public void run() {
-			while (true) {
-				IOLocation loc = null;
-				synchronized (requestThumbnailList) {
-					if (requestThumbnailList.size() == 0)
-						return;
-
-					loc = requestThumbnailList.remove(requestThumbnailList
-							.size() - 1);
-				}
-				Cancellable myCancellable = cancellable;
-				BufferedImage image = null;
+		/**
+		 * The objects that are waiting for this thumbnail. This is guarded by
+		 * synchronizing against this GraphicCache.
+		 */
+		final Set<Object> requesters = new HashSet<>();
+
+		ThumbnailRequest(IOLocation loc, Dimension size) {
+			super(loc);
+			this.size = size;
+		}
+
+		@Override
+		boolean isIcon() {
+			return false;
+		}
+
+		@Override
+		void retrieve() {
+			ThumbnailDiskCache myDiskCache = diskCache;
+			long key = 0;
+			BufferedImage image = null;
+			if (myDiskCache != null) {
 				try {
-					image = loc.getThumbnail(thumbnailSize, myCancellable);
-				} catch (Throwable t) {
-					handleUncaughtException(t);
+					key = ThumbnailDiskCache.getKey(loc.getPath(),
+							loc.getModificationDate(), loc.length(), size);
+					image = myDiskCache.get(key);
+				} catch (IOException e) {
+					handleUncaughtException(e);
+					myDiskCache = null;
 				}
-				if (image != null) {
-					thumbnails.put(loc, image);
-					firePropertyChangeListener(THUMBNAIL_PROPERTY, loc, null,
-							image);
-				} else if (myCancellable.isCancelled() == false) {
-					noThumbnails.add(loc.toString());
+			}
+
+			if (image == null) {
+				if (cancellable.isCancelled())
+					return;
+				image = loc.getThumbnail(size, cancellable);
+				if (image != null && myDiskCache != null) {
+					try {
+						myDiskCache.put(key, image);
+					} catch (IOException e) {
+						handleUncaughtException(e);
+					}
 				}
 			}
+
+			if (image != null) {
+				thumbnails.put(loc, image);
+				firePropertyChangeListener(THUMBNAIL_PROPERTY, loc, null, image);
+			} else if (!cancellable.isCancelled()) {
+				noThumbnails.add(loc.toString());
+			}
 		}
-	};
+	}
+
+	List<ActionListener> exceptionHandlers = new ArrayList<ActionListener>();
+	final Cache<IOLocation, Icon> icons = new Cache<>(MAX_ICONS);
+	final Cache<IOLocation, BufferedImage> thumbnails = new Cache<>(
+			MAX_THUMBNAILS);
+
+	/**
+	 * Requests that haven't finished yet. These are guarded by synchronizing
+	 * against this GraphicCache. The pending thumbnails are in the order they
+	 * were requested.
+	 */
+	final Map<IOLocation, Request> pendingIcons = new HashMap<>();
+	final LinkedHashMap<IOLocation, ThumbnailRequest> pendingThumbnails = new LinkedHashMap<>();
+
+	final List<PropertyChangeListener> propertyListeners = new ArrayList<PropertyChangeListener>();
+	Dimension thumbnailSize = new Dimension(64, 64);
+	ThumbnailDiskCache diskCache;
 
 	public GraphicCache() {
 		this(null);
 	}
 
 	public GraphicCache(Dimension thumbnailSize) {
+		this(thumbnailSize, ThumbnailDiskCache.getDefault());
+	}
+
+	/**
+	 * @param thumbnailSize
+	 *            the maximum thumbnail size, or null to use the default size.
+	 * @param diskCache
+	 *            an optional cache to store thumbnails in.
+	 */
+	public GraphicCache(Dimension thumbnailSize, ThumbnailDiskCache diskCache) {
 		if (thumbnailSize != null) {
 			this.thumbnailSize = new Dimension(thumbnailSize);
 		}
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * Returns the disk cache thumbnails are stored in, or null.
+	 */
+	public ThumbnailDiskCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * Sets the disk cache thumbnails are stored in.
+	 * 
+	 * @param diskCache
+	 *            the new disk cache, or null to only cache thumbnails in
+	 *            memory.
+	 */
+	public void setDiskCache(ThumbnailDiskCache diskCache) {
+		this.diskCache = diskCache;
 	}
 
 	protected void firePropertyChangeListener(String propertyName, Object src,
@@ -194,31 +362,21 @@ public class GraphicCache {
 	 * <code>IOLocation</code> as the source.
 	 */
 	public Icon requestIcon(IOLocation loc) {
-		synchronized (requestIconList) {
-			Icon icon = icons.get(loc);
-			if (icon != null)
-				return icon;
-
-			if (noIcons.contains(loc.toString()))
-				return null;
-
-			int i = requestIconList.indexOf(loc);
-			if (i != -1)
-				requestIconList.remove(i);
-			requestIconList.add(loc);
-
-			// guarantee the thread(s) are active:
-			int requestedThreads = Math.min(requestIconList.size(),
-					iconThreads.length);
-			for (int a = 0; a < requestedThreads; a++) {
-				if (iconThreads[a] == null || iconThreads[a].isAlive() == false) {
-					iconThreads[a] = new Thread(iconRunnable, "Icon Fetcher "
-							+ a);
-					iconThreads[a].start();
-				}
-			}
+		Icon icon = icons.get(loc);
+		if (icon != null)
+			return icon;
+
+		if (noIcons.contains(loc.toString()))
 			return null;
+
+		synchronized (this) {
+			if (!pendingIcons.containsKey(loc)) {
+				Request request = new IconRequest(loc);
+				pendingIcons.put(loc, request);
+				executor.execute(request);
+			}
 		}
+		return null;
 	}
 
 	/**
@@ -226,33 +384,91 @@ public class GraphicCache {
 	 * cached: then background threads will begin retrieving a thumbnail. If
 	 * they succeed, they will fire <code>PropertyChangeListeners</code> with
 	 * the <code>IOLocation</code> as the source.
+	 * <p>
+	 * Recent requests are retrieved before older requests. If too many
+	 * requests are pending then the oldest requests are cancelled.
+	 * <p>
+	 * A request made with this method can only be cancelled by
+	 * {@link #cancelThumbnailRequest(IOLocation)}.
 	 */
 	public BufferedImage requestThumbnail(IOLocation loc) {
-		synchronized (requestThumbnailList) {
-			BufferedImage thumbnail = thumbnails.get(loc);
-			if (thumbnail != null)
-				return thumbnail;
-
-			if (noThumbnails.contains(loc.toString()))
-				return null;
-
-			int i = requestThumbnailList.indexOf(loc);
-			if (i != -1)
-				requestThumbnailList.remove(i);
-			requestThumbnailList.add(loc);
-
-			// guarantee the thread(s) are active:
-			int requestedThreads = Math.min(requestThumbnailList.size(),
-					thumbnailThreads.length);
-			for (int a = 0; a < requestedThreads; a++) {
-				if (thumbnailThreads[a] == null
-						|| thumbnailThreads[a].isAlive() == false) {
-					thumbnailThreads[a] = new Thread(thumbnailRunnable,
-							"Thumbnail Fetcher " + a);
-					thumbnailThreads[a].start();
+		return requestThumbnail(loc, ANONYMOUS_REQUESTER);
+	}
+
+	/**
+	 * This returns a cached thumbnail or null immediately, like
+	 * {@link #requestThumbnail(IOLocation)}. If the thumbnail is retrieved in
+	 * the background, the requester is recorded so it can later withdraw its
+	 * request with {@link #cancelThumbnailRequest(IOLocation, Object)}
+	 * without cancelling the same request made by other requesters.
+	 *
+	 * @param loc
+	 *            the location whose thumbnail is requested.
+	 * @param requester
+	 *            the object requesting the thumbnail, such as a component.
+	 *            Requesting the same thumbnail more than once for the same
+	 *            requester has no additional effect.
+	 */
+	public BufferedImage requestThumbnail(IOLocation loc, Object requester) {
+		Objects.requireNonNull(requester);
+		BufferedImage thumbnail = thumbnails.get(loc);
+		if (thumbnail != null)
+			return thumbnail;
+
+		if (noThumbnails.contains(loc.toString()))
+			return null;
+
+		synchronized (this) {
+			ThumbnailRequest request = pendingThumbnails.get(loc);
+			if (request == null) {
+				request = new ThumbnailRequest(loc, new Dimension(
+						thumbnailSize));
+				pendingThumbnails.put(loc, request);
+				executor.execute(request);
+
+				Iterator<ThumbnailRequest> iter = pendingThumbnails.values()
+						.iterator();
+				while (pendingThumbnails.size() > MAX_PENDING_THUMBNAILS) {
+					iter.next().cancellable.cancel();
+					iter.remove();
 				}
 			}
-			return null;
+			request.requesters.add(requester);
+		}
+		return null;
+	}
+
+	/**
+	 * Cancel a pending thumbnail request, if it exists, regardless of who
+	 * requested it. If the thumbnail is requested again later it will be
+	 * retrieved again.
+	 */
+	public void cancelThumbnailRequest(IOLocation loc) {
+		synchronized (this) {
+			Request request = pendingThumbnails.remove(loc);
+			if (request != null)
+				request.cancellable.cancel();
+		}
+	}
+
+	/**
+	 * Withdraw a pending thumbnail request made by
+	 * {@link #requestThumbnail(IOLocation, Object)}. The request is only
+	 * cancelled if no other requester is still waiting for it.
+	 *
+	 * @param loc
+	 *            the location whose thumbnail was requested.
+	 * @param requester
+	 *            the object that requested the thumbnail.
+	 */
+	public void cancelThumbnailRequest(IOLocation loc, Object requester) {
+		synchronized (this) {
+			ThumbnailRequest request = pendingThumbnails.get(loc);
+			if (request == null || !request.requesters.remove(requester)
+					|| !request.requesters.isEmpty())
+				return;
+			pendingThumbnails.remove(loc);
+			request.cancellable.cancel();
 		}
 	}
 
@@ -291,15 +507,17 @@ public class GraphicCache {
 	}
 
 	public void clear() {
-		synchronized (requestThumbnailList) {
-			synchronized (requestIconList) {
-				thumbnails.clear();
-				icons.clear();
-				requestThumbnailList.clear();
-				requestIconList.clear();
-				cancellable.cancel();
-				cancellable = new BasicCancellable();
+		synchronized (this) {
+			thumbnails.clear();
+			icons.clear();
+			for (Request request : pendingThumbnails.values()) {
+				request.cancellable.cancel();
+			}
+			for (Request request : pendingIcons.values()) {
+				request.cancellable.cancel();
 			}
+			pendingThumbnails.clear();
+			pendingIcons.clear();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -27,17 +27,23 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JToolTip;
+import javax.swing.JViewport;
 import javax.swing.ListCellRenderer;
 import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import com.pump.io.location.IOLocation;
 import com.pump.io.location.IOLocationFilter;
@@ -266,6 +272,10 @@ public class IOLocationTileList extends JList<IOLocation> {
 		if (oldRenderer instanceof BasicTileCellRenderer) {
 			BasicTileCellRenderer b = (BasicTileCellRenderer) oldRenderer;
 			b.graphicCache.removePropertyChangeListener(graphicListener);
+			for (IOLocation loc : requestedThumbnails) {
+				b.graphicCache.cancelThumbnailRequest(loc, this);
+			}
+			requestedThumbnails.clear();
 		}
 		super.setCellRenderer(cellRenderer);
 		if (cellRenderer instanceof BasicTileCellRenderer) {
@@ -274,6 +284,69 @@ public class IOLocationTileList extends JList<IOLocation> {
 		}
 	}
 
+	/**
+	 * The locations whose thumbnails this list requested that may still be
+	 * pending. The GraphicCache may be shared with other components, so this
+	 * list requests thumbnails as itself and only withdraws its own requests:
+	 * a request another component shares is not cancelled.
+	 */
+	private final Set<IOLocation> requestedThumbnails = new HashSet<>();
+
+	private JViewport viewport;
+
+	private ChangeListener viewportListener = new ChangeListener() {
+		public void stateChanged(ChangeEvent e) {
+			cancelHiddenThumbnailRequests();
+		}
+	};
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		if (getParent() instanceof JViewport) {
+			viewport = (JViewport) getParent();
+			viewport.addChangeListener(viewportListener);
+		}
+	}
+
+	@Override
+	public void removeNotify() {
+		super.removeNotify();
+		if (viewport != null) {
+			viewport.removeChangeListener(viewportListener);
+			viewport = null;
+		}
+	}
+
+	/**
+	 * Cancel the thumbnail requests this list made for cells that are no
+	 * longer visible. This is called as the viewport scrolls.
+	 */
+	protected void cancelHiddenThumbnailRequests() {
+		ListCellRenderer<? super IOLocation> renderer = getCellRenderer();
+		if (requestedThumbnails.isEmpty()
+				|| !(renderer instanceof BasicTileCellRenderer))
+			return;
+		GraphicCache graphicCache = ((BasicTileCellRenderer) renderer)
+				.getGraphicCache();
+		Set<IOLocation> visibleLocations = new HashSet<>();
+		int first = getFirstVisibleIndex();
+		int last = getLastVisibleIndex();
+		if (first != -1) {
+			for (int index = first; index <= last; index++) {
+				visibleLocations.add(getModel().getElementAt(index));
+			}
+		}
+		Iterator<IOLocation> iter = requestedThumbnails.iterator();
+		while (iter.hasNext()) {
+			IOLocation loc = iter.next();
+			if (!visibleLocations.contains(loc)) {
+				graphicCache.cancelThumbnailRequest(loc, this);
+				iter.remove();
+			}
+		}
+	}
+
 	public IOLocation[] getSelectedLocations() {
 		List<IOLocation> obj = getSelectedValuesList();
 		IOLocation[] selection = new IOLocation[obj.size()];
@@ -310,7 +383,13 @@ public class IOLocationTileList extends JList<IOLocation> {
 			BufferedImage image;
 
 			text = l.getName();
-			image = getGraphicCache().requestThumbnail(l);
+			if (list instanceof IOLocationTileList) {
+				image = getGraphicCache().requestThumbnail(l, list);
+				if (image == null)
+					((IOLocationTileList) list).requestedThumbnails.add(l);
+			} else {
+				image = getGraphicCache().requestThumbnail(l);
+			}
 			if (image == null) {
 				if (l.isDirectory()) {
 					image = LocationPane.FOLDER_THUMBNAIL;
@@ -23,6 +23,8 @@ import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This resembles a key/value pair map, except pairs will be purged based on
@@ -47,6 +49,11 @@ public class Cache<K, V> {
 	 * is useful if your cache may end up sitting untouched for long periods of
 	 * time. But if you're going to constantly store/retrieve elements from the
 	 * cache during its lifetime then you don't need the timer.)
+	 * <p>
+	 * This pool keeps a strict least-recently-used ordering, and every
+	 * operation on every Cache that shares this pool synchronizes against this
+	 * pool. If many threads consult the same pool consider using a
+	 * {@link ConcurrentCachePool} instead.
 	 */
 	public static class CachePool {
 
@@ -102,6 +109,14 @@ public class Cache<K, V> {
 
 		List<WeakReference<Cache>> cacheReferences = new LinkedList<>();
 
+		/**
+		 * The number of lookups that returned a value, the number of lookups
+		 * that did not, and the number of elements removed because of the
+		 * size or time limit.
+		 */
+		final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+				evictions = new LongAdder();
+
 		/**
 		 * Create a new CachePool.
 		 * 
@@ -146,6 +161,31 @@ public class Cache<K, V> {
 			}
 		}
 
+		/**
+		 * Return the number of times a Cache in this pool was consulted and
+		 * returned a value.
+		 */
+		public long getHitCount() {
+			return hits.sum();
+		}
+
+		/**
+		 * Return the number of times a Cache in this pool was consulted and
+		 * returned null.
+		 */
+		public long getMissCount() {
+			return misses.sum();
+		}
+
+		/**
+		 * Return the number of elements this pool removed because of its size
+		 * limit or time limit. This does not include elements that were
+		 * explicitly removed or cleared.
+		 */
+		public long getEvictionCount() {
+			return evictions.sum();
+		}
+
 		/**
 		 * Clear this pool. This clears data in all the Caches that use this
 		 * pool.
@@ -178,11 +218,19 @@ public class Cache<K, V> {
 			return returnValue;
 		}
 
+		/**
+		 * Create the map a new Cache uses to store its tickets.
+		 */
+		<K, V> Map<K, CacheTicket<K, V>> createTicketMap() {
+			return new HashMap<>(Math.min(1000, maxSize));
+		}
+
 		/**
 		 * Clears all the data in this pool from the given Cache.
 		 */
 		@SuppressWarnings("rawtypes")
 		synchronized void clear(Cache cache) {
+			cache.keyToTickets.clear();
 			Iterator<CacheTicket> iter = allTickets.iterator();
 			while (iter.hasNext()) {
 				CacheTicket t = iter.next();
@@ -228,6 +276,7 @@ public class Cache<K, V> {
 				if (elapsed > maxTime) {
 					iter.remove();
 					e.cache.keyToTickets.remove(e.key);
+					evictions.increment();
 					ctr++;
 				} else {
 					return ctr;
@@ -245,29 +294,487 @@ public class Cache<K, V> {
 			if (allTickets.size() >= maxSize) {
 				CacheTicket oldestTicket = allTickets.pollFirst();
 				oldestTicket.cache.keyToTickets.remove(oldestTicket.key);
+				evictions.increment();
 			}
 			allTickets.add(newTicket);
 		}
+
+		/**
+		 * Return the value associated with a key in the given Cache.
+		 */
+		@SuppressWarnings("unchecked")
+		synchronized <K, V> V get(Cache<K, V> cache, K key) {
+			purge();
+
+			if (cache.keyToTickets.isEmpty()) {
+				misses.increment();
+				return null;
+			}
+
+			CacheTicket<K, V> mostRecentTicket = allTickets.last();
+			if (mostRecentTicket != null && mostRecentTicket.cache == cache
+					&& mostRecentTicket.key.equals(key)) {
+				mostRecentTicket.timestamp = System.currentTimeMillis();
+				hits.increment();
+				return mostRecentTicket.value;
+			} else {
+				CacheTicket<K, V> oldTicket = cache.keyToTickets.get(key);
+				if (oldTicket == null) {
+					misses.increment();
+					return null;
+				}
+
+				CacheTicket<K, V> newTicket = new CacheTicket<>(cache, key,
+						null);
+				cache.keyToTickets.put(key, newTicket);
+
+				allTickets.remove(oldTicket);
+				allTickets.add(newTicket);
+
+				newTicket.value = oldTicket.value;
+				hits.increment();
+				return newTicket.value;
+			}
+		}
+
+		/**
+		 * Store a key/value pair in the given Cache.
+		 */
+		@SuppressWarnings("unchecked")
+		synchronized <K, V> V put(Cache<K, V> cache, K key, V newValue) {
+			purge();
+
+			CacheTicket<K, V> mostRecentTicket = allTickets.isEmpty() ? null
+					: allTickets.last();
+			if (mostRecentTicket != null && mostRecentTicket.cache == cache
+					&& mostRecentTicket.key.equals(key)) {
+				mostRecentTicket.timestamp = System.currentTimeMillis();
+				V returnValue = mostRecentTicket.value;
+				mostRecentTicket.value = newValue;
+				return returnValue;
+			}
+
+			CacheTicket<K, V> newTicket = new CacheTicket<>(cache, key,
+					newValue);
+			CacheTicket<K, V> oldTicket = cache.keyToTickets.put(key,
+					newTicket);
+			if (oldTicket != null) {
+				allTickets.remove(oldTicket);
+			}
+
+			add(newTicket);
+
+			return oldTicket == null ? null : oldTicket.value;
+		}
+
+		/**
+		 * Remove a key from the given Cache.
+		 */
+		synchronized <K, V> V remove(Cache<K, V> cache, K key) {
+			purge();
+
+			if (cache.keyToTickets.isEmpty())
+				return null;
+
+			CacheTicket<K, V> oldTicket = cache.keyToTickets.remove(key);
+			if (oldTicket == null) {
+				return null;
+			}
+
+			allTickets.remove(oldTicket);
+			return oldTicket.value;
+		}
+
+		/**
+		 * Return all the keys in the given Cache.
+		 */
+		synchronized <K, V> Collection<K> getKeys(Cache<K, V> cache) {
+			purge();
+
+			Collection<K> keys = new HashSet<>();
+			keys.addAll(cache.keyToTickets.keySet());
+			return keys;
+		}
+
+		/**
+		 * Return the number of key/value pairs in the given Cache.
+		 */
+		synchronized int size(Cache<?, ?> cache) {
+			purge();
+
+			return cache.keyToTickets.size();
+		}
+
+		/**
+		 * Create a Map representing all the data in the given Cache.
+		 */
+		synchronized <K, V> Map<K, V> toMap(Cache<K, V> cache) {
+			purge();
+
+			Map<K, V> map = new HashMap<>();
+			for (Entry<K, CacheTicket<K, V>> entry : cache.keyToTickets
+					.entrySet()) {
+				map.put(entry.getKey(), entry.getValue().value);
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * This is a CachePool that many threads can consult at once.
+	 * <p>
+	 * The elements in this pool are divided into segments based on the hash
+	 * code of their keys, and each segment has its own lock and a fraction of
+	 * the pool's total capacity. Retrieving a value does not lock anything or
+	 * allocate anything: it only flags the element as recently used. When a
+	 * segment is full the oldest unflagged element is removed, using the
+	 * "CLOCK" approximation of a least-recently-used list.
+	 * <p>
+	 * So this pool observes the same size limit and time limit as a
+	 * {@link CachePool}, but the element that is removed when the size limit is
+	 * reached is only approximately the least recently used element.
+	 */
+	public static class ConcurrentCachePool extends CachePool {
+
+		/**
+		 * Segments are only split while each one can hold at least this many
+		 * elements, so a small pool stays close to a true LRU.
+		 */
+		private static final int MIN_SEGMENT_CAPACITY = 16;
+
+		/**
+		 * A ring of tickets that a clock hand sweeps over. All the fields in a
+		 * Segment are guarded by the Segment's monitor.
+		 */
+		@SuppressWarnings("rawtypes")
+		static class Segment {
+			final int capacity;
+			CacheTicket[] ring;
+			int[] freeSlots;
+			int freeCount, hand;
+
+			Segment(int capacity) {
+				this.capacity = capacity;
+				ring = new CacheTicket[0];
+				freeSlots = new int[0];
+			}
+
+			/**
+			 * Enlarge the ring if it has not reached its capacity yet.
+			 * 
+			 * @return true if new free slots are available.
+			 */
+			boolean grow() {
+				if (ring.length == capacity)
+					return false;
+				int newLength = (int) Math.min(capacity,
+						Math.max(MIN_SEGMENT_CAPACITY, 2L * ring.length));
+				CacheTicket[] newRing = new CacheTicket[newLength];
+				System.arraycopy(ring, 0, newRing, 0, ring.length);
+				int[] newFreeSlots = new int[newLength];
+				System.arraycopy(freeSlots, 0, newFreeSlots, 0, freeCount);
+				for (int slot = newLength - 1; slot >= ring.length; slot--) {
+					newFreeSlots[freeCount++] = slot;
+				}
+				ring = newRing;
+				freeSlots = newFreeSlots;
+				return true;
+			}
+		}
+
+		final Segment[] segments;
+
+		/**
+		 * Create a new ConcurrentCachePool that is segmented for the number of
+		 * available processors.
+		 * 
+		 * @param maxSize
+		 *            the maximum number of elements this pool will accept.
+		 * @param maxTime
+		 *            the maximum number of milliseconds an element can stay in
+		 *            this cache, or -1 if elements should never expire.
+		 * @param maxTimePurgeInterval
+		 *            the number of milliseconds between regular purges of this
+		 *            cache. If this is negative then no timer is set up.
+		 */
+		public ConcurrentCachePool(int maxSize, long maxTime,
+				long maxTimePurgeInterval) {
+			this(maxSize, maxTime, maxTimePurgeInterval,
+					4 * Runtime.getRuntime().availableProcessors());
+		}
+
+		/**
+		 * Create a new ConcurrentCachePool.
+		 * 
+		 * @param maxSize
+		 *            the maximum number of elements this pool will accept.
+		 * @param maxTime
+		 *            the maximum number of milliseconds an element can stay in
+		 *            this cache, or -1 if elements should never expire.
+		 * @param maxTimePurgeInterval
+		 *            the number of milliseconds between regular purges of this
+		 *            cache. If this is negative then no timer is set up.
+		 * @param concurrencyLevel
+		 *            the estimated number of threads that will modify this pool
+		 *            at the same time. This is rounded to a power of two and
+		 *            used as the number of segments (unless maxSize is too
+		 *            small to justify that many segments).
+		 */
+		public ConcurrentCachePool(int maxSize, long maxTime,
+				long maxTimePurgeInterval, int concurrencyLevel) {
+			super(maxSize, maxTime, maxTimePurgeInterval);
+			int segmentCount = 1;
+			while (segmentCount < concurrencyLevel && maxSize
+					/ (2 * segmentCount) >= MIN_SEGMENT_CAPACITY) {
+				segmentCount *= 2;
+			}
+			Segment[] s = new Segment[segmentCount];
+			for (int a = 0; a < s.length; a++) {
+				int capacity = maxSize / segmentCount;
+				if (a < maxSize % segmentCount)
+					capacity++;
+				s[a] = new Segment(capacity);
+			}
+			segments = s;
+		}
+
+		Segment getSegment(Object key) {
+			int h = key.hashCode();
+			h ^= (h >>> 16);
+			return segments[h & (segments.length - 1)];
+		}
+
+		boolean isExpired(CacheTicket<?, ?> ticket, long currentTime) {
+			return maxTime >= 0 && currentTime - ticket.timestamp > maxTime;
+		}
+
+		/**
+		 * Remove a ticket from its Segment and its Cache. The caller must hold
+		 * the Segment's lock.
+		 */
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		void unlink(Segment segment, CacheTicket ticket) {
+			ticket.cache.keyToTickets.remove(ticket.key, ticket);
+			segment.ring[ticket.slot] = null;
+			segment.freeSlots[segment.freeCount++] = ticket.slot;
+			ticket.slot = -1;
+		}
+
+		/**
+		 * Return a free slot in a Segment, evicting an element if necessary.
+		 * The caller must hold the Segment's lock.
+		 */
+		@SuppressWarnings("rawtypes")
+		int reserveSlot(Segment segment, long currentTime) {
+			if (segment.freeCount > 0 || segment.grow())
+				return segment.freeSlots[--segment.freeCount];
+
+			// every slot is occupied, so this loop stops within two sweeps:
+			while (true) {
+				int slot = segment.hand;
+				segment.hand = slot + 1 == segment.ring.length ? 0 : slot + 1;
+				CacheTicket t = segment.ring[slot];
+				if (t.referenced && !isExpired(t, currentTime)) {
+					t.referenced = false;
+				} else {
+					unlink(segment, t);
+					evictions.increment();
+					return segment.freeSlots[--segment.freeCount];
+				}
+			}
+		}
+
+		@Override
+		<K, V> Map<K, CacheTicket<K, V>> createTicketMap() {
+			return new ConcurrentHashMap<>(Math.min(1000, maxSize), .75f,
+					segments.length);
+		}
+
+		@Override
+		<K, V> V get(Cache<K, V> cache, K key) {
+			CacheTicket<K, V> ticket = cache.keyToTickets.get(key);
+			if (ticket == null) {
+				misses.increment();
+				return null;
+			}
+			if (maxTime >= 0) {
+				long currentTime = System.currentTimeMillis();
+				if (isExpired(ticket, currentTime)) {
+					Segment segment = getSegment(key);
+					synchronized (segment) {
+						if (ticket.slot >= 0) {
+							unlink(segment, ticket);
+							evictions.increment();
+						}
+					}
+					misses.increment();
+					return null;
+				}
+				// avoid writing to shared memory if nothing changed:
+				if (ticket.timestamp != currentTime)
+					ticket.timestamp = currentTime;
+			}
+			if (!ticket.referenced)
+				ticket.referenced = true;
+			hits.increment();
+			return ticket.value;
+		}
+
+		@Override
+		<K, V> V put(Cache<K, V> cache, K key, V newValue) {
+			Segment segment = getSegment(key);
+			long currentTime = System.currentTimeMillis();
+			synchronized (segment) {
+				CacheTicket<K, V> ticket = cache.keyToTickets.get(key);
+				if (ticket != null) {
+					if (!isExpired(ticket, currentTime)) {
+						V returnValue = ticket.value;
+						ticket.value = newValue;
+						ticket.timestamp = currentTime;
+						ticket.referenced = true;
+						return returnValue;
+					}
+					unlink(segment, ticket);
+					evictions.increment();
+				}
+
+				ticket = new CacheTicket<>(cache, key, newValue, currentTime);
+				ticket.slot = reserveSlot(segment, currentTime);
+				segment.ring[ticket.slot] = ticket;
+				cache.keyToTickets.put(key, ticket);
+				return null;
+			}
+		}
+
+		@Override
+		<K, V> V remove(Cache<K, V> cache, K key) {
+			Segment segment = getSegment(key);
+			synchronized (segment) {
+				CacheTicket<K, V> ticket = cache.keyToTickets.get(key);
+				if (ticket == null)
+					return null;
+				unlink(segment, ticket);
+				if (isExpired(ticket, System.currentTimeMillis())) {
+					evictions.increment();
+					return null;
+				}
+				return ticket.value;
+			}
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		void clear(Cache cache) {
+			for (Segment segment : segments) {
+				synchronized (segment) {
+					for (CacheTicket t : segment.ring) {
+						if (t != null && t.cache == cache)
+							unlink(segment, t);
+					}
+				}
+			}
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public void clear() {
+			for (Segment segment : segments) {
+				synchronized (segment) {
+					for (CacheTicket t : segment.ring) {
+						if (t != null)
+							unlink(segment, t);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Purge old records from this pool, if possible.
+		 * <p>
+		 * Unlike a {@link CachePool}, this has to visit every element in this
+		 * pool.
+		 */
+		@Override
+		@SuppressWarnings("rawtypes")
+		public int purge() {
+			// the super constructor may start a timer before we're initialized
+			if (maxTime < 0 || segments == null)
+				return 0;
+			int ctr = 0;
+			long currentTime = System.currentTimeMillis();
+			for (Segment segment : segments) {
+				synchronized (segment) {
+					for (CacheTicket t : segment.ring) {
+						if (t != null && isExpired(t, currentTime)) {
+							unlink(segment, t);
+							evictions.increment();
+							ctr++;
+						}
+					}
+				}
+			}
+			return ctr;
+		}
+
+		@Override
+		<K, V> Collection<K> getKeys(Cache<K, V> cache) {
+			purge();
+			return new HashSet<>(cache.keyToTickets.keySet());
+		}
+
+		@Override
+		int size(Cache<?, ?> cache) {
+			purge();
+			return cache.keyToTickets.size();
+		}
+
+		@Override
+		<K, V> Map<K, V> toMap(Cache<K, V> cache) {
+			purge();
+			Map<K, V> map = new HashMap<>();
+			for (Entry<K, CacheTicket<K, V>> entry : cache.keyToTickets
+					.entrySet()) {
+				map.put(entry.getKey(), entry.getValue().value);
+			}
+			return map;
+		}
 	}
 
 	/**
 	 * This is meta information about a key/value pair, including: when it was
 	 * added and which Cache it belongs to.
-	 *
+	 * 
 	 * @param <K>
 	 * @param <V>
 	 */
 	@SuppressWarnings("rawtypes")
 	static class CacheTicket<K, V> implements Comparable<CacheTicket> {
 		long id;
-		long timestamp = System.currentTimeMillis();
+		volatile long timestamp;
 		final K key;
-		V value;
+		volatile V value;
 		Cache<K, V> cache;
 
+		/**
+		 * This is only used by the ConcurrentCachePool: whether this ticket was
+		 * read since the clock hand last passed it, and the index of this
+		 * ticket in its Segment (or -1 if it was removed).
+		 */
+		volatile boolean referenced;
+		int slot = -1;
+
 		@SuppressWarnings("unchecked")
 		CacheTicket(Cache<?, ?> cache, K key, V value) {
 			id = cache.cachePool.getNextTicketID();
+			timestamp = System.currentTimeMillis();
+			this.cache = (Cache) cache;
+			this.key = key;
+			this.value = value;
+		}
+
+		@SuppressWarnings("unchecked")
+		CacheTicket(Cache<?, ?> cache, K key, V value, long timestamp) {
+			this.timestamp = timestamp;
 			this.cache = (Cache) cache;
 			this.key = key;
 			this.value = value;
@@ -346,7 +853,7 @@ public class Cache<K, V> {
 			cachePool.cacheReferences.add(new WeakReference<Cache>(this));
 		}
 
-		keyToTickets = new HashMap<>(Math.min(1000, cachePool.maxSize));
+		keyToTickets = cachePool.createTicketMap();
 	}
 
 	/**
@@ -362,10 +869,7 @@ public class Cache<K, V> {
 	 * Remove all the elements in this Cache.
 	 */
 	public void clear() {
-		synchronized (cachePool) {
-			keyToTickets.clear();
-			cachePool.clear(this);
-		}
+		cachePool.clear(this);
 	}
 
 	/**
@@ -378,36 +882,9 @@ public class Cache<K, V> {
 	 *            the key to retrieve.
 	 * @return the value associated with a key.
 	 */
-	@SuppressWarnings("unchecked")
 	public V get(K key) {
 		Objects.requireNonNull(key);
-		synchronized (cachePool) {
-			cachePool.purge();
-
-			if (keyToTickets.isEmpty())
-				return null;
-
-			CacheTicket<K, V> mostRecentTicket = cachePool.allTickets.last();
-			if (mostRecentTicket != null && mostRecentTicket.cache == this
-					&& mostRecentTicket.key.equals(key)) {
-				mostRecentTicket.timestamp = System.currentTimeMillis();
-				return mostRecentTicket.value;
-			} else {
-				CacheTicket<K, V> oldTicket = keyToTickets.get(key);
-				if (oldTicket == null) {
-					return null;
-				}
-
-				CacheTicket<K, V> newTicket = new CacheTicket<>(this, key, null);
-				keyToTickets.put(key, newTicket);
-
-				cachePool.allTickets.remove(oldTicket);
-				cachePool.allTickets.add(newTicket);
-
-				newTicket.value = oldTicket.value;
-				return newTicket.value;
-			}
-		}
+		return cachePool.get(this, key);
 	}
 
 	/**
@@ -422,31 +899,8 @@ public class Cache<K, V> {
 	 *            the value to store.
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
-	public synchronized V put(K key, V newValue) {
-		synchronized (cachePool) {
-			cachePool.purge();
-
-			CacheTicket<K, V> mostRecentTicket = cachePool.allTickets.isEmpty() ? null
-					: cachePool.allTickets.last();
-			if (mostRecentTicket != null && mostRecentTicket.cache == this
-					&& mostRecentTicket.key.equals(key)) {
-				mostRecentTicket.timestamp = System.currentTimeMillis();
-				V returnValue = mostRecentTicket.value;
-				mostRecentTicket.value = newValue;
-				return returnValue;
-			}
-
-			CacheTicket<K, V> newTicket = new CacheTicket<>(this, key, newValue);
-			CacheTicket<K, V> oldTicket = keyToTickets.put(key, newTicket);
-			if (oldTicket != null) {
-				cachePool.allTickets.remove(oldTicket);
-			}
-
-			cachePool.add(newTicket);
-
-			return oldTicket == null ? null : oldTicket.value;
-		}
+	public V put(K key, V newValue) {
+		return cachePool.put(this, key, newValue);
 	}
 
 	/**
@@ -456,40 +910,22 @@ public class Cache<K, V> {
 	 * an element is in this collection does not guarantee that a call to
 	 * retrieve that key will return non-null.
 	 */
-	public synchronized Collection<K> getKeys() {
-		synchronized (cachePool) {
-			cachePool.purge();
-
-			Collection<K> keys = new HashSet<>();
-			keys.addAll(keyToTickets.keySet());
-			return keys;
-		}
+	public Collection<K> getKeys() {
+		return cachePool.getKeys(this);
 	}
 
 	/**
 	 * Return the number of key/value pairs in this Cache.
 	 */
-	public synchronized int size() {
-		synchronized (cachePool) {
-			cachePool.purge();
-
-			return keyToTickets.size();
-		}
+	public int size() {
+		return cachePool.size(this);
 	}
 
 	/**
 	 * Create a Map representing all the data in this Cache.
 	 */
-	public synchronized Map<K, V> toMap() {
-		synchronized (cachePool) {
-			cachePool.purge();
-
-			Map<K, V> map = new HashMap<>();
-			for (Entry<K, CacheTicket<K, V>> entry : keyToTickets.entrySet()) {
-				map.put(entry.getKey(), entry.getValue().value);
-			}
-			return map;
-		}
+	public Map<K, V> toMap() {
+		return cachePool.toMap(this);
 	}
 
 	@Override
@@ -535,19 +971,6 @@ public class Cache<K, V> {
 	 */
 	public V remove(K key) {
 		Objects.requireNonNull(key);
-		synchronized (cachePool) {
-			cachePool.purge();
-
-			if (keyToTickets.isEmpty())
-				return null;
-
-			CacheTicket<K, V> oldTicket = keyToTickets.remove(key);
-			if (oldTicket == null) {
-				return null;
-			}
-
-			cachePool.allTickets.remove(oldTicket);
-			return oldTicket.value;
-		}
+		return cachePool.remove(this, key);
 	}
 }
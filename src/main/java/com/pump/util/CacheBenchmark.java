@@ -0,0 +1,107 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import com.pump.util.Cache.CachePool;
+import com.pump.util.Cache.ConcurrentCachePool;
+
+/**
+ * This compares the throughput of a {@link CachePool} and a
+ * {@link ConcurrentCachePool} as the number of threads increases.
+ * <p>
+ * Each thread performs a mix of 90% reads and 10% writes against two Caches
+ * that share one pool. The key range is larger than the pool so the size limit
+ * is constantly enforced. This is not a public class; it is only intended to be
+ * run by hand.
+ */
+class CacheBenchmark {
+
+	static final int POOL_SIZE = 10000;
+	static final int KEY_RANGE = 15000;
+	static final int OPERATIONS_PER_THREAD = 1000000;
+	static final int SAMPLE_COUNT = 5;
+
+	public static void main(String[] args) throws Exception {
+		System.out.println("Threads\tCachePool (ops/ms)\tConcurrentCachePool (ops/ms)\tHit Rate");
+		for (int threadCount = 1; threadCount <= 32; threadCount *= 2) {
+			long classic = run(new CachePool(POOL_SIZE, -1, -1), threadCount);
+			ConcurrentCachePool concurrentPool = new ConcurrentCachePool(
+					POOL_SIZE, -1, -1);
+			long concurrent = run(concurrentPool, threadCount);
+			double hitRate = ((double) concurrentPool.getHitCount())
+					/ (concurrentPool.getHitCount() + concurrentPool
+							.getMissCount());
+			System.out.println(threadCount + "\t" + classic + "\t"
+					+ concurrent + "\t" + hitRate);
+		}
+	}
+
+	/**
+	 * Return the median number of operations per millisecond.
+	 */
+	static long run(final CachePool pool, final int threadCount)
+			throws Exception {
+		final Cache<Integer, String> cacheA = new Cache<>(pool);
+		final Cache<Integer, String> cacheB = new Cache<>(pool);
+		final Integer[] keys = new Integer[KEY_RANGE];
+		for (int a = 0; a < keys.length; a++) {
+			keys[a] = a;
+			(a % 2 == 0 ? cacheA : cacheB).put(keys[a], "value");
+		}
+
+		long[] samples = new long[SAMPLE_COUNT];
+		for (int sample = 0; sample < samples.length; sample++) {
+			final CountDownLatch start = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(threadCount);
+			for (int a = 0; a < threadCount; a++) {
+				final Random random = new Random(a);
+				Thread thread = new Thread("CacheBenchmark-" + a) {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for (int b = 0; b < OPERATIONS_PER_THREAD; b++) {
+								// skew reads towards low keys
+								int r = random.nextInt(KEY_RANGE);
+								Integer key = keys[(int) (((long) r) * r
+										/ KEY_RANGE)];
+								Cache<Integer, String> cache = b % 2 == 0 ? cacheA
+										: cacheB;
+								if (b % 10 == 0) {
+									cache.put(key, "value");
+								} else {
+									cache.get(key);
+								}
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} finally {
+							done.countDown();
+						}
+					}
+				};
+				thread.start();
+			}
+			long time = System.currentTimeMillis();
+			start.countDown();
+			done.await();
+			time = Math.max(1, System.currentTimeMillis() - time);
+			samples[sample] = ((long) OPERATIONS_PER_THREAD) * threadCount
+					/ time;
+		}
+		Arrays.sort(samples);
+		return samples[samples.length / 2];
+	}
+}
@@ -0,0 +1,113 @@
+package com.pump.animation;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class CompressedFrameStoreTest extends TestCase {
+
+	static List<BufferedImage> createFrames(int frameCount) {
+		List<BufferedImage> frames = new ArrayList<>();
+		for (int a = 0; a < frameCount; a++) {
+			BufferedImage bi = new BufferedImage(64, 48,
+					a % 2 == 0 ? BufferedImage.TYPE_INT_ARGB
+							: BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = bi.createGraphics();
+			g.setColor(new Color(0x80336699, true));
+			g.fillRect(0, 0, 64, 48);
+			g.setColor(Color.red);
+			g.fillOval(a, a / 2, 20, 20);
+			g.dispose();
+			frames.add(bi);
+		}
+		return frames;
+	}
+
+	static int[] getRGB(BufferedImage bi) {
+		return bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null, 0,
+				bi.getWidth());
+	}
+
+	/**
+	 * Frames read in any order, with a cache that only holds a few frames,
+	 * should match the frames that were added.
+	 */
+	@Test
+	public void testRandomAccess() throws Exception {
+		List<BufferedImage> frames = createFrames(40);
+		CompressedFrameStore store = new CompressedFrameStore(null,
+				new Dimension(64, 48), 7, 3 * 64 * 48 * 4, 2);
+		try {
+			for (BufferedImage frame : frames) {
+				store.addFrame(frame);
+			}
+			assertEquals(frames.size(), store.getFrameCount());
+
+			Random random = new Random(0);
+			BufferedImage dst = null;
+			for (int a = 0; a < 200; a++) {
+				int frameIndex = random.nextInt(frames.size());
+				dst = store.getFrame(frameIndex, dst);
+				assertTrue("frame " + frameIndex, Arrays.equals(
+						getRGB(frames.get(frameIndex)), getRGB(dst)));
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+
+	/**
+	 * Several threads reading a CachedAnimation at once should each see the
+	 * correct frames.
+	 */
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		final List<BufferedImage> frames = createFrames(30);
+		final CachedAnimation animation = new CachedAnimation(new Dimension(
+				64, 48));
+		try {
+			for (BufferedImage frame : frames) {
+				animation.addFrame(frame, 50);
+			}
+
+			final AtomicReference<Throwable> error = new AtomicReference<>();
+			Thread[] threads = new Thread[4];
+			for (int a = 0; a < threads.length; a++) {
+				threads[a] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							AnimationReader reader = animation.createReader();
+							for (int b = 0; b < frames.size(); b++) {
+								BufferedImage bi = reader.getNextFrame(false);
+								if (!Arrays.equals(getRGB(frames.get(b)),
+										getRGB(bi)))
+									throw new AssertionError("frame " + b);
+							}
+						} catch (Throwable t) {
+							error.compareAndSet(null, t);
+						}
+					}
+				};
+				threads[a].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			if (error.get() != null)
+				throw new AssertionError(error.get());
+		} finally {
+			animation.dispose();
+		}
+	}
+}
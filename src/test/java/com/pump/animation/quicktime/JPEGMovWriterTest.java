@@ -0,0 +1,273 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.animation.quicktime;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+
+import com.pump.animation.quicktime.atom.Atom;
+import com.pump.animation.quicktime.atom.AtomReader;
+import com.pump.animation.quicktime.atom.ChunkOffsetAtom;
+import com.pump.animation.quicktime.atom.MovieFragmentHeaderAtom;
+import com.pump.animation.quicktime.atom.ParentAtom;
+import com.pump.animation.quicktime.atom.SampleSizeAtom;
+import com.pump.animation.quicktime.atom.SampleToChunkAtom;
+import com.pump.animation.quicktime.atom.TrackFragmentHeaderAtom;
+import com.pump.animation.quicktime.atom.TrackFragmentRunAtom;
+import com.pump.animation.quicktime.atom.TrackHeaderAtom;
+
+import junit.framework.TestCase;
+
+public class JPEGMovWriterTest extends TestCase {
+
+	/**
+	 * Encoding frames on several threads should produce exactly the same file
+	 * as encoding them on the calling thread, even if the caller reuses one
+	 * image for every frame.
+	 */
+	@Test
+	public void testPipelinedEncoding() throws IOException {
+		File sequentialFile = File.createTempFile("sequential", ".mov");
+		File pipelinedFile = File.createTempFile("pipelined", ".mov");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			JPEGMovWriter sequential = new JPEGMovWriter(sequentialFile);
+			sequential.setEncodeExecutor(null, 0);
+			writeFrames(sequential);
+
+			JPEGMovWriter pipelined = new JPEGMovWriter(pipelinedFile);
+			pipelined.setEncodeExecutor(executor, 3);
+			writeFrames(pipelined);
+
+			byte[] expected = Files.readAllBytes(sequentialFile.toPath());
+			byte[] actual = Files.readAllBytes(pipelinedFile.toPath());
+			assertTrue(Arrays.equals(expected, actual));
+		} finally {
+			executor.shutdown();
+			sequentialFile.delete();
+			pipelinedFile.delete();
+		}
+	}
+
+	/**
+	 * A fragmented movie should contain the same video and audio samples as a
+	 * regular movie, split into fragments of about one second.
+	 */
+	@Test
+	public void testFragmentedMovie() throws IOException {
+		File file = File.createTempFile("regular", ".mov");
+		try {
+			JPEGMovWriter regular = new JPEGMovWriter(file);
+			regular.setEncodeExecutor(null, 0);
+			regular.addAudioTrack(createAudio(), 0);
+			writeFrames(regular);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			JPEGMovWriter fragmented = new JPEGMovWriter(out, .85f);
+			fragmented.addAudioTrack(createAudio(), 0);
+			writeFrames(fragmented);
+
+			byte[] regularData = Files.readAllBytes(file.toPath());
+			byte[] fragmentedData = out.toByteArray();
+
+			List<byte[]> regularFrames = new ArrayList<>();
+			ByteArrayOutputStream regularAudio = new ByteArrayOutputStream();
+			readRegularSamples(regularData, regularFrames, regularAudio);
+
+			List<byte[]> fragmentedFrames = new ArrayList<>();
+			ByteArrayOutputStream fragmentedAudio = new ByteArrayOutputStream();
+			int fragmentCount = readFragmentedSamples(fragmentedData,
+					fragmentedFrames, fragmentedAudio);
+
+			// 20 frames of .1 seconds are two fragments. The first fragment
+			// also holds the second of audio that leads the video, and the
+			// last second of audio is written in a third fragment.
+			assertEquals(3, fragmentCount);
+			assertEquals(20, fragmentedFrames.size());
+			assertEquals(regularFrames.size(), fragmentedFrames.size());
+			for (int a = 0; a < regularFrames.size(); a++) {
+				assertTrue("frame " + a, Arrays.equals(regularFrames.get(a),
+						fragmentedFrames.get(a)));
+			}
+			assertEquals(32000, fragmentedAudio.size());
+			assertTrue(Arrays.equals(regularAudio.toByteArray(),
+					fragmentedAudio.toByteArray()));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Create 4 seconds of 8-bit mono audio.
+	 */
+	private AudioInputStream createAudio() {
+		byte[] data = new byte[32000];
+		for (int a = 0; a < data.length; a++) {
+			data[a] = (byte) (a % 251);
+		}
+		return new AudioInputStream(new ByteArrayInputStream(data),
+				new AudioFormat(8000, 8, 1, true, false), data.length);
+	}
+
+	private void readRegularSamples(byte[] data, List<byte[]> frames,
+			ByteArrayOutputStream audio) throws IOException {
+		Atom moov = readTopLevelAtoms(data).get(
+				ParentAtom.ATOM_TYPE_MOVIE).get(0).atom;
+		for (Atom trak : getDescendants(moov, ParentAtom.ATOM_TYPE_TRACK)) {
+			boolean video = ((TrackHeaderAtom) getDescendants(trak,
+					TrackHeaderAtom.ATOM_TYPE).get(0)).getFlags() != 0
+					&& getDescendants(trak, "vmhd").size() > 0;
+			ChunkOffsetAtom stco = (ChunkOffsetAtom) getDescendants(trak,
+					ChunkOffsetAtom.ATOM_TYPE).get(0);
+			SampleToChunkAtom stsc = (SampleToChunkAtom) getDescendants(trak,
+					SampleToChunkAtom.ATOM_TYPE).get(0);
+			SampleSizeAtom stsz = (SampleSizeAtom) getDescendants(trak,
+					SampleSizeAtom.ATOM_TYPE).get(0);
+			int sampleIndex = 0;
+			for (int chunk = 0; chunk < stco.getChunkOffsetCount(); chunk++) {
+				int offset = (int) stco.getChunkOffset(chunk);
+				int count = (int) stsc.getChunkSampleCount(chunk);
+				if (video) {
+					for (int a = 0; a < count; a++) {
+						int size = (int) stsz.getSizeTable()[sampleIndex++];
+						frames.add(Arrays.copyOfRange(data, offset, offset
+								+ size));
+						offset += size;
+					}
+				} else {
+					audio.write(data, offset, count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the number of fragments.
+	 */
+	private int readFragmentedSamples(byte[] data, List<byte[]> frames,
+			ByteArrayOutputStream audio) throws IOException {
+		List<PositionedAtom> moofs = readTopLevelAtoms(data).get(
+				ParentAtom.ATOM_TYPE_MOVIE_FRAGMENT);
+		for (int a = 0; a < moofs.size(); a++) {
+			PositionedAtom moof = moofs.get(a);
+			assertEquals(a + 1, ((MovieFragmentHeaderAtom) getDescendants(
+					moof.atom, MovieFragmentHeaderAtom.ATOM_TYPE).get(0))
+					.getSequenceNumber());
+			for (Atom traf : getDescendants(moof.atom,
+					ParentAtom.ATOM_TYPE_TRACK_FRAGMENT)) {
+				TrackFragmentHeaderAtom tfhd = (TrackFragmentHeaderAtom) getDescendants(
+						traf, TrackFragmentHeaderAtom.ATOM_TYPE).get(0);
+				for (Atom atom : getDescendants(traf,
+						TrackFragmentRunAtom.ATOM_TYPE)) {
+					TrackFragmentRunAtom trun = (TrackFragmentRunAtom) atom;
+					int offset = moof.position + trun.getDataOffset();
+					for (int b = 0; b < trun.getSampleCount(); b++) {
+						int size = (int) (trun.getSampleSize(b) == -1 ? tfhd
+								.getDefaultSampleSize() : trun.getSampleSize(b));
+						if (tfhd.getTrackID() == 1) {
+							frames.add(Arrays.copyOfRange(data, offset, offset
+									+ size));
+						} else {
+							audio.write(data, offset, size);
+						}
+						offset += size;
+					}
+				}
+			}
+		}
+		return moofs.size();
+	}
+
+	static class PositionedAtom {
+		final int position;
+		final Atom atom;
+
+		PositionedAtom(int position, Atom atom) {
+			this.position = position;
+			this.atom = atom;
+		}
+	}
+
+	private java.util.Map<String, List<PositionedAtom>> readTopLevelAtoms(
+			byte[] data) throws IOException {
+		java.util.Map<String, List<PositionedAtom>> map = new java.util.HashMap<>();
+		int pos = 0;
+		while (pos < data.length) {
+			long size = ((data[pos] & 0xffL) << 24)
+					| ((data[pos + 1] & 0xff) << 16)
+					| ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+			String type = new String(data, pos + 4, 4, "US-ASCII");
+			if (size == 1) {
+				size = 0;
+				for (int a = 0; a < 8; a++) {
+					size = (size << 8) | (data[pos + 8 + a] & 0xff);
+				}
+			}
+			Atom atom = null;
+			if (!type.equals("mdat"))
+				atom = new AtomReader().read(new ByteArrayInputStream(data,
+						pos, (int) size));
+			List<PositionedAtom> list = map.get(type);
+			if (list == null) {
+				list = new ArrayList<>();
+				map.put(type, list);
+			}
+			list.add(new PositionedAtom(pos, atom));
+			pos += size;
+		}
+		return map;
+	}
+
+	private List<Atom> getDescendants(Atom atom, String identifier) {
+		List<Atom> returnValue = new ArrayList<>();
+		for (int a = 0; a < atom.getChildCount(); a++) {
+			Atom child = atom.getChildAt(a);
+			if (child.getIdentifier().equals(identifier))
+				returnValue.add(child);
+			returnValue.addAll(getDescendants(child, identifier));
+		}
+		return returnValue;
+	}
+
+	private void writeFrames(JPEGMovWriter writer) throws IOException {
+		BufferedImage bi = new BufferedImage(160, 120,
+				BufferedImage.TYPE_INT_RGB);
+		try {
+			for (int a = 0; a < 20; a++) {
+				Graphics2D g = bi.createGraphics();
+				g.setColor(new Color(Color.HSBtoRGB(a / 20f, .8f, .9f)));
+				g.fillRect(0, 0, 160, 120);
+				g.setColor(Color.white);
+				g.fillOval(a * 6, 30, 40, 40);
+				g.dispose();
+				writer.addFrame(.1f, bi, a % 2 == 0 ? .5f : .9f);
+			}
+		} finally {
+			writer.close(true);
+		}
+	}
+}
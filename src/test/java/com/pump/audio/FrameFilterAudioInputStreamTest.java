@@ -0,0 +1,76 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class FrameFilterAudioInputStreamTest extends TestCase {
+
+	/**
+	 * Reads of any size (including reads smaller than a frame, and reads that
+	 * end partway through a frame) should return the same data as reading
+	 * everything in large blocks.
+	 */
+	@Test
+	public void testOddSizedReads() throws IOException {
+		// 6-byte frames
+		AudioFormat format = new AudioFormat(44100, 24, 2, false, true);
+		byte[] data = WavPCMAudioInputStreamFilterTest.createData(format, 2);
+		byte[] expected = WavPCMAudioInputStreamFilterTest.readFully(
+				WavPCMAudioInputStreamFilterTest.createFilter(format, data),
+				4096);
+
+		int[] readSizes = new int[] { 1, 5, 7, 2, 13, 6, 4, 100, 3, 1001 };
+		WavPCMAudioInputStreamFilter filter = WavPCMAudioInputStreamFilterTest
+				.createFilter(format, data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] block = new byte[2000];
+		int i = 0;
+		while (true) {
+			int k = filter.read(block, 3, readSizes[i++ % readSizes.length]);
+			if (k == -1)
+				break;
+			out.write(block, 3, k);
+		}
+		assertTrue(Arrays.equals(expected, out.toByteArray()));
+	}
+
+	/**
+	 * After a read that ends partway through a frame, the next large read
+	 * should finish that frame and then continue with whole frames.
+	 */
+	@Test
+	public void testPartialFrameContinuation() throws IOException {
+		AudioFormat format = new AudioFormat(44100, 24, 2, false, true);
+		byte[] data = WavPCMAudioInputStreamFilterTest.createData(format, 3);
+		byte[] expected = WavPCMAudioInputStreamFilterTest.readFully(
+				WavPCMAudioInputStreamFilterTest.createFilter(format, data),
+				4096);
+
+		WavPCMAudioInputStreamFilter filter = WavPCMAudioInputStreamFilterTest
+				.createFilter(format, data);
+		byte[] actual = new byte[expected.length];
+		assertEquals(1, filter.read(actual, 0, 1));
+		// 5 bytes finish the first frame, and then 99 whole frames
+		assertEquals(5 + 99 * 6, filter.read(actual, 1, 600));
+		assertEquals(600, filter.read(actual, 600, 600));
+		assertTrue(Arrays.equals(Arrays.copyOf(expected, 1200),
+				Arrays.copyOf(actual, 1200)));
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class PCMCodecTest extends TestCase {
+
+	static final int SAMPLE_COUNT = 1000;
+
+	/**
+	 * Decoding 8- and 16-bit samples should match PCMUtils (after shifting
+	 * unsigned values so silence is zero).
+	 */
+	@Test
+	public void testMatchesPCMUtils() {
+		for (AudioFormat format : getFormats()) {
+			int sampleSize = format.getSampleSizeInBits() / 8;
+			if (sampleSize > 2)
+				continue;
+			boolean isSigned = format.getEncoding().equals(
+					Encoding.PCM_SIGNED);
+			byte[] data = createData(format, 0);
+			int[] samples = new int[SAMPLE_COUNT];
+			PCMCodec.get(format).decode(data, 0, samples, 0, SAMPLE_COUNT);
+			int delta = isSigned ? 0 : 1 << (sampleSize * 8 - 1);
+			for (int i = 0; i < SAMPLE_COUNT; i++) {
+				int expected = PCMUtils.decodeSample(data, i * sampleSize,
+						sampleSize, isSigned, format.isBigEndian());
+				assertEquals(format + " " + i, expected - delta, samples[i]);
+			}
+		}
+	}
+
+	/**
+	 * Decoding and re-encoding should reproduce the original bytes, both as
+	 * ints and as floats.
+	 */
+	@Test
+	public void testRoundTrip() {
+		for (AudioFormat format : getFormats()) {
+			PCMCodec codec = PCMCodec.get(format);
+			byte[] data = createData(format, 1);
+			int offset = 3;
+			byte[] copy = new byte[data.length + offset];
+
+			int[] intSamples = new int[SAMPLE_COUNT + 1];
+			codec.decode(data, 0, intSamples, 1, SAMPLE_COUNT);
+			codec.encode(intSamples, 1, copy, offset, SAMPLE_COUNT);
+			assertTrue(format.toString(), Arrays.equals(data,
+					Arrays.copyOfRange(copy, offset, copy.length)));
+
+			// floats have 24 bits of precision, so 32-bit samples are lossy
+			if (format.getSampleSizeInBits() < 32) {
+				float[] floatSamples = new float[SAMPLE_COUNT];
+				codec.decode(data, 0, floatSamples, 0, SAMPLE_COUNT);
+				for (float f : floatSamples) {
+					assertTrue(f >= -1 && f < 1);
+				}
+				Arrays.fill(copy, (byte) 0);
+				codec.encode(floatSamples, 0, copy, offset, SAMPLE_COUNT);
+				assertTrue(format.toString(), Arrays.equals(data,
+						Arrays.copyOfRange(copy, offset, copy.length)));
+			}
+		}
+	}
+
+	/**
+	 * Values that are too large or small should be clipped.
+	 */
+	@Test
+	public void testClipping() {
+		for (AudioFormat format : getFormats()) {
+			PCMCodec codec = PCMCodec.get(format);
+			int[] ints = new int[] { Integer.MIN_VALUE, codec.getMinValue(),
+					0, codec.getMaxValue(), Integer.MAX_VALUE };
+			float[] floats = new float[] { -5, -1, 0, 1, 5 };
+			byte[] data = new byte[ints.length * codec.getSampleSize()];
+			int[] decoded = new int[ints.length];
+
+			codec.encode(ints, 0, data, 0, ints.length);
+			codec.decode(data, 0, decoded, 0, ints.length);
+			assertTrue(format.toString(), Arrays.equals(new int[] {
+					codec.getMinValue(), codec.getMinValue(), 0,
+					codec.getMaxValue(), codec.getMaxValue() }, decoded));
+
+			codec.encode(floats, 0, data, 0, floats.length);
+			codec.decode(data, 0, decoded, 0, ints.length);
+			assertTrue(format.toString(), Arrays.equals(new int[] {
+					codec.getMinValue(), codec.getMinValue(), 0,
+					codec.getMaxValue(), codec.getMaxValue() }, decoded));
+		}
+	}
+
+	private static AudioFormat[] getFormats() {
+		AudioFormat[] formats = new AudioFormat[16];
+		int i = 0;
+		for (int bits = 8; bits <= 32; bits += 8) {
+			for (boolean isSigned : new boolean[] { true, false }) {
+				for (boolean isBigEndian : new boolean[] { true, false }) {
+					formats[i++] = new AudioFormat(44100, bits, 1, isSigned,
+							isBigEndian);
+				}
+			}
+		}
+		return formats;
+	}
+
+	private static byte[] createData(AudioFormat format, long seed) {
+		byte[] data = new byte[SAMPLE_COUNT * format.getSampleSizeInBits()
+				/ 8];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+}
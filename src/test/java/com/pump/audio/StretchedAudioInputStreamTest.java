@@ -0,0 +1,128 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class StretchedAudioInputStreamTest extends TestCase {
+
+	static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+
+	/**
+	 * If the length doesn't change the audio shouldn't change.
+	 */
+	@Test
+	public void testIdentity() throws IOException {
+		byte[] data = createSine(5000, 100);
+		byte[] stretched = readFully(StretchedAudioInputStream.create(
+				createStream(data), 5000));
+		assertTrue(Arrays.equals(data, stretched));
+	}
+
+	/**
+	 * Doubling the length of a sine wave should produce a sine wave with half
+	 * the frequency.
+	 */
+	@Test
+	public void testStretch() throws IOException {
+		byte[] data = createSine(4000, 100);
+		byte[] stretched = readFully(StretchedAudioInputStream.create(
+				createStream(data), 8000));
+		assertEquals(8000 * FORMAT.getFrameSize(), stretched.length);
+		byte[] expected = createSine(8000, 200);
+
+		PCMCodec codec = PCMCodec.get(FORMAT);
+		float[] actualSamples = new float[16000];
+		float[] expectedSamples = new float[16000];
+		codec.decode(stretched, 0, actualSamples, 0, actualSamples.length);
+		codec.decode(expected, 0, expectedSamples, 0, expectedSamples.length);
+		// the first and last frames are less accurate because the spline is
+		// clamped
+		for (int a = 8; a < actualSamples.length - 8; a++) {
+			assertEquals("sample " + a, expectedSamples[a], actualSamples[a],
+					.001f);
+		}
+	}
+
+	/**
+	 * Skipping, marking and resetting should return the same bytes as
+	 * reading straight through, including when they split a frame.
+	 */
+	@Test
+	public void testSkipAndMark() throws IOException {
+		byte[] data = createSine(3000, 37);
+		for (long frames : new long[] { 1000, 7777 }) {
+			byte[] expected = readFully(StretchedAudioInputStream.create(
+					createStream(data), frames));
+
+			StretchedAudioInputStream in = StretchedAudioInputStream.create(
+					createStream(data), frames);
+			assertTrue(in.markSupported());
+			int pos = 0;
+			for (int skip : new int[] { 3, 401, 0, 1003, 2, 128 }) {
+				assertEquals(skip, in.skip(skip));
+				pos += skip;
+
+				byte[] b = new byte[301];
+				in.mark(b.length);
+				int read = in.read(b);
+				assertTrue(Arrays.equals(
+						Arrays.copyOfRange(expected, pos, pos + read),
+						Arrays.copyOf(b, read)));
+
+				in.reset();
+				read = in.read(b, 0, 1);
+				assertEquals(1, read);
+				assertEquals(expected[pos], b[0]);
+				pos += read;
+			}
+			in.close();
+		}
+	}
+
+	private static byte[] createSine(int frameCount, double period) {
+		float[] samples = new float[frameCount * 2];
+		for (int a = 0; a < frameCount; a++) {
+			samples[2 * a] = (float) (.5 * Math.sin(2 * Math.PI * a / period));
+			samples[2 * a + 1] = samples[2 * a] / 2;
+		}
+		byte[] data = new byte[frameCount * FORMAT.getFrameSize()];
+		PCMCodec.get(FORMAT).encode(samples, 0, data, 0, samples.length);
+		return data;
+	}
+
+	private static AudioInputStream createStream(byte[] data) {
+		return new AudioInputStream(new ByteArrayInputStream(data), FORMAT,
+				data.length / FORMAT.getFrameSize());
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[999];
+		int k;
+		while ((k = in.read(b)) != -1) {
+			out.write(b, 0, k);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
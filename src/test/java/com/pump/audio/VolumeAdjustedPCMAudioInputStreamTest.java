@@ -0,0 +1,98 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class VolumeAdjustedPCMAudioInputStreamTest extends TestCase {
+
+	/**
+	 * Unsigned 8-bit samples should be scaled around their midpoint (128),
+	 * which represents silence.
+	 */
+	@Test
+	public void testUnsigned8Bit() throws IOException {
+		AudioFormat format = new AudioFormat(8000, 8, 1, false, false);
+		byte[] data = toBytes(128, 228, 28, 255, 0);
+		assertTrue(Arrays.equals(toBytes(128, 178, 78, 191, 64),
+				adjust(format, data, .5f)));
+		assertTrue(Arrays.equals(toBytes(128, 128, 128, 128, 128),
+				adjust(format, data, 0)));
+		assertTrue(Arrays.equals(toBytes(128, 255, 0, 255, 0),
+				adjust(format, data, 3)));
+	}
+
+	/**
+	 * Unsigned 16-bit samples should be scaled around 0x8000.
+	 */
+	@Test
+	public void testUnsigned16Bit() throws IOException {
+		AudioFormat format = new AudioFormat(8000, 16, 2, false, false);
+		// little-endian: 0x8000, 0x8000 + 1000, 0x8000 - 1000, 0xffff
+		byte[] data = toBytes(0x00, 0x80, 0xe8, 0x83, 0x18, 0x7c, 0xff, 0xff);
+		// 0x8000, 0x8000 + 500, 0x8000 - 500, 0x8000 + 16383
+		assertTrue(Arrays.equals(
+				toBytes(0x00, 0x80, 0xf4, 0x81, 0x0c, 0x7e, 0xff, 0xbf),
+				adjust(format, data, .5f)));
+	}
+
+	/**
+	 * Signed big-endian samples should be scaled around zero and clipped.
+	 */
+	@Test
+	public void testSigned16BitClipping() throws IOException {
+		AudioFormat format = new AudioFormat(8000, 16, 1, true, true);
+		// 1000, -1000, 20000, -20000
+		byte[] data = toBytes(0x03, 0xe8, 0xfc, 0x18, 0x4e, 0x20, 0xb1, 0xe0);
+		// 2000, -2000, 32767, -32768
+		assertTrue(Arrays.equals(
+				toBytes(0x07, 0xd0, 0xf8, 0x30, 0x7f, 0xff, 0x80, 0x00),
+				adjust(format, data, 2)));
+	}
+
+	private static byte[] adjust(AudioFormat format, byte[] data,
+			final float volume) throws IOException {
+		AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(
+				data), format, data.length / format.getFrameSize());
+		VolumeAdjustedPCMAudioInputStream adjusted = new VolumeAdjustedPCMAudioInputStream(
+				in) {
+			@Override
+			protected float getVolume(float time) {
+				return volume;
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] block = new byte[1024];
+		int k;
+		while ((k = adjusted.read(block)) != -1) {
+			out.write(block, 0, k);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] toBytes(int... values) {
+		byte[] b = new byte[values.length];
+		for (int a = 0; a < values.length; a++) {
+			b[a] = (byte) values[a];
+		}
+		return b;
+	}
+}
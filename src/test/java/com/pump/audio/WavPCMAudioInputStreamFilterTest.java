@@ -0,0 +1,103 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class WavPCMAudioInputStreamFilterTest extends TestCase {
+
+	static final int FRAME_COUNT = 1001;
+
+	/**
+	 * 24-bit big-endian samples should be converted to signed little-endian
+	 * samples by reversing their bytes (and flipping the sign bit of unsigned
+	 * samples).
+	 */
+	@Test
+	public void test24Bit() throws IOException {
+		for (boolean isSigned : new boolean[] { true, false }) {
+			AudioFormat format = new AudioFormat(44100, 24, 2, isSigned, true);
+			assertFalse(WavPCMAudioInputStreamFilter.isWavCompatible(format));
+			byte[] data = createData(format, 0);
+			WavPCMAudioInputStreamFilter filter = createFilter(format, data);
+			assertEquals(Encoding.PCM_SIGNED, filter.getFormat().getEncoding());
+			assertFalse(filter.getFormat().isBigEndian());
+			assertTrue(WavPCMAudioInputStreamFilter.isWavCompatible(filter
+					.getFormat()));
+
+			byte[] expected = new byte[data.length];
+			for (int i = 0; i < data.length; i += 3) {
+				expected[i] = data[i + 2];
+				expected[i + 1] = data[i + 1];
+				expected[i + 2] = (byte) (isSigned ? data[i] : data[i] ^ 0x80);
+			}
+			assertTrue(String.valueOf(format),
+					Arrays.equals(expected, readFully(filter, 4096)));
+		}
+	}
+
+	/**
+	 * Signed 8-bit samples should be converted to unsigned samples, and
+	 * formats that are already wav-compatible should pass through unchanged.
+	 */
+	@Test
+	public void test8Bit() throws IOException {
+		AudioFormat signed = new AudioFormat(8000, 8, 1, true, false);
+		byte[] data = createData(signed, 1);
+		WavPCMAudioInputStreamFilter filter = createFilter(signed, data);
+		assertEquals(Encoding.PCM_UNSIGNED, filter.getFormat().getEncoding());
+		byte[] expected = new byte[data.length];
+		for (int i = 0; i < data.length; i++) {
+			expected[i] = (byte) (data[i] ^ 0x80);
+		}
+		assertTrue(Arrays.equals(expected, readFully(filter, 4096)));
+
+		AudioFormat unsigned = new AudioFormat(8000, 8, 1, false, false);
+		assertTrue(Arrays.equals(data,
+				readFully(createFilter(unsigned, data), 4096)));
+	}
+
+	static WavPCMAudioInputStreamFilter createFilter(AudioFormat format,
+			byte[] data) {
+		return new WavPCMAudioInputStreamFilter(new AudioInputStream(
+				new ByteArrayInputStream(data), format, data.length
+						/ format.getFrameSize()));
+	}
+
+	static byte[] createData(AudioFormat format, long seed) {
+		byte[] data = new byte[FRAME_COUNT * format.getFrameSize()];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	static byte[] readFully(AudioInputStream in, int blockSize)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] block = new byte[blockSize];
+		int k;
+		while ((k = in.read(block)) != -1) {
+			out.write(block, 0, k);
+		}
+		return out.toByteArray();
+	}
+}
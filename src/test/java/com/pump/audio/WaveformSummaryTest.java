@@ -0,0 +1,194 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class WaveformSummaryTest extends TestCase {
+
+	static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+
+	/**
+	 * A single column should describe all the audio, and one column per
+	 * bucket should describe each bucket exactly.
+	 */
+	@Test
+	public void testExactColumns() throws IOException {
+		int frameCount = WaveformSummary.BUCKET_SIZE * 37;
+		float[] samples = createSamples(frameCount, 0);
+		WaveformSummary summary = WaveformSummary.create(createStream(samples));
+		assertTrue(summary.isComplete());
+		assertEquals(frameCount, summary.getFrameCount());
+
+		for (int width : new int[] { 1, 37 }) {
+			float[] min = new float[width];
+			float[] max = new float[width];
+			float[] rms = new float[width];
+			assertEquals(width, summary.getColumns(width, min, max, rms));
+			int framesPerColumn = frameCount / width;
+			for (int x = 0; x < width; x++) {
+				float[] expected = summarize(samples, x * framesPerColumn,
+						(x + 1) * framesPerColumn);
+				assertEquals(expected[0], min[x], .0001f);
+				assertEquals(expected[1], max[x], .0001f);
+				assertEquals(expected[2], rms[x], .0001f);
+			}
+		}
+	}
+
+	/**
+	 * Columns that don't line up with buckets should still contain the peaks
+	 * of the frames they represent, and nothing beyond the buckets that
+	 * overlap those frames.
+	 */
+	@Test
+	public void testUnalignedColumns() throws IOException {
+		int frameCount = 123457;
+		float[] samples = createSamples(frameCount, 1);
+		WaveformSummary summary = WaveformSummary.create(createStream(samples));
+		for (int width : new int[] { 3, 100, 999 }) {
+			float[] min = new float[width];
+			float[] max = new float[width];
+			assertEquals(width, summary.getColumns(width, min, max, null));
+
+			// the buckets used are the widest that fit in a column
+			double framesPerColumn = ((double) frameCount) / width;
+			int span = WaveformSummary.BUCKET_SIZE;
+			while (span * 2 <= framesPerColumn) {
+				span *= 2;
+			}
+
+			for (int x = 0; x < width; x++) {
+				int start = (int) (x * framesPerColumn);
+				int end = (int) ((x + 1) * framesPerColumn);
+				float[] expected = summarize(samples, start, end);
+				assertTrue(min[x] <= expected[0]);
+				assertTrue(max[x] >= expected[1]);
+
+				int bucketStart = start / span * span;
+				int bucketEnd = Math.min(frameCount, (end + span - 1) / span
+						* span);
+				float[] widened = summarize(samples, bucketStart, bucketEnd);
+				String msg = "width = " + width + ", x = " + x;
+				assertEquals(msg, widened[0], min[x], .0001f);
+				assertEquals(msg, widened[1], max[x], .0001f);
+			}
+		}
+	}
+
+	/**
+	 * A summary that is being built should only report the columns that have
+	 * been analyzed.
+	 */
+	@Test
+	public void testProgress() {
+		int frameCount = WaveformSummary.BUCKET_SIZE * 100;
+		float[] samples = createSamples(frameCount, 2);
+		byte[] data = encode(samples);
+		WaveformSummary summary = new WaveformSummary(FORMAT, frameCount);
+
+		// add half the data, with a partial frame
+		int half = data.length / 2 + 1;
+		summary.add(data, 0, half);
+		assertFalse(summary.isComplete());
+		assertEquals(frameCount / 2, summary.getAnalyzedFrameCount());
+		float[] max = new float[10];
+		assertEquals(5, summary.getColumns(10, null, max, null));
+		assertEquals(0f, max[9]);
+
+		summary.add(data, half, data.length - half);
+		summary.finish();
+		assertEquals(10, summary.getColumns(10, null, max, null));
+		assertTrue(max[9] > 0);
+	}
+
+	/**
+	 * A summary that is written and read should describe the same audio.
+	 */
+	@Test
+	public void testPersistence() throws IOException {
+		int frameCount = 50000;
+		WaveformSummary summary = WaveformSummary
+				.create(createStream(createSamples(frameCount, 3)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		summary.write(out);
+		WaveformSummary copy = WaveformSummary.read(new ByteArrayInputStream(
+				out.toByteArray()));
+		assertTrue(copy.isComplete());
+		assertEquals(frameCount, copy.getFrameCount());
+		assertEquals(2, copy.getChannels());
+
+		for (int width : new int[] { 1, 50, 777 }) {
+			float[][] expected = new float[3][width];
+			float[][] actual = new float[3][width];
+			summary.getColumns(width, expected[0], expected[1], expected[2]);
+			copy.getColumns(width, actual[0], actual[1], actual[2]);
+			for (int a = 0; a < 3; a++) {
+				assertTrue(Arrays.equals(expected[a], actual[a]));
+			}
+		}
+	}
+
+	/**
+	 * Create random stereo samples whose amplitude changes over time.
+	 */
+	private static float[] createSamples(int frameCount, long seed) {
+		Random random = new Random(seed);
+		float[] samples = new float[frameCount * 2];
+		for (int a = 0; a < samples.length; a++) {
+			double amplitude = Math.abs(Math.sin(a / 5000.0));
+			samples[a] = (float) (amplitude * (2 * random.nextFloat() - 1));
+		}
+		// round the samples to their 16-bit values
+		PCMCodec.get(FORMAT).decode(encode(samples), 0, samples, 0,
+				samples.length);
+		return samples;
+	}
+
+	private static byte[] encode(float[] samples) {
+		byte[] data = new byte[samples.length * 2];
+		PCMCodec.get(FORMAT).encode(samples, 0, data, 0, samples.length);
+		return data;
+	}
+
+	private static AudioInputStream createStream(float[] samples) {
+		return new AudioInputStream(new ByteArrayInputStream(encode(samples)),
+				FORMAT, samples.length / 2);
+	}
+
+	/**
+	 * Return the min, max and RMS of a range of frames.
+	 */
+	private static float[] summarize(float[] samples, int startFrame,
+			int endFrame) {
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+		double sum = 0;
+		for (int a = startFrame * 2; a < endFrame * 2; a++) {
+			min = Math.min(min, samples[a]);
+			max = Math.max(max, samples[a]);
+			sum += samples[a] * samples[a];
+		}
+		return new float[] { min, max,
+				(float) Math.sqrt(sum / ((endFrame - startFrame) * 2)) };
+	}
+}
@@ -0,0 +1,263 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.desktop.cache;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.pump.io.IOUtils;
+
+import junit.framework.TestCase;
+
+public class ThumbnailDiskCacheTest extends TestCase {
+
+	File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("ThumbnailDiskCacheTest").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IOUtils.delete(dir);
+	}
+
+	/**
+	 * Thumbnails should be returned exactly as they were stored, including
+	 * after the cache is closed and reopened.
+	 */
+	@Test
+	public void testPersistence() throws IOException {
+		BufferedImage argb = createImage(40, 30, BufferedImage.TYPE_INT_ARGB, 1);
+		BufferedImage rgb = createImage(17, 64, BufferedImage.TYPE_INT_RGB, 2);
+		long key1 = ThumbnailDiskCache.getKey("/a.jpg", 1000, 5000,
+				new Dimension(64, 64));
+		long key2 = ThumbnailDiskCache.getKey("/b.jpg", 1000, 5000,
+				new Dimension(64, 64));
+
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertNull(cache.get(key1));
+			cache.put(key1, argb);
+			cache.put(key2, rgb);
+			assertEquals(argb, cache.get(key1));
+		}
+
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertEquals(2, cache.size());
+			assertEquals(argb, cache.get(key1));
+			assertEquals(rgb, cache.get(key2));
+			assertFalse(cache.get(key2).getColorModel().hasAlpha());
+
+			cache.clear();
+			assertNull(cache.get(key1));
+		}
+
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertEquals(0, cache.size());
+		}
+	}
+
+	/**
+	 * Every attribute of the source (and the thumbnail size) should change the
+	 * key.
+	 */
+	@Test
+	public void testKeys() {
+		Dimension d = new Dimension(64, 64);
+		long key = ThumbnailDiskCache.getKey("/a.jpg", 1000, 5000, d);
+		assertEquals(key, ThumbnailDiskCache.getKey("/a.jpg", 1000, 5000, d));
+		assertFalse(key == ThumbnailDiskCache.getKey("/b.jpg", 1000, 5000, d));
+		assertFalse(key == ThumbnailDiskCache.getKey("/a.jpg", 1001, 5000, d));
+		assertFalse(key == ThumbnailDiskCache.getKey("/a.jpg", 1000, 5001, d));
+		assertFalse(key == ThumbnailDiskCache.getKey("/a.jpg", 1000, 5000,
+				new Dimension(128, 128)));
+	}
+
+	/**
+	 * The pack files should stay near their maximum size, and thumbnails that
+	 * are still used should survive rotation.
+	 */
+	@Test
+	public void testRotation() throws IOException {
+		long maxBytes = 200000;
+		long favoriteKey = -1;
+		BufferedImage favorite = createImage(50, 50,
+				BufferedImage.TYPE_INT_RGB, -1);
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, maxBytes)) {
+			cache.put(favoriteKey, favorite);
+			for (int a = 0; a < 200; a++) {
+				// noise doesn't compress, so each record is about 10 KB
+				cache.put(a, createImage(50, 50, BufferedImage.TYPE_INT_RGB, a));
+				assertEquals(favorite, cache.get(favoriteKey));
+			}
+			assertNull(cache.get(0));
+			assertEquals(createImage(50, 50, BufferedImage.TYPE_INT_RGB, 199),
+					cache.get(199));
+		}
+
+		long totalSize = 0;
+		for (File file : dir.listFiles()) {
+			totalSize += file.length();
+		}
+		assertTrue("totalSize = " + totalSize, totalSize <= maxBytes);
+
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, maxBytes)) {
+			assertEquals(favorite, cache.get(favoriteKey));
+			assertNull(cache.get(0));
+			assertNotNull(cache.get(199));
+		}
+	}
+
+	/**
+	 * If the last record was only partially written, the records before it
+	 * should still be available.
+	 */
+	@Test
+	public void testTruncatedRecord() throws IOException {
+		BufferedImage image1 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 1);
+		BufferedImage image2 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 2);
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			cache.put(1, image1);
+			cache.put(2, image2);
+		}
+
+		for (File file : dir.listFiles()) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				if (raf.length() > 1000)
+					raf.setLength(raf.length() - 100);
+			}
+		}
+
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertEquals(image1, cache.get(1));
+			assertNull(cache.get(2));
+
+			// new records are written over the truncated record
+			cache.put(2, image2);
+			assertEquals(image2, cache.get(2));
+		}
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertEquals(image1, cache.get(1));
+			assertEquals(image2, cache.get(2));
+		}
+	}
+
+	/**
+	 * A record whose key or length was changed on disk after the pack was
+	 * indexed should be treated as a miss.
+	 */
+	@Test
+	public void testCorruptRecord() throws IOException {
+		BufferedImage image1 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 1);
+		BufferedImage image2 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 2);
+		BufferedImage image3 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 3);
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			cache.put(1, image1);
+			cache.put(2, image2);
+			cache.put(3, image3);
+
+			for (File file : dir.listFiles()) {
+				if (!file.getName().endsWith(".pack") || file.length() < 1000)
+					continue;
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					// the first record belongs to key 1; give it another key
+					long pos = 16;
+					raf.seek(pos + 8);
+					raf.writeLong(99);
+
+					// give the second record a length past the end of the file
+					raf.seek(pos);
+					pos += 25 + raf.readInt();
+					raf.seek(pos);
+					raf.writeInt(Integer.MAX_VALUE - 100);
+				}
+			}
+
+			assertNull(cache.get(1));
+			assertNull(cache.get(99));
+			assertNull(cache.get(2));
+			assertEquals(image3, cache.get(3));
+		}
+	}
+
+	/**
+	 * While one cache uses a directory, another cache for the same directory
+	 * should only keep its thumbnails in memory.
+	 */
+	@Test
+	public void testLockedDirectory() throws IOException {
+		BufferedImage image1 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 1);
+		BufferedImage image2 = createImage(30, 30,
+				BufferedImage.TYPE_INT_ARGB, 2);
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertTrue(cache.isPersistent());
+			cache.put(1, image1);
+
+			try (ThumbnailDiskCache other = new ThumbnailDiskCache(dir,
+					1000000)) {
+				assertFalse(other.isPersistent());
+				assertNull(other.get(1));
+				other.put(2, image2);
+				assertEquals(image2, other.get(2));
+				assertEquals(1, other.size());
+			}
+
+			assertNull(cache.get(2));
+			assertEquals(image1, cache.get(1));
+		}
+
+		// once the first cache is closed the directory can be used again:
+		try (ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000000)) {
+			assertTrue(cache.isPersistent());
+			assertEquals(1, cache.size());
+			assertEquals(image1, cache.get(1));
+		}
+	}
+
+	private static BufferedImage createImage(int width, int height, int type,
+			long seed) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		Random random = new Random(seed);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				bi.setRGB(x, y, random.nextInt());
+			}
+		}
+		return bi;
+	}
+
+	private static void assertEquals(BufferedImage expected,
+			BufferedImage actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals("(" + x + ", " + y + ")", expected.getRGB(x, y),
+						actual.getRGB(x, y));
+			}
+		}
+	}
+}
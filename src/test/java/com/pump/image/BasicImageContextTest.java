@@ -0,0 +1,552 @@
+package com.pump.image;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.PerspectiveTransform;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class BasicImageContextTest extends TestCase {
+
+	static final Object[] HINTS = new Object[] {
+			RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+			RenderingHints.VALUE_INTERPOLATION_BILINEAR,
+			RenderingHints.VALUE_INTERPOLATION_BICUBIC };
+
+	/**
+	 * This draws tiles the way BasicImageContext originally did: by applying
+	 * the full transform to every pixel (and every sample).
+	 */
+	static class ReferenceImageContext extends BasicImageContext {
+
+		ReferenceImageContext(BufferedImage bi) {
+			super(bi, 0);
+		}
+
+		@Override
+		protected void drawTile(int minXi, int minYi, int maxXi, int maxYi,
+				Object interpolationHint, int[] otherPixels,
+				PerspectiveTransform pt, boolean oHasAlpha, int oWidth,
+				int oHeight, int oStride, HorizontalStripFunction stripFunction) {
+
+			double transformedX, transformedY;
+			double m00, m01, m02, m10, m11, m12, m20, m21, m22, w;
+
+			{
+				double[][] matrix = new double[3][3];
+				pt.getMatrix(matrix);
+				m00 = matrix[0][0];
+				m01 = matrix[0][1];
+				m02 = matrix[0][2];
+				m10 = matrix[1][0];
+				m11 = matrix[1][1];
+				m12 = matrix[1][2];
+				m20 = matrix[2][0];
+				m21 = matrix[2][1];
+				m22 = matrix[2][2];
+			}
+
+			int[] xEndpoints = new int[2];
+
+			if (RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+					.equals(interpolationHint)) {
+				if (oHasAlpha) {
+					for (int y = minYi; y <= maxYi; y++) {
+						int yw = y * stride;
+						double yd = y;
+						stripFunction.getXEndpoints(y, xEndpoints);
+						for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
+							double xd = x;
+
+							// transform (x,y) to (transformedX, transformedY):
+							w = m20 * xd + m21 * yd + m22;
+							transformedX = (m00 * xd + m01 * yd + m02) / w;
+							transformedY = (m10 * xd + m11 * yd + m12) / w;
+
+							int newX = (int) (transformedX + .5);
+							int newY = (int) (transformedY + .5);
+							if (newY >= 0 && newY < oHeight && newX >= 0
+									&& newX < oWidth) {
+								int src = otherPixels[newY * oStride + newX];
+								int srcA = src >>> 24;
+								if (srcA == 255) {
+									data[yw + x] = src;
+								} else if (srcA > 0) {
+									int r = (src >> 16) & 0xff;
+									int g = (src >> 8) & 0xff;
+									int b = src & 0xff;
+									int dst = data[yw + x];
+									int dstA = (dst >> 24) & 0xff;
+									int dstAX = (dstA) * (255 - srcA);
+									int dstR = (dst >> 16) & 0xff;
+									int dstG = (dst >> 8) & 0xff;
+									int dstB = dst & 0xff;
+									int srcAX = srcA * 255;
+									int resA = srcAX + dstAX;
+
+									if (resA != 0) {
+										r = (r * srcAX + dstR * dstAX) / resA;
+										g = (g * srcAX + dstG * dstAX) / resA;
+										b = (b * srcAX + dstB * dstAX) / resA;
+										data[yw + x] = (resA / 255 << 24)
+												| ((r > 255) ? 0xff0000 : r << 16)
+												| ((g > 255) ? 0xff00 : g << 8)
+												| ((b > 255) ? 0xff : b);
+									}
+								}
+							}
+						}
+					}
+				} else {
+					for (int y = minYi; y <= maxYi; y++) {
+						int yw = y * stride;
+						double yd = y;
+						stripFunction.getXEndpoints(y, xEndpoints);
+						for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
+							double xd = x;
+
+							// transform (x,y) to (transformedX, transformedY):
+							w = m20 * xd + m21 * yd + m22;
+							transformedX = (m00 * xd + m01 * yd + m02) / w;
+							transformedY = (m10 * xd + m11 * yd + m12) / w;
+
+							int newX = (int) (transformedX + .5);
+							int newY = (int) (transformedY + .5);
+							if (newY >= 0 && newY < oHeight && newX >= 0
+									&& newX < oWidth) {
+								data[yw + x] = otherPixels[newY * oStride + newX];
+							}
+						}
+					}
+				}
+			} else {
+				int windowLength;
+				if (RenderingHints.VALUE_INTERPOLATION_BICUBIC
+						.equals(interpolationHint)) {
+					windowLength = 4;
+				} else {
+					windowLength = 2;
+				}
+				double windowLengthD = windowLength;
+				double incr = 1.0 / (windowLengthD - 1.0);
+				int windowArea = windowLength * windowLength;
+
+				if (oHasAlpha) {
+					for (int y = minYi; y <= maxYi; y++) {
+						int yw = y * stride;
+						double yd = y;
+						stripFunction.getXEndpoints(y, xEndpoints);
+						for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
+							double xd = x;
+							int samples = windowArea;
+							int srcA = 0;
+							int r = 0;
+							int g = 0;
+							int b = 0;
+							for (double dx = 0; dx < windowLengthD; dx++) {
+								for (double dy = 0; dy < windowLengthD; dy++) {
+									double x2 = xd + dx * incr;
+									double y2 = yd + dy * incr;
+
+									// transform (x,y) to (transformedX,
+									// transformedY):
+									w = m20 * x2 + m21 * y2 + m22;
+									transformedX = (m00 * x2 + m01 * y2 + m02) / w;
+									transformedY = (m10 * x2 + m11 * y2 + m12) / w;
+
+									int newX = (int) (transformedX - .00001);
+									int newY = (int) (transformedY - .00001);
+									if (newY >= 0 && newY < oHeight && newX >= 0
+											&& newX < oWidth) {
+										int opix = otherPixels[newY * oStride
+												+ newX];
+										srcA += (opix >> 24) & 0xff;
+										r += opix & 0xff0000;
+										g += opix & 0xff00;
+										b += opix & 0xff;
+									} else {
+										samples--;
+									}
+								}
+							}
+							if (samples > 0) {
+								srcA = srcA / samples;
+								r = (r >>> 16) / samples;
+								g = (g >>> 8) / samples;
+								b = b / samples;
+								if (srcA == 255) {
+									data[yw + x] = 0xff000000 | (r << 16)
+											| (g << 8) | b;
+								} else if (srcA > 0) {
+									int dst = data[yw + x];
+									int dstAX = (dst >>> 24) * (255 - srcA);
+									int dstR = (dst >> 16) & 0xff;
+									int dstG = (dst >> 8) & 0xff;
+									int dstB = dst & 0xff;
+									int srcAX = srcA * 255;
+									int resA = (srcAX + dstAX);
+
+									if (resA != 0) {
+										r = (r * srcAX + dstR * dstAX) / resA;
+										g = (g * srcAX + dstG * dstAX) / resA;
+										b = (b * srcAX + dstB * dstAX) / resA;
+										data[yw + x] = (resA / 255 << 24)
+												| ((r > 255) ? 0xff0000 : r << 16)
+												| ((g > 255) ? 0xff00 : g << 8)
+												| ((b > 255) ? 0xff : b);
+									}
+								}
+							}
+						}
+					}
+				} else {
+					for (int y = minYi; y <= maxYi; y++) {
+						int yw = y * stride;
+						double yd = y;
+						stripFunction.getXEndpoints(y, xEndpoints);
+						for (int x = xEndpoints[0]; x <= xEndpoints[1]; x++) {
+							double xd = x;
+
+							int samples = windowArea;
+							int srcA = 0;
+							int r = 0;
+							int g = 0;
+							int b = 0;
+							for (double dx = 0; dx < windowLengthD; dx++) {
+								for (double dy = 0; dy < windowLengthD; dy++) {
+									double x2 = xd + dx * incr;
+									double y2 = yd + dy * incr;
+
+									// transform (x,y) to (transformedX,
+									// transformedY):
+									w = m20 * x2 + m21 * y2 + m22;
+									transformedX = (m00 * x2 + m01 * y2 + m02) / w;
+									transformedY = (m10 * x2 + m11 * y2 + m12) / w;
+
+									int newX = (int) (transformedX - .00001);
+									int newY = (int) (transformedY - .00001);
+									if (newY >= 0 && newY < oHeight && newX >= 0
+											&& newX < oWidth) {
+										int opix = otherPixels[newY * oStride
+												+ newX];
+										srcA += 255;
+										r += opix & 0xff0000;
+										g += opix & 0xff00;
+										b += opix & 0xff;
+									} else {
+										samples--;
+									}
+								}
+							}
+							if (samples > 0) {
+								srcA = srcA / samples;
+								r = (r >>> 16) / samples;
+								g = (g >>> 8) / samples;
+								b = b / samples;
+								if (srcA == 255) {
+									data[yw + x] = 0xff000000 | (r << 16)
+											| (g << 8) | b;
+								} else if (srcA > 0) {
+									int dst = data[yw + x];
+									int dstAX = (dst >>> 24) * (255 - srcA);
+									int dstR = (dst >> 16) & 0xff;
+									int dstG = (dst >> 8) & 0xff;
+									int dstB = dst & 0xff;
+									int srcAX = srcA * 255;
+									int resA = (srcAX + dstAX);
+
+									if (resA != 0) {
+										r = (r * srcAX + dstR * dstAX) / resA;
+										g = (g * srcAX + dstG * dstAX) / resA;
+										b = (b * srcAX + dstB * dstAX) / resA;
+										data[yw + x] = (resA / 255 << 24)
+												| ((r > 255) ? 0xff0000 : r << 16)
+												| ((g > 255) ? 0xff00 : g << 8)
+												| ((b > 255) ? 0xff : b);
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	static BufferedImage createSource(boolean alpha, int seed) {
+		BufferedImage bi = new BufferedImage(120, 90,
+				alpha ? BufferedImage.TYPE_INT_ARGB
+						: BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, new Color(0xc0ff8000, true), 120,
+				90, new Color(0x40208060 + seed, true)));
+		g.fillRect(0, 0, 120, 90);
+		g.setColor(new Color(0x200080ff, true));
+		g.fillOval(20, 10, 70, 60);
+		g.setColor(Color.black);
+		g.drawLine(0, 45, 120, 45);
+		g.dispose();
+		return bi;
+	}
+
+	static BufferedImage createDestination() {
+		BufferedImage bi = new BufferedImage(300, 240,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(new Color(0x80008000, true));
+		g.fillRect(0, 0, 300, 120);
+		g.dispose();
+		return bi;
+	}
+
+	static void draw(ImageContext context, Object interpolationHint,
+			long seed) {
+		context.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				interpolationHint);
+		Random random = new Random(seed);
+		for (int a = 0; a < 8; a++) {
+			double x = random.nextInt(300) - 60;
+			double y = random.nextInt(240) - 60;
+			context.drawImage(
+					createSource(a % 2 == 0, a),
+					new Point2D.Double(x, y),
+					new Point2D.Double(x + 40 + random.nextInt(160), y
+							+ random.nextInt(60) - 30),
+					new Point2D.Double(x + 40 + random.nextInt(160), y + 40
+							+ random.nextInt(160)),
+					new Point2D.Double(x + random.nextInt(60) - 30, y + 40
+							+ random.nextInt(160)));
+		}
+		context.dispose();
+	}
+
+	/**
+	 * Draw scaled rectangles and parallelograms.
+	 */
+	static void drawAffine(ImageContext context, Object interpolationHint,
+			long seed) {
+		context.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				interpolationHint);
+		Random random = new Random(seed);
+		for (int a = 0; a < 8; a++) {
+			double x = random.nextInt(300) - 60 + random.nextDouble();
+			double y = random.nextInt(240) - 60 + random.nextDouble();
+			double w = 20 + random.nextInt(200);
+			double h = 20 + random.nextInt(160);
+			double skew = a % 2 == 0 ? 0 : random.nextInt(80) - 40;
+			context.drawImage(createSource(a % 3 == 0, a),
+					new Point2D.Double(x, y), new Point2D.Double(x + w, y
+							+ skew), new Point2D.Double(x + w, y + skew + h),
+					new Point2D.Double(x, y + h));
+		}
+		context.dispose();
+	}
+
+	/**
+	 * The optimized rasterizer should match the original per-pixel transform.
+	 * Rounding differences may move a sample to a neighboring pixel, so a few
+	 * pixels may differ slightly.
+	 */
+	@Test
+	public void testMatchesReference() {
+		for (Object hint : HINTS) {
+			for (long seed = 0; seed < 5; seed++) {
+				BufferedImage expected = createDestination();
+				draw(new ReferenceImageContext(expected), hint, seed);
+				BufferedImage actual = createDestination();
+				draw(new BasicImageContext(actual, 0), hint, seed);
+				assertSimilar(hint + ", seed " + seed, expected, actual);
+			}
+		}
+	}
+
+	/**
+	 * Affine transforms (scaled rectangles and parallelograms) use
+	 * fixed-point texel coordinates, which should also match the original
+	 * per-pixel transform.
+	 */
+	@Test
+	public void testAffineMatchesReference() {
+		for (Object hint : HINTS) {
+			for (long seed = 0; seed < 5; seed++) {
+				BufferedImage expected = createDestination();
+				drawAffine(new ReferenceImageContext(expected), hint, seed);
+				BufferedImage actual = createDestination();
+				drawAffine(new BasicImageContext(actual, 0), hint, seed);
+				assertSimilar(hint + ", seed " + seed, expected, actual);
+			}
+		}
+	}
+
+	/**
+	 * The blend function should match the original integer division for
+	 * every source and destination alpha, and for every combination of source
+	 * and destination channel values. (The red channel covers every
+	 * combination; the green and blue channels use other combinations.)
+	 * <p>
+	 * This is exhaustive for opaque and transparent destinations; for other
+	 * destination alphas it checks a subset of the destination channels.
+	 */
+	@Test
+	public void testBlend() {
+		int[] someChannels = new int[] { 0, 1, 2, 127, 128, 200, 254, 255 };
+		for (int srcA = 0; srcA <= 255; srcA++) {
+			for (int dstA = 0; dstA <= 255; dstA++) {
+				boolean exhaustive = dstA == 0 || dstA == 255;
+				for (int r = 0; r <= 255; r++) {
+					int g = 255 - r;
+					int b = r ^ 0xaa;
+					int channelCount = exhaustive ? 256 : someChannels.length;
+					for (int i = 0; i < channelCount; i++) {
+						int d = exhaustive ? i : someChannels[i];
+						int dst = (dstA << 24) | (d << 16) | ((255 - d) << 8)
+								| (d ^ 0x55);
+						int expected = blendWithDivision(dst, srcA, r, g, b);
+						int actual = BasicImageContext.blend(dst, srcA, r, g, b);
+						if (expected != actual)
+							fail("blend(" + Integer.toHexString(dst) + ", "
+									+ srcA + ", " + r + ", " + g + ", " + b
+									+ ") = " + Integer.toHexString(actual)
+									+ ", not " + Integer.toHexString(expected));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This is how BasicImageContext originally composited pixels.
+	 */
+	static int blendWithDivision(int dst, int srcA, int r, int g, int b) {
+		if (srcA == 255)
+			return 0xff000000 | (r << 16) | (g << 8) | b;
+		if (srcA == 0)
+			return dst;
+		int dstAX = (dst >>> 24) * (255 - srcA);
+		int dstR = (dst >> 16) & 0xff;
+		int dstG = (dst >> 8) & 0xff;
+		int dstB = dst & 0xff;
+		int srcAX = srcA * 255;
+		int resA = srcAX + dstAX;
+		r = (r * srcAX + dstR * dstAX) / resA;
+		g = (g * srcAX + dstG * dstAX) / resA;
+		b = (b * srcAX + dstB * dstAX) / resA;
+		return (resA / 255 << 24) | ((r > 255) ? 0xff0000 : r << 16)
+				| ((g > 255) ? 0xff00 : g << 8) | ((b > 255) ? 0xff : b);
+	}
+
+	static void assertSimilar(String id, BufferedImage expected,
+			BufferedImage actual) {
+		int differentPixels = 0;
+		int maxDifference = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int p1 = expected.getRGB(x, y);
+				int p2 = actual.getRGB(x, y);
+				if (p1 != p2) {
+					differentPixels++;
+					for (int shift = 0; shift < 32; shift += 8) {
+						int d = Math.abs(((p1 >>> shift) & 0xff)
+								- ((p2 >>> shift) & 0xff));
+						maxDifference = Math.max(maxDifference, d);
+					}
+				}
+			}
+		}
+		int pixelCount = expected.getWidth() * expected.getHeight();
+		assertTrue(id + ": " + differentPixels + " pixels differ",
+				differentPixels <= pixelCount / 1000);
+		assertTrue(id + ": max difference " + maxDifference,
+				differentPixels < 10 || maxDifference <= 2);
+	}
+
+	/**
+	 * Overlapping translucent draws on a multithreaded context should produce
+	 * exactly the same pixels as a single-threaded context. This uses a
+	 * ForkJoinPool (which splits tiles recursively) and a ThreadPoolExecutor
+	 * that delays its tasks randomly (so tiles finish out of order, and later
+	 * draws have to wait for the earlier draws they overlap).
+	 */
+	@Test
+	public void testMultithreadedMatchesSingleThreaded() throws Exception {
+		Object[] hints = new Object[] {
+				RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+				RenderingHints.VALUE_INTERPOLATION_BICUBIC };
+		for (Object hint : hints) {
+			for (long seed = 0; seed < 3; seed++) {
+				BufferedImage expected = createDestination();
+				draw(new BasicImageContext(expected, 0), hint, seed);
+
+				ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+				final Random delays = new Random(seed);
+				ExecutorService threadPool = new ThreadPoolExecutor(3, 3, 1,
+						TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+					@Override
+					protected void beforeExecute(Thread t, Runnable r) {
+						int delay;
+						synchronized (delays) {
+							delay = delays.nextInt(3);
+						}
+						try {
+							Thread.sleep(delay);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				};
+				try {
+					for (ExecutorService executor : new ExecutorService[] {
+							forkJoinPool, threadPool }) {
+						BufferedImage actual = createDestination();
+						final AtomicInteger tileCount = new AtomicInteger();
+						draw(new BasicImageContext(actual, executor) {
+							@Override
+							protected void drawTile(int minXi, int minYi,
+									int maxXi, int maxYi,
+									Object interpolationHint,
+									int[] otherPixels, PerspectiveTransform pt,
+									boolean oHasAlpha, int oWidth, int oHeight,
+									int oStride,
+									HorizontalStripFunction stripFunction) {
+								tileCount.incrementAndGet();
+								super.drawTile(minXi, minYi, maxXi, maxYi,
+										interpolationHint, otherPixels, pt,
+										oHasAlpha, oWidth, oHeight, oStride,
+										stripFunction);
+							}
+						}, hint, seed);
+
+						String id = hint + ", seed " + seed + ", "
+								+ executor.getClass().getSimpleName();
+						assertTrue(id + ": " + tileCount, tileCount.get() > 8);
+						assertTrue(id, Arrays.equals(getPixels(expected),
+								getPixels(actual)));
+					}
+				} finally {
+					forkJoinPool.shutdown();
+					threadPool.shutdown();
+				}
+			}
+		}
+	}
+
+	static int[] getPixels(BufferedImage bi) {
+		return ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+	}
+}
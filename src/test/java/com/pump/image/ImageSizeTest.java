@@ -0,0 +1,62 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class ImageSizeTest extends TestCase {
+
+	/**
+	 * Each format's header should report the right size, and reading it
+	 * should only consume a small part of the file.
+	 */
+	@Test
+	public void testGetFromHeader() throws IOException {
+		BufferedImage bi = new BufferedImage(317, 203,
+				BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(0);
+		for (int y = 0; y < bi.getHeight(); y++) {
+			for (int x = 0; x < bi.getWidth(); x++) {
+				bi.setRGB(x, y, random.nextInt());
+			}
+		}
+		for (String format : new String[] { "jpg", "png", "gif", "bmp" }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertTrue(format, ImageIO.write(bi, format, out));
+			byte[] data = out.toByteArray();
+			ByteArrayInputStream in = new ByteArrayInputStream(data);
+			assertEquals(format, new Dimension(317, 203),
+					ImageSize.getFromHeader(in));
+			int bytesRead = data.length - in.available();
+			assertTrue(format + " read " + bytesRead + " bytes",
+					bytesRead < 1024);
+		}
+	}
+
+	@Test
+	public void testGetFromHeaderUnknownFormat() throws IOException {
+		byte[] data = "This is not an image.".getBytes();
+		assertNull(ImageSize.getFromHeader(new ByteArrayInputStream(data)));
+		assertNull(ImageSize.getFromHeader(new ByteArrayInputStream(
+				new byte[0])));
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.bmp;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class BmpDecoderTest extends TestCase {
+
+	static final Rectangle[] REGIONS = new Rectangle[] { null,
+			new Rectangle(0, 0, 1, 1), new Rectangle(13, 7, 50, 31),
+			new Rectangle(0, 40, 97, 1), new Rectangle(96, 0, 1, 61),
+			new Rectangle(31, 20, 66, 41) };
+
+	static final int[] DESTINATION_TYPES = new int[] { -1,
+			BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+			BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+			BufferedImage.TYPE_BYTE_GRAY };
+
+	/**
+	 * Every region of 24-bit and 32-bit BMPs (bottom-up and top-down) should
+	 * match the image read through an InputStream, for every type of
+	 * destination image.
+	 */
+	@Test
+	public void testRegions() throws IOException {
+		for (boolean alpha : new boolean[] { false, true }) {
+			byte[] bmp = encode(createImage(97, 61, alpha));
+			assertEquals(alpha ? 32 : 24, bmp[24]);
+			for (byte[] data : new byte[][] { bmp, flip(bmp) }) {
+				BufferedImage expected = BmpDecoder
+						.readImage(new ByteArrayInputStream(data));
+				for (Rectangle roi : REGIONS) {
+					for (int type : DESTINATION_TYPES) {
+						BufferedImage dst = type == -1 ? null
+								: new BufferedImage(100, 70, type);
+						BufferedImage actual = BmpDecoder.readImage(
+								ByteBuffer.wrap(data), roi, dst);
+						assertRegion(alpha + ", " + roi + ", " + type,
+								expected, roi, actual);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A destination that is a subimage should be filled without touching the
+	 * pixels around it.
+	 */
+	@Test
+	public void testSubimageDestination() throws IOException {
+		byte[] bmp = encode(createImage(97, 61, true));
+		BufferedImage expected = BmpDecoder.readImage(new ByteArrayInputStream(
+				bmp));
+		Rectangle roi = new Rectangle(10, 5, 40, 30);
+		for (int type : new int[] { BufferedImage.TYPE_INT_ARGB,
+				BufferedImage.TYPE_4BYTE_ABGR }) {
+			BufferedImage parent = new BufferedImage(60, 50, type);
+			BufferedImage dst = parent.getSubimage(7, 9, 45, 35);
+			BufferedImage actual = BmpDecoder.readImage(ByteBuffer.wrap(bmp),
+					roi, dst);
+			assertSame(dst, actual);
+			assertRegion("type " + type, expected, roi, actual);
+			for (int y = 0; y < parent.getHeight(); y++) {
+				for (int x = 0; x < parent.getWidth(); x++) {
+					if (x < 7 || y < 9 || x >= 7 + roi.width
+							|| y >= 9 + roi.height)
+						assertEquals(0, parent.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indexed BMPs go through the BmpDecoderIterator, but regions of them
+	 * should still be read correctly.
+	 */
+	@Test
+	public void testIndexedRegions() throws IOException {
+		byte[] bmp = createIndexedBmp(37, 23);
+		BufferedImage expected = BmpDecoder.readImage(new ByteArrayInputStream(
+				bmp));
+		assertEquals(BufferedImage.TYPE_BYTE_INDEXED, expected.getType());
+		for (Rectangle roi : new Rectangle[] { null,
+				new Rectangle(3, 4, 20, 11), new Rectangle(36, 0, 1, 23) }) {
+			BufferedImage actual = BmpDecoder.readImage(ByteBuffer.wrap(bmp),
+					roi, null);
+			assertRegion(String.valueOf(roi), expected, roi, actual);
+		}
+	}
+
+	/**
+	 * Reading from a file should match reading from a stream, and the file
+	 * should not stay open (or locked) afterwards.
+	 */
+	@Test
+	public void testFile() throws IOException {
+		byte[] bmp = encode(createImage(97, 61, true));
+		BufferedImage expected = BmpDecoder.readImage(new ByteArrayInputStream(
+				bmp));
+		File file = File.createTempFile("BmpDecoderTest", ".bmp");
+		try {
+			Files.write(file.toPath(), bmp);
+			Rectangle roi = new Rectangle(31, 20, 66, 41);
+			assertRegion("file", expected, roi,
+					BmpDecoder.readImage(file, roi, null));
+			assertRegion("file", expected, null,
+					BmpDecoder.readImage(file, null));
+		} finally {
+			assertTrue(file.delete());
+		}
+	}
+
+	private static void assertRegion(String id, BufferedImage expected,
+			Rectangle roi, BufferedImage actual) {
+		if (roi == null)
+			roi = new Rectangle(0, 0, expected.getWidth(), expected.getHeight());
+		assertTrue(id, actual.getWidth() >= roi.width);
+		assertTrue(id, actual.getHeight() >= roi.height);
+		assertFalse(id, actual.getType() == BufferedImage.TYPE_BYTE_GRAY);
+		boolean hasAlpha = actual.getColorModel().hasAlpha();
+		for (int y = 0; y < roi.height; y++) {
+			for (int x = 0; x < roi.width; x++) {
+				int e = expected.getRGB(roi.x + x, roi.y + y);
+				if (!hasAlpha)
+					e = e | 0xff000000;
+				int a = actual.getRGB(x, y);
+				if (e != a)
+					fail(id + " (" + x + ", " + y + "): "
+							+ Integer.toUnsignedString(e, 16) + " != "
+							+ Integer.toUnsignedString(a, 16));
+			}
+		}
+	}
+
+	private static BufferedImage createImage(int width, int height,
+			boolean alpha) {
+		BufferedImage bi = new BufferedImage(width, height,
+				alpha ? BufferedImage.TYPE_INT_ARGB
+						: BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, new Color(0x80ff0000, true), width,
+				height, new Color(0x0000ff)));
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		Random random = new Random(0);
+		for (int a = 0; a < width * height / 4; a++) {
+			bi.setRGB(random.nextInt(width), random.nextInt(height),
+					random.nextInt());
+		}
+		return bi;
+	}
+
+	private static byte[] encode(BufferedImage bi) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BmpEncoder.write(bi, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Convert a BMP from the BmpEncoder (which uses the 12-byte OS/2 header)
+	 * to a top-down BMP with a 40-byte header and a negative height.
+	 */
+	private static byte[] flip(byte[] bmp) {
+		ByteBuffer src = ByteBuffer.wrap(bmp).order(ByteOrder.LITTLE_ENDIAN);
+		int srcOffset = src.getInt(10);
+		int width = src.getShort(18) & 0xffff;
+		int height = src.getShort(20) & 0xffff;
+		short bitsPerPixel = src.getShort(24);
+		int scanline = BmpEncoder.getScanlineSize(width, bitsPerPixel / 8);
+
+		int bitmapOffset = 14 + 40;
+		ByteBuffer buffer = ByteBuffer.allocate(
+				bitmapOffset + scanline * height).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte) 'B').put((byte) 'M').putInt(buffer.capacity())
+				.putInt(0).putInt(bitmapOffset);
+		buffer.putInt(40).putInt(width).putInt(-height).putShort((short) 1)
+				.putShort(bitsPerPixel).putInt(0).putInt(scanline * height)
+				.putInt(2835).putInt(2835).putInt(0).putInt(0);
+		for (int y = 0; y < height; y++) {
+			buffer.put(bmp, srcOffset + (height - 1 - y) * scanline, scanline);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Create an 8-bit BMP with a random palette and random pixels.
+	 */
+	private static byte[] createIndexedBmp(int width, int height) {
+		int scanline = (width + 3) / 4 * 4;
+		int bitmapOffset = 14 + 40 + 256 * 4;
+		ByteBuffer buffer = ByteBuffer.allocate(
+				bitmapOffset + scanline * height).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.put((byte) 'B').put((byte) 'M').putInt(buffer.capacity())
+				.putInt(0).putInt(bitmapOffset);
+		buffer.putInt(40).putInt(width).putInt(height).putShort((short) 1)
+				.putShort((short) 8).putInt(0).putInt(scanline * height)
+				.putInt(2835).putInt(2835).putInt(256).putInt(0);
+		Random random = new Random(0);
+		for (int a = 0; a < 256; a++) {
+			buffer.putInt(random.nextInt() & 0xffffff);
+		}
+		byte[] row = new byte[scanline];
+		for (int y = 0; y < height; y++) {
+			random.nextBytes(row);
+			buffer.put(row);
+		}
+		return buffer.array();
+	}
+}
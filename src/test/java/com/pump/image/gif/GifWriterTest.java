@@ -0,0 +1,206 @@
+package com.pump.image.gif;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.pump.animation.ResettableAnimationReader;
+import com.pump.image.gif.GifWriter.ColorReduction;
+
+import junit.framework.TestCase;
+
+public class GifWriterTest extends TestCase {
+
+	/**
+	 * A few circles that move across a gradient.
+	 */
+	static class TestAnimation implements ResettableAnimationReader {
+		static final int FRAME_COUNT = 12;
+
+		int frameIndex = 0;
+
+		@Override
+		public BufferedImage getNextFrame(boolean cloneImage) {
+			if (frameIndex == FRAME_COUNT)
+				return null;
+			BufferedImage bi = new BufferedImage(getWidth(), getHeight(),
+					BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			for (int y = 0; y < bi.getHeight(); y++) {
+				g.setColor(new Color(y * 2, 100 + frameIndex * 10, 255 - y));
+				g.drawLine(0, y, bi.getWidth(), y);
+			}
+			for (int a = 0; a < 5; a++) {
+				g.setColor(new Color(40 * a, 255 - 40 * a, 128));
+				g.fillOval(10 * frameIndex + 30 * a, 20 + 15 * a, 25, 25);
+			}
+			g.dispose();
+			frameIndex++;
+			return bi;
+		}
+
+		@Override
+		public double getDuration() {
+			return FRAME_COUNT * getFrameDuration();
+		}
+
+		@Override
+		public int getFrameCount() {
+			return FRAME_COUNT;
+		}
+
+		@Override
+		public int getLoopCount() {
+			return LOOP_FOREVER;
+		}
+
+		@Override
+		public double getFrameDuration() {
+			// this exercises the rounding to centiseconds
+			return .037;
+		}
+
+		@Override
+		public int getWidth() {
+			return 160;
+		}
+
+		@Override
+		public int getHeight() {
+			return 120;
+		}
+
+		@Override
+		public void reset() {
+			frameIndex = 0;
+		}
+	}
+
+	/**
+	 * A pipelined GifWriter should write exactly the same file as the
+	 * sequential GifWriter.
+	 */
+	@Test
+	public void testPipelinedMatchesSequential() throws Exception {
+		ForkJoinPool quantizePool = new ForkJoinPool(3);
+		ForkJoinPool encodePool = new ForkJoinPool(2);
+		try {
+			for (ColorReduction colorReduction : ColorReduction.values()) {
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				GifWriter.write(expected, new TestAnimation(), colorReduction,
+						true);
+
+				for (int maxPendingFrames : new int[] { 1, 4 }) {
+					ByteArrayOutputStream actual = new ByteArrayOutputStream();
+					GifWriter.writePipelined(actual, new TestAnimation(),
+							colorReduction, true, quantizePool, encodePool,
+							maxPendingFrames);
+					assertTrue(colorReduction + ", " + maxPendingFrames,
+							Arrays.equals(expected.toByteArray(),
+									actual.toByteArray()));
+				}
+			}
+		} finally {
+			quantizePool.shutdown();
+			encodePool.shutdown();
+		}
+	}
+
+	/**
+	 * This reads a list of frames.
+	 */
+	static class FrameListAnimation extends TestAnimation {
+		final List<BufferedImage> frames;
+
+		FrameListAnimation(List<BufferedImage> frames) {
+			this.frames = frames;
+		}
+
+		@Override
+		public BufferedImage getNextFrame(boolean cloneImage) {
+			return frameIndex < frames.size() ? frames.get(frameIndex++) : null;
+		}
+
+		@Override
+		public int getFrameCount() {
+			return frames.size();
+		}
+
+		@Override
+		public double getFrameDuration() {
+			return .05;
+		}
+	}
+
+	/**
+	 * The BasicGifEncoder crops frames, replaces unchanged pixels with the
+	 * transparent pixel and picks disposal methods. Decoding the GIF should
+	 * still produce the original frames.
+	 * <p>
+	 * These frames only use a few flat colors, so the quantization is exact.
+	 */
+	@Test
+	public void testFrameDifferenceRoundTrip() throws Exception {
+		List<BufferedImage> frames = new ArrayList<>();
+		for (int a = 0; a < 16; a++) {
+			BufferedImage bi = new BufferedImage(120, 90,
+					BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			if (a < 10 || a > 12) {
+				g.setColor(Color.white);
+				g.fillRect(0, 0, 120, 90);
+			}
+			// this sprite moves, then pauses, then returns to its start
+			int x = a < 6 ? 10 + 8 * a : (a < 9 ? 50 : 10);
+			g.setColor(Color.red);
+			g.fillRect(x, 30, 20, 20);
+			if (a % 4 == 1) {
+				// a blinking cursor
+				g.setColor(Color.black);
+				g.fillRect(100, 70, 2, 10);
+			}
+			if (a == 12 || a == 14) {
+				// a hole that must be erased
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(0, 0, 40, 20);
+			}
+			g.dispose();
+			frames.add(bi);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GifWriter.write(out, new FrameListAnimation(frames),
+				ColorReduction.FROM_ALL_FRAMES, true);
+
+		List<int[]> expected = new ArrayList<>();
+		for (BufferedImage frame : frames) {
+			int[] pixels = BasicGifEncoder.getPixels(frame, true);
+			if (expected.isEmpty()
+					|| !Arrays.equals(expected.get(expected.size() - 1),
+							pixels))
+				expected.add(pixels);
+		}
+
+		GifReader reader = new GifReader(new ByteArrayInputStream(
+				out.toByteArray()), true);
+		BufferedImage frame;
+		int ctr = 0;
+		while ((frame = reader.getNextFrame(true)) != null) {
+			assertTrue(ctr < expected.size());
+			int[] actual = BasicGifEncoder.getPixels(frame, true);
+			assertTrue("frame " + ctr,
+					Arrays.equals(expected.get(ctr), actual));
+			ctr++;
+		}
+		assertEquals(expected.size(), ctr);
+	}
+}
@@ -0,0 +1,183 @@
+package com.pump.image.gif;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.pump.image.gif.GifWriter.ColorReduction;
+import com.pump.image.gif.GifWriterTest.FrameListAnimation;
+import com.pump.image.gif.block.GifGlobalColorTable;
+import com.pump.image.gif.block.GifGraphicControlExtension;
+import com.pump.image.gif.block.GifGraphicControlExtension.DisposalMethod;
+import com.pump.image.gif.block.GifHeaderBlock;
+import com.pump.image.gif.block.GifImageDataBlock;
+import com.pump.image.gif.block.GifImageDescriptor;
+import com.pump.image.gif.block.GifLogicalScreenDescriptor;
+import com.pump.image.gif.block.GifTrailerBlock;
+
+import junit.framework.TestCase;
+
+public class SeekableGifReaderTest extends TestCase {
+
+	/**
+	 * Create a GIF that uses several disposal methods, with a few frames that
+	 * replace the whole image.
+	 */
+	static byte[] createGif() throws Exception {
+		List<BufferedImage> frames = new ArrayList<>();
+		for (int a = 0; a < 30; a++) {
+			BufferedImage bi = new BufferedImage(100, 80,
+					BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			g.setColor(a / 10 == 1 ? Color.yellow : Color.white);
+			g.fillRect(0, 0, 100, 80);
+			g.setColor(Color.blue);
+			g.fillRect(5 + 3 * (a % 10), 10, 15, 15);
+			if (a % 7 == 3) {
+				// a hole that must be erased
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(60, 40, 30, 30);
+			}
+			g.dispose();
+			frames.add(bi);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GifWriter.write(out, new FrameListAnimation(frames),
+				ColorReduction.FROM_ALL_FRAMES, true);
+		return out.toByteArray();
+	}
+
+	static List<int[]> readSequentially(byte[] gif) throws Exception {
+		List<int[]> frames = new ArrayList<>();
+		GifReader reader = new GifReader(new ByteArrayInputStream(gif), true);
+		BufferedImage bi;
+		while ((bi = reader.getNextFrame(false)) != null) {
+			frames.add(bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null, 0,
+					bi.getWidth()));
+		}
+		return frames;
+	}
+
+	/**
+	 * Frames requested in any order should match the frames a GifReader reads
+	 * sequentially.
+	 */
+	@Test
+	public void testRandomAccess() throws Exception {
+		byte[] gif = createGif();
+		List<int[]> expected = readSequentially(gif);
+
+		File file = File.createTempFile("SeekableGifReaderTest", ".gif");
+		try {
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(gif);
+			}
+
+			for (SeekableGifReader reader : new SeekableGifReader[] {
+					new SeekableGifReader(ByteBuffer.wrap(gif)),
+					new SeekableGifReader(file) }) {
+				assertEquals(expected.size(), reader.getFrameCount());
+				assertEquals(GifReader.getDuration(new ByteArrayInputStream(
+						gif)), (int) Math.round(reader.getDuration() * 1000));
+
+				List<Integer> order = new ArrayList<>();
+				for (int a = 0; a < expected.size(); a++) {
+					order.add(a);
+					order.add(a);
+				}
+				Collections.shuffle(order, new Random(0));
+				for (int frameIndex : order) {
+					BufferedImage bi = reader.getFrame(frameIndex,
+							frameIndex % 2 == 0);
+					int[] actual = bi.getRGB(0, 0, bi.getWidth(),
+							bi.getHeight(), null, 0, bi.getWidth());
+					assertTrue("frame " + frameIndex, Arrays.equals(
+							expected.get(frameIndex), actual));
+				}
+
+				reader.reset();
+				for (int a = 0; a < expected.size(); a++) {
+					BufferedImage bi = reader.getNextFrame(false);
+					int[] actual = bi.getRGB(0, 0, bi.getWidth(),
+							bi.getHeight(), null, 0, bi.getWidth());
+					assertTrue("frame " + a,
+							Arrays.equals(expected.get(a), actual));
+				}
+				assertNull(reader.getNextFrame(false));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * A full-size frame that is restored to the previous image is a key frame,
+	 * but the frame after it depends on the frames before it. So after
+	 * rendering that frame the reader has to seek back to an earlier key
+	 * frame.
+	 */
+	@Test
+	public void testRestoreToPrevious() throws Exception {
+		IndexColorModel colors = new IndexColorModel(2, 4, new byte[] {
+				(byte) 0xff, 0, 0, 0 }, new byte[] { 0, (byte) 0xff, 0, 0 },
+				new byte[] { 0, 0, (byte) 0xff, 0 });
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new GifHeaderBlock().write(out);
+		new GifLogicalScreenDescriptor(10, 10, 4).write(out);
+		new GifGlobalColorTable(colors).write(out);
+		writeFrame(out, colors, Color.red, 0, 0, 10, 10, DisposalMethod.LEAVE);
+		writeFrame(out, colors, Color.green, 0, 0, 10, 10,
+				DisposalMethod.PREVIOUS);
+		writeFrame(out, colors, Color.red, 2, 2, 2, 2, DisposalMethod.LEAVE);
+		new GifTrailerBlock().write(out);
+		byte[] gif = out.toByteArray();
+
+		List<int[]> expected = readSequentially(gif);
+		assertEquals(3, expected.size());
+		assertEquals(0xffff0000, expected.get(2)[5 * 10 + 5]);
+
+		SeekableGifReader reader = new SeekableGifReader(ByteBuffer.wrap(gif));
+		assertEquals(0, reader.getIndex().getKeyFrame(0));
+		assertEquals(1, reader.getIndex().getKeyFrame(1));
+		assertEquals(0, reader.getIndex().getKeyFrame(2));
+		for (int[] order : new int[][] { { 1, 2 }, { 0, 1, 2 }, { 2, 1, 2 },
+				{ 1, 0, 2, 1, 2 } }) {
+			reader.reset();
+			for (int frameIndex : order) {
+				BufferedImage bi = reader.getFrame(frameIndex, false);
+				int[] actual = bi.getRGB(0, 0, 10, 10, null, 0, 10);
+				assertTrue(Arrays.toString(order) + ", frame " + frameIndex,
+						Arrays.equals(expected.get(frameIndex), actual));
+			}
+		}
+	}
+
+	private static void writeFrame(OutputStream out, IndexColorModel colors,
+			Color color, int x, int y, int width, int height,
+			DisposalMethod disposal) throws Exception {
+		new GifGraphicControlExtension(10, disposal, -1).write(out);
+		new GifImageDescriptor(x, y, width, height, false, 0).write(out);
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		new GifImageDataBlock(bi, colors).write(out);
+	}
+}
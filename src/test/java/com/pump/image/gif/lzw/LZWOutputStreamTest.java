@@ -0,0 +1,100 @@
+package com.pump.image.gif.lzw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class LZWOutputStreamTest extends TestCase {
+
+	/**
+	 * Return enough data to fill the code table several times.
+	 */
+	static byte[] createData(int colorDepth, long seed) {
+		Random random = new Random(seed);
+		byte[] data = new byte[100000];
+		for (int a = 0; a < data.length; a++) {
+			int v = random.nextInt(10) < 8 ? (a / 13) % 7 : random.nextInt();
+			data[a] = (byte) (v & ((1 << colorDepth) - 1));
+		}
+		return data;
+	}
+
+	/**
+	 * Writing bytes one at a time, as arrays and as ByteBuffers should all
+	 * produce the same output.
+	 */
+	@Test
+	public void testBulkWrites() throws Exception {
+		for (int colorDepth = 1; colorDepth <= 8; colorDepth++) {
+			byte[] data = createData(colorDepth, colorDepth);
+
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			LZWOutputStream out = new LZWOutputStream(expected, colorDepth,
+					true);
+			for (byte b : data) {
+				out.write(b);
+			}
+			out.close();
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			out = new LZWOutputStream(actual, colorDepth, true);
+			int half = data.length / 2;
+			out.write(data, 0, half);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(data.length - half);
+			buffer.put(data, half, data.length - half);
+			buffer.flip();
+			out.write(buffer);
+			assertEquals(0, buffer.remaining());
+			out.close();
+
+			assertTrue(Arrays.equals(expected.toByteArray(),
+					actual.toByteArray()));
+		}
+	}
+
+	/**
+	 * {@link LZWInputStream#decode(byte[], int, int, int, byte[], int, int)}
+	 * and the LZWInputStream should both return the original data.
+	 */
+	@Test
+	public void testDecode() throws Exception {
+		for (int colorDepth = 2; colorDepth <= 8; colorDepth++) {
+			byte[] data = createData(colorDepth, colorDepth);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			LZWOutputStream out = new LZWOutputStream(bytes, colorDepth, false);
+			out.write(data);
+			out.close();
+			byte[] encoded = bytes.toByteArray();
+
+			byte[] decoded = new byte[data.length + 10];
+			int length = LZWInputStream.decode(encoded, 0, encoded.length,
+					colorDepth, decoded, 0, decoded.length);
+			assertEquals(data.length, length);
+			assertTrue(Arrays.equals(data, Arrays.copyOf(decoded, length)));
+
+			// stop early:
+			decoded = new byte[data.length / 3];
+			length = LZWInputStream.decode(encoded, 0, encoded.length,
+					colorDepth, decoded, 0, decoded.length);
+			assertEquals(decoded.length, length);
+			assertTrue(Arrays.equals(Arrays.copyOf(data, length), decoded));
+
+			InputStream in = new LZWInputStream(new ByteArrayInputStream(
+					encoded), colorDepth);
+			ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+			byte[] b = new byte[1024];
+			int t;
+			while ((t = in.read(b)) != -1) {
+				streamed.write(b, 0, t);
+			}
+			assertTrue(Arrays.equals(data, streamed.toByteArray()));
+		}
+	}
+}
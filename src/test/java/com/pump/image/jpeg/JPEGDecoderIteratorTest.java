@@ -0,0 +1,285 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.jpeg;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+import com.pump.image.pixel.BufferedImageIterator;
+
+import junit.framework.TestCase;
+
+public class JPEGDecoderIteratorTest extends TestCase {
+
+	/**
+	 * Baseline, progressive and restart-marker JPEGs should decode to
+	 * (nearly) the same pixels as ImageIO. Small differences are expected
+	 * because ImageIO uses a different IDCT and interpolates chroma.
+	 */
+	@Test
+	public void testFullSize() throws Exception {
+		for (int type : new int[] { BufferedImage.TYPE_INT_RGB,
+				BufferedImage.TYPE_BYTE_GRAY }) {
+			BufferedImage source = createImage(203, 151, type);
+			for (boolean progressive : new boolean[] { false, true }) {
+				for (int restartInterval : new int[] { 0, 3 }) {
+					String id = "type " + type + ", progressive "
+							+ progressive + ", restart " + restartInterval;
+					byte[] jpeg = encode(source, progressive,
+							restartInterval);
+					BufferedImage expected = ImageIO
+							.read(new ByteArrayInputStream(jpeg));
+					JPEGDecoderIterator iter = JPEGDecoderIterator.get(
+							new ByteArrayInputStream(jpeg), 1);
+					assertEquals(id, progressive, iter.isProgressive());
+					BufferedImage actual = BufferedImageIterator.create(iter,
+							null);
+					assertEquals(id, 203, actual.getWidth());
+					assertEquals(id, 151, actual.getHeight());
+					assertSimilar(id, expected, actual, 1, 1.5);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decoding at 1/2, 1/4 and 1/8 scale should resemble averaging blocks of
+	 * the full-size image.
+	 */
+	@Test
+	public void testScaledDecoding() throws Exception {
+		BufferedImage source = createImage(203, 151,
+				BufferedImage.TYPE_INT_RGB);
+		for (boolean progressive : new boolean[] { false, true }) {
+			byte[] jpeg = encode(source, progressive, 0);
+			BufferedImage full = ImageIO.read(new ByteArrayInputStream(jpeg));
+			for (int d : new int[] { 2, 4, 8 }) {
+				String id = "progressive " + progressive + ", 1/" + d;
+				JPEGDecoderIterator iter = JPEGDecoderIterator.get(
+						new ByteArrayInputStream(jpeg), d);
+				BufferedImage actual = BufferedImageIterator.create(iter,
+						null);
+				assertEquals(id, (203 + d - 1) / d, actual.getWidth());
+				assertEquals(id, (151 + d - 1) / d, actual.getHeight());
+				assertSimilar(id, average(full, d), actual, 1, 3);
+			}
+		}
+	}
+
+	/**
+	 * Skipping rows should not disturb the rows that are read.
+	 */
+	@Test
+	public void testSkip() throws Exception {
+		BufferedImage source = createImage(120, 90,
+				BufferedImage.TYPE_INT_RGB);
+		byte[] jpeg = encode(source, false, 0);
+		JPEGDecoderIterator all = JPEGDecoderIterator.get(
+				new ByteArrayInputStream(jpeg), 1);
+		JPEGDecoderIterator some = JPEGDecoderIterator.get(
+				new ByteArrayInputStream(jpeg), 1);
+		byte[] row1 = new byte[all.getMinimumArrayLength()];
+		byte[] row2 = new byte[some.getMinimumArrayLength()];
+		for (int y = 0; y < 90; y++) {
+			all.next(row1);
+			if (y % 20 < 13) {
+				some.skip();
+			} else {
+				some.next(row2);
+				assertTrue("row " + y, Arrays.equals(row1, row2));
+			}
+		}
+		assertTrue(all.isDone());
+		assertTrue(some.isDone());
+	}
+
+	/**
+	 * A scan whose spectral selection is out of order or past the 64th
+	 * coefficient should be rejected with an IOException, whether it is the
+	 * first scan (read by <code>get()</code>) or a later progressive scan
+	 * (read by <code>next()</code>).
+	 */
+	@Test
+	public void testIllegalSpectralSelection() throws Exception {
+		BufferedImage source = createImage(64, 48,
+				BufferedImage.TYPE_INT_RGB);
+		byte[] baseline = encode(source, false, 0);
+		byte[] progressive = encode(source, true, 0);
+		Object[][] cases = new Object[][] { { baseline, 1, 0, 64 },
+				{ progressive, 1, 0, 64 }, { progressive, 3, 1, 64 },
+				{ progressive, 3, 5, 4 } };
+		for (Object[] c : cases) {
+			byte[] jpeg = ((byte[]) c[0]).clone();
+			int scanIndex = (Integer) c[1];
+			String id = (c[0] == baseline ? "baseline" : "progressive")
+					+ " scan " + scanIndex + ", " + c[2] + "-" + c[3];
+			int ssIndex = getSpectralSelectionIndex(jpeg, scanIndex);
+			jpeg[ssIndex] = (byte) (int) (Integer) c[2];
+			jpeg[ssIndex + 1] = (byte) (int) (Integer) c[3];
+			try {
+				BufferedImageIterator.create(JPEGDecoderIterator.get(
+						new ByteArrayInputStream(jpeg), 1), null);
+				fail(id);
+			} catch (IOException e) {
+				assertEquals(id, 1, scanIndex);
+			} catch (RuntimeException e) {
+				assertTrue(id, e.getCause() instanceof IOException);
+			}
+		}
+	}
+
+	/**
+	 * Return the index of the Ss byte in the nth start-of-scan segment.
+	 */
+	private static int getSpectralSelectionIndex(byte[] jpeg,
+			int scanIndex) {
+		int scanCount = 0;
+		for (int i = 0; i < jpeg.length - 1; i++) {
+			if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xff) == 0xda) {
+				scanCount++;
+				if (scanCount == scanIndex) {
+					int componentCount = jpeg[i + 4] & 0xff;
+					return i + 5 + 2 * componentCount;
+				}
+			}
+		}
+		throw new IllegalArgumentException("scan " + scanIndex
+				+ " was not found");
+	}
+
+	@Test
+	public void testScaleDenominator() {
+		assertEquals(8, JPEGDecoderIterator.getScaleDenominator(4000, 3000,
+				new Dimension(400, 300)));
+		assertEquals(4, JPEGDecoderIterator.getScaleDenominator(4000, 3000,
+				new Dimension(600, 300)));
+		assertEquals(1, JPEGDecoderIterator.getScaleDenominator(4000, 3000,
+				new Dimension(2500, 300)));
+		assertEquals(1, JPEGDecoderIterator.getScaleDenominator(4000, 3000,
+				null));
+	}
+
+	private static BufferedImage createImage(int width, int height, int type) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		Graphics2D g = bi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setPaint(new GradientPaint(0, 0, new Color(0x3366cc), width,
+				height, new Color(0xffcc33)));
+		g.fillRect(0, 0, width, height);
+		g.setPaint(new GradientPaint(0, height, new Color(0x22aa44), width,
+				0, new Color(0xdd4488)));
+		g.fill(new Ellipse2D.Float(width / 5, height / 5, width / 2,
+				height / 2));
+		g.dispose();
+		return bi;
+	}
+
+	static byte[] encode(BufferedImage bi, boolean progressive,
+			int restartInterval) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg")
+				.next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(.9f);
+		if (progressive)
+			param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+		IIOMetadata metadata = writer.getDefaultImageMetadata(
+				ImageTypeSpecifier.createFromRenderedImage(bi), param);
+		if (restartInterval > 0) {
+			String format = "javax_imageio_jpeg_image_1.0";
+			IIOMetadataNode root = (IIOMetadataNode) metadata
+					.getAsTree(format);
+			IIOMetadataNode markerSequence = (IIOMetadataNode) root
+					.getElementsByTagName("markerSequence").item(0);
+			IIOMetadataNode dri = new IIOMetadataNode("dri");
+			dri.setAttribute("interval", Integer.toString(restartInterval));
+			markerSequence.insertBefore(dri, markerSequence.getFirstChild());
+			metadata.setFromTree(format, root);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+			writer.setOutput(ios);
+			writer.write(null, new IIOImage(bi, null, metadata), param);
+		} finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+
+	private static BufferedImage average(BufferedImage bi, int d) {
+		int w = (bi.getWidth() + d - 1) / d;
+		int h = (bi.getHeight() + d - 1) / d;
+		BufferedImage returnValue = new BufferedImage(w, h,
+				BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int r = 0, g = 0, b = 0, n = 0;
+				for (int y2 = y * d; y2 < Math.min(bi.getHeight(), y * d + d); y2++) {
+					for (int x2 = x * d; x2 < Math.min(bi.getWidth(), x * d
+							+ d); x2++) {
+						int rgb = bi.getRGB(x2, y2);
+						r += (rgb >> 16) & 0xff;
+						g += (rgb >> 8) & 0xff;
+						b += rgb & 0xff;
+						n++;
+					}
+				}
+				returnValue.setRGB(x, y, ((r / n) << 16) | ((g / n) << 8)
+						| (b / n));
+			}
+		}
+		return returnValue;
+	}
+
+	/**
+	 * Compares the mean absolute difference of each channel, ignoring a
+	 * border of <code>margin</code> pixels where block padding differs.
+	 */
+	private static void assertSimilar(String id, BufferedImage expected,
+			BufferedImage actual, int margin, double maxMeanError) {
+		double sum = 0;
+		int count = 0;
+		for (int y = margin; y < expected.getHeight() - margin; y++) {
+			for (int x = margin; x < expected.getWidth() - margin; x++) {
+				int rgb1 = expected.getRGB(x, y);
+				int rgb2 = actual.getRGB(x, y);
+				for (int shift = 0; shift <= 16; shift += 8) {
+					sum += Math.abs(((rgb1 >> shift) & 0xff)
+							- ((rgb2 >> shift) & 0xff));
+					count++;
+				}
+			}
+		}
+		double mean = sum / count;
+		assertTrue(id + " mean error = " + mean, mean < maxMeanError);
+	}
+}
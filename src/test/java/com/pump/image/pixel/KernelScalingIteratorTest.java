@@ -0,0 +1,108 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class KernelScalingIteratorTest extends TestCase {
+
+	static final Dimension[] SIZES = new Dimension[] { new Dimension(13, 7),
+			new Dimension(40, 30), new Dimension(250, 170) };
+
+	/**
+	 * Lanczos and Catmull-Rom interpolate through every source pixel, so
+	 * "scaling" to the same size should not change anything.
+	 */
+	@Test
+	public void testIdentity() {
+		BufferedImage source = new BufferedImage(40, 30,
+				BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(0);
+		for (int y = 0; y < source.getHeight(); y++) {
+			for (int x = 0; x < source.getWidth(); x++) {
+				source.setRGB(x, y, random.nextInt());
+			}
+		}
+		for (ResamplingKernel kernel : new ResamplingKernel[] {
+				ResamplingKernel.LANCZOS3, ResamplingKernel.CATMULL_ROM }) {
+			BufferedImage scaled = Scaling.resample(source, null,
+					new Dimension(40, 30), kernel);
+			for (int y = 0; y < source.getHeight(); y++) {
+				for (int x = 0; x < source.getWidth(); x++) {
+					assertEquals(kernel + " " + x + ", " + y,
+							source.getRGB(x, y), scaled.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The weights for each pixel are normalized, so a solid color should stay
+	 * the same color when it is scaled up or down.
+	 */
+	@Test
+	public void testSolidColor() {
+		int argb = 0x80336699;
+		BufferedImage source = new BufferedImage(40, 30,
+				BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < source.getHeight(); y++) {
+			for (int x = 0; x < source.getWidth(); x++) {
+				source.setRGB(x, y, argb);
+			}
+		}
+		for (ResamplingKernel kernel : ResamplingKernel.values()) {
+			for (Dimension size : SIZES) {
+				BufferedImage scaled = Scaling.resample(source, null, size,
+						kernel);
+				for (int y = 0; y < size.height; y++) {
+					for (int x = 0; x < size.width; x++) {
+						assertEquals(kernel + " " + size,
+								Integer.toHexString(argb),
+								Integer.toHexString(scaled.getRGB(x, y)));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Colors are filtered with premultiplied alpha, so the color of a fully
+	 * transparent pixel should never leak into the opaque pixels next to it.
+	 */
+	@Test
+	public void testTransparentNeighbors() {
+		BufferedImage source = new BufferedImage(40, 30,
+				BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < source.getHeight(); y++) {
+			for (int x = 0; x < source.getWidth(); x++) {
+				source.setRGB(x, y, x < 20 ? 0xffff0000 : 0x0000ff00);
+			}
+		}
+		for (ResamplingKernel kernel : ResamplingKernel.values()) {
+			for (Dimension size : SIZES) {
+				BufferedImage scaled = Scaling.resample(source, null, size,
+						kernel);
+				for (int y = 0; y < size.height; y++) {
+					for (int x = 0; x < size.width; x++) {
+						int argb = scaled.getRGB(x, y);
+						assertEquals(kernel + " " + size, 0, argb & 0xffff);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ * 
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ * 
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class ScalingTest extends TestCase {
+
+	/**
+	 * Scaling bands of an image on a ForkJoinPool should produce exactly the
+	 * same pixels as scaling it on one thread.
+	 * <p>
+	 * The sizes here include a downsample that uses a ShortRow, a downsample
+	 * that uses an IntRow, an upsample and an unscaled copy.
+	 */
+	@Test
+	public void testParallelScaling() {
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			Dimension[] sizes = new Dimension[] { new Dimension(100, 75),
+					new Dimension(20, 15), new Dimension(900, 700),
+					new Dimension(400, 300) };
+			for (int type : new int[] { BufferedImage.TYPE_INT_ARGB,
+					BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+					BufferedImage.TYPE_4BYTE_ABGR }) {
+				BufferedImage source = createImage(400, 300, type);
+				for (Dimension size : sizes) {
+					BufferedImage expected = Scaling.scale(source, null, size,
+							null);
+					BufferedImage actual = Scaling.scale(source, null, size,
+							pool);
+					String id = "type " + type + ", " + size.width + "x"
+							+ size.height;
+					assertTrue(id, Arrays.equals(getPixels(expected),
+							getPixels(actual)));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static BufferedImage createImage(int width, int height, int type) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		Random random = new Random(0);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				bi.setRGB(x, y, random.nextInt());
+			}
+		}
+		return bi;
+	}
+
+	private static int[] getPixels(BufferedImage bi) {
+		return bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null, 0,
+				bi.getWidth());
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel.quantize;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.pump.image.pixel.quantize.ColorSet.RGBChannelComparator;
+
+import junit.framework.TestCase;
+
+public class ColorHistogramTest extends TestCase {
+
+	/**
+	 * The histogram of an image (which is split into bands for large images)
+	 * should match a TreeMap of every pixel.
+	 */
+	@Test
+	public void testCreate() {
+		// large enough that the image is split into several bands
+		BufferedImage image = createImage(1024, 600);
+		assertTrue(image.getWidth() * image.getHeight() > 2 * (1 << 18));
+		ColorHistogram histogram = ColorHistogram.create(image);
+		TreeMap<Integer, Integer> expected = createFrequencyMap(image);
+		assertEquals(expected.size(), histogram.size());
+		assertEquals(image.getWidth() * image.getHeight(),
+				histogram.getPixelCount());
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().intValue(),
+					histogram.get(entry.getKey()));
+		}
+	}
+
+	/**
+	 * MedianCutColorQuantization should produce the same palette as the
+	 * original TreeMap-based implementation.
+	 */
+	@Test
+	public void testMedianCutMatchesOriginal() {
+		BufferedImage image = createImage(300, 200);
+		ColorSet colors = new ColorSet(image);
+		assertTrue(colors.getColorCount() > 256);
+		for (int maxColors : new int[] { 2, 7, 64, 256 }) {
+			ColorSet expected = new ColorSet();
+			originalMedianCut(createFrequencyMap(image), maxColors, expected);
+			ColorSet actual = new MedianCutColorQuantization()
+					.createReducedSet(colors, maxColors, true);
+			assertEquals("maxColors = " + maxColors, expected, actual);
+		}
+	}
+
+	/**
+	 * BiasedMedianCutColorQuantization should produce the same palette as the
+	 * original implementation, and it should not modify the original set.
+	 */
+	@Test
+	public void testBiasedMedianCutMatchesOriginal() {
+		BufferedImage image = createImage(300, 200);
+		ColorSet colors = new ColorSet(image);
+		String originalColors = colors.toString();
+		for (float threshold : new float[] { 0, .01f, .1f }) {
+			for (int maxColors : new int[] { 16, 256 }) {
+				TreeMap<Integer, Integer> frequencyMap = createFrequencyMap(image);
+				long pixelCount = image.getWidth() * image.getHeight();
+
+				// the original implementation (retaining original integrity)
+				ColorSet expected = new ColorSet();
+				TreeMap<Integer, Integer> remaining = new TreeMap<>(
+						new RGBChannelComparator(16, 8, 0));
+				for (Map.Entry<Integer, Integer> entry : frequencyMap
+						.entrySet()) {
+					double fraction = ((double) entry.getValue()) / pixelCount;
+					if (threshold > 0 && fraction >= threshold) {
+						addColor(expected, entry.getKey(), entry.getValue());
+					} else {
+						remaining.put(entry.getKey(), entry.getValue());
+					}
+				}
+				originalMedianCut(remaining,
+						maxColors - expected.getColorCount(), expected);
+
+				ColorSet actual = new BiasedMedianCutColorQuantization(
+						threshold).createReducedSet(colors, maxColors, true);
+				assertEquals(threshold + ", " + maxColors, expected, actual);
+				assertEquals(originalColors, colors.toString());
+			}
+		}
+	}
+
+	/**
+	 * This is MedianCutColorQuantization as it was implemented before
+	 * ColorHistogram existed.
+	 */
+	private static void originalMedianCut(
+			TreeMap<Integer, Integer> frequencyMap, int maxColors,
+			ColorSet dest) {
+		if (frequencyMap.size() <= maxColors) {
+			for (Map.Entry<Integer, Integer> entry : frequencyMap.entrySet()) {
+				addColor(dest, entry.getKey(), entry.getValue());
+			}
+			return;
+		}
+		Integer[] rgb = frequencyMap.keySet().toArray(
+				new Integer[frequencyMap.size()]);
+		split(rgb, frequencyMap, 0, rgb.length, maxColors, 0, dest);
+	}
+
+	private static final List<Comparator<Integer>> COMPARATORS = Arrays
+			.<Comparator<Integer>> asList(new RGBChannelComparator(16, 8, 0),
+					new RGBChannelComparator(8, 0, 16),
+					new RGBChannelComparator(0, 16, 8));
+
+	private static void split(Integer[] rgb, Map<Integer, Integer> frequencyMap,
+			int ctr, int len, int count, int comparatorIndex, ColorSet dest) {
+		if (count == 1) {
+			long r = 0;
+			long g = 0;
+			long b = 0;
+			int pixelSum = 0;
+			for (int a = ctr; a < ctr + len; a++) {
+				int z = frequencyMap.get(rgb[a]);
+				r += ((rgb[a] >> 16) & 0xff) * z;
+				g += ((rgb[a] >> 8) & 0xff) * z;
+				b += ((rgb[a] >> 0) & 0xff) * z;
+				pixelSum += z;
+			}
+			dest.addColor((int) (r / pixelSum), (int) (g / pixelSum),
+					(int) (b / pixelSum), pixelSum);
+			return;
+		}
+		Arrays.sort(rgb, ctr, ctr + len, COMPARATORS.get(comparatorIndex));
+		comparatorIndex = (comparatorIndex + 1) % 3;
+		int leftHalfCount = count / 2;
+		int leftLen = len / 2;
+		split(rgb, frequencyMap, ctr, leftLen, leftHalfCount, comparatorIndex,
+				dest);
+		split(rgb, frequencyMap, ctr + leftLen, len - leftLen, count
+				- leftHalfCount, comparatorIndex, dest);
+	}
+
+	private static void addColor(ColorSet set, int rgb, int count) {
+		set.addColor((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, count);
+	}
+
+	private static TreeMap<Integer, Integer> createFrequencyMap(
+			BufferedImage image) {
+		TreeMap<Integer, Integer> map = new TreeMap<>(new RGBChannelComparator(
+				16, 8, 0));
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int rgb = image.getRGB(x, y) & 0xffffff;
+				Integer count = map.get(rgb);
+				map.put(rgb, count == null ? 1 : count + 1);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Create a gradient with a few large flat shapes (so some colors are very
+	 * frequent) and some noise (so there are thousands of colors).
+	 */
+	private static BufferedImage createImage(int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, new Color(0x2d3436), width, height,
+				new Color(0x74b9ff)));
+		g.fillRect(0, 0, width, height);
+		g.setColor(Color.white);
+		g.fillRect(0, 0, width / 2, height / 3);
+		g.setColor(new Color(0xd63031));
+		g.fillOval(width / 2, height / 2, width / 3, height / 3);
+		g.dispose();
+		Random random = new Random(0);
+		for (int a = 0; a < width * height / 10; a++) {
+			bi.setRGB(random.nextInt(width), random.nextInt(height),
+					random.nextInt(0xffffff));
+		}
+		return bi;
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.pixel.quantize;
+
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class ColorLUTTest extends TestCase {
+
+	/**
+	 * With a small palette we can check every color in the RGB cube.
+	 */
+	@Test
+	public void testInverseColormapExhaustive() {
+		IndexColorModel icm = createPalette(16, 0, -1);
+		ColorLUT lut = new ColorLUT(icm, true);
+		for (int r = 0; r < 256; r++) {
+			for (int g = 0; g < 256; g++) {
+				for (int b = 0; b < 256; b++) {
+					assertNearest(icm, lut, r, g, b);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Large palettes (including duplicate colors and a transparent pixel)
+	 * should match a brute-force search for the corners of every cell in the
+	 * table and for random colors.
+	 */
+	@Test
+	public void testInverseColormap() {
+		for (int seed = 1; seed <= 3; seed++) {
+			IndexColorModel icm = createPalette(256, seed, seed == 3 ? 17 : -1);
+			ColorLUT lut = new ColorLUT(icm, true);
+			for (int r = 0; r < 256; r += 7) {
+				for (int g = 0; g < 256; g += 7) {
+					for (int b = 0; b < 256; b += 7) {
+						assertNearest(icm, lut, r, g, b);
+						assertNearest(icm, lut, r | 7, g | 7, b | 7);
+					}
+				}
+			}
+			Random random = new Random(seed);
+			for (int a = 0; a < 100000; a++) {
+				assertNearest(icm, lut, random.nextInt(256),
+						random.nextInt(256), random.nextInt(256));
+			}
+		}
+	}
+
+	/**
+	 * Create a random palette. Some colors are clustered together and some
+	 * are repeated, so many cells of the table have several candidates.
+	 */
+	private static IndexColorModel createPalette(int size, long seed,
+			int transparentPixel) {
+		Random random = new Random(seed);
+		byte[] r = new byte[size];
+		byte[] g = new byte[size];
+		byte[] b = new byte[size];
+		for (int a = 0; a < size; a++) {
+			if (a > 0 && a % 10 == 0) {
+				r[a] = r[a - 1];
+				g[a] = g[a - 1];
+				b[a] = b[a - 1];
+			} else if (a % 3 == 0) {
+				r[a] = (byte) (100 + random.nextInt(20));
+				g[a] = (byte) (30 + random.nextInt(20));
+				b[a] = (byte) (200 + random.nextInt(20));
+			} else {
+				r[a] = (byte) random.nextInt(256);
+				g[a] = (byte) random.nextInt(256);
+				b[a] = (byte) random.nextInt(256);
+			}
+		}
+		if (transparentPixel == -1)
+			return new IndexColorModel(8, size, r, g, b);
+		return new IndexColorModel(8, size, r, g, b, transparentPixel);
+	}
+
+	private static void assertNearest(IndexColorModel icm, ColorLUT lut,
+			int red, int green, int blue) {
+		int bestError = Integer.MAX_VALUE;
+		for (int a = 0; a < icm.getMapSize(); a++) {
+			if (a == icm.getTransparentPixel())
+				continue;
+			int error = getError(icm, a, red, green, blue);
+			if (error < bestError)
+				bestError = error;
+		}
+		int index = lut.getIndexMatch(red, green, blue);
+		assertFalse(index == icm.getTransparentPixel());
+		assertEquals("(" + red + ", " + green + ", " + blue + ") -> " + index,
+				bestError, getError(icm, index, red, green, blue));
+	}
+
+	private static int getError(IndexColorModel icm, int index, int red,
+			int green, int blue) {
+		int dr = red - icm.getRed(index);
+		int dg = green - icm.getGreen(index);
+		int db = blue - icm.getBlue(index);
+		return dr * dr + dg * dg + db * db;
+	}
+}
@@ -0,0 +1,123 @@
+package com.pump.image.pixel.quantize;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class ParallelErrorDiffusionImageQuantizationTest extends TestCase {
+
+	/**
+	 * Scanning left-to-right should produce exactly the same pixels as the
+	 * sequential ErrorDiffusionImageQuantization, regardless of the number of
+	 * threads.
+	 */
+	@Test
+	public void testWavefrontMatchesSequential() {
+		BufferedImage image = createImage(421, 187);
+		for (boolean transparent : new boolean[] { false, true }) {
+			if (transparent) {
+				BufferedImage argb = new BufferedImage(image.getWidth(),
+						image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g = argb.createGraphics();
+				g.drawImage(image, 0, 0, null);
+				g.setComposite(AlphaComposite.Clear);
+				g.fillOval(50, 20, 200, 120);
+				g.dispose();
+				image = argb;
+			}
+			ColorLUT lut = createLUT(image, transparent);
+			for (ImageQuantization q : new ImageQuantization[] {
+					ImageQuantization.SIMPLEST_DIFFUSION,
+					ImageQuantization.MEDIUM_DIFFUSION,
+					ImageQuantization.MOST_DIFFUSION }) {
+				byte[] expected = getPixels(q.createImage(image, lut));
+				for (int threads : new int[] { 1, 2, 5 }) {
+					ForkJoinPool pool = new ForkJoinPool(threads);
+					try {
+						ImageQuantization p = new ParallelErrorDiffusionImageQuantization(
+								((ErrorDiffusionImageQuantization) q).kernel,
+								false, pool);
+						byte[] actual = getPixels(p.createImage(image, lut));
+						assertTrue(q + ", " + threads + " threads",
+								Arrays.equals(expected, actual));
+					} finally {
+						pool.shutdown();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serpentine scanning should not depend on the number of threads.
+	 */
+	@Test
+	public void testSerpentineIsDeterministic() {
+		BufferedImage image = createImage(300, 250);
+		ColorLUT lut = createLUT(image, false);
+		byte[] first = null;
+		for (int threads : new int[] { 1, 3, 4 }) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				ImageQuantization p = new ParallelErrorDiffusionImageQuantization(
+						((ErrorDiffusionImageQuantization) ImageQuantization.MOST_DIFFUSION).kernel,
+						true, pool);
+				byte[] pixels = getPixels(p.createImage(image, lut));
+				if (first == null) {
+					first = pixels;
+				} else {
+					assertTrue(threads + " threads",
+							Arrays.equals(first, pixels));
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static ColorLUT createLUT(BufferedImage image, boolean transparent) {
+		ColorSet set = new BiasedMedianCutColorQuantization().createReducedSet(
+				new ColorSet(image), 64, false);
+		IndexColorModel icm = set.createIndexColorModel(transparent, false);
+		assertEquals(transparent, icm.getTransparentPixel() >= 0);
+		return new ColorLUT(icm, true);
+	}
+
+	private static byte[] getPixels(BufferedImage bi) {
+		return ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Create a gradient covered with antialiased circles of random colors.
+	 */
+	private static BufferedImage createImage(int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setPaint(new GradientPaint(0, 0, new Color(0x2d3436), width, height,
+				new Color(0x74b9ff)));
+		g.fillRect(0, 0, width, height);
+		Random random = new Random(0);
+		for (int a = 0; a < 400; a++) {
+			g.setColor(new Color(random.nextInt(0xffffff)));
+			int r = 20 + random.nextInt(200);
+			g.fillOval(random.nextInt(width), random.nextInt(height), r, r);
+		}
+		g.dispose();
+		return bi;
+	}
+}
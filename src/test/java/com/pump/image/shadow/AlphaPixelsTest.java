@@ -0,0 +1,51 @@
+package com.pump.image.shadow;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class AlphaPixelsTest extends TestCase {
+
+	/**
+	 * The alpha channel should be the same no matter what type of image it
+	 * comes from, and images created by AlphaPixels should be referenced
+	 * without copying.
+	 */
+	@Test
+	public void testImageConversion() {
+		AlphaPixels expected = null;
+		for (int type : new int[] { BufferedImage.TYPE_INT_ARGB,
+				BufferedImage.TYPE_4BYTE_ABGR,
+				BufferedImage.TYPE_INT_ARGB_PRE }) {
+			BufferedImage bi = new BufferedImage(30, 20, type);
+			Graphics2D g = bi.createGraphics();
+			g.setColor(new Color(0x80ff0000, true));
+			g.fillRect(5, 5, 10, 10);
+			g.setColor(Color.blue);
+			g.fillOval(12, 2, 15, 15);
+			g.dispose();
+
+			AlphaPixels alpha = new AlphaPixels(bi);
+			if (expected == null) {
+				expected = alpha;
+			} else {
+				assertEquals(expected, alpha);
+			}
+		}
+
+		BufferedImage bi = expected.createBufferedImage(true);
+		AlphaPixels reference = new AlphaPixels(bi, true);
+		assertSame(expected.getPixels(), reference.getPixels());
+		assertEquals(expected, new AlphaPixels(expected.createBufferedImage()));
+		assertEquals(expected,
+				new AlphaPixels(expected.createARGBPixels()));
+
+		BufferedImage opaque = new BufferedImage(4, 4,
+				BufferedImage.TYPE_INT_RGB);
+		assertEquals((byte) 255, new AlphaPixels(opaque).getPixels()[5]);
+	}
+}
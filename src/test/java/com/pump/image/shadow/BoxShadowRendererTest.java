@@ -35,12 +35,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(11, 11);
+		AlphaPixels dstImage = new AlphaPixels(11, 11);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 7, 7, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 7, 7, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 11]);
 		assertEquals(10, dstPixels[2 + 1 * 11]);
@@ -103,12 +103,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(10, 10);
+		AlphaPixels dstImage = new AlphaPixels(10, 10);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 6, 6, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 6, 6, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 10]);
 		assertEquals(10, dstPixels[2 + 1 * 10]);
@@ -143,12 +143,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(9, 9);
+		AlphaPixels dstImage = new AlphaPixels(9, 9);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 5, 5, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 5, 5, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 9]);
 		assertEquals(10, dstPixels[2 + 1 * 9]);
@@ -181,12 +181,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(8, 8);
+		AlphaPixels dstImage = new AlphaPixels(8, 8);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 4, 4, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 4, 4, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 8]);
 		assertEquals(10, dstPixels[2 + 1 * 8]);
@@ -217,12 +217,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(7, 7);
+		AlphaPixels dstImage = new AlphaPixels(7, 7);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 3, 3, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 3, 3, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 7]);
 		assertEquals(10, dstPixels[2 + 1 * 7]);
@@ -251,12 +251,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(6, 6);
+		AlphaPixels dstImage = new AlphaPixels(6, 6);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 2, 2, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 2, 2, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 6]);
 		assertEquals(10, dstPixels[2 + 1 * 6]);
@@ -283,12 +283,12 @@ public class BoxShadowRendererTest extends TestCase {
 			srcPixels[a] = srcPixels[a] << 24;
 		}
 
-		ARGBPixels dstImage = new ARGBPixels(5, 5);
+		AlphaPixels dstImage = new AlphaPixels(5, 5);
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 1, 1, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 1, 1, 2, 255, 1f);
 		renderer.new VerticalRenderer().run();
 
-		int[] dstPixels = dstImage.getPixels();
+		int[] dstPixels = getValues(dstImage);
 		// test leftmost column
 		assertEquals(1, dstPixels[2 + 0 * 5]);
 		assertEquals(1, dstPixels[2 + 1 * 5]);
@@ -306,7 +306,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(7, 7);
 
-		ARGBPixels dstImage = new ARGBPixels(11, 11);
+		AlphaPixels dstImage = new AlphaPixels(11, 11);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -322,12 +322,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 7, 7, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 7, 7, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(1 << 24, dstPixels[22]);
@@ -367,7 +367,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(6, 6);
 
-		ARGBPixels dstImage = new ARGBPixels(10, 10);
+		AlphaPixels dstImage = new AlphaPixels(10, 10);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -382,12 +382,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0, 0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 6, 6, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 6, 6, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(1 << 24, dstPixels[20]);
@@ -410,7 +410,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(5, 5);
 
-		ARGBPixels dstImage = new ARGBPixels(9, 9);
+		AlphaPixels dstImage = new AlphaPixels(9, 9);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -424,12 +424,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 5, 5, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 5, 5, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(1 << 24, dstPixels[18]);
@@ -451,7 +451,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(4, 4);
 
-		ARGBPixels dstImage = new ARGBPixels(8, 8);
+		AlphaPixels dstImage = new AlphaPixels(8, 8);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0, 0, 0, 0,
@@ -464,12 +464,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 4, 4, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 4, 4, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(1 << 24, dstPixels[16]);
@@ -490,7 +490,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(3, 3);
 
-		ARGBPixels dstImage = new ARGBPixels(7, 7);
+		AlphaPixels dstImage = new AlphaPixels(7, 7);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0, 0, 0,
@@ -502,12 +502,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 3, 3, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 3, 3, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(1 << 24, dstPixels[14]);
@@ -527,7 +527,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(2, 2);
 
-		ARGBPixels dstImage = new ARGBPixels(6, 6);
+		AlphaPixels dstImage = new AlphaPixels(6, 6);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0, 0,
@@ -538,12 +538,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 2, 2, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 2, 2, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(3 << 24, dstPixels[12]);
@@ -562,7 +562,7 @@ public class BoxShadowRendererTest extends TestCase {
 		// we don't really use the source in this unit test
 		ARGBPixels srcImage = new ARGBPixels(1, 1);
 
-		ARGBPixels dstImage = new ARGBPixels(5, 5);
+		AlphaPixels dstImage = new AlphaPixels(5, 5);
 		// @formatter:off
 		int[] dstPixelsCopy = new int[] {
 		    0, 0, 0, 0, 0,
@@ -572,12 +572,12 @@ public class BoxShadowRendererTest extends TestCase {
 		    0, 0, 0, 0, 0
 		};
 		// @formatter:on
-		int[] dstPixels = dstImage.getPixels();
-		System.arraycopy(dstPixelsCopy, 0, dstPixels, 0, dstPixelsCopy.length);
+		setValues(dstImage, dstPixelsCopy);
 
 		BoxShadowRenderer.Renderer renderer = new BoxShadowRenderer.Renderer(
-				srcImage, dstImage, 0, 0, 2, 2, 1, 1, 2, 255, 1f);
+				new AlphaPixels(srcImage), dstImage, 0, 0, 2, 2, 1, 1, 2, 255, 1f);
 		renderer.new HorizontalRenderer().run();
+		int[] dstPixels = dstImage.createARGBPixels().getPixels();
 
 		// test topmost row (of data)
 		assertEquals(1 << 24, dstPixels[10]);
@@ -619,4 +619,26 @@ public class BoxShadowRendererTest extends TestCase {
 		String msg = GaussianShadowRendererTest.equals(result1, result2, 1);
 		assertTrue(msg, msg == null);
 	}
+
+	/**
+	 * Return the values the VerticalRenderer wrote.
+	 */
+	private static int[] getValues(AlphaPixels pixels) {
+		byte[] bytes = pixels.getPixels();
+		int[] values = new int[bytes.length];
+		for (int a = 0; a < bytes.length; a++) {
+			values[a] = bytes[a] & 0xff;
+		}
+		return values;
+	}
+
+	/**
+	 * Store the values the HorizontalRenderer should read.
+	 */
+	private static void setValues(AlphaPixels pixels, int[] values) {
+		byte[] bytes = pixels.getPixels();
+		for (int a = 0; a < values.length; a++) {
+			bytes[a] = (byte) values[a];
+		}
+	}
 }
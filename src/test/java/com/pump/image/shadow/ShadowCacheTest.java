@@ -0,0 +1,93 @@
+package com.pump.image.shadow;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class ShadowCacheTest extends TestCase {
+
+	static BufferedImage paintShadow(ShadowCache cache, Shape shape,
+			ShadowAttributes attr) {
+		BufferedImage bi = new BufferedImage(400, 300,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		cache.paintShadow(g, shape, attr);
+		g.dispose();
+		return bi;
+	}
+
+	/**
+	 * A nine-slice shadow should match the shadow of the whole rounded
+	 * rectangle.
+	 */
+	@Test
+	public void testNineSlice() {
+		ShadowAttributes attr = new ShadowAttributes(10, .5f);
+		attr.setShadowOffsetDistance(5);
+		ShadowCache cache = new ShadowCache();
+		for (RoundRectangle2D r : new RoundRectangle2D[] {
+				new RoundRectangle2D.Float(50, 40, 300, 200, 30, 20),
+				new RoundRectangle2D.Float(60, 60, 101, 77, 0, 0),
+				new RoundRectangle2D.Float(30, 70, 250, 150, 45, 45) }) {
+			BufferedImage expected = paintShadow(cache, new Path2D.Float(r),
+					attr);
+			BufferedImage actual = paintShadow(cache, r, attr);
+			String msg = GaussianShadowRendererTest.equals(expected, actual, 0);
+			assertTrue(msg, msg == null);
+		}
+	}
+
+	/**
+	 * Repeated requests should be hits, different sizes of the same rounded
+	 * rectangle should share one entry, and the memory limit should be
+	 * respected.
+	 */
+	@Test
+	public void testStatistics() {
+		ShadowAttributes attr = new ShadowAttributes(8, 1);
+		BufferedImage bi = new BufferedImage(100, 100,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(Color.black);
+		g.fillOval(10, 10, 80, 80);
+		g.dispose();
+
+		int k = new GaussianShadowRenderer().getKernel(attr)
+				.getKernelRadius();
+		long shadowBytes = (100 + 2 * k) * (100 + 2 * k) + 100 * 100;
+		ShadowCache cache = new ShadowCache(new GaussianShadowRenderer(),
+				shadowBytes * 2);
+
+		BufferedImage shadow = cache.getShadow(bi, attr);
+		assertSame(shadow, cache.getShadow(bi, attr));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(.5, cache.getHitRate(), .0001);
+		assertEquals(shadowBytes, cache.getMemoryUsage());
+
+		// the offset doesn't change the shadow image
+		ShadowAttributes attr2 = new ShadowAttributes(8, 1);
+		attr2.setShadowOffsetDistance(20);
+		assertSame(shadow, cache.getShadow(bi, attr2));
+
+		for (int width = 100; width < 300; width += 10) {
+			paintShadow(cache, new RoundRectangle2D.Float(10, 10, width, 100,
+					20, 20), attr);
+		}
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(21, cache.getHitCount());
+
+		for (float opacity = .1f; opacity < 1; opacity += .2f) {
+			cache.getShadow(bi, new ShadowAttributes(8, opacity));
+			assertTrue(cache.getMemoryUsage() <= cache.getMaxMemory());
+		}
+		assertTrue(cache.getEvictionCount() > 0);
+	}
+}
@@ -0,0 +1,161 @@
+package com.pump.image.shadow;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.pump.geom.StarPolygon;
+
+import junit.framework.TestCase;
+
+public class SlidingGaussianShadowRendererTest extends TestCase {
+
+	/**
+	 * The three box blurs should stay close to a real Gaussian blur, including
+	 * large kernels where the GaussianShadowRenderer loses precision.
+	 */
+	@Test
+	public void testAccuracy() throws Exception {
+		ARGBPixels src = new ARGBPixels(createImage(), true);
+		ShadowRenderer renderer = new SlidingGaussianShadowRenderer();
+		for (int radius : new int[] { 5, 15, 40, 100 }) {
+			ShadowAttributes attr = new ShadowAttributes(radius, 1);
+			ARGBPixels shadow = renderer.createShadow(src, null, attr);
+			double[][] expected = createExactShadow(src, radius);
+			assertEquals(expected[0].length, shadow.getWidth());
+			assertEquals(expected.length, shadow.getHeight());
+
+			double[] error = getError(expected, shadow);
+			assertTrue("radius " + radius + ", max error " + error[0],
+					error[0] <= 6);
+			assertTrue("radius " + radius + ", mean error " + error[1],
+					error[1] <= 1);
+		}
+	}
+
+	/**
+	 * Rendering on an executor should produce exactly the same pixels as
+	 * rendering on the calling thread.
+	 */
+	@Test
+	public void testExecutor() throws Exception {
+		ARGBPixels src = new ARGBPixels(createImage(), true);
+		ShadowAttributes attr = new ShadowAttributes(30, .5f);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ARGBPixels p1 = new SlidingGaussianShadowRenderer(null)
+					.createShadow(src, null, attr);
+			ARGBPixels p2 = new SlidingGaussianShadowRenderer(executor)
+					.createShadow(src, null, attr);
+			assertTrue(Arrays.equals(p1.getPixels(), p2.getPixels()));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Blur the alpha channel of an image with a Gaussian kernel whose standard
+	 * deviation is one third of the radius.
+	 * 
+	 * @return the opacity (from 0-255) of a shadow that is padded by
+	 *         <code>ceil(radius)</code> pixels on every side, indexed as
+	 *         <code>[y][x]</code>.
+	 */
+	private static double[][] createExactShadow(ARGBPixels src, double radius) {
+		int k = (int) Math.ceil(radius);
+		double sigma = radius / 3;
+		double[] kernel = new double[2 * k + 1];
+		double sum = 0;
+		for (int a = 0; a < kernel.length; a++) {
+			kernel[a] = Math.exp(-(a - k) * (a - k) / (2 * sigma * sigma));
+			sum += kernel[a];
+		}
+		for (int a = 0; a < kernel.length; a++) {
+			kernel[a] /= sum;
+		}
+
+		int w = src.getWidth() + 2 * k;
+		int h = src.getHeight() + 2 * k;
+		int[] pixels = src.getPixels();
+		double[][] rows = new double[h][w];
+		for (int y = 0; y < src.getHeight(); y++) {
+			for (int x = 0; x < w; x++) {
+				double v = 0;
+				for (int j = 0; j < kernel.length; j++) {
+					int srcX = x - 2 * k + j;
+					if (srcX >= 0 && srcX < src.getWidth())
+						v += kernel[j]
+								* (pixels[y * src.getWidth() + srcX] >>> 24);
+				}
+				rows[y + k][x] = v;
+			}
+		}
+		double[][] shadow = new double[h][w];
+		for (int x = 0; x < w; x++) {
+			for (int y = 0; y < h; y++) {
+				double v = 0;
+				for (int j = 0; j < kernel.length; j++) {
+					int y2 = y - k + j;
+					if (y2 >= 0 && y2 < h)
+						v += kernel[j] * rows[y2][x];
+				}
+				shadow[y][x] = v;
+			}
+		}
+		return shadow;
+	}
+
+	/**
+	 * Return the maximum and mean difference in opacity between a reference
+	 * shadow and a rendered shadow. If their padding is different then their
+	 * centers are aligned, and pixels outside of either image are zero.
+	 */
+	private static double[] getError(double[][] expected, ARGBPixels actual) {
+		int w = expected[0].length;
+		int h = expected.length;
+		int dx = (actual.getWidth() - w) / 2;
+		int dy = (actual.getHeight() - h) / 2;
+		int[] p = actual.getPixels();
+		double max = 0;
+		double sum = 0;
+		for (int y = Math.min(0, dy); y < Math.max(h, h + dy); y++) {
+			for (int x = Math.min(0, dx); x < Math.max(w, w + dx); x++) {
+				double v1 = x >= 0 && y >= 0 && x < w && y < h ? expected[y][x]
+						: 0;
+				int x2 = x + dx;
+				int y2 = y + dy;
+				double v2 = x2 >= 0 && y2 >= 0 && x2 < actual.getWidth()
+						&& y2 < actual.getHeight() ? p[y2 * actual.getWidth()
+						+ x2] >>> 24 : 0;
+				double d = Math.abs(v1 - v2);
+				max = Math.max(max, d);
+				sum += d;
+			}
+		}
+		return new double[] { Math.round(max * 10) / 10.0,
+				Math.round(sum / (w * h) * 1000) / 1000.0 };
+	}
+
+	private static BufferedImage createImage() {
+		BufferedImage bi = new BufferedImage(800, 600,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(Color.white);
+		g.fill(new RoundRectangle2D.Float(40, 40, 500, 300, 60, 60));
+		StarPolygon star = new StarPolygon(200);
+		star.setCenter(550, 380);
+		g.setColor(new Color(0x801BE7FF, true));
+		g.fill(star);
+		g.dispose();
+		return bi;
+	}
+}
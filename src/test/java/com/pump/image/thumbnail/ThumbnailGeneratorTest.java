@@ -0,0 +1,160 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.image.thumbnail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class ThumbnailGeneratorTest extends TestCase {
+
+	static final Color IMAGE_COLOR = new Color(0x2040e0);
+	static final Color THUMBNAIL_COLOR = new Color(0xe04020);
+
+	/**
+	 * An embedded EXIF thumbnail with the same shape as the image (and at
+	 * least as large as the requested thumbnail) should be used instead of the
+	 * image data.
+	 */
+	@Test
+	public void testEmbeddedThumbnail() throws IOException {
+		byte[] jpeg = createJPEG(600, 400, 150, 100);
+		BufferedImage thumbnail = create(jpeg, new Dimension(90, 90));
+		assertEquals(90, thumbnail.getWidth());
+		assertEquals(60, thumbnail.getHeight());
+		assertColor(THUMBNAIL_COLOR, thumbnail);
+
+		// the embedded thumbnail is exactly the right size:
+		thumbnail = create(jpeg, new Dimension(150, 150));
+		assertEquals(150, thumbnail.getWidth());
+		assertEquals(100, thumbnail.getHeight());
+		assertColor(THUMBNAIL_COLOR, thumbnail);
+	}
+
+	/**
+	 * An embedded thumbnail that is too small, or that has a different aspect
+	 * ratio than the image (such as a 4:3 thumbnail of a 3:2 photo with black
+	 * bars), should be ignored.
+	 */
+	@Test
+	public void testRejectedEmbeddedThumbnail() throws IOException {
+		// too small:
+		BufferedImage thumbnail = create(createJPEG(600, 400, 150, 100),
+				new Dimension(300, 300));
+		assertEquals(300, thumbnail.getWidth());
+		assertEquals(200, thumbnail.getHeight());
+		assertColor(IMAGE_COLOR, thumbnail);
+
+		// the wrong aspect ratio:
+		thumbnail = create(createJPEG(600, 400, 160, 120), new Dimension(90,
+				90));
+		assertEquals(90, thumbnail.getWidth());
+		assertEquals(60, thumbnail.getHeight());
+		assertColor(IMAGE_COLOR, thumbnail);
+	}
+
+	/**
+	 * A file that isn't an image should return null.
+	 */
+	@Test
+	public void testUnreadableFile() throws IOException {
+		byte[] data = new byte[1000];
+		for (int a = 0; a < data.length; a++) {
+			data[a] = (byte) (a * 31);
+		}
+		assertNull(create(data, new Dimension(90, 90)));
+	}
+
+	private static BufferedImage create(byte[] data, Dimension maxSize)
+			throws IOException {
+		File file = File.createTempFile("ThumbnailGeneratorTest", ".jpg");
+		try {
+			Files.write(file.toPath(), data);
+			return ThumbnailGenerator.create(file, maxSize);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void assertColor(Color expected, BufferedImage bi) {
+		int argb = bi.getRGB(bi.getWidth() / 2, bi.getHeight() / 2);
+		Color actual = new Color(argb);
+		String msg = expected + " != " + actual;
+		assertTrue(msg, Math.abs(expected.getRed() - actual.getRed()) < 10);
+		assertTrue(msg, Math.abs(expected.getGreen() - actual.getGreen()) < 10);
+		assertTrue(msg, Math.abs(expected.getBlue() - actual.getBlue()) < 10);
+	}
+
+	/**
+	 * Create a JPEG filled with {@link #IMAGE_COLOR} whose EXIF data contains
+	 * a thumbnail filled with {@link #THUMBNAIL_COLOR}.
+	 */
+	private static byte[] createJPEG(int width, int height,
+			int thumbnailWidth, int thumbnailHeight) throws IOException {
+		byte[] image = encode(createImage(width, height, IMAGE_COLOR));
+		byte[] thumbnail = encode(createImage(thumbnailWidth, thumbnailHeight,
+				THUMBNAIL_COLOR));
+
+		// a big-endian TIFF header, an empty IFD0, and an IFD1 that only
+		// points to the thumbnail
+		int thumbnailOffset = 8 + 6 + 30;
+		ByteBuffer tiff = ByteBuffer.allocate(thumbnailOffset
+				+ thumbnail.length);
+		tiff.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+		tiff.putShort((short) 0).putInt(8 + 6);
+		tiff.putShort((short) 2);
+		tiff.putShort((short) 513).putShort((short) 4).putInt(1)
+				.putInt(thumbnailOffset);
+		tiff.putShort((short) 514).putShort((short) 4).putInt(1)
+				.putInt(thumbnail.length);
+		tiff.putInt(0);
+		tiff.put(thumbnail);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(image, 0, 2);
+		int app1Length = 2 + 6 + tiff.capacity();
+		out.write(new byte[] { (byte) 0xff, (byte) 0xe1,
+				(byte) (app1Length >> 8), (byte) app1Length, 'E', 'x', 'i',
+				'f', 0, 0 });
+		out.write(tiff.array());
+		out.write(image, 2, image.length - 2);
+		return out.toByteArray();
+	}
+
+	private static BufferedImage createImage(int width, int height,
+			Color color) {
+		BufferedImage bi = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		return bi;
+	}
+
+	private static byte[] encode(BufferedImage bi) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(bi, "jpg", out);
+		return out.toByteArray();
+	}
+}
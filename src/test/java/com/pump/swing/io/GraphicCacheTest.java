@@ -0,0 +1,209 @@
+/**
+ * This software is released as part of the Pumpernickel project.
+ *
+ * All com.pump resources in the Pumpernickel project are distributed under the
+ * MIT License:
+ * https://raw.githubusercontent.com/mickleness/pumpernickel/master/License.txt
+ *
+ * More information about the Pumpernickel project is available here:
+ * https://mickleness.github.io/pumpernickel/
+ */
+package com.pump.swing.io;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.pump.io.location.FileLocation;
+import com.pump.io.location.IOLocation;
+import com.pump.swing.Cancellable;
+
+import junit.framework.TestCase;
+
+public class GraphicCacheTest extends TestCase {
+
+	static final String PREFIX = "GraphicCacheTest-";
+
+	/**
+	 * A location whose thumbnail can be held back until a latch is released.
+	 */
+	static class TestLocation extends FileLocation {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release;
+		final List<String> thumbnailRequests;
+
+		TestLocation(String name, CountDownLatch release,
+				List<String> thumbnailRequests) {
+			super(new File(System.getProperty("java.io.tmpdir"),
+					PREFIX + name));
+			this.release = release;
+			this.thumbnailRequests = thumbnailRequests;
+		}
+
+		@Override
+		public BufferedImage getThumbnail(Dimension maxSize,
+				Cancellable cancellable) {
+			synchronized (thumbnailRequests) {
+				thumbnailRequests.add(getName().substring(PREFIX.length()));
+			}
+			started.countDown();
+			try {
+				if (release != null)
+					release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return new BufferedImage(maxSize.width, maxSize.height,
+					BufferedImage.TYPE_INT_ARGB);
+		}
+	}
+
+	/**
+	 * While every fetcher thread is busy, queued requests should be retrieved
+	 * with icons first and then the newest thumbnails first. Cancelled
+	 * requests should never be retrieved.
+	 */
+	@Test
+	public void testPriorityAndCancellation() throws Exception {
+		GraphicCache cache = new GraphicCache(new Dimension(16, 16), null);
+		final List<String> events = new ArrayList<>();
+		final CountDownLatch done = new CountDownLatch(3);
+		cache.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				String name = ((FileLocation) evt.getSource()).getName()
+						.substring(PREFIX.length());
+				if (name.startsWith("blocker"))
+					return;
+				synchronized (events) {
+					events.add(evt.getPropertyName() + " " + name);
+				}
+				done.countDown();
+			}
+		});
+
+		// occupy all three fetcher threads:
+		List<String> thumbnailRequests = new ArrayList<>();
+		CountDownLatch[] releases = new CountDownLatch[3];
+		TestLocation[] blockers = new TestLocation[3];
+		for (int a = 0; a < blockers.length; a++) {
+			releases[a] = new CountDownLatch(1);
+			blockers[a] = new TestLocation("blocker" + a, releases[a],
+					thumbnailRequests);
+			assertNull(cache.requestThumbnail(blockers[a]));
+		}
+		try {
+			for (TestLocation blocker : blockers) {
+				assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+			}
+
+			TestLocation a = new TestLocation("a", null, thumbnailRequests);
+			TestLocation b = new TestLocation("b", null, thumbnailRequests);
+			TestLocation c = new TestLocation("c", null, thumbnailRequests);
+			TestLocation d = new TestLocation("d", null, thumbnailRequests);
+			assertNull(cache.requestThumbnail(a));
+			assertNull(cache.requestThumbnail(b));
+			assertNull(cache.requestThumbnail(c));
+			assertNull(cache.requestIcon(d));
+
+			// requesting the same thumbnail again should not queue it twice:
+			assertNull(cache.requestThumbnail(a));
+			cache.cancelThumbnailRequest(b);
+
+			// free one thread, so the queue is processed in order:
+			releases[0].countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("icon d", "thumbnail c", "thumbnail a"),
+					events);
+		} finally {
+			for (CountDownLatch release : releases) {
+				release.countDown();
+			}
+		}
+
+		assertNotNull(cache.requestThumbnail(blockers[0]));
+		assertNotNull(cache.requestThumbnail(new TestLocation("c", null,
+				thumbnailRequests)));
+		synchronized (thumbnailRequests) {
+			assertFalse(thumbnailRequests.contains("b"));
+			assertEquals(1, countOccurrences(thumbnailRequests, "a"));
+		}
+
+		// a cancelled request is retrieved again when it is requested again:
+		TestLocation b = new TestLocation("b", null, thumbnailRequests);
+		assertNull(cache.requestThumbnail(b));
+		assertTrue(b.started.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A thumbnail request shared by several requesters should only be
+	 * cancelled when every requester has withdrawn it.
+	 */
+	@Test
+	public void testSharedRequest() throws Exception {
+		GraphicCache cache = new GraphicCache(new Dimension(16, 16), null);
+		List<String> thumbnailRequests = new ArrayList<>();
+		CountDownLatch release = new CountDownLatch(1);
+		Object list1 = new Object();
+		Object list2 = new Object();
+		try {
+			TestLocation a = new TestLocation("shared-a", release,
+					thumbnailRequests);
+			assertNull(cache.requestThumbnail(a, list1));
+			assertNull(cache.requestThumbnail(a, list2));
+			assertNull(cache.requestThumbnail(a, list1));
+			Cancellable cancellable = getPendingCancellable(cache, a);
+
+			cache.cancelThumbnailRequest(a, list1);
+			assertFalse(cancellable.isCancelled());
+			assertSame(cancellable, getPendingCancellable(cache, a));
+			// withdrawing twice shouldn't withdraw the other requester:
+			cache.cancelThumbnailRequest(a, list1);
+			assertFalse(cancellable.isCancelled());
+
+			cache.cancelThumbnailRequest(a, list2);
+			assertTrue(cancellable.isCancelled());
+			assertNull(getPendingCancellable(cache, a));
+
+			// a request without a requester is never withdrawn by a
+			// requester:
+			TestLocation b = new TestLocation("shared-b", release,
+					thumbnailRequests);
+			assertNull(cache.requestThumbnail(b));
+			assertNull(cache.requestThumbnail(b, list1));
+			cancellable = getPendingCancellable(cache, b);
+			cache.cancelThumbnailRequest(b, list1);
+			assertFalse(cancellable.isCancelled());
+
+			cache.cancelThumbnailRequest(b);
+			assertTrue(cancellable.isCancelled());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	private static Cancellable getPendingCancellable(GraphicCache cache,
+			IOLocation loc) {
+		synchronized (cache) {
+			GraphicCache.Request request = cache.pendingThumbnails.get(loc);
+			return request == null ? null : request.cancellable;
+		}
+	}
+
+	private static int countOccurrences(List<String> list, String element) {
+		int count = 0;
+		for (String s : list) {
+			if (s.equals(element))
+				count++;
+		}
+		return count;
+	}
+}
@@ -12,12 +12,14 @@ package com.pump.util;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
 import com.pump.util.Cache.CachePool;
+import com.pump.util.Cache.ConcurrentCachePool;
 
 public class CacheTest extends TestCase {
 
@@ -289,4 +291,137 @@ public class CacheTest extends TestCase {
 		assertTrue(cacheA.getKeys().contains(4));
 		assertTrue(cacheA.getKeys().contains(5));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Confirm the ConcurrentCachePool stores and replaces values like the
+	 * original CachePool.
+	 */
+	@Test
+	public void testConcurrentPool_storage() {
+		Cache<Integer, String> cache = new Cache<>(
+				new ConcurrentCachePool(4, -1, -1));
+
+		assertEquals(null, cache.get(1));
+		assertEquals(null, cache.put(1, "A"));
+		assertEquals(null, cache.put(2, "B"));
+		assertEquals("A", cache.get(1));
+		assertEquals("B", cache.get(2));
+		assertEquals("A", cache.put(1, "X"));
+		assertEquals("X", cache.get(1));
+		assertEquals("X", cache.remove(1));
+		assertEquals(null, cache.get(1));
+		assertEquals(1, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(null, cache.get(2));
+	}
+
+	/**
+	 * Confirm the ConcurrentCachePool never exceeds its size limit, and that
+	 * it prefers to remove elements that have not been read.
+	 */
+	@Test
+	public void testConcurrentPool_maxSize() {
+		CachePool pool = new ConcurrentCachePool(100, -1, -1, 4);
+		Cache<Integer, String> cacheA = new Cache<>(pool);
+		Cache<Integer, String> cacheB = new Cache<>(pool);
+		for (int a = 0; a < 1000; a++) {
+			cacheA.put(a, "A" + a);
+			cacheB.put(a, "B" + a);
+			assertTrue(cacheA.size() + cacheB.size() <= 100);
+			if (a >= 1) {
+				assertEquals("A0", cacheA.get(0));
+			}
+		}
+		assertEquals(100, cacheA.size() + cacheB.size());
+		assertEquals("A0", cacheA.get(0));
+		assertEquals(1900, pool.getEvictionCount());
+	}
+
+	/**
+	 * Confirm the ConcurrentCachePool expires elements.
+	 */
+	@Test
+	public synchronized void testConcurrentPool_timer() throws Exception {
+		Cache<Integer, String> cache = new Cache<>(
+				new ConcurrentCachePool(1000, 150, -1));
+		cache.put(1, "A");
+		cache.put(2, "B");
+
+		wait(100); // t = 100
+
+		cache.put(3, "C");
+		assertEquals(3, cache.size());
+
+		wait(100); // t = 200
+
+		assertEquals(null, cache.get(1));
+		assertEquals(1, cache.size());
+	}
+
+	/**
+	 * Confirm the hit, miss and eviction counters.
+	 */
+	@Test
+	public void testCounters() {
+		for (CachePool pool : new CachePool[] { new CachePool(2, -1, -1),
+				new ConcurrentCachePool(2, -1, -1) }) {
+			Cache<Integer, String> cache = new Cache<>(pool);
+			cache.put(1, "A");
+			cache.put(2, "B");
+			cache.get(1);
+			cache.get(1);
+			cache.get(3);
+			cache.put(3, "C");
+
+			assertEquals(2, pool.getHitCount());
+			assertEquals(1, pool.getMissCount());
+			assertEquals(1, pool.getEvictionCount());
+			assertEquals("A", cache.get(1));
+			assertEquals(null, cache.get(2));
+		}
+	}
+
+	/**
+	 * Confirm the ConcurrentCachePool stays consistent while several threads
+	 * read and write to it.
+	 */
+	@Test
+	public void testConcurrentPool_threads() throws Exception {
+		final Cache<Integer, Integer> cache = new Cache<>(
+				new ConcurrentCachePool(64, -1, -1, 8));
+		Thread[] threads = new Thread[8];
+		final Throwable[] error = new Throwable[1];
+		for (int a = 0; a < threads.length; a++) {
+			final int seed = a;
+			threads[a] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random(seed);
+						for (int b = 0; b < 100000; b++) {
+							Integer key = random.nextInt(256);
+							if (random.nextInt(4) == 0) {
+								cache.put(key, key * 2);
+							} else {
+								Integer value = cache.get(key);
+								if (value != null && value != key * 2)
+									throw new AssertionError(key + " -> "
+											+ value);
+							}
+						}
+					} catch (Throwable t) {
+						error[0] = t;
+					}
+				}
+			};
+			threads[a].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(error[0]);
+		assertTrue(cache.size() <= 64);
+	}
+}